@@ -0,0 +1,63 @@
+package cic.cs.unb.ca.jnetpcap.benchmark;
+
+import cic.cs.unb.ca.jnetpcap.BasicFlow;
+import cic.cs.unb.ca.jnetpcap.BasicPacketInfo;
+import cic.cs.unb.ca.jnetpcap.FlowRecordWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/* updating the statistics of one flow, and turning a finished flow into a csv record */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BasicFlowBenchmark {
+
+    private static final int PACKETS = 1 << 12;
+    private static final long ACTIVITY_TIMEOUT = 5000000L;
+
+    private BasicPacketInfo[] packets;
+    private BasicFlow flow;
+    private BasicFlow finished;
+    private FlowRecordWriter record;
+    private long clock;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        packets = SyntheticTraffic.flow(PACKETS, SyntheticTraffic.SEED);
+        flow = new BasicFlow(true, packets[0], ACTIVITY_TIMEOUT);
+        clock = packets[0].getTimeStamp();
+
+        finished = new BasicFlow(true, packets[0], ACTIVITY_TIMEOUT);
+        for (int i = 1; i < PACKETS; i++) {
+            finished.addPacket(packets[i]);
+        }
+        record = new FlowRecordWriter();
+    }
+
+    @Benchmark
+    public BasicFlow addPacket() {
+        BasicPacketInfo packet = packets[next++ & (PACKETS - 1)];
+        // the packets are replayed, keep the time going forward
+        clock += 50;
+        packet.setTimeStamp(clock);
+        flow.addPacket(packet);
+        return flow;
+    }
+
+    @Benchmark
+    public String dumpFlowBasedFeaturesEx() {
+        return finished.dumpFlowBasedFeaturesEx();
+    }
+
+    @Benchmark
+    public int writeFlowBasedFeaturesEx() {
+        record.reset();
+        finished.writeFlowBasedFeaturesEx(record);
+        return record.length();
+    }
+}
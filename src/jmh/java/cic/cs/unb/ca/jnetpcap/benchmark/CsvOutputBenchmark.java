@@ -0,0 +1,74 @@
+package cic.cs.unb.ca.jnetpcap.benchmark;
+
+import cic.cs.unb.ca.jnetpcap.BasicFlow;
+import cic.cs.unb.ca.jnetpcap.BasicPacketInfo;
+import cic.cs.unb.ca.jnetpcap.FlowFeature;
+import cic.cs.unb.ca.jnetpcap.worker.CsvFlowSink;
+import cic.cs.unb.ca.jnetpcap.worker.InsertCsvRow;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Writing one finished flow to a csv file: InsertCsvRow, which opens the file for every
+ * row, against the CsvFlowSink that stays open. The files are removed after every
+ * iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvOutputBenchmark {
+
+    private File dir;
+    private BasicFlow flow;
+    private CsvFlowSink sink;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("cfm-bench").toFile();
+        BasicPacketInfo[] packets = SyntheticTraffic.flow(256, SyntheticTraffic.SEED);
+        flow = new BasicFlow(true, packets[0], 5000000L);
+        for (int i = 1; i < packets.length; i++) {
+            flow.addPacket(packets[i]);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void openSink() {
+        sink = new CsvFlowSink(dir.getPath(), "sink.csv", FlowFeature.getHeader());
+    }
+
+    @TearDown(Level.Iteration)
+    public void cleanUp() {
+        sink.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dir.delete();
+    }
+
+    @Benchmark
+    public void insertCsvRow() {
+        InsertCsvRow.insert(FlowFeature.getHeader(), Collections.singletonList(flow.dumpFlowBasedFeaturesEx()),
+                dir.getPath(), "insert.csv");
+    }
+
+    @Benchmark
+    public void csvFlowSink() {
+        sink.write(flow);
+    }
+}
@@ -0,0 +1,66 @@
+package cic.cs.unb.ca.jnetpcap.benchmark;
+
+import cic.cs.unb.ca.jnetpcap.BasicPacketInfo;
+import cic.cs.unb.ca.jnetpcap.FlowGenerator;
+import cic.cs.unb.ca.jnetpcap.IdGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * FlowGenerator.addPacket with a given number of conversations open at the same time.
+ * The table is filled in setup, so every measured packet goes to a live flow; one packet
+ * per microsecond, flows only end on the flow timeout.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FlowGeneratorBenchmark {
+
+    private static final int ORDER = 1 << 20;
+
+    @Param({ "1", "1000", "100000" })
+    public int flows;
+
+    private FlowGenerator flowGen;
+    private BasicPacketInfo[] packets;
+    private int[] order;
+    private long clock;
+    private int next;
+    private long finished;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random rnd = new Random(SyntheticTraffic.SEED);
+        IdGenerator generator = new IdGenerator();
+        clock = SyntheticTraffic.START;
+
+        // one packet per conversation and direction, replayed with a new timestamp
+        packets = new BasicPacketInfo[flows * 2];
+        for (int i = 0; i < packets.length; i++) {
+            packets[i] = SyntheticTraffic.packet(i / 2, (i & 1) == 0, rnd, clock, generator);
+        }
+        order = new int[ORDER];
+        for (int i = 0; i < ORDER; i++) {
+            order[i] = rnd.nextInt(packets.length);
+        }
+
+        flowGen = new FlowGenerator(true, 120000000L, 5000000L);
+        flowGen.addFlowListener(flow -> finished++);
+        for (BasicPacketInfo packet : packets) {
+            packet.setTimeStamp(++clock);
+            flowGen.addPacket(packet);
+        }
+    }
+
+    @Benchmark
+    public void addPacket() {
+        BasicPacketInfo packet = packets[order[next++ & (ORDER - 1)]];
+        packet.setTimeStamp(++clock);
+        flowGen.addPacket(packet);
+    }
+}
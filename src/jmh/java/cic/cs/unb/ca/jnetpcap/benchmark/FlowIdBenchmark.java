@@ -0,0 +1,37 @@
+package cic.cs.unb.ca.jnetpcap.benchmark;
+
+import cic.cs.unb.ca.jnetpcap.BasicPacketInfo;
+import cic.cs.unb.ca.jnetpcap.FlowKey;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/* flow identification of a packet: the legacy Flow ID string and the FlowKey */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FlowIdBenchmark {
+
+    private static final int PACKETS = 1 << 14;
+
+    private BasicPacketInfo[] packets;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        packets = SyntheticTraffic.packets(PACKETS, 1000, SyntheticTraffic.SEED);
+    }
+
+    @Benchmark
+    public String generateFlowId() {
+        return packets[next++ & (PACKETS - 1)].generateFlowId();
+    }
+
+    @Benchmark
+    public FlowKey flowKey() {
+        return packets[next++ & (PACKETS - 1)].flowKey();
+    }
+}
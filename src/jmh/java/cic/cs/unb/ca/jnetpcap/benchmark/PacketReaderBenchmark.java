@@ -0,0 +1,63 @@
+package cic.cs.unb.ca.jnetpcap.benchmark;
+
+import cic.cs.unb.ca.jnetpcap.BasicPacketInfo;
+import cic.cs.unb.ca.jnetpcap.MappedPcapReader;
+import cic.cs.unb.ca.jnetpcap.PacketReader;
+import cic.cs.unb.ca.jnetpcap.PacketSource;
+import org.jnetpcap.PcapClosedException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Decode of one packet from a synthetic capture. The jnetpcap reader needs the native
+ * library (-Djava.library.path=jnetpcap/linux/jnetpcap-1.4.r1425), run only the mapped
+ * reader without it: -p reader=mmap
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PacketReaderBenchmark {
+
+    @Param({ "jnetpcap", "mmap" })
+    public String reader;
+
+    private File pcap;
+    private PacketSource source;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        pcap = SyntheticTraffic.writePcap(SyntheticTraffic.packets(100000, 1000, SyntheticTraffic.SEED));
+        source = open();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        source.close();
+        pcap.delete();
+    }
+
+    @Benchmark
+    public BasicPacketInfo nextPacket() {
+        try {
+            return source.nextPacket();
+        } catch (PcapClosedException e) {
+            // start over at the end of the capture
+            source.close();
+            source = open();
+            return source.nextPacket();
+        }
+    }
+
+    private PacketSource open() {
+        if ("mmap".equals(reader)) {
+            return new MappedPcapReader(pcap.getPath(), true, false);
+        }
+        return new PacketReader(pcap.getPath(), true, false);
+    }
+}
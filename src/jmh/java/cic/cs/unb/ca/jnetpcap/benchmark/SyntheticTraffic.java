@@ -0,0 +1,110 @@
+package cic.cs.unb.ca.jnetpcap.benchmark;
+
+import cic.cs.unb.ca.jnetpcap.BasicPacketInfo;
+import cic.cs.unb.ca.jnetpcap.IdGenerator;
+
+import cic.cs.unb.ca.jnetpcap.PcapWriter;
+import cic.cs.unb.ca.jnetpcap.synthetic.TrafficGenerator;
+import cic.cs.unb.ca.jnetpcap.synthetic.TrafficProfile;
+import org.jnetpcap.PcapClosedException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * Deterministic packet streams for the benchmarks: the same seed always gives the same
+ * packets, so results can be compared between runs and machines without a capture.
+ *
+ * Streams come from the TrafficGenerator; packet() builds single packets of a fixed set
+ * of conversations for benchmarks that replay them.
+ */
+final class SyntheticTraffic {
+
+    static final long SEED = 0x5EED5EEDL;
+    static final long START = 1500000000000000L; // micros
+
+    private static final int PROTO_TCP = 6;
+    private static final int PROTO_UDP = 17;
+
+    private SyntheticTraffic() {
+    }
+
+    /* count packets of the default TrafficProfile with flows concurrent flows */
+    static BasicPacketInfo[] packets(int count, int flows, long seed) {
+        TrafficProfile profile = new TrafficProfile();
+        profile.setSeed(seed);
+        profile.setConcurrentFlows(flows);
+        profile.setTotalPackets(count);
+        profile.setStartTime(START);
+        return packets(profile, count);
+    }
+
+    static BasicPacketInfo[] packets(TrafficProfile profile, int count) {
+        TrafficGenerator traffic = new TrafficGenerator(profile);
+        BasicPacketInfo[] packets = new BasicPacketInfo[count];
+        int n = 0;
+        try {
+            while (n < count) {
+                BasicPacketInfo packet = traffic.nextPacket();
+                packets[n++] = packet;
+            }
+        } catch (PcapClosedException e) {
+            return Arrays.copyOf(packets, n);
+        }
+        return packets;
+    }
+
+    /* count packets of a single TCP flow: handshake, data, FIN */
+    static BasicPacketInfo[] flow(int count, long seed) {
+        TrafficProfile profile = new TrafficProfile();
+        profile.setSeed(seed);
+        profile.setConcurrentFlows(0);
+        profile.setElephantPackets(Math.max(1, count - 6));
+        profile.setElephantInterArrival(profile.getInterArrival());
+        profile.setTotalFlows(1);
+        profile.setTotalPackets(count);
+        profile.setStartTime(START);
+        return packets(profile, count);
+    }
+
+    /* one packet of conversation flow, client to server when forward, sizes drawn from rnd */
+    static BasicPacketInfo packet(int flow, boolean forward, Random rnd, long ts, IdGenerator generator) {
+        byte[] client = { 10, (byte) (flow >>> 16), (byte) (flow >>> 8), (byte) flow };
+        byte[] server = { (byte) 192, (byte) 168, (byte) (flow % 7), (byte) (1 + flow % 200) };
+        int clientPort = 1024 + flow % 60000;
+        int serverPort = flow % 3 == 0 ? 53 : 443;
+        int protocol = flow % 3 == 0 ? PROTO_UDP : PROTO_TCP;
+
+        BasicPacketInfo packet;
+        if (forward) {
+            packet = new BasicPacketInfo(client, server, clientPort, serverPort, protocol, ts, generator);
+        } else {
+            packet = new BasicPacketInfo(server, client, serverPort, clientPort, protocol, ts, generator);
+        }
+        if (protocol == PROTO_TCP) {
+            packet.setHeaderBytes(20);
+            packet.setPayloadBytes(rnd.nextInt(4) == 0 ? 0 : rnd.nextInt(1400));
+            packet.setTCPWindow(1024 + rnd.nextInt(64000));
+            packet.setFlagACK(true);
+            packet.setFlagPSH(packet.getPayloadBytes() > 0);
+        } else {
+            packet.setHeaderBytes(8);
+            packet.setPayloadBytes(20 + rnd.nextInt(500));
+        }
+        return packet;
+    }
+
+    /* writes the packets as Ethernet/IPv4 frames to a temporary pcap file */
+    static File writePcap(BasicPacketInfo[] packets) throws IOException {
+        File file = File.createTempFile("cfm-bench", ".pcap");
+        file.deleteOnExit();
+        try (PcapWriter writer = new PcapWriter(file.getPath())) {
+            for (BasicPacketInfo packet : packets) {
+                writer.write(packet);
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,53 @@
+package cic.cs.unb.ca.jnetpcap.benchmark;
+
+import cic.cs.unb.ca.jnetpcap.BasicPacketInfo;
+import cic.cs.unb.ca.jnetpcap.FlowGenerator;
+import cic.cs.unb.ca.jnetpcap.synthetic.TrafficProfile;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * FlowGenerator.addPacket over the first PACKETS packets of a TrafficProfile preset,
+ * each invocation feeds all of them to a new generator. The elephant preset is one long
+ * TCP flow.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@OperationsPerInvocation(TrafficProfileBenchmark.PACKETS)
+public class TrafficProfileBenchmark {
+
+    static final int PACKETS = 1 << 20;
+
+    @Param({ "default", "scan", "elephant" })
+    public String profile;
+
+    private BasicPacketInfo[] packets;
+    private FlowGenerator flowGen;
+    private long finished;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TrafficProfile traffic = TrafficProfile.preset(profile);
+        traffic.setSeed(SyntheticTraffic.SEED);
+        packets = SyntheticTraffic.packets(traffic, PACKETS);
+    }
+
+    @Setup(Level.Invocation)
+    public void newGenerator() {
+        flowGen = new FlowGenerator(true, 120000000L, 5000000L);
+        flowGen.addFlowListener(flow -> finished++);
+    }
+
+    @Benchmark
+    public FlowGenerator addPacket() {
+        for (BasicPacketInfo packet : packets) {
+            flowGen.addPacket(packet);
+        }
+        return flowGen;
+    }
+}
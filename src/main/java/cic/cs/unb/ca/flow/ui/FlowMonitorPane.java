@@ -14,7 +14,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.jnetpcap.PcapIf;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import cic.cs.unb.ca.jnetpcap.worker.InsertCsvRow;
+import cic.cs.unb.ca.jnetpcap.worker.CsvFlowSink;
 import swing.common.InsertTableRow;
 import swing.common.JTable2CSVWorker;
 import swing.common.TextFileFilter;
@@ -55,6 +55,7 @@ public class FlowMonitorPane extends JPanel {
     private JFileChooser fileChooser;
 
     private ExecutorService csvWriterThread;
+    private CsvFlowSink csvSink; // only touched on csvWriterThread
 
     public FlowMonitorPane() {
         init();
@@ -70,6 +71,7 @@ public class FlowMonitorPane extends JPanel {
     }
 
     public void destory() {
+        csvWriterThread.execute(this::closeCsvSink);
         csvWriterThread.shutdown();
     }
 
@@ -343,6 +345,11 @@ public class FlowMonitorPane extends JPanel {
         }
 
         // FlowMgr.getInstance().stopFetchFlow();
+        csvWriterThread.execute(() -> {
+            if (csvSink != null) {
+                csvSink.flush();
+            }
+        });
 
         btnLoad.setEnabled(true);
 
@@ -360,20 +367,33 @@ public class FlowMonitorPane extends JPanel {
     }
 
     private void insertFlow(BasicFlow flow) {
-        List<String> flowStringList = new ArrayList<>();
         List<String[]> flowDataList = new ArrayList<>();
         String flowDump = flow.dumpFlowBasedFeaturesEx();
-        flowStringList.add(flowDump);
         flowDataList.add(StringUtils.split(flowDump, ","));
 
         // write flows to csv file
-        String header = FlowFeature.getHeader();
         String path = FlowMgr.getInstance().getSavePath();
         String filename = LocalDate.now().toString() + FlowMgr.FLOW_SUFFIX;
-        csvWriterThread.execute(new InsertCsvRow(header, flowStringList, path, filename));
+        csvWriterThread.execute(() -> csvSink(path, filename).write(flow));
 
         // insert flows to JTable
         SwingUtilities.invokeLater(new InsertTableRow(defaultTableModel, flowDataList, lblFlowCnt));
         btnSave.setEnabled(true);
     }
+
+    /* one file per day, the previous day's file is closed when the date changes */
+    private CsvFlowSink csvSink(String path, String filename) {
+        if (csvSink == null || !csvSink.getFile().getName().equals(filename)) {
+            closeCsvSink();
+            csvSink = new CsvFlowSink(path, filename, FlowFeature.getHeader());
+        }
+        return csvSink;
+    }
+
+    private void closeCsvSink() {
+        if (csvSink != null) {
+            csvSink.close();
+            csvSink = null;
+        }
+    }
 }
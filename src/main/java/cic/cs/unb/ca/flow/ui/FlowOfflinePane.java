@@ -1,12 +1,8 @@
 package cic.cs.unb.ca.flow.ui;
 
-import cic.cs.unb.ca.flow.FlowMgr;
-import cic.cs.unb.ca.jnetpcap.BasicFlow;
-import cic.cs.unb.ca.jnetpcap.FlowFeature;
 import cic.cs.unb.ca.jnetpcap.worker.ReadPcapFileWorker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import cic.cs.unb.ca.jnetpcap.worker.InsertCsvRow;
 import swing.common.PcapFileFilter;
 
 import javax.swing.*;
@@ -18,8 +14,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class FlowOfflinePane extends JPanel {
     protected static final Logger logger = LoggerFactory.getLogger(FlowOfflinePane.class);
@@ -42,8 +36,6 @@ public class FlowOfflinePane extends JPanel {
     private JProgressBar fileProgress;
     private JProgressBar fileCntProgress;
 
-    private ExecutorService csvWriterThread;
-
     public FlowOfflinePane() {
 
         init();
@@ -59,12 +51,11 @@ public class FlowOfflinePane extends JPanel {
         fileChooser = new JFileChooser(new File("."));
         pcapChooserFilter = new PcapFileFilter();
         fileChooser.setFileFilter(pcapChooserFilter);
-        csvWriterThread = Executors.newSingleThreadExecutor();
 
     }
 
     public void destroy() {
-        csvWriterThread.shutdown();
+        // flows are written by ReadPcapFileWorker, nothing to release here
     }
 
     private JPanel initOutPane() {
@@ -392,17 +383,11 @@ public class FlowOfflinePane extends JPanel {
                 } else if (ReadPcapFileWorker.PROPERTY_FLOW.equalsIgnoreCase(evt.getPropertyName())) {
 
                     String fileName = (String) evt.getOldValue();
-                    BasicFlow flow = (BasicFlow) evt.getNewValue();
 
                     flowCnt.put(fileName, flowCnt.get(fileName) + 1);
 
                     String msg = String.format("%d flows on Reading %s", flowCnt.get(fileName), fileName);
                     fileProgress.setString(msg);
-
-                    // write flows to csv file
-                    String header = FlowFeature.getHeader();
-                    csvWriterThread.execute(new InsertCsvRow(header, flow.dumpFlowBasedFeaturesEx(), out.getPath(),
-                            fileName + FlowMgr.FLOW_SUFFIX));
                 }
             });
             worker.execute();
@@ -1,242 +1,46 @@
 package cic.cs.unb.ca.ifm;
 
-import cic.cs.unb.ca.flow.FlowMgr;
-import cic.cs.unb.ca.jnetpcap.*;
-import cic.cs.unb.ca.jnetpcap.worker.FlowGenListener;
-import org.apache.commons.io.FilenameUtils;
-import org.jnetpcap.PcapClosedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import cic.cs.unb.ca.jnetpcap.worker.InsertCsvRow;
-import swing.common.SwingUtils;
 
-import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
-
-import static cic.cs.unb.ca.Sys.FILE_SEP;
+import java.util.Arrays;
 
+/*
+ * cfm: the flows of capture files (PcapFlowMeter) or of a network interface (LiveFlowMeter),
+ * the packets of flows (PcapExtract) and the packet offsets of capture files (PcapOffsets).
+ * The options are read by CmdOptions.
+ */
 public class Cmd {
 
     public static final Logger logger = LoggerFactory.getLogger(Cmd.class);
-    private static final String DividingLine = "-------------------------------------------------------------------------------";
-    private static String[] animationChars = new String[] { "|", "/", "-", "\\" };
 
     public static void main(String[] args) {
 
-        long flowTimeout = 120000000L;
-        long activityTimeout = 5000000L;
-        String rootPath = System.getProperty("user.dir");
-        String pcapPath;
-        String outPath;
-        boolean savePacketInfo = false; // Default: don't save packet information
-
-        /* Select path for reading all .pcap files */
-        /*
-         * if(args.length<1 || args[0]==null) {
-         * pcapPath = rootPath+"/data/in/";
-         * }else {
-         * }
-         */
-
-        /* Select path for writing all .csv files */
-        /*
-         * if(args.length<2 || args[1]==null) {
-         * outPath = rootPath+"/data/out/";
-         * }else {
-         * }
-         */
-
         if (args.length < 1) {
             logger.info("Please select pcap!");
             return;
         }
-        pcapPath = args[0];
-        File in = new File(pcapPath);
-
-        if (in == null || !in.exists()) {
-            logger.info("The pcap file or folder does not exist! -> {}", pcapPath);
-            return;
-        }
-
-        if (args.length < 2) {
-            logger.info("Please select output folder!");
-            return;
-        }
-        outPath = args[1];
-        File out = new File(outPath);
-        if (out == null || out.isFile()) {
-            logger.info("The out folder does not exist! -> {}", outPath);
+        if (args[0].equalsIgnoreCase("--extract")) {
+            PcapExtract.main(Arrays.copyOfRange(args, 1, args.length));
             return;
         }
-
-        // Check for save-packet-info option
-        for (int i = 2; i < args.length; i++) {
-            if (args[i].equalsIgnoreCase("--save-packet-info") ||
-                    args[i].equalsIgnoreCase("--save_packet-info") ||
-                    args[i].equalsIgnoreCase("--save_packet_info") ||
-                    args[i].equalsIgnoreCase("--savepacketinfo")) {
-                savePacketInfo = true;
-                logger.info("Saving packet information to JSON files is enabled");
-            }
-        }
-
-        logger.info("You select: {}", pcapPath);
-        logger.info("Out folder: {}", outPath);
-
-        if (in.isDirectory()) {
-            readPcapDir(in, outPath, flowTimeout, activityTimeout, savePacketInfo);
-        } else {
-
-            if (!SwingUtils.isPcapFile(in)) {
-                logger.info("Please select pcap file!");
-            } else {
-                logger.info("CICFlowMeter received 1 pcap file");
-                readPcapFile(in.getPath(), outPath, flowTimeout, activityTimeout, savePacketInfo);
-            }
-        }
-
-    }
-
-    private static void readPcapDir(File inputPath, String outPath, long flowTimeout, long activityTimeout,
-            boolean savePacketInfo) {
-        if (inputPath == null || outPath == null) {
+        if (args[0].equalsIgnoreCase("--offsets")) {
+            PcapOffsets.main(Arrays.copyOfRange(args, 1, args.length));
             return;
         }
-        File[] pcapFiles = inputPath.listFiles(SwingUtils::isPcapFile);
-        int file_cnt = pcapFiles.length;
-        System.out.println(String.format("CICFlowMeter found :%d pcap files", file_cnt));
-        for (int i = 0; i < file_cnt; i++) {
-            File file = pcapFiles[i];
-            if (file.isDirectory()) {
-                continue;
-            }
-            int cur = i + 1;
-            System.out.println(String.format("==> %d / %d", cur, file_cnt));
-            readPcapFile(file.getPath(), outPath, flowTimeout, activityTimeout, savePacketInfo);
-
-        }
-        System.out.println("Completed!");
-    }
 
-    private static void readPcapFile(String inputFile, String outPath, long flowTimeout, long activityTimeout,
-            boolean savePacketInfo) {
-        if (inputFile == null || outPath == null) {
+        CmdOptions options = CmdOptions.parse(args);
+        if (options == null) {
             return;
         }
-        String fileName = FilenameUtils.getName(inputFile);
-
-        if (!outPath.endsWith(FILE_SEP)) {
-            outPath += FILE_SEP;
-        }
-
-        File saveFileFullPath = new File(outPath + fileName + FlowMgr.FLOW_SUFFIX);
-
-        if (saveFileFullPath.exists()) {
-            if (!saveFileFullPath.delete()) {
-                System.out.println("Save file can not be deleted");
-            }
-        }
-
-        FlowGenerator flowGen = new FlowGenerator(true, flowTimeout, activityTimeout, savePacketInfo);
-        flowGen.addFlowListener(new FlowListener(fileName, outPath, flowGen, savePacketInfo));
-        boolean readIP6 = false;
-        boolean readIP4 = true;
-        PacketReader packetReader = new PacketReader(inputFile, readIP4, readIP6);
-
-        System.out.println(String.format("Working on... %s", fileName));
-
-        int nValid = 0;
-        int nTotal = 0;
-        int nDiscarded = 0;
-        long start = System.currentTimeMillis();
-        int i = 0;
-        while (true) {
-            /*
-             * i = (i)%animationChars.length;
-             * System.out.print("Working on "+ inputFile+" "+ animationChars[i] +"\r");
-             */
-            try {
-                BasicPacketInfo basicPacket = packetReader.nextPacket();
-                nTotal++;
-                if (nTotal == 966491) {
-                    int a = 1;
-                }
-                if (basicPacket != null) {
-                    flowGen.addPacket(basicPacket);
-                    nValid++;
-                } else {
-                    nDiscarded++;
-                }
-            } catch (PcapClosedException e) {
-                break;
-            }
-            i++;
-        }
-
-        flowGen.dumpLabeledCurrentFlow(saveFileFullPath.getPath(), FlowFeature.getHeader());
-
-        long lines = SwingUtils.countLines(saveFileFullPath.getPath());
-
-        System.out.println(String.format("%s is done. total %d flows ", fileName, lines));
-        System.out.println(String.format("Packet stats: Total=%d,Valid=%d,Discarded=%d", nTotal, nValid, nDiscarded));
-        System.out.println(DividingLine);
-
-        // long end = System.currentTimeMillis();
-        // logger.info(String.format("Done! in %d seconds",((end-start)/1000)));
-        // logger.info(String.format("\t Total packets: %d",nTotal));
-        // logger.info(String.format("\t Valid packets: %d",nValid));
-        // logger.info(String.format("\t Ignored packets:%d %d ",
-        // nDiscarded,(nTotal-nValid)));
-        // logger.info(String.format("PCAP duration %d
-        // seconds",((packetReader.getLastPacket()-
-        // packetReader.getFirstPacket())/1000)));
-        // int singleTotal = flowGen.dumpLabeledFlowBasedFeatures(outPath, fileName+
-        // FlowMgr.FLOW_SUFFIX, FlowFeature.getHeader());
-        // logger.info(String.format("Number of Flows: %d",singleTotal));
-        // logger.info("{} is done,Total {} flows",inputFile,singleTotal);
-        // System.out.println(String.format("%s is done,Total %d flows", inputFile,
-        // singleTotal));
-    }
-
-    static class FlowListener implements FlowGenListener {
-
-        private String fileName;
-        private String outPath;
-        private long cnt;
-        private FlowGenerator flowGen;
-        private boolean savePacketInfo;
-
-        public FlowListener(String fileName, String outPath) {
-            this.fileName = fileName;
-            this.outPath = outPath;
-        }
-
-        public FlowListener(String fileName, String outPath, FlowGenerator flowGen, boolean savePacketInfo) {
-            this.fileName = fileName;
-            this.outPath = outPath;
-            this.flowGen = flowGen;
-            this.savePacketInfo = savePacketInfo;
-        }
-
-        @Override
-        public void onFlowGenerated(BasicFlow flow) {
-            // Save packet information if enabled
-            if (savePacketInfo && flowGen != null) {
-                flowGen.saveFlowPacketsToJson(flow, outPath);
-            }
-
-            String flowDump = flow.dumpFlowBasedFeaturesEx();
-            List<String> flowStringList = new ArrayList<>();
-            flowStringList.add(flowDump);
-            InsertCsvRow.insert(FlowFeature.getHeader(), flowStringList, outPath, fileName + FlowMgr.FLOW_SUFFIX);
 
-            cnt++;
+        logger.info("You select: {}", options.pcapPath);
+        logger.info("Out folder: {}", options.outPath);
 
-            String console = String.format("%s -> %d flows \r", fileName, cnt);
-
-            System.out.print(console);
+        if (options.live) {
+            LiveFlowMeter.capture(options);
+        } else {
+            PcapFlowMeter.read(options);
         }
     }
-
 }
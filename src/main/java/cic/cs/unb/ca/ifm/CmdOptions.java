@@ -0,0 +1,306 @@
+package cic.cs.unb.ca.ifm;
+
+import cic.cs.unb.ca.jnetpcap.EvictionPolicy;
+import cic.cs.unb.ca.jnetpcap.FlowSampler;
+import cic.cs.unb.ca.jnetpcap.PacketRing;
+import cic.cs.unb.ca.jnetpcap.worker.RotatingCsvFlowSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * The command line of a flow run, parsed once and handed to the mode that runs it:
+ *
+ *   <pcap-file|pcap-folder> <output-folder> [options]
+ *   --live <interface> <output-folder> [options]
+ *
+ * parse() logs what is wrong with the command line and gives null.
+ */
+class CmdOptions {
+
+    public static final Logger logger = LoggerFactory.getLogger(CmdOptions.class);
+
+    private static final long FLOW_TIMEOUT = 120000000L;
+    private static final long ACTIVITY_TIMEOUT = 5000000L;
+
+    boolean live;
+    String pcapPath; // or the interface of a live capture
+    String outPath;
+
+    boolean savePacketInfo = false; // Default: don't save packet information
+    boolean timerExpiry = false; // Default: flows only end on FIN, flow timeout or end of file
+    int threads = 1; // Default: flows are assembled on the reading thread
+    boolean mapped = false; // Default: files are read with jnetpcap
+    int jobs = 1; // Default: the files of a folder are read one after another
+    int maxFlows = 0; // Default: no limit on the flows in progress
+    String eviction = "oldest"; // Default: flows idle the longest are evicted first
+    List<FlowConfig> configs = new ArrayList<>(); // Default: one bidirectional flow definition
+    TimeWindow window; // Default: every packet of a file
+
+    // how packets and finished flows get to the csv file
+    int writers = 0; // Default: flows are written on the thread that finished them
+    boolean drop = false; // Default: the packet thread waits for the writers
+    boolean cache = false; // Default: every run decodes the capture
+    FlowSampler sampler; // Default: null, every flow and every packet
+    boolean retainPackets = false; // Default: flows only keep their statistics, not their packets
+
+    // how a live capture is opened and reported
+    int snaplen = 64 * 1024; // bytes kept of every packet
+    int bufferSize = 0; // MB: Default: the kernel buffer size of libpcap
+    String filter = null; // Default: every packet
+    int readTimeout = 1000; // ms: how long libpcap waits to fill its buffer
+    int statsInterval = 60; // s: 0 for no stats lines
+    int ringCapacity = PacketRing.DEFAULT_CAPACITY; // packets between the capture and flow threads
+    RotatingCsvFlowSink.Rotation rotation; // Default: one file a day
+    String samplingControl = null; // file the sampling rates are changed with
+
+    private CmdOptions() {
+    }
+
+    static CmdOptions parse(String[] args) {
+        CmdOptions options = new CmdOptions();
+        int rotateSize = 0; // live capture, MB
+        int rotateRecords = 0; // live capture: flows in a file
+        int rotateInterval = 0; // live capture, s: time window of a file
+        long from = Long.MIN_VALUE; // micros: Default: from the first packet of a file
+        long to = Long.MAX_VALUE; // micros: Default: to the last packet of a file
+        double flowSampling = 1.0; // Default: every flow
+        int packetSampling = 1; // Default: every packet
+
+        if (args.length < 1) {
+            logger.info("Please select pcap!");
+            return null;
+        }
+        // --live <interface> <output folder> reads the interface instead of a pcap file
+        options.live = args[0].equalsIgnoreCase("--live");
+        int first = options.live ? 1 : 0;
+        if (args.length < first + 1) {
+            logger.info("Please select network interface!");
+            return null;
+        }
+        options.pcapPath = args[first];
+        File in = new File(options.pcapPath);
+
+        if (!options.live && !in.exists()) {
+            logger.info("The pcap file or folder does not exist! -> {}", options.pcapPath);
+            return null;
+        }
+
+        if (args.length < first + 2) {
+            logger.info("Please select output folder!");
+            return null;
+        }
+        options.outPath = args[first + 1];
+        File out = new File(options.outPath);
+        if (out.isFile()) {
+            logger.info("The out folder does not exist! -> {}", options.outPath);
+            return null;
+        }
+
+        for (int i = first + 2; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("--save-packet-info") ||
+                    args[i].equalsIgnoreCase("--save_packet-info") ||
+                    args[i].equalsIgnoreCase("--save_packet_info") ||
+                    args[i].equalsIgnoreCase("--savepacketinfo")) {
+                options.savePacketInfo = true;
+                logger.info("Saving packet information to a packet index (.pktidx) per capture");
+            } else if (args[i].equalsIgnoreCase("--timer-expiry")) {
+                options.timerExpiry = true;
+                logger.info("Expiring flows on flow timeout and activity timeout is enabled");
+            } else if (args[i].equalsIgnoreCase("--threads") && i + 1 < args.length) {
+                options.threads = atLeast(args[++i], 1, "thread count");
+                if (options.threads < 0) {
+                    return null;
+                }
+                logger.info("Assembling flows on {} threads", options.threads);
+            } else if (args[i].equalsIgnoreCase("--mmap")) {
+                options.mapped = true;
+                logger.info("Reading capture files with the memory mapped reader");
+            } else if (args[i].equalsIgnoreCase("--jobs") && i + 1 < args.length) {
+                options.jobs = atLeast(args[++i], 1, "job count");
+                if (options.jobs < 0) {
+                    return null;
+                }
+                logger.info("Reading {} files at a time", options.jobs);
+            } else if (args[i].equalsIgnoreCase("--max-flows") && i + 1 < args.length) {
+                options.maxFlows = atLeast(args[++i], 0, "flow limit");
+                if (options.maxFlows < 0) {
+                    return null;
+                }
+                logger.info("Keeping at most {} flows in progress", options.maxFlows);
+            } else if (args[i].equalsIgnoreCase("--eviction") && i + 1 < args.length) {
+                options.eviction = args[++i];
+                try {
+                    EvictionPolicy.forName(options.eviction);
+                } catch (IllegalArgumentException e) {
+                    logger.info("Invalid eviction policy -> {} (oldest, fewest, random or reject)", options.eviction);
+                    return null;
+                }
+                logger.info("Eviction policy: {}", options.eviction);
+            } else if (args[i].equalsIgnoreCase("--async") && i + 1 < args.length) {
+                options.writers = atLeast(args[++i], 1, "writer count");
+                if (options.writers < 0) {
+                    return null;
+                }
+                logger.info("Writing flows on {} threads", options.writers);
+            } else if (args[i].equalsIgnoreCase("--flow-config") && i + 1 < args.length) {
+                try {
+                    options.configs.add(FlowConfig.parse(args[++i]));
+                } catch (IllegalArgumentException e) {
+                    logger.info("Invalid flow config -> {} (<flow timeout s>,<activity timeout s>[,bi|uni])", args[i]);
+                    return null;
+                }
+                logger.info("Flow config {}", options.configs.get(options.configs.size() - 1).name);
+            } else if (args[i].equalsIgnoreCase("--cache")) {
+                options.cache = true;
+                logger.info("Decoded packets are cached next to the flow files");
+            } else if (args[i].equalsIgnoreCase("--retain-packets")) {
+                options.retainPackets = true;
+                logger.info("Flows keep their packets until they are written (debugging, uses a lot of memory)");
+            } else if (args[i].equalsIgnoreCase("--drop-flows")) {
+                options.drop = true;
+                logger.info("Dropping flows while the writers are behind");
+            } else if (args[i].equalsIgnoreCase("--snaplen") && i + 1 < args.length) {
+                options.snaplen = atLeast(args[++i], 1, "snaplen");
+                if (options.snaplen < 0) {
+                    return null;
+                }
+            } else if (args[i].equalsIgnoreCase("--buffer-size") && i + 1 < args.length) {
+                options.bufferSize = atLeast(args[++i], 1, "buffer size");
+                if (options.bufferSize < 0) {
+                    return null;
+                }
+                logger.info("Capture buffer: {} MB", options.bufferSize);
+            } else if (args[i].equalsIgnoreCase("--filter") && i + 1 < args.length) {
+                options.filter = args[++i];
+                logger.info("Capture filter: {}", options.filter);
+            } else if (args[i].equalsIgnoreCase("--read-timeout") && i + 1 < args.length) {
+                options.readTimeout = atLeast(args[++i], 1, "read timeout");
+                if (options.readTimeout < 0) {
+                    return null;
+                }
+            } else if (args[i].equalsIgnoreCase("--stats-interval") && i + 1 < args.length) {
+                options.statsInterval = atLeast(args[++i], 0, "stats interval");
+                if (options.statsInterval < 0) {
+                    return null;
+                }
+            } else if (args[i].equalsIgnoreCase("--ring") && i + 1 < args.length) {
+                options.ringCapacity = atLeast(args[++i], 2, "ring size");
+                if (options.ringCapacity < 0) {
+                    return null;
+                }
+            } else if (args[i].equalsIgnoreCase("--rotate-size") && i + 1 < args.length) {
+                rotateSize = atLeast(args[++i], 1, "rotation size");
+                if (rotateSize < 0) {
+                    return null;
+                }
+            } else if (args[i].equalsIgnoreCase("--rotate-records") && i + 1 < args.length) {
+                rotateRecords = atLeast(args[++i], 1, "rotation record count");
+                if (rotateRecords < 0) {
+                    return null;
+                }
+            } else if ((args[i].equalsIgnoreCase("--from") || args[i].equalsIgnoreCase("--to"))
+                    && i + 1 < args.length) {
+                String option = args[i];
+                long micros;
+                try {
+                    micros = TimeWindow.parse(args[++i]);
+                } catch (IllegalArgumentException e) {
+                    logger.info("Invalid time -> {} (yyyy-MM-dd HH:mm:ss[.SSSSSS] or epoch seconds)", args[i]);
+                    return null;
+                }
+                if (option.equalsIgnoreCase("--from")) {
+                    from = micros;
+                } else {
+                    to = micros;
+                }
+            } else if (args[i].equalsIgnoreCase("--flow-sampling") && i + 1 < args.length) {
+                try {
+                    flowSampling = Double.parseDouble(args[++i]);
+                } catch (NumberFormatException e) {
+                    flowSampling = -1;
+                }
+                if (!(flowSampling > 0 && flowSampling <= 1)) {
+                    logger.info("Invalid flow sampling rate -> {} (0 < rate <= 1)", args[i]);
+                    return null;
+                }
+                logger.info("Sampling {} of the flows", flowSampling);
+            } else if (args[i].equalsIgnoreCase("--packet-sampling") && i + 1 < args.length) {
+                packetSampling = atLeast(args[++i], 1, "packet sampling interval");
+                if (packetSampling < 0) {
+                    return null;
+                }
+                logger.info("Sampling 1 in {} packets", packetSampling);
+            } else if (args[i].equalsIgnoreCase("--sampling-control") && i + 1 < args.length) {
+                options.samplingControl = args[++i];
+                logger.info("Sampling rates are read from {} while capturing", options.samplingControl);
+            } else if (args[i].equalsIgnoreCase("--rotate-interval") && i + 1 < args.length) {
+                rotateInterval = atLeast(args[++i], 1, "rotation interval");
+                if (rotateInterval < 0) {
+                    return null;
+                }
+            } else {
+                // a typo, or the last option without its value
+                logger.info("Unknown option or missing value -> {}", args[i]);
+                return null;
+            }
+        }
+
+        if (options.drop && options.writers == 0) {
+            options.writers = 1;
+        }
+        if (options.writers > 1 && options.savePacketInfo) {
+            // the packet index records go in the order of the csv rows
+            logger.info("Saving packet information, flows are written on one thread");
+            options.writers = 1;
+        }
+        if (from > to) {
+            logger.info("The time window ends before it starts");
+            return null;
+        }
+        options.window = new TimeWindow(from, to);
+        if (options.window.isSet()) {
+            logger.info("Reading the packets from {} to {}", options.window.format(from), options.window.format(to));
+            if (options.cache) {
+                logger.info("A time window reads the capture itself, --cache is ignored");
+                options.cache = false;
+            }
+        }
+        if (flowSampling < 1 || packetSampling > 1 || (options.live && options.samplingControl != null)) {
+            options.sampler = new FlowSampler();
+            options.sampler.setFlowRate(flowSampling);
+            options.sampler.setPacketInterval(packetSampling);
+            if (options.cache && packetSampling > 1) {
+                logger.info("Packet sampling reads the capture itself, --cache is ignored");
+                options.cache = false;
+            }
+        }
+        if (options.configs.isEmpty()) {
+            options.configs.add(new FlowConfig(null, FLOW_TIMEOUT, ACTIVITY_TIMEOUT, true));
+        }
+        options.rotation = new RotatingCsvFlowSink.Rotation(rotateSize * 1024L * 1024L, rotateRecords,
+                rotateInterval * 1000L);
+        if (options.live && options.rotation.isSegmented()) {
+            logger.info("Rolling flow files over at {} MB, {} flows, {} s (0 for no limit)", rotateSize,
+                    rotateRecords, rotateInterval);
+        }
+        return options;
+    }
+
+    /* value as a number of at least min >= 0, or -1 after logging why it is not */
+    private static int atLeast(String value, int min, String name) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n >= min) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+            // logged below
+        }
+        logger.info("Invalid {} -> {}", name, value);
+        return -1;
+    }
+}
@@ -0,0 +1,49 @@
+package cic.cs.unb.ca.ifm;
+
+/*
+ * One flow definition. Its flows go to <out>/<name>/, or straight to <out>/ for the
+ * default definition, which has no name.
+ */
+class FlowConfig {
+    final String name;
+    final long flowTimeout;
+    final long activityTimeout;
+    final boolean bidirectional;
+
+    FlowConfig(String name, long flowTimeout, long activityTimeout, boolean bidirectional) {
+        this.name = name;
+        this.flowTimeout = flowTimeout;
+        this.activityTimeout = activityTimeout;
+        this.bidirectional = bidirectional;
+    }
+
+    /* <flow timeout>,<activity timeout>[,bi|uni] in seconds, e.g. 120,5 or 60,1,uni */
+    static FlowConfig parse(String spec) {
+        String[] parts = spec.split(",");
+        if (parts.length < 2 || parts.length > 3) {
+            throw new IllegalArgumentException("flow config=" + spec);
+        }
+        long flowTimeout = seconds(parts[0]);
+        long activityTimeout = seconds(parts[1]);
+        boolean bidirectional = true;
+        if (parts.length == 3) {
+            if (parts[2].equalsIgnoreCase("uni")) {
+                bidirectional = false;
+            } else if (!parts[2].equalsIgnoreCase("bi")) {
+                throw new IllegalArgumentException("flow config=" + spec);
+            }
+        }
+        String name = String.format("ft%s_at%s_%s", parts[0].trim(), parts[1].trim(),
+                bidirectional ? "bi" : "uni");
+        return new FlowConfig(name, flowTimeout, activityTimeout, bidirectional);
+    }
+
+    /* timestamps are in microseconds */
+    private static long seconds(String value) {
+        double seconds = Double.parseDouble(value.trim());
+        if (!(seconds > 0)) {
+            throw new IllegalArgumentException("timeout=" + value);
+        }
+        return Math.round(seconds * 1000000L);
+    }
+}
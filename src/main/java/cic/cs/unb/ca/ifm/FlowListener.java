@@ -0,0 +1,68 @@
+package cic.cs.unb.ca.ifm;
+
+import cic.cs.unb.ca.jnetpcap.BasicFlow;
+import cic.cs.unb.ca.jnetpcap.FlowGenerator;
+import cic.cs.unb.ca.jnetpcap.worker.FlowGenListener;
+import cic.cs.unb.ca.jnetpcap.worker.FlowSink;
+
+/* writes the flows of a command line run to its sink and counts them */
+class FlowListener implements FlowGenListener {
+
+    private String fileName;
+    private String outPath;
+    private long cnt;
+    private FlowSink sink;
+    private FlowGenerator flowGen;
+    private boolean savePacketInfo;
+    private boolean progress = true;
+
+    public FlowListener(String fileName, String outPath, FlowSink sink) {
+        this.fileName = fileName;
+        this.outPath = outPath;
+        this.sink = sink;
+    }
+
+    public FlowListener(String fileName, String outPath, FlowSink sink, FlowGenerator flowGen,
+            boolean savePacketInfo) {
+        this.fileName = fileName;
+        this.outPath = outPath;
+        this.sink = sink;
+        this.flowGen = flowGen;
+        this.savePacketInfo = savePacketInfo;
+    }
+
+    public FlowListener(String fileName, String outPath, FlowSink sink, FlowGenerator flowGen,
+            boolean savePacketInfo, boolean progress) {
+        this(fileName, outPath, sink, flowGen, savePacketInfo);
+        this.progress = progress;
+    }
+
+    @Override
+    public void onFlowGenerated(BasicFlow flow) {
+        // Save packet information if enabled
+        if (savePacketInfo && flowGen != null) {
+            flowGen.saveFlowPacketsToJson(flow, outPath);
+        }
+
+        sink.write(flow);
+
+        long n;
+        synchronized (this) {
+            n = ++cnt;
+        }
+
+        if (progress) {
+            String console = String.format("%s -> %d flows \r", fileName, n);
+
+            System.out.print(console);
+        }
+    }
+
+    public synchronized long getCount() {
+        return cnt;
+    }
+
+    FlowGenerator getFlowGenerator() {
+        return flowGen;
+    }
+}
@@ -0,0 +1,293 @@
+package cic.cs.unb.ca.ifm;
+
+import cic.cs.unb.ca.flow.FlowMgr;
+import cic.cs.unb.ca.jnetpcap.*;
+import cic.cs.unb.ca.jnetpcap.worker.AsyncFlowEmitter;
+import cic.cs.unb.ca.jnetpcap.worker.FlowGenListener;
+import cic.cs.unb.ca.jnetpcap.worker.LiveCapture;
+import cic.cs.unb.ca.jnetpcap.worker.RotatingCsvFlowSink;
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapBpfProgram;
+import org.jnetpcap.PcapStat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static cic.cs.unb.ca.Sys.FILE_SEP;
+
+/*
+ * The flows of a network interface, run as cfm --live:
+ *
+ *   --live <interface> <output-folder> [options]
+ *
+ * Captures until SIGTERM or SIGINT, or until libpcap or the flow generator fails. The
+ * flows go to one csv file a day in the output folder, named and laid out like the file
+ * the GUI saves to (FlowMgr.getAutoSaveFile()), or to the segments of --rotate-size,
+ * --rotate-records and --rotate-interval. On shutdown the capture stops, the packets in
+ * the ring and the queued flows are processed, and the flows still in progress are added
+ * to the last file before the JVM exits.
+ */
+public class LiveFlowMeter {
+
+    public static final Logger logger = LoggerFactory.getLogger(LiveFlowMeter.class);
+    private static final String DividingLine = "-------------------------------------------------------------------------------";
+    private static final long LIVE_SHUTDOWN_WAIT = 60L; // s, for the last flows of a live capture
+
+    public static void main(String[] args) {
+        String[] live = new String[args.length + 1];
+        live[0] = "--live";
+        System.arraycopy(args, 0, live, 1, args.length);
+        CmdOptions options = CmdOptions.parse(live);
+        if (options != null) {
+            capture(options);
+        }
+    }
+
+    static void capture(CmdOptions options) {
+        String device = options.pcapPath;
+        String outPath = options.outPath;
+        FlowConfig config = options.configs.get(0);
+        if (options.configs.size() > 1) {
+            logger.info("Live capture takes one flow config, using {}", config.name);
+        }
+        if (!outPath.endsWith(FILE_SEP)) {
+            outPath += FILE_SEP;
+        }
+        if (config.name != null) {
+            outPath += config.name + FILE_SEP;
+        }
+
+        StringBuilder errbuf = new StringBuilder();
+        Pcap pcap = Pcap.create(device, errbuf);
+        if (pcap == null) {
+            logger.info("open {} fail -> {}", device, errbuf.toString());
+            return;
+        }
+        pcap.setSnaplen(options.snaplen);
+        pcap.setPromisc(Pcap.MODE_PROMISCUOUS);
+        pcap.setTimeout(options.readTimeout);
+        if (options.bufferSize > 0) {
+            pcap.setBufferSize(options.bufferSize * 1024L * 1024L);
+        }
+        if (pcap.activate() != Pcap.OK) {
+            logger.info("open {} fail -> {}", device, pcap.getErr());
+            pcap.close();
+            return;
+        }
+        if (options.filter != null) {
+            PcapBpfProgram program = new PcapBpfProgram();
+            if (pcap.compile(program, options.filter, 1, 0) != Pcap.OK || pcap.setFilter(program) != Pcap.OK) {
+                logger.info("Invalid filter -> {} ({})", options.filter, pcap.getErr());
+                pcap.close();
+                return;
+            }
+        }
+
+        FlowGenerator flowGen;
+        if (options.threads > 1) {
+            flowGen = new ShardedFlowGenerator(options.threads, config.bidirectional, config.flowTimeout,
+                    config.activityTimeout, options.savePacketInfo);
+        } else {
+            flowGen = new FlowGenerator(config.bidirectional, config.flowTimeout, config.activityTimeout,
+                    options.savePacketInfo);
+        }
+        flowGen.setRetainPackets(options.retainPackets);
+        RotatingCsvFlowSink sink = new RotatingCsvFlowSink(outPath, "", FlowMgr.FLOW_SUFFIX, FlowFeature.getHeader(),
+                options.rotation);
+        // closed below, after the flows in progress
+        sink.setCloseOnShutdown(false);
+        // the packet index and the sampling log follow the flows through all the files of the capture
+        String captureName = device.replaceAll("[^A-Za-z0-9._-]", "_") + "_"
+                + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HHmmss"));
+        PacketIndexWriter packetIndex = null;
+        if (options.savePacketInfo) {
+            packetIndex = new PacketIndexWriter(PacketIndex.indexFile(outPath, captureName));
+            flowGen.setPacketIndex(packetIndex);
+        }
+        FlowSampler sampler = options.sampler;
+        SamplingControl control = null;
+        if (sampler != null) {
+            flowGen.setSampler(sampler);
+            sampler.addLog(FlowSampler.logFile(outPath, captureName));
+            if (options.samplingControl != null) {
+                control = new SamplingControl(new File(options.samplingControl), sampler);
+            }
+        }
+        FlowListener flows = new FlowListener(device, outPath, sink, flowGen, options.savePacketInfo, false);
+        FlowGenListener listener = flows;
+        AsyncFlowEmitter emitter = null;
+        if (options.writers > 0) {
+            emitter = new AsyncFlowEmitter(listener, options.writers, AsyncFlowEmitter.DEFAULT_CAPACITY,
+                    options.drop ? AsyncFlowEmitter.Backpressure.DROP : AsyncFlowEmitter.Backpressure.BLOCK);
+            listener = emitter;
+        }
+        flowGen.addFlowListener(listener);
+        // a capture has no end of file, idle flows end on their timeouts
+        flowGen.enableTimerExpiry();
+        if (options.maxFlows > 0) {
+            flowGen.setMaxFlows(options.maxFlows, EvictionPolicy.forName(options.eviction));
+        }
+
+        LiveCapture capture = new LiveCapture(pcap, flowGen, options.snaplen, options.ringCapacity, true, false);
+        capture.setSampler(sampler);
+        AtomicBoolean stop = new AtomicBoolean(false);
+        CountDownLatch done = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stop.set(true);
+            try {
+                if (!done.await(LIVE_SHUTDOWN_WAIT, TimeUnit.SECONDS)) {
+                    logger.info("Live capture did not stop in {} seconds", LIVE_SHUTDOWN_WAIT);
+                }
+            } catch (InterruptedException e) {
+                logger.debug(e.getMessage());
+            }
+        }, "LiveFlowMeter-shutdown"));
+
+        try {
+            System.out.println(String.format("Capturing on... %s", device));
+            PcapStat pcapStat = new PcapStat();
+            long[] lastStats = { System.currentTimeMillis() };
+            SamplingControl samplingControl = control;
+            Runnable report = null;
+            if (options.statsInterval > 0 || samplingControl != null) {
+                report = () -> {
+                    if (samplingControl != null) {
+                        samplingControl.check();
+                    }
+                    long now = System.currentTimeMillis();
+                    if (options.statsInterval > 0 && now - lastStats[0] >= options.statsInterval * 1000L) {
+                        lastStats[0] = now;
+                        System.out.println(liveStats(device, pcap, pcapStat, capture, flows));
+                    }
+                };
+            }
+            int ret;
+            try {
+                ret = capture.run(stop::get, report);
+            } catch (IllegalStateException e) {
+                // no more flows can be made, keep the ones written so far
+                logger.error("listening: {} stopped -> {}", device, e.getCause().toString());
+                pcap.close();
+                if (emitter != null) {
+                    emitter.close();
+                }
+                sink.close();
+                if (packetIndex != null) {
+                    packetIndex.close();
+                }
+                return;
+            }
+            if (ret == Pcap.ERROR) {
+                logger.info("listening: {} error -> {}", device, pcap.getErr());
+            }
+            System.out.println(liveStats(device, pcap, pcapStat, capture, flows));
+            pcap.close();
+
+            flowGen.close();
+            if (emitter != null) {
+                emitter.close();
+            }
+            File[] saveFile = new File[1];
+            sink.close(file -> {
+                saveFile[0] = file;
+                flowGen.dumpLabeledCurrentFlow(file.getPath(), FlowFeature.getHeader());
+            });
+            if (packetIndex != null) {
+                packetIndex.close();
+                System.out.println(String.format("Packet index: %s", packetIndex.getFile().getPath()));
+            }
+            if (sampler != null) {
+                System.out.println(String.format("Sampling log: %s, unsampled flow packets: %d",
+                        FlowSampler.logFile(outPath, captureName).getPath(), flowGen.getUnsampledPacketCount()));
+            }
+            if (options.drop) {
+                System.out.println(String.format("Dropped flows: %d", emitter.getDroppedFlowCount()));
+            }
+            if (options.rotation.isSegmented()) {
+                System.out.println(String.format("%s is done. %d flow files in %s", device,
+                        sink.getSegmentCount(), outPath));
+            } else {
+                System.out.println(String.format("%s is done. flows in progress written to %s", device,
+                        saveFile[0].getPath()));
+            }
+            System.out.println(DividingLine);
+        } finally {
+            done.countDown();
+        }
+    }
+
+    private static String liveStats(String device, Pcap pcap, PcapStat pcapStat, LiveCapture capture,
+            FlowListener flows) {
+        PacketRing ring = capture.getRing();
+        if (pcap.stats(pcapStat) != Pcap.OK) {
+            pcapStat = new PcapStat();
+        }
+        String stats = String.format("%s %s -> Packets: Received=%d,Dropped=%d,IfDropped=%d,Decoded=%d | Flows=%d | %s",
+                LocalTime.now().withNano(0), device, pcapStat.getRecv(), pcapStat.getDrop(), pcapStat.getIfDrop(),
+                ring.getOfferedCount() + ring.getDroppedCount(), flows.getCount(), capture.getRingStatus());
+        FlowSampler sampler = flows.getFlowGenerator().getSampler();
+        if (sampler != null) {
+            stats += String.format(" | sampling %s of the flows, 1 in %d packets", sampler.getFlowRate(),
+                    sampler.getPacketInterval());
+        }
+        return stats;
+    }
+
+    /*
+     * --sampling-control: a properties file read again whenever it changes while capturing,
+     *
+     *   flow-sampling=<rate>
+     *   packet-sampling=<N>
+     *
+     * so the sampling can be changed without stopping the capture. A key left out keeps
+     * its rate.
+     */
+    static class SamplingControl {
+        private final File file;
+        private final FlowSampler sampler;
+        private long lastModified;
+
+        SamplingControl(File file, FlowSampler sampler) {
+            this.file = file;
+            this.sampler = sampler;
+            check();
+        }
+
+        void check() {
+            long modified = file.lastModified();
+            if (modified == 0L || modified == lastModified) {
+                return;
+            }
+            lastModified = modified;
+            Properties rates = new Properties();
+            try (FileReader reader = new FileReader(file)) {
+                rates.load(reader);
+            } catch (IOException e) {
+                logger.info("Can not read {}: {}", file.getPath(), e.getMessage());
+                return;
+            }
+            try {
+                String flowRate = rates.getProperty("flow-sampling");
+                if (flowRate != null) {
+                    sampler.setFlowRate(Double.parseDouble(flowRate.trim()));
+                }
+                String packetInterval = rates.getProperty("packet-sampling");
+                if (packetInterval != null) {
+                    sampler.setPacketInterval(Integer.parseInt(packetInterval.trim()));
+                }
+            } catch (IllegalArgumentException e) {
+                logger.info("Invalid sampling in {} -> {}", file.getPath(), e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package cic.cs.unb.ca.ifm;
+
+import cic.cs.unb.ca.jnetpcap.PacketIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/*
+ * Writes the <flow id>.json files of packet tracking from the packet index of a capture
+ * (<file>.pktidx next to its flow csv), for all flow ids or only the ones given:
+ *
+ *   PacketIndexExport <index-file> <output-folder> [<flow-id> ...]
+ */
+public class PacketIndexExport {
+
+    public static final Logger logger = LoggerFactory.getLogger(PacketIndexExport.class);
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            logger.info("Usage: PacketIndexExport <index-file> <output-folder> [<flow-id> ...]");
+            return;
+        }
+
+        File index = new File(args[0]);
+        if (!index.isFile()) {
+            logger.info("The index file does not exist! -> {}", args[0]);
+            return;
+        }
+        Set<String> flowIds = null;
+        if (args.length > 2) {
+            flowIds = new HashSet<>(Arrays.asList(args).subList(2, args.length));
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            int files = PacketIndex.exportJson(index, args[1], flowIds);
+            System.out.println(String.format("%d json files in %s in %d ms", files, args[1],
+                    System.currentTimeMillis() - start));
+        } catch (IOException | IllegalArgumentException e) {
+            logger.info("Can not export {}: {}", args[0], e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package cic.cs.unb.ca.ifm;
+
+import cic.cs.unb.ca.flow.FlowMgr;
+import cic.cs.unb.ca.jnetpcap.PacketBitmap;
+import cic.cs.unb.ca.jnetpcap.PacketIndex;
+import cic.cs.unb.ca.jnetpcap.PacketOffsets;
+import cic.cs.unb.ca.jnetpcap.PcapExtractor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/*
+ * Writes the packets of the given flows to a new pcap file, run as cfm --extract:
+ *
+ *   PcapExtract <pcap-file> <index-file> <output-pcap> <flow-id|flow-csv> ...
+ *
+ * A flow id takes every flow of that id; a csv file takes the flows of its rows, e.g.
+ * rows filtered out of the flow csv the index was written with, which must still be
+ * next to the index. Without it the rows are taken by their flow id.
+ */
+public class PcapExtract {
+
+    public static final Logger logger = LoggerFactory.getLogger(PcapExtract.class);
+    private static final String DividingLine = "-------------------------------------------------------------------------------";
+
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            logger.info("Usage: --extract <pcap-file> <index-file> <output-pcap> <flow-id|flow-csv> ...");
+            return;
+        }
+        File capture = new File(args[0]);
+        if (!capture.isFile()) {
+            logger.info("The pcap file does not exist! -> {}", args[0]);
+            return;
+        }
+        File index = new File(args[1]);
+        if (!index.isFile()) {
+            logger.info("The index file does not exist! -> {}", args[1]);
+            return;
+        }
+        String base = index.getPath();
+        if (base.endsWith(PacketIndex.SUFFIX)) {
+            base = base.substring(0, base.length() - PacketIndex.SUFFIX.length());
+        }
+        File flowCsv = new File(base + FlowMgr.FLOW_SUFFIX);
+
+        Set<String> flowIds = new HashSet<>();
+        Set<String> rows = new HashSet<>();
+        for (int i = 3; i < args.length; i++) {
+            File file = new File(args[i]);
+            if (!file.isFile()) {
+                flowIds.add(args[i]);
+                continue;
+            }
+            try (BufferedReader csv = new BufferedReader(new FileReader(file))) {
+                String line;
+                while ((line = csv.readLine()) != null) {
+                    if (line.isEmpty() || line.startsWith("Flow ID")) {
+                        continue;
+                    }
+                    if (flowCsv.isFile()) {
+                        rows.add(line);
+                    } else {
+                        flowIds.add(line.substring(0, Math.max(line.indexOf(','), 0)));
+                    }
+                }
+            } catch (IOException e) {
+                logger.info("Can not read {}: {}", args[i], e.getMessage());
+                return;
+            }
+        }
+        if (!rows.isEmpty()) {
+            logger.info("Taking the rows of {}", flowCsv.getPath());
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            PacketBitmap packets = new PacketBitmap();
+            if (!flowIds.isEmpty()) {
+                long flows = PcapExtractor.selectFlows(index, flowIds, packets);
+                System.out.println(String.format("%d flow ids: %d flows", flowIds.size(), flows));
+            }
+            if (!rows.isEmpty()) {
+                long found = PcapExtractor.selectRows(index, flowCsv, rows, packets);
+                System.out.println(String.format("%d rows: %d found", rows.size(), found));
+            }
+
+            PacketOffsets offsets = PacketOffsets.read(new File(base + PacketOffsets.SUFFIX), capture);
+            if (offsets == null) {
+                logger.info("No packet offsets for {}, reading it from the start", capture.getPath());
+            }
+            long written = PcapExtractor.extract(capture.getPath(), packets, offsets, args[2]);
+            System.out.println(String.format("%d of %d packets written to %s in %d ms", written,
+                    packets.cardinality(), args[2], System.currentTimeMillis() - start));
+        } catch (IOException | IllegalArgumentException e) {
+            logger.info("Can not extract from {}: {}", args[0], e.getMessage());
+        }
+        System.out.println(DividingLine);
+    }
+}
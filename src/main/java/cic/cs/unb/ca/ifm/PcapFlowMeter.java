@@ -0,0 +1,451 @@
+package cic.cs.unb.ca.ifm;
+
+import cic.cs.unb.ca.flow.FlowMgr;
+import cic.cs.unb.ca.jnetpcap.*;
+import cic.cs.unb.ca.jnetpcap.worker.AsyncFlowEmitter;
+import cic.cs.unb.ca.jnetpcap.worker.CsvFlowSink;
+import cic.cs.unb.ca.jnetpcap.worker.FileBatchRunner;
+import cic.cs.unb.ca.jnetpcap.worker.FlowGenListener;
+import org.apache.commons.io.FilenameUtils;
+import org.jnetpcap.PcapClosedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import swing.common.SwingUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static cic.cs.unb.ca.Sys.FILE_SEP;
+
+/*
+ * The flows of capture files, the default mode of cfm:
+ *
+ *   <pcap-file|pcap-folder> <output-folder> [options]
+ *
+ * Every file gives <output-folder>/<file>_Flow.csv, one per flow config.
+ */
+public class PcapFlowMeter {
+
+    public static final Logger logger = LoggerFactory.getLogger(PcapFlowMeter.class);
+    private static final String DividingLine = "-------------------------------------------------------------------------------";
+    private static String[] animationChars = new String[] { "|", "/", "-", "\\" };
+
+    public static void main(String[] args) {
+        CmdOptions options = CmdOptions.parse(args);
+        if (options != null && !options.live) {
+            read(options);
+        }
+    }
+
+    /* a folder file by file, or one file */
+    static void read(CmdOptions options) {
+        File in = new File(options.pcapPath);
+        if (in.isDirectory()) {
+            readPcapDir(in, options);
+        } else if (!isCaptureFile(in, options.mapped)) {
+            logger.info("Please select pcap file!");
+        } else {
+            logger.info("CICFlowMeter received 1 pcap file");
+            readPcapFile(in.getPath(), options, true);
+        }
+    }
+
+    static void readPcapDir(File inputPath, CmdOptions options) {
+        File[] pcapFiles = inputPath.listFiles(f -> !f.isDirectory() && isCaptureFile(f, options.mapped));
+        int file_cnt = pcapFiles.length;
+        System.out.println(String.format("CICFlowMeter found :%d pcap files", file_cnt));
+
+        PcapStats total = new PcapStats();
+        long start = System.currentTimeMillis();
+        if (options.jobs > 1) {
+            AtomicInteger cur = new AtomicInteger();
+            FileBatchRunner.run(pcapFiles, options.jobs, "PcapFile", file -> {
+                System.out.println(String.format("==> %d / %d %s", cur.incrementAndGet(), file_cnt, file.getName()));
+                total.add(readPcapFile(file.getPath(), options, false));
+            });
+        } else {
+            for (int i = 0; i < file_cnt; i++) {
+                File file = pcapFiles[i];
+                int cur = i + 1;
+                System.out.println(String.format("==> %d / %d", cur, file_cnt));
+                total.add(readPcapFile(file.getPath(), options, true));
+            }
+        }
+        long seconds = (System.currentTimeMillis() - start) / 1000;
+        System.out.println(String.format("%d files, total %d flows in %d seconds", total.files, total.flows, seconds));
+        System.out.println(String.format("Packet stats: Total=%d,Valid=%d,Discarded=%d", total.packets, total.valid,
+                total.discarded));
+        if (options.maxFlows > 0) {
+            System.out.println(String.format("Flow limit: Evicted=%d,Rejected=%d", total.evicted, total.rejected));
+        }
+        if (options.drop) {
+            System.out.println(String.format("Dropped flows: %d", total.dropped));
+        }
+        System.out.println("Completed!");
+    }
+
+    /*
+     * progress: print the flow count while reading, only one file may be read at a time.
+     * The summary of the file is printed at once, so it is not mixed with the lines of the
+     * files read alongside.
+     *
+     * Every decoded packet goes to one flow generator per configuration, so the capture is
+     * read once however many flow definitions are asked for.
+     *
+     * With a time window the flows are the ones of the packets in it. The packets of the
+     * longest flow timeout before it still go to a lead-in generator per configuration,
+     * whose open flows tell which flows of the window began before it: they are labelled
+     * partial. The memory mapped reader seeks to the lead-in with the PacketOffsets of a
+     * classic pcap file, recorded by the first run that read the file from the start or
+     * by --offsets; otherwise the packets before it are skipped without decoding them.
+     */
+    static PcapStats readPcapFile(String inputFile, CmdOptions options, boolean progress) {
+        PcapStats stats = new PcapStats();
+        String fileName = FilenameUtils.getName(inputFile);
+        TimeWindow window = options.window;
+
+        String outPath = options.outPath;
+        if (!outPath.endsWith(FILE_SEP)) {
+            outPath += FILE_SEP;
+        }
+
+        List<FlowRun> runs = new ArrayList<>();
+        for (FlowConfig config : options.configs) {
+            runs.add(new FlowRun(config, fileName, outPath, options, progress && runs.isEmpty()));
+        }
+
+        boolean readIP6 = false;
+        boolean readIP4 = true;
+        PacketSource packetReader;
+        PacketCacheWriter cacheWriter = null;
+        File cacheFile = PacketCache.cacheFile(outPath, fileName);
+        if (options.cache && PacketCache.isValid(cacheFile, new File(inputFile), readIP4, readIP6)) {
+            packetReader = new PacketCacheReader(cacheFile);
+        } else {
+            if (options.mapped) {
+                packetReader = new MappedPcapReader(inputFile, readIP4, readIP6);
+            } else {
+                packetReader = new PacketReader(inputFile, readIP4, readIP6);
+            }
+            if (options.cache) {
+                cacheWriter = new PacketCacheWriter(cacheFile, new File(inputFile), readIP4, readIP6);
+            }
+        }
+
+        long leadIn = 0L;
+        if (window.from != Long.MIN_VALUE) {
+            for (FlowConfig config : options.configs) {
+                leadIn = Math.max(leadIn, config.flowTimeout);
+            }
+            for (FlowRun run : runs) {
+                run.startLeadIn(options);
+            }
+        }
+        long readFrom = window.from == Long.MIN_VALUE ? Long.MIN_VALUE : window.from - leadIn;
+
+        // kept for --from and --extract
+        File captureFile = new File(inputFile);
+        PacketOffsets saved = PacketOffsets.read(
+                PacketOffsets.offsetsFile(runs.get(0).saveFileFullPath.getParent(), fileName), captureFile);
+        if (saved == null) {
+            saved = PacketOffsets.read(PacketOffsets.offsetsFile(outPath, fileName), captureFile);
+        }
+        PacketOffsets offsets = null;
+        if (packetReader instanceof MappedPcapReader) {
+            MappedPcapReader mappedReader = (MappedPcapReader) packetReader;
+            if (saved != null && readFrom != Long.MIN_VALUE && mappedReader.seekTime(saved, readFrom)) {
+                logger.debug("{}: seeking to the lead-in of the time window", fileName);
+            } else if (saved == null || !saved.isComplete()) {
+                offsets = new PacketOffsets();
+                mappedReader.setPacketOffsets(offsets);
+            }
+            mappedReader.setTimeWindow(readFrom, window.to);
+            mappedReader.setSampler(options.sampler);
+        } else if (packetReader instanceof PacketReader) {
+            ((PacketReader) packetReader).setTimeWindow(readFrom, window.to);
+            ((PacketReader) packetReader).setSampler(options.sampler);
+        }
+
+        if (packetReader instanceof PacketCacheReader) {
+            System.out.println(String.format("Working on... %s (cached)", fileName));
+        } else {
+            System.out.println(String.format("Working on... %s", fileName));
+        }
+
+        int nValid = 0;
+        int nTotal = 0;
+        int nDiscarded = 0;
+        int nLeadIn = 0;
+        boolean inWindow = window.from == Long.MIN_VALUE;
+        long start = System.currentTimeMillis();
+        int i = 0;
+        while (true) {
+            /*
+             * i = (i)%animationChars.length;
+             * System.out.print("Working on "+ inputFile+" "+ animationChars[i] +"\r");
+             */
+            try {
+                BasicPacketInfo basicPacket = packetReader.nextPacket();
+                nTotal++;
+                if (cacheWriter != null) {
+                    // before the flow generator, a sharded one hands the packet to another thread
+                    cacheWriter.write(basicPacket);
+                }
+                if (nTotal == 966491) {
+                    int a = 1;
+                }
+                if (basicPacket != null && !inWindow) {
+                    if (basicPacket.getTimeStamp() < window.from) {
+                        if (nLeadIn == 0 && basicPacket.getId() > nTotal) {
+                            // the reader skipped packets before the lead-in
+                            for (FlowRun run : runs) {
+                                run.leadIn.setUnreadBefore(readFrom);
+                            }
+                        }
+                        for (FlowRun run : runs) {
+                            run.leadIn.addPacket(basicPacket);
+                        }
+                        nLeadIn++;
+                        continue;
+                    }
+                    inWindow = true;
+                    for (FlowRun run : runs) {
+                        run.endLeadIn();
+                    }
+                }
+                if (basicPacket != null) {
+                    for (FlowRun run : runs) {
+                        run.flowGen.addPacket(basicPacket);
+                    }
+                    nValid++;
+                } else {
+                    nDiscarded++;
+                }
+            } catch (PcapClosedException e) {
+                break;
+            }
+            i++;
+        }
+        packetReader.close();
+        if (cacheWriter != null) {
+            cacheWriter.close();
+        }
+        if (offsets != null && offsets.size() > (saved == null ? 0 : saved.size())) {
+            for (FlowRun run : runs) {
+                File offsetsFile = PacketOffsets.offsetsFile(run.saveFileFullPath.getParent(), fileName);
+                try {
+                    offsets.write(offsetsFile, captureFile);
+                } catch (IOException e) {
+                    logger.debug("Can not write {}: {}", offsetsFile.getPath(), e.getMessage());
+                }
+            }
+        }
+
+        String lineSep = System.lineSeparator();
+        StringBuilder summary = new StringBuilder();
+        StringBuilder limitStats = new StringBuilder();
+        for (FlowRun run : runs) {
+            run.finish();
+
+            long lines = SwingUtils.countLines(run.saveFileFullPath.getPath());
+            if (run.config.name == null) {
+                summary.append(String.format("%s is done. total %d flows ", fileName, lines)).append(lineSep);
+            } else {
+                summary.append(String.format("%s [%s] is done. total %d flows ", fileName, run.config.name, lines))
+                        .append(lineSep);
+            }
+            if (options.maxFlows > 0) {
+                limitStats.append(String.format("Flow limit: Evicted=%d,Rejected=%d",
+                        run.flowGen.getEvictedFlowCount(), run.flowGen.getRejectedFlowCount())).append(lineSep);
+            }
+            if (options.drop) {
+                limitStats.append(String.format("Dropped flows: %d", run.emitter.getDroppedFlowCount()))
+                        .append(lineSep);
+            }
+            if (window.from != Long.MIN_VALUE) {
+                limitStats.append(String.format("Partial flows: %d", run.flowGen.getPartialFlowCount()))
+                        .append(lineSep);
+            }
+            if (options.sampler != null) {
+                limitStats.append(String.format("Sampling: %s of the flows, 1 in %d packets, unsampled flow packets=%d",
+                        options.sampler.getFlowRate(), options.sampler.getPacketInterval(),
+                        run.flowGen.getUnsampledPacketCount())).append(lineSep);
+            }
+
+            stats.flows += lines;
+            stats.evicted += run.flowGen.getEvictedFlowCount();
+            stats.rejected += run.flowGen.getRejectedFlowCount();
+            stats.dropped += run.emitter == null ? 0 : run.emitter.getDroppedFlowCount();
+        }
+        summary.append(String.format("Packet stats: Total=%d,Valid=%d,Discarded=%d", nTotal, nValid, nDiscarded))
+                .append(lineSep);
+        if (window.isSet()) {
+            summary.append(String.format("Time window: %s to %s, lead-in packets=%d", window.format(window.from),
+                    window.format(window.to), nLeadIn)).append(lineSep);
+        }
+        summary.append(limitStats).append(DividingLine).append(lineSep);
+        System.out.print(summary);
+
+        stats.files = 1;
+        stats.packets = nTotal;
+        stats.valid = nValid;
+        stats.discarded = nDiscarded;
+        return stats;
+
+        // long end = System.currentTimeMillis();
+        // logger.info(String.format("Done! in %d seconds",((end-start)/1000)));
+        // logger.info(String.format("\t Total packets: %d",nTotal));
+        // logger.info(String.format("\t Valid packets: %d",nValid));
+        // logger.info(String.format("\t Ignored packets:%d %d ",
+        // nDiscarded,(nTotal-nValid)));
+        // logger.info(String.format("PCAP duration %d
+        // seconds",((packetReader.getLastPacket()-
+        // packetReader.getFirstPacket())/1000)));
+        // int singleTotal = flowGen.dumpLabeledFlowBasedFeatures(outPath, fileName+
+        // FlowMgr.FLOW_SUFFIX, FlowFeature.getHeader());
+        // logger.info(String.format("Number of Flows: %d",singleTotal));
+        // logger.info("{} is done,Total {} flows",inputFile,singleTotal);
+        // System.out.println(String.format("%s is done,Total %d flows", inputFile,
+        // singleTotal));
+    }
+
+    /* the memory mapped reader also takes pcapng files */
+    static boolean isCaptureFile(File file, boolean mapped) {
+        return SwingUtils.isPcapFile(file) || (mapped && MappedPcapReader.isCaptureFile(file));
+    }
+
+    /* the flow generator of one FlowConfig over one file, and where its flows go */
+    static class FlowRun {
+        private final FlowConfig config;
+        private final FlowGenerator flowGen;
+        private final CsvFlowSink sink;
+        private final AsyncFlowEmitter emitter;
+        private final PacketIndexWriter packetIndex;
+        private final File samplingLog;
+        private final File saveFileFullPath;
+        private FlowGenerator leadIn; // the packets before a time window, its flows are not written
+
+        FlowRun(FlowConfig config, String fileName, String outPath, CmdOptions options, boolean progress) {
+            this.config = config;
+            if (config.name != null) {
+                outPath += config.name + FILE_SEP;
+            }
+            File saveDir = new File(outPath);
+            if (!saveDir.exists()) {
+                saveDir.mkdirs();
+            }
+
+            saveFileFullPath = new File(outPath + fileName + FlowMgr.FLOW_SUFFIX);
+            if (saveFileFullPath.exists()) {
+                if (!saveFileFullPath.delete()) {
+                    System.out.println("Save file can not be deleted");
+                }
+            }
+
+            if (options.threads > 1) {
+                flowGen = new ShardedFlowGenerator(options.threads, config.bidirectional, config.flowTimeout,
+                        config.activityTimeout, options.savePacketInfo);
+            } else {
+                flowGen = new FlowGenerator(config.bidirectional, config.flowTimeout, config.activityTimeout,
+                        options.savePacketInfo);
+            }
+            flowGen.setRetainPackets(options.retainPackets);
+            if (options.savePacketInfo) {
+                // record n is the packet info of csv row n
+                packetIndex = new PacketIndexWriter(PacketIndex.indexFile(outPath, fileName));
+                flowGen.setPacketIndex(packetIndex);
+            } else {
+                packetIndex = null;
+            }
+            if (options.sampler != null) {
+                flowGen.setSampler(options.sampler);
+                samplingLog = FlowSampler.logFile(outPath, fileName);
+                if (samplingLog.exists() && !samplingLog.delete()) {
+                    logger.debug("Can not delete {}", samplingLog.getPath());
+                }
+                options.sampler.addLog(samplingLog);
+            } else {
+                samplingLog = null;
+            }
+            sink = new CsvFlowSink(outPath, fileName + FlowMgr.FLOW_SUFFIX, FlowFeature.getHeader());
+            FlowGenListener listener = new FlowListener(fileName, outPath, sink, flowGen, options.savePacketInfo,
+                    progress);
+            if (options.writers > 0) {
+                emitter = new AsyncFlowEmitter(listener, options.writers, AsyncFlowEmitter.DEFAULT_CAPACITY,
+                        options.drop ? AsyncFlowEmitter.Backpressure.DROP : AsyncFlowEmitter.Backpressure.BLOCK);
+                listener = emitter;
+            } else {
+                emitter = null;
+            }
+            flowGen.addFlowListener(listener);
+            if (options.timerExpiry) {
+                flowGen.enableTimerExpiry();
+            }
+            if (options.maxFlows > 0) {
+                flowGen.setMaxFlows(options.maxFlows, EvictionPolicy.forName(options.eviction));
+            }
+        }
+
+        void startLeadIn(CmdOptions options) {
+            leadIn = new FlowGenerator(config.bidirectional, config.flowTimeout, config.activityTimeout);
+            leadIn.setSampler(flowGen.getSampler());
+            leadIn.setRetainPackets(flowGen.isRetainPackets()); // its open flows go on in flowGen
+            leadIn.addFlowListener(flow -> {
+            });
+            if (options.timerExpiry) {
+                leadIn.enableTimerExpiry();
+            }
+            if (options.maxFlows > 0) {
+                leadIn.setMaxFlows(options.maxFlows, EvictionPolicy.forName(options.eviction));
+            }
+        }
+
+        /* the first packet of the time window: its flows begun before are partial */
+        void endLeadIn() {
+            flowGen.setOpenFlows(leadIn.getOpenFlows());
+            leadIn = null;
+        }
+
+        /* end of the file: write the flows still queued, then the flows in progress */
+        void finish() {
+            flowGen.close();
+            if (emitter != null) {
+                emitter.close();
+            }
+            sink.close();
+            flowGen.dumpLabeledCurrentFlow(saveFileFullPath.getPath(), FlowFeature.getHeader());
+            if (packetIndex != null) {
+                packetIndex.close();
+            }
+            if (samplingLog != null) {
+                flowGen.getSampler().removeLog(samplingLog);
+            }
+        }
+    }
+
+    /* packet and flow counts of one file, or summed over a folder */
+    static class PcapStats {
+        private long files;
+        private long flows;
+        private long packets;
+        private long valid;
+        private long discarded;
+        private long evicted;
+        private long rejected;
+        private long dropped;
+
+        synchronized void add(PcapStats stats) {
+            files += stats.files;
+            flows += stats.flows;
+            packets += stats.packets;
+            valid += stats.valid;
+            discarded += stats.discarded;
+            evicted += stats.evicted;
+            rejected += stats.rejected;
+            dropped += stats.dropped;
+        }
+    }
+}
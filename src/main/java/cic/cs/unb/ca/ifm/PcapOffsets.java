@@ -0,0 +1,78 @@
+package cic.cs.unb.ca.ifm;
+
+import cic.cs.unb.ca.jnetpcap.MappedPcapReader;
+import cic.cs.unb.ca.jnetpcap.PacketOffsets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+/*
+ * Writes the PacketOffsets of classic pcap files to <output-folder>/<file>.pktoff ahead
+ * of the flow runs that take them, --from and --extract; run as cfm --offsets:
+ *
+ *   PcapOffsets <pcap-file|pcap-folder> <output-folder>
+ *
+ * The records are read without decoding them. A flow run with --mmap writes them too
+ * when it reads a file from the start.
+ */
+public class PcapOffsets {
+
+    public static final Logger logger = LoggerFactory.getLogger(PcapOffsets.class);
+    private static final String DividingLine = "-------------------------------------------------------------------------------";
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            logger.info("Usage: --offsets <pcap-file|pcap-folder> <output-folder>");
+            return;
+        }
+        File in = new File(args[0]);
+        File[] captures;
+        if (in.isDirectory()) {
+            captures = in.listFiles(f -> !f.isDirectory() && MappedPcapReader.isCaptureFile(f));
+        } else if (MappedPcapReader.isCaptureFile(in)) {
+            captures = new File[] { in };
+        } else {
+            logger.info("The pcap file or folder does not exist! -> {}", args[0]);
+            return;
+        }
+        File out = new File(args[1]);
+        if (!out.isDirectory() && !out.mkdirs()) {
+            logger.info("The out folder does not exist! -> {}", args[1]);
+            return;
+        }
+
+        for (File capture : captures) {
+            long start = System.currentTimeMillis();
+            MappedPcapReader reader;
+            try {
+                reader = new MappedPcapReader(capture.getPath());
+            } catch (IllegalArgumentException e) {
+                logger.info(e.getMessage());
+                continue;
+            }
+            try {
+                if (!reader.canSeek()) {
+                    System.out.println(String.format("%s is not a classic pcap file, skipped", capture.getName()));
+                    continue;
+                }
+                PacketOffsets offsets = new PacketOffsets();
+                reader.setPacketOffsets(offsets);
+                long packets = 0L;
+                while (reader.nextFrame() > 0) {
+                    packets++;
+                }
+                File offsetsFile = PacketOffsets.offsetsFile(out.getPath(), capture.getName());
+                offsets.write(offsetsFile, capture);
+                System.out.println(String.format("%s: %d packets, %d offsets in %d ms", capture.getName(), packets,
+                        offsets.size(), System.currentTimeMillis() - start));
+            } catch (IOException e) {
+                logger.info("Can not write the offsets of {}: {}", capture.getPath(), e.getMessage());
+            } finally {
+                reader.close();
+            }
+        }
+        System.out.println(DividingLine);
+    }
+}
@@ -0,0 +1,55 @@
+package cic.cs.unb.ca.ifm;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/*
+ * --from and --to, in micros like the packet timestamps. Long.MIN_VALUE and
+ * Long.MAX_VALUE for no bound.
+ */
+class TimeWindow {
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS");
+
+    final long from;
+    final long to;
+
+    TimeWindow(long from, long to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    boolean isSet() {
+        return from != Long.MIN_VALUE || to != Long.MAX_VALUE;
+    }
+
+    /* yyyy-MM-dd HH:mm:ss[.SSSSSS] in local time, or seconds since the epoch */
+    static long parse(String value) {
+        String text = value.trim();
+        try {
+            return Math.round(Double.parseDouble(text) * 1000000L);
+        } catch (NumberFormatException e) {
+            // a date
+        }
+        try {
+            Instant instant = LocalDateTime.parse(text.replace(' ', 'T')).atZone(ZoneId.systemDefault())
+                    .toInstant();
+            return instant.getEpochSecond() * 1000000L + instant.getNano() / 1000L;
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("time=" + value, e);
+        }
+    }
+
+    String format(long micros) {
+        if (micros == Long.MIN_VALUE) {
+            return "start";
+        }
+        if (micros == Long.MAX_VALUE) {
+            return "end";
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(Math.floorDiv(micros, 1000000L),
+                Math.floorMod(micros, 1000000L) * 1000L), ZoneId.systemDefault()).format(FORMAT);
+    }
+}
@@ -0,0 +1,123 @@
+package cic.cs.unb.ca.ifm;
+
+import cic.cs.unb.ca.flow.FlowMgr;
+import cic.cs.unb.ca.jnetpcap.*;
+import cic.cs.unb.ca.jnetpcap.synthetic.TrafficGenerator;
+import cic.cs.unb.ca.jnetpcap.synthetic.TrafficProfile;
+import cic.cs.unb.ca.jnetpcap.worker.CsvFlowSink;
+import org.jnetpcap.PcapClosedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static cic.cs.unb.ca.Sys.FILE_SEP;
+
+/*
+ * Synthetic traffic from a profile (a properties file or a preset name), written to a
+ * pcap file or, with --flows, fed straight into a FlowGenerator:
+ *
+ *   TrafficGen <profile> <output-pcap-file>
+ *   TrafficGen <profile> <output-folder> --flows [--timer-expiry]
+ */
+public class TrafficGen {
+
+    public static final Logger logger = LoggerFactory.getLogger(TrafficGen.class);
+    private static final String DividingLine = "-------------------------------------------------------------------------------";
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            logger.info("Usage: TrafficGen <profile.properties|{}> <output> [--flows] [--timer-expiry]",
+                    String.join("|", TrafficProfile.PRESETS));
+            return;
+        }
+
+        boolean flows = false;
+        boolean timerExpiry = false;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("--flows")) {
+                flows = true;
+            } else if (args[i].equalsIgnoreCase("--timer-expiry")) {
+                timerExpiry = true;
+            }
+        }
+
+        TrafficProfile profile;
+        String name;
+        try {
+            File file = new File(args[0]);
+            if (file.isFile()) {
+                profile = TrafficProfile.load(file);
+                name = file.getName();
+            } else if (Arrays.asList(TrafficProfile.PRESETS).contains(args[0])) {
+                profile = TrafficProfile.preset(args[0]);
+                name = args[0];
+            } else {
+                logger.info("The profile does not exist! -> {}", args[0]);
+                return;
+            }
+            profile.validate();
+        } catch (IOException | IllegalArgumentException e) {
+            logger.info("Invalid profile {}: {}", args[0], e.getMessage());
+            return;
+        }
+
+        TrafficGenerator traffic = new TrafficGenerator(profile);
+        long start = System.currentTimeMillis();
+        if (flows) {
+            generateFlows(traffic, name, args[1], timerExpiry);
+        } else {
+            writePcap(traffic, args[1]);
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+        System.out.println(String.format("Packets=%d,Flows=%d in %d ms, %d packets/s", traffic.getPacketCount(),
+                traffic.getFlowsStarted(), elapsed, traffic.getPacketCount() * 1000 / elapsed));
+        System.out.println(DividingLine);
+    }
+
+    private static void writePcap(TrafficGenerator traffic, String outFile) {
+        try (PcapWriter writer = new PcapWriter(outFile)) {
+            while (true) {
+                try {
+                    writer.write(traffic.nextPacket());
+                } catch (PcapClosedException e) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            logger.info("Can not write {}: {}", outFile, e.getMessage());
+        }
+    }
+
+    private static void generateFlows(TrafficGenerator traffic, String name, String outPath, boolean timerExpiry) {
+        if (!outPath.endsWith(FILE_SEP)) {
+            outPath += FILE_SEP;
+        }
+        File saveFileFullPath = new File(outPath + name + FlowMgr.FLOW_SUFFIX);
+        if (saveFileFullPath.exists() && !saveFileFullPath.delete()) {
+            System.out.println("Save file can not be deleted");
+        }
+
+        FlowGenerator flowGen = new FlowGenerator(true, 120000000L, 5000000L);
+        CsvFlowSink sink = new CsvFlowSink(outPath, name + FlowMgr.FLOW_SUFFIX, FlowFeature.getHeader());
+        flowGen.addFlowListener(sink::write);
+        if (timerExpiry) {
+            flowGen.enableTimerExpiry();
+        }
+        while (true) {
+            try {
+                flowGen.addPacket(traffic.nextPacket());
+            } catch (PcapClosedException e) {
+                break;
+            }
+        }
+        flowGen.close();
+        sink.close();
+        flowGen.dumpLabeledCurrentFlow(saveFileFullPath.getPath(), FlowFeature.getHeader());
+        System.out.println(String.format("%s is done. total %d flows ", saveFileFullPath.getName(),
+                Utils.countLines(saveFileFullPath.getPath())));
+    }
+}
@@ -4,17 +4,24 @@ import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 import org.jnetpcap.packet.format.FormatUtils;
 
 public class BasicFlow {
 
     private final static String separator = ",";
-    private SummaryStatistics fwdPktStats = null;
-    private SummaryStatistics bwdPktStats = null;
+
+    // label of a flow that began before the packets read, see setPartial()
+    public static final String PARTIAL_LABEL = "NeedManualLabel-Partial";
+
+    private static final ThreadLocal<FlowRecordWriter> RECORD_WRITER = ThreadLocal.withInitial(FlowRecordWriter::new);
+    private FlowStatistics fwdPktStats = null;
+    private FlowStatistics bwdPktStats = null;
     private List<BasicPacketInfo> forward = null;
     private List<BasicPacketInfo> backward = null;
-    private List<Long> packetSerialNumbers = null;
+    private int forwardCount;
+    private int backwardCount;
+    // only with packet tracking (FlowGenerator savePacketInfo)
+    private PacketIdList packetSerialNumbers = null;
 
     private long forwardBytes;
     private long backwardBytes;
@@ -37,6 +44,10 @@ public class BasicFlow {
 
     private byte[] src;
     private byte[] dst;
+    // src as BasicPacketInfo keeps addresses, srcLength is 0 while src is null
+    private long srcHi;
+    private long srcLo;
+    private int srcLength;
     private int srcPort;
     private int dstPort;
     private int protocol;
@@ -44,13 +55,15 @@ public class BasicFlow {
     private long startActiveTime;
     private long endActiveTime;
     private String flowId = null;
+    private boolean partial;
+    private FlowKey flowKey; // set by the FlowGenerator that made the flow
 
-    private SummaryStatistics flowIAT = null;
-    private SummaryStatistics forwardIAT = null;
-    private SummaryStatistics backwardIAT = null;
-    private SummaryStatistics flowLengthStats = null;
-    private SummaryStatistics flowActive = null;
-    private SummaryStatistics flowIdle = null;
+    private FlowStatistics flowIAT = null;
+    private FlowStatistics forwardIAT = null;
+    private FlowStatistics backwardIAT = null;
+    private FlowStatistics flowLengthStats = null;
+    private FlowStatistics flowActive = null;
+    private FlowStatistics flowIdle = null;
 
     private long flowLastSeen;
     private long forwardLastSeen;
@@ -59,25 +72,66 @@ public class BasicFlow {
 
     public BasicFlow(boolean isBidirectional, BasicPacketInfo packet, byte[] flowSrc, byte[] flowDst, int flowSrcPort,
             int flowDstPort, long activityTimeout) {
+        this(isBidirectional, packet, flowSrc, flowDst, flowSrcPort, flowDstPort, activityTimeout, false);
+    }
+
+    public BasicFlow(boolean isBidirectional, BasicPacketInfo packet, byte[] flowSrc, byte[] flowDst, int flowSrcPort,
+            int flowDstPort, long activityTimeout, boolean trackPackets) {
+        this(isBidirectional, packet, flowSrc, flowDst, flowSrcPort, flowDstPort, activityTimeout, trackPackets,
+                false);
+    }
+
+    public BasicFlow(boolean isBidirectional, BasicPacketInfo packet, byte[] flowSrc, byte[] flowDst, int flowSrcPort,
+            int flowDstPort, long activityTimeout, boolean trackPackets, boolean retainPackets) {
         super();
         this.activityTimeout = activityTimeout;
         this.initParameters();
         this.isBidirectional = isBidirectional;
+        if (trackPackets) {
+            this.packetSerialNumbers = new PacketIdList();
+        }
+        if (retainPackets) {
+            retainPackets();
+        }
         this.firstPacket(packet);
-        this.src = flowSrc;
+        setSrc(flowSrc);
         this.dst = flowDst;
         this.srcPort = flowSrcPort;
         this.dstPort = flowDstPort;
     }
 
     public BasicFlow(boolean isBidirectional, BasicPacketInfo packet, long activityTimeout) {
+        this(isBidirectional, packet, activityTimeout, false);
+    }
+
+    public BasicFlow(boolean isBidirectional, BasicPacketInfo packet, long activityTimeout, boolean trackPackets) {
+        this(isBidirectional, packet, activityTimeout, trackPackets, false);
+    }
+
+    /*
+     * retainPackets: keep the packets themselves for getForward()/getBackward(), when
+     * debugging. Otherwise a long flow would pin every one of them until it ends.
+     */
+    public BasicFlow(boolean isBidirectional, BasicPacketInfo packet, long activityTimeout, boolean trackPackets,
+            boolean retainPackets) {
         super();
         this.activityTimeout = activityTimeout;
         this.initParameters();
         this.isBidirectional = isBidirectional;
+        if (trackPackets) {
+            this.packetSerialNumbers = new PacketIdList();
+        }
+        if (retainPackets) {
+            retainPackets();
+        }
         this.firstPacket(packet);
     }
 
+    private void retainPackets() {
+        this.forward = new ArrayList<BasicPacketInfo>();
+        this.backward = new ArrayList<BasicPacketInfo>();
+    }
+
     public BasicFlow(BasicPacketInfo packet, long activityTimeout) {
         super();
         this.activityTimeout = activityTimeout;
@@ -87,24 +141,26 @@ public class BasicFlow {
     }
 
     public void initParameters() {
-        this.forward = new ArrayList<BasicPacketInfo>();
-        this.backward = new ArrayList<BasicPacketInfo>();
-        this.packetSerialNumbers = new ArrayList<Long>();
-        this.flowIAT = new SummaryStatistics();
-        this.forwardIAT = new SummaryStatistics();
-        this.backwardIAT = new SummaryStatistics();
-        this.flowActive = new SummaryStatistics();
-        this.flowIdle = new SummaryStatistics();
-        this.flowLengthStats = new SummaryStatistics();
-        this.fwdPktStats = new SummaryStatistics();
-        this.bwdPktStats = new SummaryStatistics();
+        this.forward = null;
+        this.backward = null;
+        this.forwardCount = 0;
+        this.backwardCount = 0;
+        this.packetSerialNumbers = null;
+        this.flowIAT = new FlowStatistics();
+        this.forwardIAT = new FlowStatistics();
+        this.backwardIAT = new FlowStatistics();
+        this.flowActive = new FlowStatistics();
+        this.flowIdle = new FlowStatistics();
+        this.flowLengthStats = new FlowStatistics();
+        this.fwdPktStats = new FlowStatistics();
+        this.bwdPktStats = new FlowStatistics();
         this.flagCounts = new HashMap<String, MutableInt>();
         initFlags();
         this.forwardBytes = 0L;
         this.backwardBytes = 0L;
         this.startActiveTime = 0L;
         this.endActiveTime = 0L;
-        this.src = null;
+        setSrc(null);
         this.dst = null;
         this.fPSH_cnt = 0;
         this.bPSH_cnt = 0;
@@ -124,24 +180,32 @@ public class BasicFlow {
         this.startActiveTime = packet.getTimeStamp();
         this.endActiveTime = packet.getTimeStamp();
         this.flowLengthStats.addValue((double) packet.getPayloadBytes());
-        this.packetSerialNumbers.add(packet.getId());
+        if (this.packetSerialNumbers != null) {
+            this.packetSerialNumbers.add(packet.getId());
+        }
 
         if (this.src == null) {
             this.src = packet.getSrc();
+            this.srcHi = packet.getSrcHi();
+            this.srcLo = packet.getSrcLo();
+            this.srcLength = packet.getAddressLength();
             this.srcPort = packet.getSrcPort();
         }
         if (this.dst == null) {
             this.dst = packet.getDst();
             this.dstPort = packet.getDstPort();
         }
-        if (Arrays.equals(this.src, packet.getSrc())) {
+        if (isFromSrc(packet)) {
             this.min_seg_size_forward = packet.getHeaderBytes();
             Init_Win_bytes_forward = packet.getTCPWindow();
             this.fwdPktStats.addValue((double) packet.getPayloadBytes());
             this.fHeaderBytes = packet.getHeaderBytes();
             this.forwardLastSeen = packet.getTimeStamp();
             this.forwardBytes += packet.getPayloadBytes();
-            this.forward.add(packet);
+            this.forwardCount++;
+            if (this.forward != null) {
+                this.forward.add(packet);
+            }
             if (packet.hasFlagPSH()) {
                 this.fPSH_cnt++;
             }
@@ -154,7 +218,10 @@ public class BasicFlow {
             this.bHeaderBytes = packet.getHeaderBytes();
             this.backwardLastSeen = packet.getTimeStamp();
             this.backwardBytes += packet.getPayloadBytes();
-            this.backward.add(packet);
+            this.backwardCount++;
+            if (this.backward != null) {
+                this.backward.add(packet);
+            }
             if (packet.hasFlagPSH()) {
                 this.bPSH_cnt++;
             }
@@ -163,7 +230,6 @@ public class BasicFlow {
             }
         }
         this.protocol = packet.getProtocol();
-        this.flowId = packet.getFlowId();
     }
 
     public void addPacket(BasicPacketInfo packet) {
@@ -171,20 +237,25 @@ public class BasicFlow {
         detectUpdateSubflows(packet);
         checkFlags(packet);
         long currentTimestamp = packet.getTimeStamp();
-        this.packetSerialNumbers.add(packet.getId());
+        if (this.packetSerialNumbers != null) {
+            this.packetSerialNumbers.add(packet.getId());
+        }
 
         if (isBidirectional) {
             this.flowLengthStats.addValue((double) packet.getPayloadBytes());
 
-            if (Arrays.equals(this.src, packet.getSrc())) {
+            if (isFromSrc(packet)) {
                 if (packet.getPayloadBytes() >= 1) {
                     this.Act_data_pkt_forward++;
                 }
                 this.fwdPktStats.addValue((double) packet.getPayloadBytes());
                 this.fHeaderBytes += packet.getHeaderBytes();
-                this.forward.add(packet);
+                this.forwardCount++;
+                if (this.forward != null) {
+                    this.forward.add(packet);
+                }
                 this.forwardBytes += packet.getPayloadBytes();
-                if (this.forward.size() > 1)
+                if (this.forwardCount > 1)
                     this.forwardIAT.addValue(currentTimestamp - this.forwardLastSeen);
                 this.forwardLastSeen = currentTimestamp;
                 this.min_seg_size_forward = Math.min(packet.getHeaderBytes(), this.min_seg_size_forward);
@@ -195,9 +266,12 @@ public class BasicFlow {
                     Init_Win_bytes_backward = packet.getTCPWindow();
                 }
                 this.bHeaderBytes += packet.getHeaderBytes();
-                this.backward.add(packet);
+                this.backwardCount++;
+                if (this.backward != null) {
+                    this.backward.add(packet);
+                }
                 this.backwardBytes += packet.getPayloadBytes();
-                if (this.backward.size() > 1)
+                if (this.backwardCount > 1)
                     this.backwardIAT.addValue(currentTimestamp - this.backwardLastSeen);
                 this.backwardLastSeen = currentTimestamp;
             }
@@ -208,7 +282,10 @@ public class BasicFlow {
             this.fwdPktStats.addValue((double) packet.getPayloadBytes());
             this.flowLengthStats.addValue((double) packet.getPayloadBytes());
             this.fHeaderBytes += packet.getHeaderBytes();
-            this.forward.add(packet);
+            this.forwardCount++;
+            if (this.forward != null) {
+                this.forward.add(packet);
+            }
             this.forwardBytes += packet.getPayloadBytes();
             this.forwardIAT.addValue(currentTimestamp - this.forwardLastSeen);
             this.forwardLastSeen = currentTimestamp;
@@ -223,7 +300,7 @@ public class BasicFlow {
     public double getfPktsPerSecond() {
         long duration = this.flowLastSeen - this.flowStartTime;
         if (duration > 0) {
-            return (double) this.forward.size() / ((double) duration / 1000000L);
+            return (double) this.forwardCount / ((double) duration / 1000000L);
         } else
             return 0;
     }
@@ -231,14 +308,14 @@ public class BasicFlow {
     public double getbPktsPerSecond() {
         long duration = this.flowLastSeen - this.flowStartTime;
         if (duration > 0) {
-            return (double) this.backward.size() / ((double) duration / 1000000L);
+            return (double) this.backwardCount / ((double) duration / 1000000L);
         } else
             return 0;
     }
 
     public double getDownUpRatio() {
-        if (this.forward.size() > 0) {
-            return (double) this.backward.size() / (double) this.forward.size();
+        if (this.forwardCount > 0) {
+            return (double) this.backwardCount / (double) this.forwardCount;
         }
         return 0;
     }
@@ -251,14 +328,14 @@ public class BasicFlow {
     }
 
     public double fAvgSegmentSize() {
-        if (this.forward.size() != 0)
-            return (double) this.fwdPktStats.getSum() / (double) this.forward.size();
+        if (this.forwardCount != 0)
+            return (double) this.fwdPktStats.getSum() / (double) this.forwardCount;
         return 0;
     }
 
     public double bAvgSegmentSize() {
-        if (this.backward.size() != 0)
-            return (double) this.bwdPktStats.getSum() / (double) this.backward.size();
+        if (this.backwardCount != 0)
+            return (double) this.bwdPktStats.getSum() / (double) this.backwardCount;
         return 0;
     }
 
@@ -309,7 +386,7 @@ public class BasicFlow {
     public long getSflow_fpackets() {
         if (sfCount <= 0)
             return 0;
-        return this.forward.size() / sfCount;
+        return this.forwardCount / sfCount;
     }
 
     public long getSflow_bbytes() {
@@ -321,7 +398,7 @@ public class BasicFlow {
     public long getSflow_bpackets() {
         if (sfCount <= 0)
             return 0;
-        return this.backward.size() / sfCount;
+        return this.backwardCount / sfCount;
     }
 
     private long sfLastPacketTS = -1;
@@ -363,7 +440,7 @@ public class BasicFlow {
 
     public void updateFlowBulk(BasicPacketInfo packet) {
 
-        if (Arrays.equals(this.src, packet.getSrc())) {
+        if (isFromSrc(packet)) {
             updateForwardBulk(packet, blastBulkTS);
         } else {
             updateBackwardBulk(packet, flastBulkTS);
@@ -553,7 +630,7 @@ public class BasicFlow {
 
     public String dumpFlowBasedFeatures() {
         String dump = "";
-        dump += this.flowId + ",";
+        dump += getFlowId() + ",";
         dump += FormatUtils.ip(src) + ",";
         dump += getSrcPort() + ",";
         dump += FormatUtils.ip(dst) + ",";
@@ -588,7 +665,7 @@ public class BasicFlow {
         dump += this.flowIAT.getStandardDeviation() + ",";
         dump += this.flowIAT.getMax() + ",";
         dump += this.flowIAT.getMin() + ",";
-        if (this.forward.size() > 1) {
+        if (this.forwardCount > 1) {
             dump += this.forwardIAT.getSum() + ",";
             dump += this.forwardIAT.getMean() + ",";
             dump += this.forwardIAT.getStandardDeviation() + ",";
@@ -597,7 +674,7 @@ public class BasicFlow {
         } else {
             dump += "0,0,0,0,0,";
         }
-        if (this.backward.size() > 1) {
+        if (this.backwardCount > 1) {
             dump += this.backwardIAT.getSum() + ",";
             dump += this.backwardIAT.getMean() + ",";
             dump += this.backwardIAT.getStandardDeviation() + ",";
@@ -617,7 +694,7 @@ public class BasicFlow {
         dump += getfPktsPerSecond() + ",";
         dump += getbPktsPerSecond() + ",";
 
-        if (this.forward.size() > 0 || this.backward.size() > 0) {
+        if (this.forwardCount > 0 || this.backwardCount > 0) {
             dump += this.flowLengthStats.getMin() + ",";
             dump += this.flowLengthStats.getMax() + ",";
             dump += this.flowLengthStats.getMean() + ",";
@@ -678,26 +755,30 @@ public class BasicFlow {
 
     public int packetCount() {
         if (isBidirectional) {
-            return (this.forward.size() + this.backward.size());
+            return (this.forwardCount + this.backwardCount);
         } else {
-            return this.forward.size();
+            return this.forwardCount;
         }
     }
 
+    /* empty unless the flow was made to retain its packets */
     public List<BasicPacketInfo> getForward() {
-        return new ArrayList<>(forward);
+        return forward != null ? new ArrayList<>(forward) : new ArrayList<>();
     }
 
     public void setForward(List<BasicPacketInfo> forward) {
         this.forward = forward;
+        this.forwardCount = forward != null ? forward.size() : 0;
     }
 
+    /* empty unless the flow was made to retain its packets */
     public List<BasicPacketInfo> getBackward() {
-        return new ArrayList<>(backward);
+        return backward != null ? new ArrayList<>(backward) : new ArrayList<>();
     }
 
     public void setBackward(List<BasicPacketInfo> backward) {
         this.backward = backward;
+        this.backwardCount = backward != null ? backward.size() : 0;
     }
 
     public boolean isBidirectional() {
@@ -714,6 +795,20 @@ public class BasicFlow {
 
     public void setSrc(byte[] src) {
         this.src = src;
+        if (src == null) {
+            this.srcHi = 0L;
+            this.srcLo = 0L;
+            this.srcLength = 0;
+        } else {
+            this.srcHi = FlowKey.addrHi(src);
+            this.srcLo = FlowKey.addrLo(src);
+            this.srcLength = src.length;
+        }
+    }
+
+    /* same as Arrays.equals(src, packet.getSrc()) without the copy */
+    private boolean isFromSrc(BasicPacketInfo packet) {
+        return srcLength != 0 && packet.isFrom(srcHi, srcLo, srcLength);
     }
 
     public byte[] getDst() {
@@ -766,7 +861,11 @@ public class BasicFlow {
         this.flowStartTime = flowStartTime;
     }
 
+    /* built on first use, the per packet path only works with the binary FlowKey */
     public String getFlowId() {
+        if (flowId == null) {
+            flowId = getSrcIP() + "-" + getDstIP() + "-" + srcPort + "-" + dstPort + "-" + protocol;
+        }
         return flowId;
     }
 
@@ -870,48 +969,48 @@ public class BasicFlow {
         return ((double) packetCount()) / ((double) getFlowDuration() / 1000000L);
     }
 
-    public SummaryStatistics getFlowIAT() {
+    public FlowStatistics getFlowIAT() {
         return flowIAT;
     }
 
     public double getFwdIATTotal() {
-        return (forward.size() > 1) ? forwardIAT.getSum() : 0;
+        return (this.forwardCount > 1) ? forwardIAT.getSum() : 0;
     }
 
     public double getFwdIATMean() {
-        return (forward.size() > 1) ? forwardIAT.getMean() : 0;
+        return (this.forwardCount > 1) ? forwardIAT.getMean() : 0;
     }
 
     public double getFwdIATStd() {
-        return (forward.size() > 1) ? forwardIAT.getStandardDeviation() : 0;
+        return (this.forwardCount > 1) ? forwardIAT.getStandardDeviation() : 0;
     }
 
     public double getFwdIATMax() {
-        return (forward.size() > 1) ? forwardIAT.getMax() : 0;
+        return (this.forwardCount > 1) ? forwardIAT.getMax() : 0;
     }
 
     public double getFwdIATMin() {
-        return (forward.size() > 1) ? forwardIAT.getMin() : 0;
+        return (this.forwardCount > 1) ? forwardIAT.getMin() : 0;
     }
 
     public double getBwdIATTotal() {
-        return (backward.size() > 1) ? backwardIAT.getSum() : 0;
+        return (this.backwardCount > 1) ? backwardIAT.getSum() : 0;
     }
 
     public double getBwdIATMean() {
-        return (backward.size() > 1) ? backwardIAT.getMean() : 0;
+        return (this.backwardCount > 1) ? backwardIAT.getMean() : 0;
     }
 
     public double getBwdIATStd() {
-        return (backward.size() > 1) ? backwardIAT.getStandardDeviation() : 0;
+        return (this.backwardCount > 1) ? backwardIAT.getStandardDeviation() : 0;
     }
 
     public double getBwdIATMax() {
-        return (backward.size() > 1) ? backwardIAT.getMax() : 0;
+        return (this.backwardCount > 1) ? backwardIAT.getMax() : 0;
     }
 
     public double getBwdIATMin() {
-        return (backward.size() > 1) ? backwardIAT.getMin() : 0;
+        return (this.backwardCount > 1) ? backwardIAT.getMin() : 0;
     }
 
     public int getFwdPSHFlags() {
@@ -939,23 +1038,23 @@ public class BasicFlow {
     }
 
     public double getMinPacketLength() {
-        return (forward.size() > 0 || backward.size() > 0) ? flowLengthStats.getMin() : 0;
+        return (this.forwardCount > 0 || this.backwardCount > 0) ? flowLengthStats.getMin() : 0;
     }
 
     public double getMaxPacketLength() {
-        return (forward.size() > 0 || backward.size() > 0) ? flowLengthStats.getMax() : 0;
+        return (this.forwardCount > 0 || this.backwardCount > 0) ? flowLengthStats.getMax() : 0;
     }
 
     public double getPacketLengthMean() {
-        return (forward.size() > 0 || backward.size() > 0) ? flowLengthStats.getMean() : 0;
+        return (this.forwardCount > 0 || this.backwardCount > 0) ? flowLengthStats.getMean() : 0;
     }
 
     public double getPacketLengthStd() {
-        return (forward.size() > 0 || backward.size() > 0) ? flowLengthStats.getStandardDeviation() : 0;
+        return (this.forwardCount > 0 || this.backwardCount > 0) ? flowLengthStats.getStandardDeviation() : 0;
     }
 
     public double getPacketLengthVariance() {
-        return (forward.size() > 0 || backward.size() > 0) ? flowLengthStats.getVariance() : 0;
+        return (this.forwardCount > 0 || this.backwardCount > 0) ? flowLengthStats.getVariance() : 0;
     }
 
     public int getFlagCount(String key) {
@@ -1011,173 +1110,195 @@ public class BasicFlow {
     }
 
     public String getLabel() {
-        return "NeedManualLabel";
+        return partial ? PARTIAL_LABEL : "NeedManualLabel";
+    }
+
+    public FlowKey getFlowKey() {
+        return flowKey;
+    }
+
+    public void setFlowKey(FlowKey flowKey) {
+        this.flowKey = flowKey;
+    }
+
+    /* the flow was already open when the first packet read (e.g. with --from) came */
+    public void setPartial(boolean partial) {
+        this.partial = partial;
+    }
+
+    public boolean isPartial() {
+        return partial;
     }
 
     public String dumpFlowBasedFeaturesEx() {
-        StringBuilder dump = new StringBuilder();
+        FlowRecordWriter writer = RECORD_WRITER.get();
+        writer.reset();
+        writeFlowBasedFeaturesEx(writer);
+        return writer.toString();
+    }
+
+    /* writes the same record as dumpFlowBasedFeaturesEx(), without the line separator */
+    public void writeFlowBasedFeaturesEx(FlowRecordWriter dump) {
 
-        dump.append(flowId).append(separator);
-        dump.append(FormatUtils.ip(src)).append(separator);
-        dump.append(getSrcPort()).append(separator);
-        dump.append(FormatUtils.ip(dst)).append(separator);
-        dump.append(getDstPort()).append(separator);
-        dump.append(getProtocol()).append(separator);
+        dump.append(getFlowId()).separator();
+        dump.appendIp(src).separator();
+        dump.append(getSrcPort()).separator();
+        dump.appendIp(dst).separator();
+        dump.append(getDstPort()).separator();
+        dump.append(getProtocol()).separator();
 
-        String starttime = DateFormatter.convertMilliseconds2String(flowStartTime / 1000L, "dd/MM/yyyy hh:mm:ss a");
-        dump.append(starttime).append(separator);
+        dump.appendTimestamp(flowStartTime / 1000L).separator();
 
         long flowDuration = flowLastSeen - flowStartTime;
-        dump.append(flowDuration).append(separator);
+        dump.append(flowDuration).separator();
 
-        dump.append(fwdPktStats.getN()).append(separator);
-        dump.append(bwdPktStats.getN()).append(separator);
-        dump.append(fwdPktStats.getSum()).append(separator);
-        dump.append(bwdPktStats.getSum()).append(separator);
+        dump.append(fwdPktStats.getN()).separator();
+        dump.append(bwdPktStats.getN()).separator();
+        dump.append(fwdPktStats.getSum()).separator();
+        dump.append(bwdPktStats.getSum()).separator();
 
         if (fwdPktStats.getN() > 0L) {
-            dump.append(fwdPktStats.getMax()).append(separator);
-            dump.append(fwdPktStats.getMin()).append(separator);
-            dump.append(fwdPktStats.getMean()).append(separator);
-            dump.append(fwdPktStats.getStandardDeviation()).append(separator);
+            dump.append(fwdPktStats.getMax()).separator();
+            dump.append(fwdPktStats.getMin()).separator();
+            dump.append(fwdPktStats.getMean()).separator();
+            dump.append(fwdPktStats.getStandardDeviation()).separator();
         } else {
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
+            dump.append(0).separator();
+            dump.append(0).separator();
+            dump.append(0).separator();
+            dump.append(0).separator();
         }
 
         if (bwdPktStats.getN() > 0L) {
-            dump.append(bwdPktStats.getMax()).append(separator);
-            dump.append(bwdPktStats.getMin()).append(separator);
-            dump.append(bwdPktStats.getMean()).append(separator);
-            dump.append(bwdPktStats.getStandardDeviation()).append(separator);
+            dump.append(bwdPktStats.getMax()).separator();
+            dump.append(bwdPktStats.getMin()).separator();
+            dump.append(bwdPktStats.getMean()).separator();
+            dump.append(bwdPktStats.getStandardDeviation()).separator();
         } else {
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
+            dump.append(0).separator();
+            dump.append(0).separator();
+            dump.append(0).separator();
+            dump.append(0).separator();
         }
-        dump.append(((double) (forwardBytes + backwardBytes)) / ((double) flowDuration / 1000000L)).append(separator);
-        dump.append(((double) packetCount()) / ((double) flowDuration / 1000000L)).append(separator);
-        dump.append(flowIAT.getMean()).append(separator);
-        dump.append(flowIAT.getStandardDeviation()).append(separator);
-        dump.append(flowIAT.getMax()).append(separator);
-        dump.append(flowIAT.getMin()).append(separator);
-
-        if (this.forward.size() > 1) {
-            dump.append(forwardIAT.getSum()).append(separator);
-            dump.append(forwardIAT.getMean()).append(separator);
-            dump.append(forwardIAT.getStandardDeviation()).append(separator);
-            dump.append(forwardIAT.getMax()).append(separator);
-            dump.append(forwardIAT.getMin()).append(separator);
+        dump.append(((double) (forwardBytes + backwardBytes)) / ((double) flowDuration / 1000000L)).separator();
+        dump.append(((double) packetCount()) / ((double) flowDuration / 1000000L)).separator();
+        dump.append(flowIAT.getMean()).separator();
+        dump.append(flowIAT.getStandardDeviation()).separator();
+        dump.append(flowIAT.getMax()).separator();
+        dump.append(flowIAT.getMin()).separator();
+
+        if (this.forwardCount > 1) {
+            dump.append(forwardIAT.getSum()).separator();
+            dump.append(forwardIAT.getMean()).separator();
+            dump.append(forwardIAT.getStandardDeviation()).separator();
+            dump.append(forwardIAT.getMax()).separator();
+            dump.append(forwardIAT.getMin()).separator();
 
         } else {
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
+            dump.append(0).separator();
+            dump.append(0).separator();
+            dump.append(0).separator();
+            dump.append(0).separator();
+            dump.append(0).separator();
         }
-        if (this.backward.size() > 1) {
-            dump.append(backwardIAT.getSum()).append(separator);
-            dump.append(backwardIAT.getMean()).append(separator);
-            dump.append(backwardIAT.getStandardDeviation()).append(separator);
-            dump.append(backwardIAT.getMax()).append(separator);
-            dump.append(backwardIAT.getMin()).append(separator);
+        if (this.backwardCount > 1) {
+            dump.append(backwardIAT.getSum()).separator();
+            dump.append(backwardIAT.getMean()).separator();
+            dump.append(backwardIAT.getStandardDeviation()).separator();
+            dump.append(backwardIAT.getMax()).separator();
+            dump.append(backwardIAT.getMin()).separator();
         } else {
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
+            dump.append(0).separator();
+            dump.append(0).separator();
+            dump.append(0).separator();
+            dump.append(0).separator();
+            dump.append(0).separator();
         }
 
-        dump.append(fPSH_cnt).append(separator);
-        dump.append(bPSH_cnt).append(separator);
-        dump.append(fURG_cnt).append(separator);
-        dump.append(bURG_cnt).append(separator);
-
-        dump.append(fHeaderBytes).append(separator);
-        dump.append(bHeaderBytes).append(separator);
-        dump.append(getfPktsPerSecond()).append(separator);
-        dump.append(getbPktsPerSecond()).append(separator);
-
-        if (this.forward.size() > 0 || this.backward.size() > 0) {
-            dump.append(flowLengthStats.getMin()).append(separator);
-            dump.append(flowLengthStats.getMax()).append(separator);
-            dump.append(flowLengthStats.getMean()).append(separator);
-            dump.append(flowLengthStats.getStandardDeviation()).append(separator);
-            dump.append(flowLengthStats.getVariance()).append(separator);
+        dump.append(fPSH_cnt).separator();
+        dump.append(bPSH_cnt).separator();
+        dump.append(fURG_cnt).separator();
+        dump.append(bURG_cnt).separator();
+
+        dump.append(fHeaderBytes).separator();
+        dump.append(bHeaderBytes).separator();
+        dump.append(getfPktsPerSecond()).separator();
+        dump.append(getbPktsPerSecond()).separator();
+
+        if (this.forwardCount > 0 || this.backwardCount > 0) {
+            dump.append(flowLengthStats.getMin()).separator();
+            dump.append(flowLengthStats.getMax()).separator();
+            dump.append(flowLengthStats.getMean()).separator();
+            dump.append(flowLengthStats.getStandardDeviation()).separator();
+            dump.append(flowLengthStats.getVariance()).separator();
         } else {
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
+            dump.append(0).separator();
+            dump.append(0).separator();
+            dump.append(0).separator();
+            dump.append(0).separator();
+            dump.append(0).separator();
         }
 
-        dump.append(flagCounts.get("FIN").value).append(separator);
-        dump.append(flagCounts.get("SYN").value).append(separator);
-        dump.append(flagCounts.get("RST").value).append(separator);
-        dump.append(flagCounts.get("PSH").value).append(separator);
-        dump.append(flagCounts.get("ACK").value).append(separator);
-        dump.append(flagCounts.get("URG").value).append(separator);
-        dump.append(flagCounts.get("CWR").value).append(separator);
-        dump.append(flagCounts.get("ECE").value).append(separator);
-
-        dump.append(getDownUpRatio()).append(separator);
-        dump.append(getAvgPacketSize()).append(separator);
-        dump.append(fAvgSegmentSize()).append(separator);
-        dump.append(bAvgSegmentSize()).append(separator);
-
-        dump.append(fAvgBytesPerBulk()).append(separator);
-        dump.append(fAvgPacketsPerBulk()).append(separator);
-        dump.append(fAvgBulkRate()).append(separator);
-        dump.append(bAvgBytesPerBulk()).append(separator);
-        dump.append(bAvgPacketsPerBulk()).append(separator);
-        dump.append(bAvgBulkRate()).append(separator);
-
-        dump.append(getSflow_fpackets()).append(separator);
-        dump.append(getSflow_fbytes()).append(separator);
-        dump.append(getSflow_bpackets()).append(separator);
-        dump.append(getSflow_bbytes()).append(separator);
-
-        dump.append(Init_Win_bytes_forward).append(separator);
-        dump.append(Init_Win_bytes_backward).append(separator);
-        dump.append(Act_data_pkt_forward).append(separator);
-        dump.append(min_seg_size_forward).append(separator);
+        dump.append(flagCounts.get("FIN").value).separator();
+        dump.append(flagCounts.get("SYN").value).separator();
+        dump.append(flagCounts.get("RST").value).separator();
+        dump.append(flagCounts.get("PSH").value).separator();
+        dump.append(flagCounts.get("ACK").value).separator();
+        dump.append(flagCounts.get("URG").value).separator();
+        dump.append(flagCounts.get("CWR").value).separator();
+        dump.append(flagCounts.get("ECE").value).separator();
+
+        dump.append(getDownUpRatio()).separator();
+        dump.append(getAvgPacketSize()).separator();
+        dump.append(fAvgSegmentSize()).separator();
+        dump.append(bAvgSegmentSize()).separator();
+
+        dump.append(fAvgBytesPerBulk()).separator();
+        dump.append(fAvgPacketsPerBulk()).separator();
+        dump.append(fAvgBulkRate()).separator();
+        dump.append(bAvgBytesPerBulk()).separator();
+        dump.append(bAvgPacketsPerBulk()).separator();
+        dump.append(bAvgBulkRate()).separator();
+
+        dump.append(getSflow_fpackets()).separator();
+        dump.append(getSflow_fbytes()).separator();
+        dump.append(getSflow_bpackets()).separator();
+        dump.append(getSflow_bbytes()).separator();
+
+        dump.append(Init_Win_bytes_forward).separator();
+        dump.append(Init_Win_bytes_backward).separator();
+        dump.append(Act_data_pkt_forward).separator();
+        dump.append(min_seg_size_forward).separator();
 
         if (this.flowActive.getN() > 0) {
-            dump.append(flowActive.getMean()).append(separator);
-            dump.append(flowActive.getStandardDeviation()).append(separator);
-            dump.append(flowActive.getMax()).append(separator);
-            dump.append(flowActive.getMin()).append(separator);
+            dump.append(flowActive.getMean()).separator();
+            dump.append(flowActive.getStandardDeviation()).separator();
+            dump.append(flowActive.getMax()).separator();
+            dump.append(flowActive.getMin()).separator();
         } else {
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
+            dump.append(0).separator();
+            dump.append(0).separator();
+            dump.append(0).separator();
+            dump.append(0).separator();
         }
 
         if (this.flowIdle.getN() > 0) {
-            dump.append(flowIdle.getMean()).append(separator);
-            dump.append(flowIdle.getStandardDeviation()).append(separator);
-            dump.append(flowIdle.getMax()).append(separator);
-            dump.append(flowIdle.getMin()).append(separator);
+            dump.append(flowIdle.getMean()).separator();
+            dump.append(flowIdle.getStandardDeviation()).separator();
+            dump.append(flowIdle.getMax()).separator();
+            dump.append(flowIdle.getMin()).separator();
         } else {
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
-            dump.append(0).append(separator);
+            dump.append(0).separator();
+            dump.append(0).separator();
+            dump.append(0).separator();
+            dump.append(0).separator();
         }
 
         dump.append(getLabel());
-
-        return dump.toString();
     }
 
-    public List<Long> getPacketSerialNumbers() {
+    /* null unless the flow was started with trackPackets */
+    public PacketIdList getPacketSerialNumbers() {
         return packetSerialNumbers;
     }
 }
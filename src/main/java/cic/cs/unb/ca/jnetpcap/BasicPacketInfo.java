@@ -1,30 +1,40 @@
 package cic.cs.unb.ca.jnetpcap;
 
-import java.util.Arrays;
-
 import org.jnetpcap.packet.format.FormatUtils;
 
+/*
+ * Addresses are kept as numbers, the same way FlowKey stores them: an IPv4 address in the
+ * low 32 bits of *Lo, an IPv6 address as its first 8 bytes in *Hi and its last 8 in *Lo.
+ * The TCP flags are one byte with the bits of the TCP header. Neither takes an array per
+ * packet; getSrc()/getDst() build one only for callers that want the bytes.
+ */
 public class BasicPacketInfo {
 
+    public static final int FLAG_FIN = 0x01;
+    public static final int FLAG_SYN = 0x02;
+    public static final int FLAG_RST = 0x04;
+    public static final int FLAG_PSH = 0x08;
+    public static final int FLAG_ACK = 0x10;
+    public static final int FLAG_URG = 0x20;
+    public static final int FLAG_ECE = 0x40;
+    public static final int FLAG_CWR = 0x80;
+
     /* Basic Info to generate flows from packets */
     private long id;
-    private byte[] src;
-    private byte[] dst;
+    private long srcHi;
+    private long srcLo;
+    private long dstHi;
+    private long dstLo;
+    private byte addressLength; // 4, 16, 0 before an address is set
     private int srcPort;
     private int dstPort;
     private int protocol;
     private long timeStamp;
     private long payloadBytes;
     private String flowId = null;
+    private FlowKey flowKey = null;
     /* ******************************************** */
-    private boolean flagFIN = false;
-    private boolean flagPSH = false;
-    private boolean flagURG = false;
-    private boolean flagECE = false;
-    private boolean flagSYN = false;
-    private boolean flagACK = false;
-    private boolean flagCWR = false;
-    private boolean flagRST = false;
+    private byte flags = 0;
     private int TCPWindow = 0;
     private long headerBytes;
     private int payloadPacket = 0;
@@ -33,8 +43,8 @@ public class BasicPacketInfo {
             int protocol, long timeStamp, IdGenerator generator) {
         super();
         this.id = generator.nextId();
-        this.src = src;
-        this.dst = dst;
+        setSrc(src);
+        setDst(dst);
         this.srcPort = srcPort;
         this.dstPort = dstPort;
         this.protocol = protocol;
@@ -52,15 +62,38 @@ public class BasicPacketInfo {
         this.id = preGeneratedId;
     }
 
+    /* clears every field, so a decoder can fill the same object for the next packet */
+    void reset(long id) {
+        this.id = id;
+        this.srcHi = 0L;
+        this.srcLo = 0L;
+        this.dstHi = 0L;
+        this.dstLo = 0L;
+        this.addressLength = 0;
+        this.srcPort = 0;
+        this.dstPort = 0;
+        this.protocol = 0;
+        this.timeStamp = 0L;
+        this.payloadBytes = 0L;
+        this.flowId = null;
+        this.flowKey = null;
+        this.flags = 0;
+        this.TCPWindow = 0;
+        this.headerBytes = 0L;
+        this.payloadPacket = 0;
+    }
+
     public String generateFlowId() {
         boolean forward = true;
+        byte[] src = getSrc();
+        byte[] dst = getDst();
 
-        for (int i = 0; i < this.src.length; i++) {
-            if (((Byte) (this.src[i])).intValue() != ((Byte) (this.dst[i])).intValue()) {
-                if (((Byte) (this.src[i])).intValue() > ((Byte) (this.dst[i])).intValue()) {
+        for (int i = 0; i < src.length; i++) {
+            if (((Byte) (src[i])).intValue() != ((Byte) (dst[i])).intValue()) {
+                if (((Byte) (src[i])).intValue() > ((Byte) (dst[i])).intValue()) {
                     forward = false;
                 }
-                i = this.src.length;
+                i = src.length;
             }
         }
 
@@ -86,6 +119,26 @@ public class BasicPacketInfo {
         return this.flowId;
     }
 
+    public FlowKey flowKey() {
+        if (this.flowKey == null) {
+            this.flowKey = new FlowKey(srcHi, srcLo, dstHi, dstLo, addressLength, srcPort, dstPort, protocol);
+        }
+        return this.flowKey;
+    }
+
+    /* flowKey().hashCode(), without making the key */
+    public int flowHash() {
+        if (this.flowKey != null) {
+            return this.flowKey.hashCode();
+        }
+        return FlowKey.hash(srcHi, srcLo, dstHi, dstLo, addressLength, srcPort, dstPort, protocol);
+    }
+
+    /* flowKey().equals(key), without making the key */
+    public boolean belongsTo(FlowKey key) {
+        return key.matches(srcHi, srcLo, dstHi, dstLo, addressLength, srcPort, dstPort, protocol);
+    }
+
     public String dumpInfo() {
         return null;
     }
@@ -95,11 +148,11 @@ public class BasicPacketInfo {
     }
 
     public String getSourceIP() {
-        return FormatUtils.ip(this.src);
+        return FormatUtils.ip(getSrc());
     }
 
     public String getDestinationIP() {
-        return FormatUtils.ip(this.dst);
+        return FormatUtils.ip(getDst());
     }
 
     public long getId() {
@@ -111,19 +164,91 @@ public class BasicPacketInfo {
     }
 
     public byte[] getSrc() {
-        return Arrays.copyOf(src, src.length);
+        return toBytes(srcHi, srcLo, addressLength);
     }
 
     public void setSrc(byte[] src) {
-        this.src = src;
+        this.srcHi = FlowKey.addrHi(src);
+        this.srcLo = FlowKey.addrLo(src);
+        this.addressLength = (byte) src.length;
+        this.flowKey = null;
     }
 
     public byte[] getDst() {
-        return Arrays.copyOf(dst, dst.length);
+        return toBytes(dstHi, dstLo, addressLength);
     }
 
     public void setDst(byte[] dst) {
-        this.dst = dst;
+        this.dstHi = FlowKey.addrHi(dst);
+        this.dstLo = FlowKey.addrLo(dst);
+        this.addressLength = (byte) dst.length;
+        this.flowKey = null;
+    }
+
+    public void setSrcIPv4(int src) {
+        this.srcHi = 0L;
+        this.srcLo = src & 0xFFFFFFFFL;
+        this.addressLength = 4;
+        this.flowKey = null;
+    }
+
+    public void setDstIPv4(int dst) {
+        this.dstHi = 0L;
+        this.dstLo = dst & 0xFFFFFFFFL;
+        this.addressLength = 4;
+        this.flowKey = null;
+    }
+
+    public void setSrcIPv6(long hi, long lo) {
+        this.srcHi = hi;
+        this.srcLo = lo;
+        this.addressLength = 16;
+        this.flowKey = null;
+    }
+
+    public void setDstIPv6(long hi, long lo) {
+        this.dstHi = hi;
+        this.dstLo = lo;
+        this.addressLength = 16;
+        this.flowKey = null;
+    }
+
+    /* 4 or 16 */
+    public int getAddressLength() {
+        return addressLength;
+    }
+
+    public long getSrcHi() {
+        return srcHi;
+    }
+
+    public long getSrcLo() {
+        return srcLo;
+    }
+
+    public long getDstHi() {
+        return dstHi;
+    }
+
+    public long getDstLo() {
+        return dstLo;
+    }
+
+    /* true when the packet comes from the address given as getSrcHi(), getSrcLo(), getAddressLength() */
+    public boolean isFrom(long hi, long lo, int length) {
+        return srcLo == lo && srcHi == hi && addressLength == length;
+    }
+
+    static byte[] toBytes(long hi, long lo, int length) {
+        byte[] addr = new byte[length];
+        int i = length - 1;
+        for (int n = 0; n < 8 && i >= 0; n++, i--) {
+            addr[i] = (byte) (lo >>> (8 * n));
+        }
+        for (int n = 0; i >= 0; n++, i--) {
+            addr[i] = (byte) (hi >>> (8 * n));
+        }
+        return addr;
     }
 
     public int getSrcPort() {
@@ -132,6 +257,7 @@ public class BasicPacketInfo {
 
     public void setSrcPort(int srcPort) {
         this.srcPort = srcPort;
+        this.flowKey = null;
     }
 
     public int getDstPort() {
@@ -140,6 +266,7 @@ public class BasicPacketInfo {
 
     public void setDstPort(int dstPort) {
         this.dstPort = dstPort;
+        this.flowKey = null;
     }
 
     public int getProtocol() {
@@ -148,6 +275,7 @@ public class BasicPacketInfo {
 
     public void setProtocol(int protocol) {
         this.protocol = protocol;
+        this.flowKey = null;
     }
 
     public long getTimeStamp() {
@@ -167,7 +295,7 @@ public class BasicPacketInfo {
     }
 
     public boolean isForwardPacket(byte[] sourceIP) {
-        return Arrays.equals(sourceIP, this.src);
+        return sourceIP != null && isFrom(FlowKey.addrHi(sourceIP), FlowKey.addrLo(sourceIP), sourceIP.length);
     }
 
     public long getPayloadBytes() {
@@ -187,67 +315,84 @@ public class BasicPacketInfo {
     }
 
     public boolean hasFlagFIN() {
-        return flagFIN;
+        return (flags & FLAG_FIN) != 0;
     }
 
     public void setFlagFIN(boolean flagFIN) {
-        this.flagFIN = flagFIN;
+        setFlag(FLAG_FIN, flagFIN);
     }
 
     public boolean hasFlagPSH() {
-        return flagPSH;
+        return (flags & FLAG_PSH) != 0;
     }
 
     public void setFlagPSH(boolean flagPSH) {
-        this.flagPSH = flagPSH;
+        setFlag(FLAG_PSH, flagPSH);
     }
 
     public boolean hasFlagURG() {
-        return flagURG;
+        return (flags & FLAG_URG) != 0;
     }
 
     public void setFlagURG(boolean flagURG) {
-        this.flagURG = flagURG;
+        setFlag(FLAG_URG, flagURG);
     }
 
     public boolean hasFlagECE() {
-        return flagECE;
+        return (flags & FLAG_ECE) != 0;
     }
 
     public void setFlagECE(boolean flagECE) {
-        this.flagECE = flagECE;
+        setFlag(FLAG_ECE, flagECE);
     }
 
     public boolean hasFlagSYN() {
-        return flagSYN;
+        return (flags & FLAG_SYN) != 0;
     }
 
     public void setFlagSYN(boolean flagSYN) {
-        this.flagSYN = flagSYN;
+        setFlag(FLAG_SYN, flagSYN);
     }
 
     public boolean hasFlagACK() {
-        return flagACK;
+        return (flags & FLAG_ACK) != 0;
     }
 
     public void setFlagACK(boolean flagACK) {
-        this.flagACK = flagACK;
+        setFlag(FLAG_ACK, flagACK);
     }
 
     public boolean hasFlagCWR() {
-        return flagCWR;
+        return (flags & FLAG_CWR) != 0;
     }
 
     public void setFlagCWR(boolean flagCWR) {
-        this.flagCWR = flagCWR;
+        setFlag(FLAG_CWR, flagCWR);
     }
 
     public boolean hasFlagRST() {
-        return flagRST;
+        return (flags & FLAG_RST) != 0;
     }
 
     public void setFlagRST(boolean flagRST) {
-        this.flagRST = flagRST;
+        setFlag(FLAG_RST, flagRST);
+    }
+
+    /* FLAG_ bits */
+    public int getFlags() {
+        return flags & 0xFF;
+    }
+
+    public void setFlags(int flags) {
+        this.flags = (byte) flags;
+    }
+
+    private void setFlag(int flag, boolean set) {
+        if (set) {
+            flags |= flag;
+        } else {
+            flags &= ~flag;
+        }
     }
 
     public int getTCPWindow() {
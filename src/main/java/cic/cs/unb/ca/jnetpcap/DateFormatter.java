@@ -6,9 +6,14 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DateFormatter {
 
+    // DateTimeFormatter is immutable, build each pattern once
+    private static final ConcurrentHashMap<String, DateTimeFormatter> formatters = new ConcurrentHashMap<>();
+
     public static String parseDateFromLong(long time, String format) {
         try {
             if (format == null) {
@@ -29,11 +34,11 @@ public class DateFormatter {
             format = "dd/MM/yyyy hh:mm:ss";
         }
 
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(format)
-                .withLocale(java.util.Locale.ENGLISH); // Force English locale to avoid Chinese characters
+        // Force English locale to avoid Chinese characters
+        DateTimeFormatter formatter = formatters.computeIfAbsent(format,
+                f -> DateTimeFormatter.ofPattern(f).withLocale(Locale.ENGLISH));
         LocalDateTime ldt = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
-        return new String(ldt.format(formatter).getBytes(java.nio.charset.StandardCharsets.UTF_8)); // Ensure UTF-8
-                                                                                                    // encoding
+        return ldt.format(formatter);
     }
 
 }
@@ -0,0 +1,94 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import java.util.SplittableRandom;
+
+/*
+ * Picks the live flow to give up when a FlowGenerator with a flow limit is full.
+ *
+ * The built in policies look at SAMPLES flows drawn at random from the table and take
+ * the worst of them, which approximates a scan of the whole table at a fixed cost per
+ * new flow. They use a fixed seed, so a capture read twice evicts the same flows.
+ */
+public interface EvictionPolicy {
+
+    int SAMPLES = 8;
+
+    /* slot of the flow to evict from the full table, or -1 to drop the new flow instead */
+    int selectVictim(FlowTable table);
+
+    /* a policy of the same kind with its own state, for another FlowGenerator */
+    default EvictionPolicy copy() {
+        return this;
+    }
+
+    /* the flow that has been idle the longest */
+    static EvictionPolicy oldestLastSeen() {
+        return new Sampled((candidate, victim) -> candidate.getLastSeen() < victim.getLastSeen());
+    }
+
+    /* the flow with the fewest packets, half open and scan flows go first */
+    static EvictionPolicy fewestPackets() {
+        return new Sampled((candidate, victim) -> candidate.packetCount() < victim.packetCount());
+    }
+
+    static EvictionPolicy random() {
+        return new Sampled(null);
+    }
+
+    /* keeps the flows of the table, packets of new flows are dropped */
+    static EvictionPolicy reject() {
+        return table -> -1;
+    }
+
+    /* oldest, fewest, random or reject */
+    static EvictionPolicy forName(String name) {
+        switch (name.toLowerCase()) {
+            case "oldest":
+                return oldestLastSeen();
+            case "fewest":
+                return fewestPackets();
+            case "random":
+                return random();
+            case "reject":
+                return reject();
+            default:
+                throw new IllegalArgumentException("eviction=" + name);
+        }
+    }
+
+    interface Order {
+        /* true when candidate should be evicted rather than victim */
+        boolean before(BasicFlow candidate, BasicFlow victim);
+    }
+
+    final class Sampled implements EvictionPolicy {
+        private static final long SEED = 0x5A3D1E5EEDL;
+
+        private final Order order;
+        private final SplittableRandom rnd = new SplittableRandom(SEED);
+
+        Sampled(Order order) {
+            this.order = order;
+        }
+
+        @Override
+        public EvictionPolicy copy() {
+            return new Sampled(order);
+        }
+
+        @Override
+        public int selectVictim(FlowTable table) {
+            int victim = table.sampleSlot(rnd);
+            if (victim < 0 || order == null) {
+                return victim;
+            }
+            for (int i = 1; i < SAMPLES; i++) {
+                int candidate = table.sampleSlot(rnd);
+                if (order.before(table.flowAt(candidate), table.flowAt(victim))) {
+                    victim = candidate;
+                }
+            }
+            return victim;
+        }
+    }
+}
@@ -93,7 +93,7 @@ public enum FlowFeature {
     idl_max("Idle Max", "IlMA"), // 83
     idl_min("Idle Min", "IlMI"), // 84
 
-    Label("Label", "LBL", new String[] { "NeedManualLabel" }); // 85
+    Label("Label", "LBL", new String[] { "NeedManualLabel", BasicFlow.PARTIAL_LABEL }); // 85
 
     protected static final Logger logger = LoggerFactory.getLogger(FlowFeature.class);
     private static String HEADER;
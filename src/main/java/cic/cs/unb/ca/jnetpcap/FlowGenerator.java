@@ -4,8 +4,10 @@ import cic.cs.unb.ca.jnetpcap.worker.FlowGenListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -54,17 +56,36 @@ public class FlowGenerator {
 
     // 40/86
     private FlowGenListener mListener;
-    private HashMap<String, BasicFlow> currentFlows;
+    private FlowTable currentFlows;
+    private TimerWheel timerWheel;
     private HashMap<Integer, BasicFlow> finishedFlows;
     private HashMap<String, ArrayList> IPAddresses;
-    private Map<String, Map<Integer, List<Long>>> flowPacketMap; // Added to store packet IDs by flow ID
+    private Map<String, Map<Integer, PacketIdList>> flowPacketMap; // Added to store packet IDs by flow ID
     private boolean savePacketInfo = false; // Added to control saving packet information to JSON
+    private boolean retainPackets = false; // flows keep their packets, see setRetainPackets()
+    private PacketIndexWriter packetIndex; // packet info goes here instead of json files when set
+    private Map<FlowKey, Long> openFlows; // open before the first packet, see setOpenFlows()
+    private final Map<FlowKey, Long> partialFlows = new HashMap<>(); // partial flows ending before their timeout
+    private long unreadUntil = Long.MIN_VALUE; // see setUnreadBefore()
+    private FlowSampler sampler; // decides which new flows are made, null for all
+    private long unsampledPacketCount;
+    private long partialFlowCount;
 
     private boolean bidirectional;
     private long flowTimeOut;
     private long flowActivityTimeOut;
     private int finishedFlowCount;
 
+    // 0 for no limit on the live flows
+    private int maxFlows = 0;
+    private EvictionPolicy evictionPolicy;
+    private long evictedFlowCount;
+    private long rejectedFlowCount;
+
+    // 1ms wheel ticks, timestamps are in microseconds
+    private static final long TIMER_TICK = 1000L;
+    static final int OUTPUT_BUFFER = 64 * 1024;
+
     public FlowGenerator(boolean bidirectional, long flowTimeout, long activityTimeout) {
         super();
         this.bidirectional = bidirectional;
@@ -84,7 +105,7 @@ public class FlowGenerator {
     }
 
     private void init() {
-        currentFlows = new HashMap<>();
+        currentFlows = new FlowTable();
         finishedFlows = new HashMap<>();
         IPAddresses = new HashMap<>();
         flowPacketMap = new HashMap<>();
@@ -95,11 +116,211 @@ public class FlowGenerator {
         mListener = listener;
     }
 
+    /*
+     * Debugging: the flows made from now on keep their packets for
+     * BasicFlow.getForward()/getBackward(), until they are finished and let go.
+     */
+    public void setRetainPackets(boolean retainPackets) {
+        this.retainPackets = retainPackets;
+    }
+
+    public boolean isRetainPackets() {
+        return retainPackets;
+    }
+
+    /* new flows are only made for the keys sampler takes */
+    public void setSampler(FlowSampler sampler) {
+        this.sampler = sampler;
+    }
+
+    public FlowSampler getSampler() {
+        return sampler;
+    }
+
+    /* packets left out because their flow was not sampled */
+    public long getUnsampledPacketCount() {
+        return unsampledPacketCount;
+    }
+
+    /*
+     * The flows already open before the first packet given to this generator, e.g. found
+     * by another generator that read the packets before a time window, as getOpenFlows()
+     * returned them. A new flow of one of these keys is marked partial
+     * (BasicFlow.setPartial()) when the open flow would still have taken its packet, and
+     * it ends where the open flow would have ended by its flow timeout.
+     */
+    public void setOpenFlows(Map<FlowKey, Long> flows) {
+        openFlows = new HashMap<>(flows);
+    }
+
+    /*
+     * The packets before micros were not given to this generator: a flow that begins
+     * within the flow timeout after it may have begun before and is marked partial, and so
+     * are the flows that follow it on its flow timeout.
+     */
+    public void setUnreadBefore(long micros) {
+        unreadUntil = micros + flowTimeOut;
+    }
+
+    /*
+     * The flows in progress, by key, with the last timestamp a packet can join each of
+     * them, Long.MAX_VALUE for a partial flow whose start is not known.
+     */
+    public Map<FlowKey, Long> getOpenFlows() {
+        List<FlowKey> keys = currentFlows.keys();
+        List<BasicFlow> flows = currentFlows.values();
+        Map<FlowKey, Long> open = new HashMap<>(keys.size() * 2);
+        for (int i = 0; i < keys.size(); i++) {
+            BasicFlow flow = flows.get(i);
+            if (flow.isPartial()) {
+                open.put(keys.get(i), partialFlows.getOrDefault(keys.get(i), Long.MAX_VALUE));
+            } else {
+                open.put(keys.get(i), timerWheel != null ? expiryDeadline(flow) : flow.getFlowStartTime() + flowTimeOut);
+            }
+        }
+        return open;
+    }
+
+    public long getPartialFlowCount() {
+        return partialFlowCount;
+    }
+
+    /*
+     * The packet info of every flow is appended to packetIndex, in the order the flows
+     * are saved, instead of going to one json file per flow id (PacketIndex.exportJson()
+     * writes those). The caller closes packetIndex.
+     */
+    public void setPacketIndex(PacketIndexWriter packetIndex) {
+        this.packetIndex = packetIndex;
+    }
+
+    /*
+     * Expire flows from a timer wheel on flow timeout and on activity timeout, instead of
+     * waiting for the next packet of the same flow or the end of the capture. Off by
+     * default: a flow then also ends after an idle gap of activityTimeout, which changes
+     * the flows generated for a capture compared to the CICIDS2017 ones.
+     */
+    public void enableTimerExpiry() {
+        if (timerWheel == null) {
+            timerWheel = new TimerWheel(TIMER_TICK);
+        }
+    }
+
+    /*
+     * Moves the clock of the timer wheel, expired flows are handed to the listener.
+     * addPacket() does it with the packet timestamps, live capture also calls it with the
+     * wall clock so that flows expire while no packet arrives.
+     */
+    public void advanceTime(long currentTimestamp) {
+        if (timerWheel != null) {
+            timerWheel.advance(currentTimestamp, this::onTimer);
+        }
+    }
+
+    private void onTimer(TimerWheel.Timer timer, long currentTimestamp) {
+        int slot = currentFlows.probe(timer.getKey());
+        if (slot < 0 || currentFlows.flowAt(slot) != timer.getFlow()) {
+            // the flow already finished on FIN or flow timeout
+            return;
+        }
+
+        BasicFlow flow = timer.getFlow();
+        long deadline = expiryDeadline(flow);
+        if (currentTimestamp <= deadline) {
+            timerWheel.reschedule(timer, deadline + 1);
+            return;
+        }
+
+        currentFlows.removeAt(slot);
+        if (flow.packetCount() > 1) {
+            flowFinished(flow);
+        }
+    }
+
+    /*
+     * Caps the number of live flows. A packet of a new flow that finds maxFlows flows in
+     * progress makes the policy end one of them early, it goes to onFlowEvicted() of the
+     * listener; when the policy picks none the packet is dropped and counted as rejected.
+     * A flood of spoofed or scanning flows then costs a bounded amount of memory instead
+     * of running the JVM out of heap. 0 removes the limit.
+     */
+    public void setMaxFlows(int maxFlows, EvictionPolicy policy) {
+        if (maxFlows < 0) {
+            throw new IllegalArgumentException("maxFlows=" + maxFlows);
+        }
+        if (maxFlows > 0 && policy == null) {
+            throw new IllegalArgumentException("eviction policy is null");
+        }
+        this.maxFlows = maxFlows;
+        this.evictionPolicy = policy;
+    }
+
+    public long getEvictedFlowCount() {
+        return evictedFlowCount;
+    }
+
+    public long getRejectedFlowCount() {
+        return rejectedFlowCount;
+    }
+
+    /* true when there is room for one more flow */
+    private boolean makeRoom() {
+        if (maxFlows == 0 || currentFlows.size() < maxFlows) {
+            return true;
+        }
+        int victim = evictionPolicy.selectVictim(currentFlows);
+        if (victim < 0) {
+            rejectedFlowCount++;
+            return false;
+        }
+        BasicFlow flow = currentFlows.flowAt(victim);
+        currentFlows.removeAt(victim);
+        evictedFlowCount++;
+        if (flow.packetCount() > 1) {
+            if (mListener != null) {
+                mListener.onFlowEvicted(flow);
+            } else {
+                finishedFlows.put(getFlowCount(), flow);
+            }
+        }
+        return true;
+    }
+
+    private long expiryDeadline(BasicFlow flow) {
+        return Math.min(flow.getFlowStartTime() + flowTimeOut, flow.getLastSeen() + flowActivityTimeOut);
+    }
+
+    private boolean partialEnded(FlowKey key, BasicFlow flow, long currentTimestamp) {
+        if (!flow.isPartial()) {
+            return false;
+        }
+        Long end = partialFlows.get(key);
+        return end != null && currentTimestamp > end;
+    }
+
+    private void scheduleExpiry(FlowKey key, BasicFlow flow) {
+        if (timerWheel != null) {
+            timerWheel.schedule(key, flow, expiryDeadline(flow) + 1);
+        }
+    }
+
+    private void flowFinished(BasicFlow flow) {
+        if (mListener != null) {
+            mListener.onFlowGenerated(flow);
+        } else {
+            finishedFlows.put(getFlowCount(), flow);
+        }
+    }
+
     // Method to save flow packet information to a JSON file
     public void saveFlowPacketsToJson(BasicFlow flow, String outputPath) {
         if (!savePacketInfo) {
             return;
         }
+        if (packetIndex != null) {
+            packetIndex.append(flow.getFlowId(), flow.getPacketSerialNumbers());
+            return;
+        }
 
         String flowId = flow.getFlowId();
         if (flowId == null) {
@@ -107,7 +328,7 @@ public class FlowGenerator {
             return;
         }
 
-        List<Long> packetIds = flow.getPacketSerialNumbers();
+        PacketIdList packetIds = flow.getPacketSerialNumbers();
         if (packetIds == null || packetIds.isEmpty()) {
             logger.debug("No packet IDs to save for flow: {}", flowId);
             return;
@@ -140,23 +361,14 @@ public class FlowGenerator {
             StringBuilder json = new StringBuilder("{\n");
             boolean firstFlow = true;
 
-            for (Map.Entry<Integer, List<Long>> entry : flowPacketMap.get(flowId).entrySet()) {
+            for (Map.Entry<Integer, PacketIdList> entry : flowPacketMap.get(flowId).entrySet()) {
                 if (!firstFlow) {
                     json.append(",\n");
                 }
                 firstFlow = false;
 
-                json.append("    \"").append(entry.getKey()).append("\": [");
-
-                List<Long> ids = entry.getValue();
-                for (int i = 0; i < ids.size(); i++) {
-                    if (i > 0) {
-                        json.append(", ");
-                    }
-                    json.append(ids.get(i));
-                }
-
-                json.append("]");
+                json.append("    \"").append(entry.getKey()).append("\": ");
+                json.append(entry.getValue());
             }
 
             json.append("\n}");
@@ -167,6 +379,13 @@ public class FlowGenerator {
         }
     }
 
+    /*
+     * Nothing runs in the background here. Generators that hand packets to other threads
+     * wait for them in close(); flows still in progress stay for dumpLabeledCurrentFlow().
+     */
+    public void close() {
+    }
+
     public void addPacket(BasicPacketInfo packet) {
         if (packet == null) {
             return;
@@ -174,34 +393,55 @@ public class FlowGenerator {
 
         BasicFlow flow;
         long currentTimestamp = packet.getTimeStamp();
-        String id;
-
-        if (this.currentFlows.containsKey(packet.fwdFlowId()) || this.currentFlows.containsKey(packet.bwdFlowId())) {
-
-            if (this.currentFlows.containsKey(packet.fwdFlowId())) {
-                id = packet.fwdFlowId();
-            } else {
-                id = packet.bwdFlowId();
+        advanceTime(currentTimestamp);
+        // the key is only made for a new flow, a packet of a flow in progress uses the one in the table
+        int slot = currentFlows.probe(packet);
+
+        if (slot >= 0 && timerWheel != null && currentTimestamp > expiryDeadline(currentFlows.flowAt(slot))) {
+            // expired within the current wheel tick, its timer has not fired yet
+            flow = currentFlows.flowAt(slot);
+            currentFlows.removeAt(slot);
+            if (flow.packetCount() > 1) {
+                flowFinished(flow);
             }
+            slot = currentFlows.probe(packet);
+        }
 
-            flow = currentFlows.get(id);
+        if (slot >= 0) {
+
+            FlowKey key = currentFlows.keyAt(slot);
+            flow = currentFlows.flowAt(slot);
             // Flow finished due flowtimeout:
             // 1.- we move the flow to finished flow list
             // 2.- we eliminate the flow from the current flow list
             // 3.- we create a new flow with the packet-in-process
-            if ((currentTimestamp - flow.getFlowStartTime()) > flowTimeOut) {
+            if ((currentTimestamp - flow.getFlowStartTime()) > flowTimeOut
+                    || partialEnded(key, flow, currentTimestamp)) {
                 if (flow.packetCount() > 1) {
-                    if (mListener != null) {
-                        mListener.onFlowGenerated(flow);
-                    } else {
-                        finishedFlows.put(getFlowCount(), flow);
-                    }
+                    flowFinished(flow);
                     // flow.endActiveIdleTime(currentTimestamp,this.flowActivityTimeOut,
                     // this.flowTimeOut, false);
                 }
-                currentFlows.remove(id);
-                currentFlows.put(id, new BasicFlow(bidirectional, packet, flow.getSrc(), flow.getDst(),
-                        flow.getSrcPort(), flow.getDstPort(), this.flowActivityTimeOut));
+                boolean partial = flow.isPartial();
+                if (partial) {
+                    partialFlows.remove(key);
+                }
+                if (sampler != null && !sampler.sampleFlow(key)) {
+                    // the rate was lowered since the key was taken
+                    currentFlows.removeAt(slot);
+                    unsampledPacketCount++;
+                    return;
+                }
+                flow = new BasicFlow(bidirectional, packet, flow.getSrc(), flow.getDst(), flow.getSrcPort(),
+                        flow.getDstPort(), this.flowActivityTimeOut, savePacketInfo, retainPackets);
+                flow.setFlowKey(key);
+                if (partial) {
+                    // began when the partial one ended, which is not sure either
+                    flow.setPartial(true);
+                    partialFlowCount++;
+                }
+                currentFlows.replace(slot, flow);
+                scheduleExpiry(key, flow);
 
                 int cfsize = currentFlows.size();
                 if (cfsize % 50 == 0) {
@@ -215,19 +455,40 @@ public class FlowGenerator {
             } else if (packet.hasFlagFIN()) {
                 logger.debug("FlagFIN current has {} flow", currentFlows.size());
                 flow.addPacket(packet);
-                if (mListener != null) {
-                    mListener.onFlowGenerated(flow);
-                } else {
-                    finishedFlows.put(getFlowCount(), flow);
-                }
-                currentFlows.remove(id);
+                flowFinished(flow);
+                currentFlows.removeAt(slot);
             } else {
                 flow.updateActiveIdleTime(currentTimestamp, this.flowActivityTimeOut);
                 flow.addPacket(packet);
-                currentFlows.put(id, flow);
             }
         } else {
-            currentFlows.put(packet.fwdFlowId(), new BasicFlow(bidirectional, packet, this.flowActivityTimeOut));
+            FlowKey key = packet.flowKey();
+            if (sampler != null && !sampler.sampleFlow(key)) {
+                unsampledPacketCount++;
+                return;
+            }
+            long evicted = evictedFlowCount;
+            if (!makeRoom()) {
+                return;
+            }
+            if (evictedFlowCount != evicted) {
+                // the removal may have shifted the free slot of the key
+                slot = currentFlows.probe(key);
+            }
+            flow = new BasicFlow(bidirectional, packet, this.flowActivityTimeOut, savePacketInfo, retainPackets);
+            flow.setFlowKey(key);
+            Long joinDeadline = openFlows == null ? null : openFlows.remove(key);
+            if (joinDeadline != null && currentTimestamp <= joinDeadline) {
+                flow.setPartial(true);
+                partialFlows.put(key, joinDeadline);
+                partialFlowCount++;
+            } else if (currentTimestamp < unreadUntil) {
+                flow.setPartial(true);
+                partialFlows.remove(key);
+                partialFlowCount++;
+            }
+            currentFlows.insert(slot, key, flow);
+            scheduleExpiry(key, flow);
         }
     }
 
@@ -264,42 +525,19 @@ public class FlowGenerator {
      */
 
     public int dumpLabeledFlowBasedFeatures(String path, String filename, String header) {
-        BasicFlow flow;
         int total = 0;
-        int zeroPkt = 0;
 
         try {
             // total = finishedFlows.size()+currentFlows.size(); becasue there are 0 packet
             // BasicFlow in the currentFlows
 
-            FileOutputStream output = new FileOutputStream(new File(path + filename));
+            OutputStream output = new BufferedOutputStream(new FileOutputStream(new File(path + filename)), OUTPUT_BUFFER);
+            FlowRecordWriter record = new FlowRecordWriter();
             logger.debug("dumpLabeledFlow: ", path + filename);
             output.write((header + "\n").getBytes());
-            Set<Integer> fkeys = finishedFlows.keySet();
-            for (Integer key : fkeys) {
-                flow = finishedFlows.get(key);
-                if (flow.packetCount() > 1) {
-                    output.write((flow.dumpFlowBasedFeaturesEx() + "\n").getBytes());
-                    total++;
-                } else {
-                    zeroPkt++;
-                }
-            }
-            logger.debug("dumpLabeledFlow finishedFlows -> {},{}", zeroPkt, total);
-
-            Set<String> ckeys = currentFlows.keySet();
+            total += writeFinishedFlows(output, record);
             output.write((header + "\n").getBytes());
-            for (String key : ckeys) {
-                flow = currentFlows.get(key);
-                if (flow.packetCount() > 1) {
-                    output.write((flow.dumpFlowBasedFeaturesEx() + "\n").getBytes());
-                    total++;
-                } else {
-                    zeroPkt++;
-                }
-
-            }
-            logger.debug("dumpLabeledFlow total(include current) -> {},{}", zeroPkt, total);
+            total += writeCurrentFlows(output, record);
             output.flush();
             output.close();
         } catch (IOException e) {
@@ -310,6 +548,40 @@ public class FlowGenerator {
         return total;
     }
 
+    /* the finished flows kept without a listener, of more than one packet; returns how many */
+    int writeFinishedFlows(OutputStream output, FlowRecordWriter record) throws IOException {
+        int total = 0;
+        int zeroPkt = 0;
+        Set<Integer> fkeys = finishedFlows.keySet();
+        for (Integer key : fkeys) {
+            BasicFlow flow = finishedFlows.get(key);
+            if (flow.packetCount() > 1) {
+                writeRecord(output, record, flow, "\n");
+                total++;
+            } else {
+                zeroPkt++;
+            }
+        }
+        logger.debug("dumpLabeledFlow finishedFlows -> {},{}", zeroPkt, total);
+        return total;
+    }
+
+    /* the flows in progress of more than one packet; returns how many */
+    int writeCurrentFlows(OutputStream output, FlowRecordWriter record) throws IOException {
+        int total = 0;
+        int zeroPkt = 0;
+        for (BasicFlow current : currentFlows.values()) {
+            if (current.packetCount() > 1) {
+                writeRecord(output, record, current, "\n");
+                total++;
+            } else {
+                zeroPkt++;
+            }
+        }
+        logger.debug("dumpLabeledFlow current -> {},{}", zeroPkt, total);
+        return total;
+    }
+
     public long dumpLabeledCurrentFlow(String fileFullPath, String header) {
         if (fileFullPath == null || header == null) {
             String ex = String.format("fullFilePath=%s,filename=%s", fileFullPath);
@@ -317,14 +589,15 @@ public class FlowGenerator {
         }
 
         File file = new File(fileFullPath);
-        FileOutputStream output = null;
+        OutputStream output = null;
+        FlowRecordWriter record = new FlowRecordWriter();
         int total = 0;
         try {
             if (file.exists()) {
-                output = new FileOutputStream(file, true);
+                output = new BufferedOutputStream(new FileOutputStream(file, true), OUTPUT_BUFFER);
             } else {
                 if (file.createNewFile()) {
-                    output = new FileOutputStream(file);
+                    output = new BufferedOutputStream(new FileOutputStream(file), OUTPUT_BUFFER);
                     output.write((header + LINE_SEP).getBytes());
                 }
             }
@@ -341,12 +614,12 @@ public class FlowGenerator {
             // Process current flows
             for (BasicFlow flow : currentFlows.values()) {
                 if (flow.packetCount() > 1) {
-                    output.write((flow.dumpFlowBasedFeaturesEx() + LINE_SEP).getBytes());
+                    writeRecord(output, record, flow, LINE_SEP);
                     total++;
 
                     // Save packet information for current flows if enabled
                     if (savePacketInfo) {
-                        logger.info("Saving packet info for current flow: {}", flow.getFlowId());
+                        logger.debug("Saving packet info for current flow: {}", flow.getFlowId());
                         saveFlowPacketsToJson(flow, outputPath);
                     }
                 } else {
@@ -369,6 +642,15 @@ public class FlowGenerator {
         return total;
     }
 
+    /* same bytes as (flow.dumpFlowBasedFeaturesEx() + lineSep).getBytes() */
+    private static void writeRecord(OutputStream output, FlowRecordWriter record, BasicFlow flow, String lineSep)
+            throws IOException {
+        record.reset();
+        flow.writeFlowBasedFeaturesEx(record);
+        record.append(lineSep);
+        record.writeTo(output);
+    }
+
     private int getFlowCount() {
         this.finishedFlowCount++;
         return this.finishedFlowCount;
@@ -0,0 +1,167 @@
+package cic.cs.unb.ca.jnetpcap;
+
+/*
+ * Direction independent binary key of a 5-tuple.
+ *
+ * The two endpoints (address, port) are stored in canonical order, lowest first,
+ * so that both directions of a conversation produce equal keys. lowToHigh records
+ * whether the packet the key was built from travelled from the low endpoint to the
+ * high one; it is not part of the key equality.
+ */
+public final class FlowKey {
+
+    private final long lowAddrHi;
+    private final long lowAddrLo;
+    private final long highAddrHi;
+    private final long highAddrLo;
+    private final int ports;
+    private final int protocol;
+    private final int family;
+    private final boolean lowToHigh;
+    private final int hash;
+
+    public FlowKey(byte[] src, byte[] dst, int srcPort, int dstPort, int protocol) {
+        this(addrHi(src), addrLo(src), addrHi(dst), addrLo(dst), src.length, srcPort, dstPort, protocol);
+    }
+
+    /* addresses split as by addrHi()/addrLo(), family is the address length */
+    public FlowKey(long srcHi, long srcLo, long dstHi, long dstLo, int family, int srcPort, int dstPort,
+            int protocol) {
+        super();
+        this.lowToHigh = isLowToHigh(srcHi, srcLo, dstHi, dstLo, srcPort, dstPort);
+        if (lowToHigh) {
+            this.lowAddrHi = srcHi;
+            this.lowAddrLo = srcLo;
+            this.highAddrHi = dstHi;
+            this.highAddrLo = dstLo;
+            this.ports = (srcPort << 16) | (dstPort & 0xFFFF);
+        } else {
+            this.lowAddrHi = dstHi;
+            this.lowAddrLo = dstLo;
+            this.highAddrHi = srcHi;
+            this.highAddrLo = srcLo;
+            this.ports = (dstPort << 16) | (srcPort & 0xFFFF);
+        }
+        this.protocol = protocol;
+        this.family = family;
+        this.hash = mix(lowAddrHi, lowAddrLo, highAddrHi, highAddrLo, ports, protocol, family);
+    }
+
+    /*
+     * hashCode() of the key the 5-tuple would make, so a packet can be looked up without
+     * making one; see matches()
+     */
+    public static int hash(long srcHi, long srcLo, long dstHi, long dstLo, int family, int srcPort, int dstPort,
+            int protocol) {
+        if (isLowToHigh(srcHi, srcLo, dstHi, dstLo, srcPort, dstPort)) {
+            return mix(srcHi, srcLo, dstHi, dstLo, (srcPort << 16) | (dstPort & 0xFFFF), protocol, family);
+        }
+        return mix(dstHi, dstLo, srcHi, srcLo, (dstPort << 16) | (srcPort & 0xFFFF), protocol, family);
+    }
+
+    /* equals() the key the 5-tuple would make, in either direction */
+    public boolean matches(long srcHi, long srcLo, long dstHi, long dstLo, int family, int srcPort, int dstPort,
+            int protocol) {
+        if (this.protocol != protocol || this.family != family) {
+            return false;
+        }
+        if (lowAddrLo == srcLo && highAddrLo == dstLo && ports == ((srcPort << 16) | (dstPort & 0xFFFF))
+                && lowAddrHi == srcHi && highAddrHi == dstHi) {
+            return true;
+        }
+        return lowAddrLo == dstLo && highAddrLo == srcLo && ports == ((dstPort << 16) | (srcPort & 0xFFFF))
+                && lowAddrHi == dstHi && highAddrHi == srcHi;
+    }
+
+    private static boolean isLowToHigh(long srcHi, long srcLo, long dstHi, long dstLo, int srcPort, int dstPort) {
+        int cmp = Long.compareUnsigned(srcHi, dstHi);
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(srcLo, dstLo);
+        }
+        if (cmp == 0) {
+            cmp = Integer.compare(srcPort, dstPort);
+        }
+        return cmp <= 0;
+    }
+
+    /* IPv4 addresses only use the low word */
+    static long addrHi(byte[] addr) {
+        long v = 0L;
+        for (int i = 0; i < addr.length - 8; i++) {
+            v = (v << 8) | (addr[i] & 0xFFL);
+        }
+        return v;
+    }
+
+    static long addrLo(byte[] addr) {
+        long v = 0L;
+        for (int i = Math.max(0, addr.length - 8); i < addr.length; i++) {
+            v = (v << 8) | (addr[i] & 0xFFL);
+        }
+        return v;
+    }
+
+    private static int mix(long lowAddrHi, long lowAddrLo, long highAddrHi, long highAddrLo, int ports,
+            int protocol, int family) {
+        long h = lowAddrHi * 0x9E3779B97F4A7C15L;
+        h = (h ^ lowAddrLo) * 0x9E3779B97F4A7C15L;
+        h = (h ^ highAddrHi) * 0x9E3779B97F4A7C15L;
+        h = (h ^ highAddrLo) * 0x9E3779B97F4A7C15L;
+        h = (h ^ (((long) ports << 32) | ((long) protocol << 8) | family)) * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /*
+     * 64 bit hash of the canonical 5-tuple mixed with secret, the same for both directions.
+     * Without the secret one can not tell which keys hash low, see FlowSampler.
+     */
+    public long keyedHash(long secret) {
+        long h = (secret ^ lowAddrHi) * 0x9E3779B97F4A7C15L;
+        h = (h ^ lowAddrLo) * 0x9E3779B97F4A7C15L;
+        h = (h ^ highAddrHi) * 0x9E3779B97F4A7C15L;
+        h = (h ^ highAddrLo) * 0x9E3779B97F4A7C15L;
+        h = (h ^ (((long) ports << 32) | ((long) protocol << 8) | family)) * 0x9E3779B97F4A7C15L;
+        h ^= secret >>> 29;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public boolean isLowToHigh() {
+        return lowToHigh;
+    }
+
+    public int getProtocol() {
+        return protocol;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof FlowKey)) {
+            return false;
+        }
+        FlowKey other = (FlowKey) obj;
+        return hash == other.hash
+                && lowAddrLo == other.lowAddrLo
+                && highAddrLo == other.highAddrLo
+                && ports == other.ports
+                && protocol == other.protocol
+                && lowAddrHi == other.lowAddrHi
+                && highAddrHi == other.highAddrHi
+                && family == other.family;
+    }
+}
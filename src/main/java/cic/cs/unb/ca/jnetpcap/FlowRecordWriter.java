@@ -0,0 +1,192 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import org.jnetpcap.packet.format.FormatUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static cic.cs.unb.ca.jnetpcap.Utils.LINE_SEP;
+
+/*
+ * Reusable byte buffer that flow records are serialized into, see
+ * BasicFlow.writeFlowBasedFeaturesEx().
+ *
+ * Every append produces the same characters as the StringBuilder.append() it replaces.
+ * Doubles holding an integral value (most of the features) and the special values are
+ * written directly; other doubles still go through Double.toString(), whose digits
+ * differ between JDK versions and must not be second guessed. Timestamps share one
+ * formatter and the last formatted second is reused.
+ * A writer is not thread safe.
+ */
+public class FlowRecordWriter {
+
+    public static final String TIMESTAMP_PATTERN = "dd/MM/yyyy hh:mm:ss a";
+
+    private static final byte SEPARATOR = ',';
+    private static final byte[] LINE_SEP_BYTES = LINE_SEP.getBytes();
+    private static final byte[] NAN = "NaN".getBytes();
+    private static final byte[] POSITIVE_INFINITY = "Infinity".getBytes();
+    private static final byte[] NEGATIVE_INFINITY = "-Infinity".getBytes();
+    private static final byte[] NEGATIVE_ZERO = "-0.0".getBytes();
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes();
+    // Double.toString() switches to computerized scientific notation outside [1e-3, 1e7)
+    private static final double PLAIN_LIMIT = 1.0E7;
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern(TIMESTAMP_PATTERN)
+            .withLocale(Locale.ENGLISH);
+
+    private byte[] buf;
+    private int len;
+
+    private final ZoneId zone = ZoneId.systemDefault();
+    private long cachedSecond = Long.MIN_VALUE;
+    private byte[] cachedTimestamp;
+
+    public FlowRecordWriter() {
+        this(1024);
+    }
+
+    public FlowRecordWriter(int capacity) {
+        super();
+        buf = new byte[Math.max(capacity, 64)];
+    }
+
+    private void ensure(int extra) {
+        if (len + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length << 1, len + extra));
+        }
+    }
+
+    public FlowRecordWriter separator() {
+        ensure(1);
+        buf[len++] = SEPARATOR;
+        return this;
+    }
+
+    public FlowRecordWriter newLine() {
+        return append(LINE_SEP_BYTES);
+    }
+
+    public FlowRecordWriter append(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, len, bytes.length);
+        len += bytes.length;
+        return this;
+    }
+
+    public FlowRecordWriter append(String s) {
+        if (s == null) {
+            s = "null";
+        }
+        int n = s.length();
+        ensure(n);
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                // not ASCII, encode the way String.getBytes() did
+                len -= i;
+                return append(s.getBytes());
+            }
+            buf[len++] = (byte) c;
+        }
+        return this;
+    }
+
+    public FlowRecordWriter append(int v) {
+        return append((long) v);
+    }
+
+    public FlowRecordWriter append(long v) {
+        if (v == Long.MIN_VALUE) {
+            return append(MIN_LONG);
+        }
+        ensure(20);
+        if (v < 0) {
+            buf[len++] = '-';
+            v = -v;
+        }
+        int start = len;
+        do {
+            buf[len++] = (byte) ('0' + (int) (v % 10));
+            v /= 10;
+        } while (v != 0);
+        for (int i = start, j = len - 1; i < j; i++, j--) {
+            byte t = buf[i];
+            buf[i] = buf[j];
+            buf[j] = t;
+        }
+        return this;
+    }
+
+    public FlowRecordWriter append(double v) {
+        if (v != v) {
+            return append(NAN);
+        }
+        if (v == Double.POSITIVE_INFINITY) {
+            return append(POSITIVE_INFINITY);
+        }
+        if (v == Double.NEGATIVE_INFINITY) {
+            return append(NEGATIVE_INFINITY);
+        }
+        if (v == 0.0) {
+            if (Double.doubleToRawLongBits(v) != 0L) {
+                return append(NEGATIVE_ZERO);
+            }
+        } else if (Math.abs(v) < 1.0 || Math.abs(v) >= PLAIN_LIMIT || v != Math.rint(v)) {
+            return append(Double.toString(v));
+        }
+        append((long) v);
+        ensure(2);
+        buf[len++] = '.';
+        buf[len++] = '0';
+        return this;
+    }
+
+    public FlowRecordWriter appendIp(byte[] address) {
+        if (address == null || address.length != 4) {
+            return append(FormatUtils.ip(address));
+        }
+        for (int i = 0; i < 4; i++) {
+            if (i > 0) {
+                ensure(1);
+                buf[len++] = '.';
+            }
+            append(address[i] & 0xFF);
+        }
+        return this;
+    }
+
+    /* same text as DateFormatter.convertMilliseconds2String(millis, TIMESTAMP_PATTERN) */
+    public FlowRecordWriter appendTimestamp(long millis) {
+        long second = Math.floorDiv(millis, 1000L);
+        if (second != cachedSecond) {
+            LocalDateTime ldt = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zone);
+            cachedTimestamp = ldt.format(TIMESTAMP_FORMAT).getBytes();
+            cachedSecond = second;
+        }
+        return append(cachedTimestamp);
+    }
+
+    public int length() {
+        return len;
+    }
+
+    public void reset() {
+        len = 0;
+    }
+
+    public void writeTo(OutputStream output) throws IOException {
+        output.write(buf, 0, len);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, 0, len);
+    }
+}
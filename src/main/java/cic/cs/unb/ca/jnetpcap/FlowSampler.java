@@ -0,0 +1,141 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Which flows and packets are turned into flows when there are more than can be handled.
+ *
+ * Flow sampling keeps a flow when the hash of its 5-tuple, keyed with a secret (see
+ * FlowKey.keyedHash()), falls under the flow rate. FlowGenerator asks before it makes a
+ * BasicFlow, so a flow is kept or left out as a whole, and lowering the rate only leaves
+ * out flows that were kept before, never takes new ones in. Without the secret the
+ * sampled flows can not be picked from outside.
+ *
+ * Packet sampling takes 1 in N packets by count, ahead of decoding them (PacketReader,
+ * MappedPcapReader, LiveCapture). The flows of sampled packets keep their packet counts
+ * and sizes unscaled.
+ *
+ * Both can be changed while packets are read, e.g. to shed load step by step. Each change
+ * is appended to the log files, <file>.sampling next to the flow csv, so totals can be
+ * scaled back: flows by 1 / flow rate, packets by the packet interval.
+ */
+public class FlowSampler {
+    public static final Logger logger = LoggerFactory.getLogger(FlowSampler.class);
+
+    public static final String SUFFIX = ".sampling";
+    public static final String LOG_HEADER = "Time,Flow Sampling Rate,Packet Sampling Interval";
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final long SCALE = 1L << 53; // the hash bits compared, exact as a double
+
+    private final long secret;
+    private volatile double flowRate = 1.0;
+    private volatile long flowThreshold = SCALE;
+    private volatile int packetInterval = 1;
+    private final List<File> logs = new ArrayList<>();
+
+    public FlowSampler() {
+        this(new SecureRandom().nextLong());
+    }
+
+    /* the same secret samples the same flows */
+    public FlowSampler(long secret) {
+        super();
+        this.secret = secret;
+    }
+
+    /* the sampling log of a capture, next to its flow csv */
+    public static File logFile(String outPath, String fileName) {
+        return new File(outPath, fileName + SUFFIX);
+    }
+
+    public double getFlowRate() {
+        return flowRate;
+    }
+
+    /* share of the flows kept, 0 < rate <= 1 */
+    public synchronized void setFlowRate(double rate) {
+        if (!(rate > 0.0 && rate <= 1.0)) {
+            String ex = String.format("flow sampling rate=%s", rate);
+            throw new IllegalArgumentException(ex);
+        }
+        if (rate == flowRate) {
+            return;
+        }
+        flowRate = rate;
+        flowThreshold = (long) (rate * SCALE);
+        logger.info("Flow sampling rate {}", rate);
+        writeLogs();
+    }
+
+    public int getPacketInterval() {
+        return packetInterval;
+    }
+
+    /* 1 in interval packets is kept, 1 for all */
+    public synchronized void setPacketInterval(int interval) {
+        if (interval < 1) {
+            String ex = String.format("packet sampling interval=%d", interval);
+            throw new IllegalArgumentException(ex);
+        }
+        if (interval == packetInterval) {
+            return;
+        }
+        packetInterval = interval;
+        logger.info("Packet sampling 1 in {}", interval);
+        writeLogs();
+    }
+
+    /* decides for a flow not seen yet; the same key gets the same answer while the rate stays */
+    public boolean sampleFlow(FlowKey key) {
+        long threshold = flowThreshold;
+        return threshold == SCALE || (key.keyedHash(secret) >>> 11) < threshold;
+    }
+
+    /* decides for packet number count (from 0) of a reader, each reader counts its own */
+    public boolean samplePacket(long count) {
+        int interval = packetInterval;
+        return interval == 1 || count % interval == 0;
+    }
+
+    /* appends the rates to file now and on every change */
+    public synchronized void addLog(File file) {
+        logs.add(file);
+        writeLog(file);
+    }
+
+    /* the capture is done, later changes are not its own */
+    public synchronized void removeLog(File file) {
+        logs.remove(file);
+    }
+
+    private void writeLogs() {
+        for (File file : logs) {
+            writeLog(file);
+        }
+    }
+
+    private void writeLog(File file) {
+        boolean header = !file.isFile() || file.length() == 0;
+        try (Writer out = new FileWriter(file, true)) {
+            if (header) {
+                out.write(LOG_HEADER + Utils.LINE_SEP);
+            }
+            out.write(String.format("%s,%s,%d", LocalDateTime.now().format(TIME), flowRate, packetInterval)
+                    + Utils.LINE_SEP);
+        } catch (IOException e) {
+            logger.info("Can not write the sampling log {}: {}", file.getPath(), e.getMessage());
+        }
+    }
+}
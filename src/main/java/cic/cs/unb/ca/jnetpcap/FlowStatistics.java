@@ -0,0 +1,92 @@
+package cic.cs.unb.ca.jnetpcap;
+
+/*
+ * Count, sum, min, max, mean and variance of a series of values.
+ *
+ * Stands in for commons-math SummaryStatistics in BasicFlow, which also maintains sum
+ * of logs, sum of squares, geometric mean and several delegates on every addValue().
+ * The updates below follow the SummaryStatistics ones (FirstMoment/SecondMoment, bias
+ * corrected variance) operation for operation, so the results are bit-identical.
+ */
+public class FlowStatistics {
+
+    private long n = 0L;
+    private double sum = 0.0;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    private double m1 = Double.NaN;
+    private double m2 = Double.NaN;
+
+    public FlowStatistics() {
+        super();
+    }
+
+    public void addValue(double value) {
+        if (n == 0L) {
+            m1 = 0.0;
+            m2 = 0.0;
+        }
+        n++;
+        double dev = value - m1;
+        double nDev = dev / n;
+        m1 += nDev;
+        m2 += ((double) n - 1) * dev * nDev;
+
+        sum += value;
+        if (value < min || Double.isNaN(min)) {
+            min = value;
+        }
+        if (value > max || Double.isNaN(max)) {
+            max = value;
+        }
+    }
+
+    public long getN() {
+        return n;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return m1;
+    }
+
+    public double getVariance() {
+        if (n == 0L) {
+            return Double.NaN;
+        }
+        if (n == 1L) {
+            return 0.0;
+        }
+        return m2 / (n - 1.0);
+    }
+
+    public double getStandardDeviation() {
+        if (n == 0L) {
+            return Double.NaN;
+        }
+        if (n == 1L) {
+            return 0.0;
+        }
+        return Math.sqrt(getVariance());
+    }
+
+    public void clear() {
+        n = 0L;
+        sum = 0.0;
+        min = Double.NaN;
+        max = Double.NaN;
+        m1 = Double.NaN;
+        m2 = Double.NaN;
+    }
+}
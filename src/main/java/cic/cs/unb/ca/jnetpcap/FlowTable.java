@@ -0,0 +1,207 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/*
+ * Open addressing (linear probing) table of the live flows keyed by FlowKey.
+ *
+ * probe() returns the slot of the flow, or the bitwise complement of the free slot
+ * where it would be inserted, so a lookup followed by an insert costs one probe
+ * sequence. The direction of a packet relative to the flow is answered from the
+ * key stored in the slot, without touching the flow itself.
+ */
+public class FlowTable {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private FlowKey[] keys;
+    private BasicFlow[] flows;
+    private int mask;
+    private int size;
+    private int threshold;
+
+    public FlowTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public FlowTable(int expectedFlows) {
+        super();
+        int capacity = Integer.highestOneBit(Math.max(expectedFlows, 8) * 2 - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new FlowKey[capacity];
+        flows = new BasicFlow[capacity];
+        mask = capacity - 1;
+        threshold = capacity >>> 1;
+    }
+
+    public int probe(FlowKey key) {
+        int i = key.hashCode() & mask;
+        FlowKey k;
+        while ((k = keys[i]) != null) {
+            if (k.equals(key)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return ~i;
+    }
+
+    /* probe(packet.flowKey()), without making the key for a packet of a flow in the table */
+    public int probe(BasicPacketInfo packet) {
+        int i = packet.flowHash() & mask;
+        FlowKey k;
+        while ((k = keys[i]) != null) {
+            if (packet.belongsTo(k)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return ~i;
+    }
+
+    public BasicFlow get(FlowKey key) {
+        int slot = probe(key);
+        return slot >= 0 ? flows[slot] : null;
+    }
+
+    public FlowKey keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public BasicFlow flowAt(int slot) {
+        return flows[slot];
+    }
+
+    /*
+     * true when the packet the key was built from travels in the same direction as the
+     * first packet of the flow stored in the slot
+     */
+    public boolean isForward(int slot, FlowKey key) {
+        return keys[slot].isLowToHigh() == key.isLowToHigh();
+    }
+
+    public void replace(int slot, BasicFlow flow) {
+        flows[slot] = flow;
+    }
+
+    /* slot must be the (complemented) result of probe() for the same key */
+    public void insert(int slot, FlowKey key, BasicFlow flow) {
+        int i = ~slot;
+        keys[i] = key;
+        flows[i] = flow;
+        if (++size > threshold) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    public void put(FlowKey key, BasicFlow flow) {
+        int slot = probe(key);
+        if (slot >= 0) {
+            flows[slot] = flow;
+        } else {
+            insert(slot, key, flow);
+        }
+    }
+
+    public BasicFlow remove(FlowKey key) {
+        int slot = probe(key);
+        if (slot < 0) {
+            return null;
+        }
+        BasicFlow flow = flows[slot];
+        removeAt(slot);
+        return flow;
+    }
+
+    /* backward shift deletion, keeps probe sequences intact without tombstones */
+    public void removeAt(int slot) {
+        int hole = slot;
+        int i = slot;
+        while (true) {
+            i = (i + 1) & mask;
+            FlowKey k = keys[i];
+            if (k == null) {
+                break;
+            }
+            int home = k.hashCode() & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = k;
+                flows[hole] = flows[i];
+                hole = i;
+            }
+        }
+        keys[hole] = null;
+        flows[hole] = null;
+        size--;
+    }
+
+    private void rehash(int capacity) {
+        FlowKey[] oldKeys = keys;
+        BasicFlow[] oldFlows = flows;
+        allocate(capacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            FlowKey k = oldKeys[j];
+            if (k != null) {
+                int i = k.hashCode() & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = k;
+                flows[i] = oldFlows[j];
+            }
+        }
+    }
+
+    /*
+     * slot of a flow picked at random, -1 when the table is empty. Flows right after a
+     * run of free slots are a little more likely to be picked.
+     */
+    public int sampleSlot(SplittableRandom rnd) {
+        if (size == 0) {
+            return -1;
+        }
+        int i = rnd.nextInt(keys.length);
+        while (keys[i] == null) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public List<BasicFlow> values() {
+        List<BasicFlow> values = new ArrayList<>(size);
+        for (BasicFlow flow : flows) {
+            if (flow != null) {
+                values.add(flow);
+            }
+        }
+        return values;
+    }
+
+    public List<FlowKey> keys() {
+        List<FlowKey> values = new ArrayList<>(size);
+        for (FlowKey key : keys) {
+            if (key != null) {
+                values.add(key);
+            }
+        }
+        return values;
+    }
+
+    public void clear() {
+        allocate(keys.length);
+        size = 0;
+    }
+}
@@ -20,4 +20,9 @@ public class IdGenerator {
         return this.id;
     }
 
+    // the next call to nextId returns id + 1
+    synchronized void reset(long id) {
+        this.id = id;
+    }
+
 }
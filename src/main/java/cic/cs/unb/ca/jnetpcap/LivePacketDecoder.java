@@ -0,0 +1,89 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import org.jnetpcap.PcapHeader;
+import org.jnetpcap.nio.JBuffer;
+import org.jnetpcap.packet.JRegistry;
+import org.jnetpcap.packet.PcapPacket;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Decodes the packets of a live capture as they come out of Pcap.dispatch() with a
+ * JBufferHandler, where libpcap's header and buffer are peered into the same two objects
+ * for every packet of a dispatch call.
+ *
+ * The captured bytes are copied into a scratch buffer owned by this decoder and read by
+ * a PacketDecoder, no jnetpcap header or packet is allocated per packet. The returned
+ * BasicPacketInfo holds its fields by value and does not refer to the capture buffer, so
+ * it may be handed to flow generator threads. The decoder itself belongs to the capture
+ * thread, use one per thread.
+ *
+ * Link types PacketDecoder does not know are scanned with jnetpcap as before.
+ */
+public class LivePacketDecoder {
+
+    private static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private final IdGenerator generator;
+    private final PacketDecoder decoder;
+    private final int linkType;
+    private final boolean readIP4;
+    private final boolean readIP6;
+    private ByteBuffer scratch;
+    private final BasicPacketInfo reused;
+
+    public LivePacketDecoder(int linkType, boolean readIP4, boolean readIP6) {
+        this(new IdGenerator(), linkType, DEFAULT_CAPACITY, readIP4, readIP6);
+    }
+
+    public LivePacketDecoder(IdGenerator generator, int linkType, int snaplen, boolean readIP4, boolean readIP6) {
+        super();
+        if (generator == null) {
+            throw new IllegalArgumentException("generator=null");
+        }
+        this.generator = generator;
+        this.decoder = new PacketDecoder(generator, readIP4, readIP6);
+        this.linkType = linkType;
+        this.readIP4 = readIP4;
+        this.readIP6 = readIP6;
+        this.scratch = ByteBuffer.allocate(Math.max(snaplen, 64));
+        this.reused = new BasicPacketInfo(generator, 0L);
+    }
+
+    public boolean isDirect() {
+        return PacketDecoder.isSupportedLinkType(linkType);
+    }
+
+    /* null when the packet carries no IP header of an enabled version */
+    public BasicPacketInfo decode(PcapHeader header, JBuffer buffer) {
+        return decode(header, buffer, null);
+    }
+
+    /*
+     * Decodes into an object kept by this decoder and copies it into ring, so a packet
+     * costs no allocation. False when the packet is not IP or the ring is full.
+     */
+    public boolean decodeTo(PcapHeader header, JBuffer buffer, PacketRing ring) {
+        BasicPacketInfo packetInfo = decode(header, buffer, reused);
+        return packetInfo != null && ring.offer(packetInfo);
+    }
+
+    private BasicPacketInfo decode(PcapHeader header, JBuffer buffer, BasicPacketInfo into) {
+        if (!isDirect()) {
+            PcapPacket packet = new PcapPacket(header, buffer);
+            packet.scan(JRegistry.mapDLTToId(linkType));
+            return PacketReader.getBasicPacketInfo(packet, readIP4, readIP6);
+        }
+
+        int caplen = Math.min(header.caplen(), buffer.size());
+        if (caplen > scratch.capacity()) {
+            scratch = ByteBuffer.allocate(caplen);
+        }
+        scratch.clear();
+        buffer.transferTo(scratch, 0, caplen);
+
+        // one id per captured packet, as PacketReader counts them
+        long packetId = generator.nextId();
+        return decoder.decode(scratch, 0, caplen, linkType, header.timestampInMicros(), packetId, into);
+    }
+}
@@ -0,0 +1,510 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import org.jnetpcap.PcapClosedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Pure Java offline reader for pcap (either byte order, microsecond or nanosecond
+ * timestamps) and pcapng captures.
+ *
+ * The file is memory mapped in windows of WINDOW_SIZE bytes and every frame is decoded in
+ * place by a PacketDecoder, so neither the native libpcap nor a copy of the packet is
+ * needed. Like PacketReader, every record read takes the next packet id, decoded or not.
+ *
+ * nextFrame() and writeFrame() copy records to a PcapWriter without decoding them, and
+ * seek() and seekTime() go straight to a record of a classic pcap file whose position was
+ * kept in PacketOffsets by setPacketOffsets() when the file was first read.
+ * setTimeWindow() limits nextPacket() to the packets of a time window, setSampler() to
+ * 1 in N packets.
+ */
+public class MappedPcapReader implements PacketSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedPcapReader.class);
+
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+    // larger records are taken for a corrupt file
+    private static final int MAX_RECORD = 16 * 1024 * 1024;
+
+    private static final int PCAP_MAGIC_MICROS = 0xA1B2C3D4;
+    private static final int PCAP_MAGIC_NANOS = 0xA1B23C4D;
+    private static final int PCAPNG_SECTION_HEADER = 0x0A0D0D0A;
+    private static final int PCAPNG_BYTE_ORDER_MAGIC = 0x1A2B3C4D;
+
+    private static final int PCAPNG_INTERFACE_DESCRIPTION = 1;
+    private static final int PCAPNG_OBSOLETE_PACKET = 2;
+    private static final int PCAPNG_SIMPLE_PACKET = 3;
+    private static final int PCAPNG_ENHANCED_PACKET = 6;
+    private static final int PCAPNG_OPTION_TSRESOL = 9;
+    private static final int PCAPNG_OPTION_TSOFFSET = 14;
+
+    private static final long MICROS = 1000000L;
+    // of libpcap, for pcapng whose interfaces each have their own
+    private static final int MAX_SNAPLEN = 262144;
+
+    private final String file;
+    private final PacketDecoder decoder;
+    private final IdGenerator generator = new IdGenerator();
+
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private long fileSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int windowLength;
+    private ByteOrder order;
+    private long position;
+
+    private boolean pcapng;
+    // classic pcap
+    private int linkType;
+    private boolean nanos;
+    private int snapLength = MAX_SNAPLEN;
+    // pcapng, interfaces of the current section
+    private List<Interface> interfaces = new ArrayList<>();
+
+    // the record found by next()
+    private long frameStart;
+    private int frameOffset;
+    private int frameLength;
+    private int frameWireLength;
+    private int frameLinkType;
+    private long frameMicros;
+
+    private PacketOffsets offsets;
+    private long latestMicros = Long.MIN_VALUE; // of the records read, for offsets
+
+    // time window of nextPacket(), micros
+    private long fromMicros = Long.MIN_VALUE;
+    private long toMicros = Long.MAX_VALUE;
+    private boolean windowEnded;
+    private FlowSampler sampler; // packet sampling, null for all
+    private long sampleCount; // packets sampler decided for
+
+    private long firstPacket;
+    private long lastPacket;
+
+    public MappedPcapReader(String filename) {
+        this(filename, true, false);
+    }
+
+    public MappedPcapReader(String filename, boolean readIP4, boolean readIP6) {
+        super();
+        this.file = filename;
+        this.decoder = new PacketDecoder(generator, readIP4, readIP6);
+        try {
+            raf = new RandomAccessFile(filename, "r");
+            channel = raf.getChannel();
+            fileSize = channel.size();
+            readFileHeader();
+        } catch (IOException | RuntimeException e) {
+            close();
+            String ex = String.format("Can not read capture file %s: %s", filename, e.getMessage());
+            throw new IllegalArgumentException(ex, e);
+        }
+    }
+
+    /* true when the file starts with a pcap or pcapng magic number */
+    public static boolean isCaptureFile(File file) {
+        if (file == null || !file.isFile()) {
+            return false;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.length() < 4) {
+                return false;
+            }
+            int magic = in.readInt();
+            return magic == PCAP_MAGIC_MICROS || magic == Integer.reverseBytes(PCAP_MAGIC_MICROS)
+                    || magic == PCAP_MAGIC_NANOS || magic == Integer.reverseBytes(PCAP_MAGIC_NANOS)
+                    || magic == PCAPNG_SECTION_HEADER;
+        } catch (IOException e) {
+            logger.debug(e.getMessage());
+            return false;
+        }
+    }
+
+    private void readFileHeader() throws IOException {
+        order = ByteOrder.BIG_ENDIAN;
+        int at = map(0, 4);
+        if (at < 0) {
+            throw new IOException("file too short");
+        }
+        int magic = window.getInt(at);
+        if (magic == PCAPNG_SECTION_HEADER) {
+            pcapng = true;
+            position = 0;
+            return;
+        }
+
+        if (magic == PCAP_MAGIC_MICROS || magic == PCAP_MAGIC_NANOS) {
+            order = ByteOrder.BIG_ENDIAN;
+        } else if (Integer.reverseBytes(magic) == PCAP_MAGIC_MICROS
+                || Integer.reverseBytes(magic) == PCAP_MAGIC_NANOS) {
+            order = ByteOrder.LITTLE_ENDIAN;
+            magic = Integer.reverseBytes(magic);
+        } else {
+            throw new IOException(String.format("unknown magic number 0x%08x", magic));
+        }
+        nanos = magic == PCAP_MAGIC_NANOS;
+        window.order(order);
+
+        at = map(0, 24);
+        if (at < 0) {
+            throw new IOException("truncated pcap header");
+        }
+        snapLength = window.getInt(at + 16);
+        linkType = window.getInt(at + 20) & 0x0FFFFFFF;
+        if (!PacketDecoder.isSupportedLinkType(linkType)) {
+            logger.info("{}: link type {} is not decoded", file, linkType);
+        }
+        position = 24;
+    }
+
+    @Override
+    public BasicPacketInfo nextPacket() {
+        long packetId;
+        do {
+            packetId = nextFrame();
+            if (packetId < 0) {
+                logger.debug("Read All packets on {}", file);
+                throw new PcapClosedException();
+            }
+            // records before the window and the ones not sampled are skipped without decoding them
+        } while (frameMicros < fromMicros
+                || (frameMicros <= toMicros && sampler != null && !sampler.samplePacket(sampleCount++)));
+        if (frameMicros > toMicros) {
+            windowEnded = true;
+            logger.debug("Read the packets of the time window on {}", file);
+            throw new PcapClosedException();
+        }
+
+        if (firstPacket == 0L) {
+            firstPacket = frameMicros / 1000L;
+        }
+        lastPacket = frameMicros / 1000L;
+        try {
+            return decoder.decode(window, frameOffset, frameLength, frameLinkType, frameMicros, packetId);
+        } catch (RuntimeException e) {
+            logger.debug(e.getMessage());
+            return null;
+        }
+    }
+
+    /*
+     * Keeps the position of every offsets.getInterval()-th packet in offsets while the
+     * file is read with nextPacket() from the start. Classic pcap only: a pcapng record
+     * can not be read without the interface blocks before it.
+     */
+    public void setPacketOffsets(PacketOffsets offsets) {
+        this.offsets = pcapng ? null : offsets;
+    }
+
+    public boolean canSeek() {
+        return !pcapng && channel != null;
+    }
+
+    /*
+     * nextPacket() gives the packets with a timestamp in [fromMicros, toMicros] only, and
+     * ends at the first packet after toMicros.
+     */
+    public void setTimeWindow(long fromMicros, long toMicros) {
+        if (fromMicros > toMicros) {
+            String ex = String.format("from=%d,to=%d", fromMicros, toMicros);
+            throw new IllegalArgumentException(ex);
+        }
+        this.fromMicros = fromMicros;
+        this.toMicros = toMicros;
+    }
+
+    /* nextPacket() only decodes the packets sampler takes */
+    public void setSampler(FlowSampler sampler) {
+        this.sampler = sampler;
+    }
+
+    /* goes to the last kept record before the packets of time micros, false when there is none */
+    public boolean seekTime(PacketOffsets offsets, long micros) {
+        long packetId = offsets.timeCheckpointId(micros);
+        if (packetId <= 1 || !canSeek()) {
+            return false;
+        }
+        seek(offsets.checkpointOffset(packetId), packetId);
+        return true;
+    }
+
+    /* the next record read is the one at file position offset, and it is packet packetId */
+    public void seek(long offset, long packetId) {
+        if (!canSeek() || offset < 24 || offset > fileSize || packetId < 1) {
+            String ex = String.format("%s: can not seek to %d (packet %d)", file, offset, packetId);
+            throw new IllegalArgumentException(ex);
+        }
+        position = offset;
+        generator.reset(packetId - 1);
+        // the records skipped are not kept
+        offsets = null;
+    }
+
+    /* reads the next record without decoding it; its packet id, or -1 at the end of the file */
+    public long nextFrame() {
+        if (windowEnded || !next()) {
+            if (offsets != null && !windowEnded) {
+                offsets.setComplete(true);
+            }
+            return -1L;
+        }
+        long packetId = generator.nextId();
+        if (offsets != null && (packetId - 1) % offsets.getInterval() == 0) {
+            offsets.add(frameStart, latestMicros);
+        }
+        latestMicros = Math.max(latestMicros, frameMicros);
+        return packetId;
+    }
+
+    /* copies the record found by nextFrame() as it is; nanosecond timestamps keep their micros */
+    public void writeFrame(PcapWriter writer) throws IOException {
+        writer.write(frameMicros, window, frameOffset, frameLength, frameWireLength);
+    }
+
+    public int getFrameLinkType() {
+        return frameLinkType;
+    }
+
+    /* of the file header, MAX_SNAPLEN for pcapng */
+    public int getSnapLength() {
+        return snapLength;
+    }
+
+    private boolean next() {
+        if (channel == null) {
+            return false;
+        }
+        try {
+            return pcapng ? nextPcapNg() : nextPcap();
+        } catch (IOException e) {
+            logger.debug("{}: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean nextPcap() throws IOException {
+        int at = map(position, 16);
+        if (at < 0) {
+            return false;
+        }
+        long seconds = window.getInt(at) & 0xFFFFFFFFL;
+        long fraction = window.getInt(at + 4) & 0xFFFFFFFFL;
+        int capLength = window.getInt(at + 8);
+        if (capLength < 0 || capLength > MAX_RECORD) {
+            logger.debug("{}: bad record length {} at {}", file, capLength, position);
+            return false;
+        }
+        at = map(position, 16 + capLength);
+        if (at < 0) {
+            logger.debug("{}: truncated record at {}", file, position);
+            return false;
+        }
+        frameStart = position;
+        position += 16 + capLength;
+
+        frameOffset = at + 16;
+        frameLength = capLength;
+        frameWireLength = window.getInt(at + 12);
+        frameLinkType = linkType;
+        frameMicros = seconds * MICROS + (nanos ? fraction / 1000L : fraction);
+        return true;
+    }
+
+    private boolean nextPcapNg() throws IOException {
+        while (true) {
+            int at = map(position, 12);
+            if (at < 0) {
+                return false;
+            }
+            int type = window.getInt(at);
+            if (type == PCAPNG_SECTION_HEADER) {
+                at = readSectionHeader();
+            }
+            int blockLength = window.getInt(at + 4);
+            if (blockLength < 12 || blockLength > MAX_RECORD || (blockLength & 3) != 0) {
+                logger.debug("{}: bad block length {} at {}", file, blockLength, position);
+                return false;
+            }
+            at = map(position, blockLength);
+            if (at < 0) {
+                logger.debug("{}: truncated block at {}", file, position);
+                return false;
+            }
+            long blockStart = position;
+            position += blockLength;
+
+            switch (type) {
+                case PCAPNG_INTERFACE_DESCRIPTION:
+                    interfaces.add(readInterface(at, blockLength));
+                    break;
+                case PCAPNG_ENHANCED_PACKET:
+                case PCAPNG_OBSOLETE_PACKET: {
+                    if (blockLength < 32) {
+                        break;
+                    }
+                    int id = type == PCAPNG_ENHANCED_PACKET ? window.getInt(at + 8) : window.getShort(at + 8) & 0xFFFF;
+                    if (id < 0 || id >= interfaces.size()) {
+                        logger.debug("{}: packet of unknown interface {} at {}", file, id, blockStart);
+                        break;
+                    }
+                    Interface nic = interfaces.get(id);
+                    long ts = ((window.getInt(at + 12) & 0xFFFFFFFFL) << 32) | (window.getInt(at + 16) & 0xFFFFFFFFL);
+                    int capLength = window.getInt(at + 20);
+                    if (capLength < 0 || 28 + capLength > blockLength - 4) {
+                        logger.debug("{}: bad packet length {} at {}", file, capLength, blockStart);
+                        break;
+                    }
+                    frameStart = blockStart;
+                    frameOffset = at + 28;
+                    frameLength = capLength;
+                    frameWireLength = window.getInt(at + 24);
+                    frameLinkType = nic.linkType;
+                    frameMicros = nic.toMicros(ts);
+                    return true;
+                }
+                case PCAPNG_SIMPLE_PACKET: {
+                    if (interfaces.isEmpty() || blockLength < 16) {
+                        break;
+                    }
+                    int wireLength = window.getInt(at + 8);
+                    frameStart = blockStart;
+                    frameOffset = at + 12;
+                    frameLength = Math.min(wireLength, blockLength - 16);
+                    frameWireLength = wireLength;
+                    frameLinkType = interfaces.get(0).linkType;
+                    // simple packet blocks carry no timestamp
+                    frameMicros = 0L;
+                    return true;
+                }
+                default:
+                    // name resolution, statistics, custom blocks...
+                    break;
+            }
+        }
+    }
+
+    /* switches to the byte order of the new section and returns its index in the window */
+    private int readSectionHeader() throws IOException {
+        int at = map(position, 12);
+        int byteOrderMagic = window.order(ByteOrder.BIG_ENDIAN).getInt(at + 8);
+        if (byteOrderMagic == PCAPNG_BYTE_ORDER_MAGIC) {
+            order = ByteOrder.BIG_ENDIAN;
+        } else if (byteOrderMagic == Integer.reverseBytes(PCAPNG_BYTE_ORDER_MAGIC)) {
+            order = ByteOrder.LITTLE_ENDIAN;
+        } else {
+            throw new IOException(String.format("bad byte order magic 0x%08x", byteOrderMagic));
+        }
+        window.order(order);
+        interfaces = new ArrayList<>();
+        return at;
+    }
+
+    private Interface readInterface(int at, int blockLength) {
+        Interface nic = new Interface();
+        nic.linkType = window.getShort(at + 8) & 0xFFFF;
+        if (!PacketDecoder.isSupportedLinkType(nic.linkType)) {
+            logger.info("{}: link type {} is not decoded", file, nic.linkType);
+        }
+
+        int option = at + 16;
+        int end = at + blockLength - 4;
+        while (option + 4 <= end) {
+            int code = window.getShort(option) & 0xFFFF;
+            int length = window.getShort(option + 2) & 0xFFFF;
+            int value = option + 4;
+            if (code == 0 || value + length > end) {
+                break;
+            }
+            if (code == PCAPNG_OPTION_TSRESOL && length >= 1) {
+                int resolution = window.get(value) & 0xFF;
+                int exponent = resolution & 0x7F;
+                if ((resolution & 0x80) != 0) {
+                    nic.unitsPerSecond = exponent < 63 ? 1L << exponent : Long.MAX_VALUE;
+                } else {
+                    long units = 1L;
+                    for (int i = 0; i < exponent && units <= Long.MAX_VALUE / 10; i++) {
+                        units *= 10;
+                    }
+                    nic.unitsPerSecond = units;
+                }
+            } else if (code == PCAPNG_OPTION_TSOFFSET && length >= 8) {
+                nic.offsetSeconds = window.getLong(value);
+            }
+            option = value + ((length + 3) & ~3);
+        }
+        return nic;
+    }
+
+    /*
+     * Makes [pos, pos + length) of the file visible in the current window and returns its
+     * index in the window, -1 when the file ends before.
+     */
+    private int map(long pos, int length) throws IOException {
+        if (pos >= windowStart && pos + length <= windowStart + windowLength && window != null) {
+            return (int) (pos - windowStart);
+        }
+        if (pos + length > fileSize) {
+            return -1;
+        }
+        int size = (int) Math.min(Math.max(WINDOW_SIZE, length), fileSize - pos);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, pos, size);
+        window.order(order);
+        windowStart = pos;
+        windowLength = size;
+        return 0;
+    }
+
+    public long getFirstPacket() {
+        return firstPacket;
+    }
+
+    public long getLastPacket() {
+        return lastPacket;
+    }
+
+    @Override
+    public void close() {
+        window = null;
+        try {
+            if (raf != null) {
+                raf.close();
+            }
+        } catch (IOException e) {
+            logger.debug(e.getMessage());
+        }
+        raf = null;
+        channel = null;
+    }
+
+    private static final class Interface {
+        private int linkType;
+        private long unitsPerSecond = MICROS;
+        private long offsetSeconds;
+
+        private long toMicros(long ts) {
+            long seconds = Long.divideUnsigned(ts, unitsPerSecond);
+            long fraction = Long.remainderUnsigned(ts, unitsPerSecond);
+            long micros;
+            if (unitsPerSecond == MICROS) {
+                micros = fraction;
+            } else if (unitsPerSecond < MICROS || unitsPerSecond <= Long.MAX_VALUE / MICROS) {
+                micros = fraction * MICROS / unitsPerSecond;
+            } else {
+                micros = fraction / (unitsPerSecond / MICROS);
+            }
+            return (seconds + offsetSeconds) * MICROS + micros;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package cic.cs.unb.ca.jnetpcap;
+
+/*
+ * Set of packet serial numbers, one bit each, walked in increasing order with
+ * nextSetBit(). Like java.util.BitSet, but indexed by long: a large capture has more
+ * packets than an int counts.
+ */
+public class PacketBitmap {
+
+    private long[] words = new long[16];
+    private long cardinality;
+
+    public PacketBitmap() {
+        super();
+    }
+
+    public void set(long id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("id=" + id);
+        }
+        long w = id >>> 6;
+        if (w >= words.length) {
+            if (w >= Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("id=" + id);
+            }
+            long[] grown = new long[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(w + 1, words.length * 2L))];
+            System.arraycopy(words, 0, grown, 0, words.length);
+            words = grown;
+        }
+        long bit = 1L << id;
+        if ((words[(int) w] & bit) == 0) {
+            words[(int) w] |= bit;
+            cardinality++;
+        }
+    }
+
+    public boolean get(long id) {
+        long w = id >>> 6;
+        return id >= 0 && w < words.length && (words[(int) w] & (1L << id)) != 0;
+    }
+
+    /* the first id >= from in the set, -1 when there is none */
+    public long nextSetBit(long from) {
+        if (from < 0) {
+            from = 0;
+        }
+        int w = (int) Math.min(from >>> 6, words.length);
+        if (w >= words.length) {
+            return -1L;
+        }
+        long word = words[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return ((long) w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == words.length) {
+                return -1L;
+            }
+            word = words[w];
+        }
+    }
+
+    public long cardinality() {
+        return cardinality;
+    }
+}
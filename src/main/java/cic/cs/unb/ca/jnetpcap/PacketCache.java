@@ -0,0 +1,112 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/*
+ * Sidecar file holding the decoded packets of a capture, everything the flow generator
+ * reads from a BasicPacketInfo, one fixed width little endian record per packet:
+ *
+ *   0  timestamp      8   as PacketReader gives it (micros for IPv4, millis for IPv6)
+ *   8  packet id      8
+ *  16  payload bytes  4
+ *  20  header bytes   2
+ *  22  TCP window     2
+ *  24  src port       2
+ *  26  dst port       2
+ *  28  protocol       1
+ *  29  TCP flags      1   BasicPacketInfo.getFlags()
+ *  30  address length 1   4 or 16
+ *  31  unused         1
+ *  32  src, dst           addressWidth bytes each, an IPv4 address in the first 4
+ *
+ * addressWidth is 4 (40 byte records) when the capture was read for IPv4 only, 16 (64
+ * bytes) otherwise. The HEADER_SIZE bytes in front name the source capture by length and
+ * modification time and the IP versions it was read for, so a stale cache is not
+ * replayed. The packet counts in the header are only written by a complete run.
+ */
+public final class PacketCache {
+    public static final Logger logger = LoggerFactory.getLogger(PacketCache.class);
+
+    public static final String SUFFIX = ".pktcache";
+
+    static final long MAGIC = 0x31304B5043504D43L; // "CMPCPK01" read as little endian
+    static final int HEADER_SIZE = 64;
+    static final int FIXED_SIZE = 32;
+
+    // header fields
+    static final int H_MAGIC = 0;
+    static final int H_ADDRESS_WIDTH = 8;
+    static final int H_RECORD_SIZE = 12;
+    static final int H_READ_IP4 = 16;
+    static final int H_READ_IP6 = 17;
+    static final int H_COMPLETE = 18;
+    static final int H_SOURCE_LENGTH = 24;
+    static final int H_SOURCE_MODIFIED = 32;
+    static final int H_PACKETS = 40;
+    static final int H_RECORDS = 48;
+
+    // record fields
+    static final int R_TIMESTAMP = 0;
+    static final int R_ID = 8;
+    static final int R_PAYLOAD = 16;
+    static final int R_HEADER = 20;
+    static final int R_WINDOW = 22;
+    static final int R_SRC_PORT = 24;
+    static final int R_DST_PORT = 26;
+    static final int R_PROTOCOL = 28;
+    static final int R_FLAGS = 29;
+    static final int R_ADDRESS_LENGTH = 30;
+
+    private PacketCache() {
+    }
+
+    static int recordSize(int addressWidth) {
+        return FIXED_SIZE + 2 * addressWidth;
+    }
+
+    /* the cache file of a capture read with these settings, next to the flow csv */
+    public static File cacheFile(String outPath, String fileName) {
+        return new File(outPath, fileName + SUFFIX);
+    }
+
+    /* true when cache is a complete cache of source read for the same IP versions */
+    public static boolean isValid(File cache, File source, boolean readIP4, boolean readIP6) {
+        if (cache == null || !cache.isFile() || cache.length() < HEADER_SIZE) {
+            return false;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(cache, "r")) {
+            ByteBuffer header = readHeader(in.getChannel());
+            int recordSize = header.getInt(H_RECORD_SIZE);
+            return header.getLong(H_MAGIC) == MAGIC
+                    && header.get(H_COMPLETE) == 1
+                    && (header.get(H_READ_IP4) == 1) == readIP4
+                    && (header.get(H_READ_IP6) == 1) == readIP6
+                    && header.getLong(H_SOURCE_LENGTH) == source.length()
+                    && header.getLong(H_SOURCE_MODIFIED) == source.lastModified()
+                    && recordSize == recordSize(header.getInt(H_ADDRESS_WIDTH))
+                    && in.length() == HEADER_SIZE + header.getLong(H_RECORDS) * recordSize;
+        } catch (IOException e) {
+            logger.debug(e.getMessage());
+            return false;
+        }
+    }
+
+    static ByteBuffer readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException("truncated packet cache header");
+            }
+        }
+        header.clear();
+        return header;
+    }
+}
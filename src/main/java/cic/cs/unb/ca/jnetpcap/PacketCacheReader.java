@@ -0,0 +1,145 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import org.jnetpcap.PcapClosedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static cic.cs.unb.ca.jnetpcap.PacketCache.*;
+
+/*
+ * Replays a PacketCache file, the packets come back as the reader of the capture gave
+ * them, ids included. The records are memory mapped in windows of whole records. Packets
+ * the capture reader could not decode follow the decoded ones as nulls, so the packet
+ * counts of a replay match the first run.
+ */
+public class PacketCacheReader implements PacketSource {
+    public static final Logger logger = LoggerFactory.getLogger(PacketCacheReader.class);
+
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final IdGenerator generator = new IdGenerator();
+
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private int addressWidth;
+    private int recordSize;
+    private long packets;
+    private long records;
+
+    private MappedByteBuffer window;
+    private long windowFirst; // first record of the window
+    private int windowRecords;
+    private long next;
+
+    public PacketCacheReader(File file) {
+        super();
+        try {
+            raf = new RandomAccessFile(file, "r");
+            channel = raf.getChannel();
+            ByteBuffer header = readHeader(channel);
+            if (header.getLong(H_MAGIC) != MAGIC || header.get(H_COMPLETE) != 1) {
+                throw new IOException("not a complete packet cache");
+            }
+            addressWidth = header.getInt(H_ADDRESS_WIDTH);
+            recordSize = header.getInt(H_RECORD_SIZE);
+            packets = header.getLong(H_PACKETS);
+            records = header.getLong(H_RECORDS);
+            if (recordSize != recordSize(addressWidth) || channel.size() < HEADER_SIZE + records * recordSize) {
+                throw new IOException("truncated packet cache");
+            }
+        } catch (IOException e) {
+            close();
+            String ex = String.format("Can not read packet cache %s: %s", file.getPath(), e.getMessage());
+            throw new IllegalArgumentException(ex, e);
+        }
+    }
+
+    public long getPacketCount() {
+        return packets;
+    }
+
+    public long getRecordCount() {
+        return records;
+    }
+
+    @Override
+    public BasicPacketInfo nextPacket() {
+        if (next >= records) {
+            if (next++ < packets) {
+                return null;
+            }
+            throw new PcapClosedException();
+        }
+        if (window == null || next >= windowFirst + windowRecords) {
+            mapWindow();
+        }
+
+        int at = (int) (next - windowFirst) * recordSize;
+        next++;
+
+        BasicPacketInfo packetInfo = new BasicPacketInfo(generator, window.getLong(at + R_ID));
+        int src = at + FIXED_SIZE;
+        int dst = src + addressWidth;
+        if (window.get(at + R_ADDRESS_LENGTH) == 16) {
+            packetInfo.setSrcIPv6(bigEndian(src, 8), bigEndian(src + 8, 8));
+            packetInfo.setDstIPv6(bigEndian(dst, 8), bigEndian(dst + 8, 8));
+        } else {
+            packetInfo.setSrcIPv4((int) bigEndian(src, 4));
+            packetInfo.setDstIPv4((int) bigEndian(dst, 4));
+        }
+        packetInfo.setSrcPort(window.getShort(at + R_SRC_PORT) & 0xFFFF);
+        packetInfo.setDstPort(window.getShort(at + R_DST_PORT) & 0xFFFF);
+        packetInfo.setProtocol(window.get(at + R_PROTOCOL) & 0xFF);
+        packetInfo.setTimeStamp(window.getLong(at + R_TIMESTAMP));
+        packetInfo.setPayloadBytes(window.getInt(at + R_PAYLOAD) & 0xFFFFFFFFL);
+        packetInfo.setHeaderBytes(window.getShort(at + R_HEADER) & 0xFFFF);
+        packetInfo.setTCPWindow(window.getShort(at + R_WINDOW) & 0xFFFF);
+        packetInfo.setFlags(window.get(at + R_FLAGS) & 0xFF);
+        return packetInfo;
+    }
+
+    /* addresses are stored in network order */
+    private long bigEndian(int at, int length) {
+        long v = 0L;
+        for (int i = 0; i < length; i++) {
+            v = (v << 8) | (window.get(at + i) & 0xFFL);
+        }
+        return v;
+    }
+
+    private void mapWindow() {
+        int count = (int) Math.min(WINDOW_SIZE / recordSize, records - next);
+        try {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + next * recordSize,
+                    (long) count * recordSize);
+        } catch (IOException e) {
+            logger.error("Can not map packet cache: {}", e.getMessage());
+            throw new PcapClosedException();
+        }
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        windowFirst = next;
+        windowRecords = count;
+    }
+
+    @Override
+    public void close() {
+        window = null;
+        try {
+            if (raf != null) {
+                raf.close();
+            }
+        } catch (IOException e) {
+            logger.debug(e.getMessage());
+        }
+        raf = null;
+        channel = null;
+    }
+}
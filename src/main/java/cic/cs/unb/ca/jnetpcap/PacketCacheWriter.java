@@ -0,0 +1,174 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import static cic.cs.unb.ca.jnetpcap.PacketCache.*;
+
+/*
+ * Writes the packets of one capture to a PacketCache file while it is decoded.
+ *
+ * write() takes every packet the reader returned, null for one that was not decoded, so
+ * the replay gives the same packet counts. The header is marked complete by close() only;
+ * a run that is cut short leaves a cache that PacketCache.isValid() turns down.
+ */
+public class PacketCacheWriter implements Closeable {
+    public static final Logger logger = LoggerFactory.getLogger(PacketCacheWriter.class);
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final File file;
+    private final File source;
+    private final boolean readIP4;
+    private final boolean readIP6;
+    private final int addressWidth;
+    private final int recordSize;
+    private final ByteBuffer buffer;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private long packets;
+    private long records;
+
+    public PacketCacheWriter(File file, File source, boolean readIP4, boolean readIP6) {
+        super();
+        this.file = file;
+        this.source = source;
+        this.readIP4 = readIP4;
+        this.readIP6 = readIP6;
+        this.addressWidth = readIP6 ? 16 : 4;
+        this.recordSize = recordSize(addressWidth);
+        int capacity = BUFFER_SIZE - BUFFER_SIZE % recordSize;
+        this.buffer = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(0);
+            channel = raf.getChannel();
+            writeHeader(false);
+            channel.position(HEADER_SIZE);
+        } catch (IOException e) {
+            abandon();
+            String ex = String.format("Can not write packet cache %s: %s", file.getPath(), e.getMessage());
+            throw new IllegalArgumentException(ex, e);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getRecordCount() {
+        return records;
+    }
+
+    public void write(BasicPacketInfo packet) {
+        if (channel == null) {
+            return;
+        }
+        packets++;
+        if (packet == null) {
+            return;
+        }
+        if (!buffer.hasRemaining()) {
+            try {
+                writeBuffer();
+            } catch (IOException e) {
+                // the header stays incomplete, the cache is not used
+                logger.error("Can not write packet cache {}: {}", file.getPath(), e.getMessage());
+                abandon();
+                return;
+            }
+        }
+
+        int at = buffer.position();
+        buffer.putLong(at + R_TIMESTAMP, packet.getTimeStamp());
+        buffer.putLong(at + R_ID, packet.getId());
+        buffer.putInt(at + R_PAYLOAD, (int) packet.getPayloadBytes());
+        buffer.putShort(at + R_HEADER, (short) packet.getHeaderBytes());
+        buffer.putShort(at + R_WINDOW, (short) packet.getTCPWindow());
+        buffer.putShort(at + R_SRC_PORT, (short) packet.getSrcPort());
+        buffer.putShort(at + R_DST_PORT, (short) packet.getDstPort());
+        buffer.put(at + R_PROTOCOL, (byte) packet.getProtocol());
+        buffer.put(at + R_FLAGS, (byte) packet.getFlags());
+        buffer.put(at + R_ADDRESS_LENGTH, (byte) packet.getAddressLength());
+        buffer.put(at + R_ADDRESS_LENGTH + 1, (byte) 0);
+        putAddress(at + FIXED_SIZE, packet.getSrcHi(), packet.getSrcLo(), packet.getAddressLength());
+        putAddress(at + FIXED_SIZE + addressWidth, packet.getDstHi(), packet.getDstLo(), packet.getAddressLength());
+        buffer.position(at + recordSize);
+        records++;
+    }
+
+    @Override
+    public void close() {
+        if (channel != null) {
+            try {
+                writeBuffer();
+                writeHeader(true);
+                channel.force(false);
+            } catch (IOException e) {
+                logger.error("Can not complete packet cache {}: {}", file.getPath(), e.getMessage());
+            }
+        }
+        abandon();
+    }
+
+    private void abandon() {
+        try {
+            if (raf != null) {
+                raf.close();
+            }
+        } catch (IOException e) {
+            logger.debug(e.getMessage());
+        }
+        raf = null;
+        channel = null;
+    }
+
+    /* network order, an IPv4 address in the first 4 bytes */
+    private void putAddress(int at, long hi, long lo, int length) {
+        for (int i = 0; i < addressWidth; i++) {
+            byte b = 0;
+            if (length == 4 && i < 4) {
+                b = (byte) (lo >>> (24 - 8 * i));
+            } else if (length == 16) {
+                b = (byte) (i < 8 ? hi >>> (56 - 8 * i) : lo >>> (120 - 8 * i));
+            }
+            buffer.put(at + i, b);
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private void writeHeader(boolean complete) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(H_MAGIC, MAGIC);
+        header.putInt(H_ADDRESS_WIDTH, addressWidth);
+        header.putInt(H_RECORD_SIZE, recordSize);
+        header.put(H_READ_IP4, (byte) (readIP4 ? 1 : 0));
+        header.put(H_READ_IP6, (byte) (readIP6 ? 1 : 0));
+        header.put(H_COMPLETE, (byte) (complete ? 1 : 0));
+        header.putLong(H_SOURCE_LENGTH, source.length());
+        header.putLong(H_SOURCE_MODIFIED, source.lastModified());
+        header.putLong(H_PACKETS, packets);
+        header.putLong(H_RECORDS, records);
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Decodes link layer frames held in a ByteBuffer into BasicPacketInfo, reading the
+ * Ethernet/IPv4/IPv6/TCP/UDP fields at their fixed offsets instead of scanning the frame
+ * with jnetpcap.
+ *
+ * The result follows PacketReader: an IPv4 packet gets a timestamp in microseconds, an
+ * IPv6 packet one in milliseconds, IP packets that are neither TCP nor UDP (or whose
+ * transport header is not captured) keep protocol 0, and frames without an IP header
+ * of an enabled version give null. Payload lengths are bounded by the IP total length,
+ * so Ethernet padding is not counted.
+ */
+public class PacketDecoder {
+
+    // pcap LINKTYPE_ values
+    public static final int LINKTYPE_NULL = 0;
+    public static final int LINKTYPE_ETHERNET = 1;
+    public static final int LINKTYPE_RAW = 101;
+    public static final int LINKTYPE_LOOP = 108;
+    public static final int LINKTYPE_LINUX_SLL = 113;
+    public static final int LINKTYPE_IPV4 = 228;
+    public static final int LINKTYPE_IPV6 = 229;
+    public static final int LINKTYPE_LINUX_SLL2 = 276;
+    // DLT_RAW as written by some BSDs
+    private static final int DLT_RAW_BSD = 12;
+    private static final int DLT_RAW_OPENBSD = 14;
+
+    private static final int ETHERTYPE_IPV4 = 0x0800;
+    private static final int ETHERTYPE_IPV6 = 0x86DD;
+    private static final int ETHERTYPE_VLAN = 0x8100;
+    private static final int ETHERTYPE_QINQ = 0x88A8;
+    private static final int ETHERTYPE_QINQ_OLD = 0x9100;
+
+    private static final int PROTO_TCP = 6;
+    private static final int PROTO_UDP = 17;
+
+    private final IdGenerator generator;
+    private final boolean readIP4;
+    private final boolean readIP6;
+
+    public PacketDecoder(IdGenerator generator, boolean readIP4, boolean readIP6) {
+        super();
+        this.generator = generator;
+        this.readIP4 = readIP4;
+        this.readIP6 = readIP6;
+    }
+
+    public static boolean isSupportedLinkType(int linkType) {
+        switch (linkType) {
+            case LINKTYPE_NULL:
+            case LINKTYPE_ETHERNET:
+            case LINKTYPE_RAW:
+            case DLT_RAW_BSD:
+            case DLT_RAW_OPENBSD:
+            case LINKTYPE_LOOP:
+            case LINKTYPE_LINUX_SLL:
+            case LINKTYPE_IPV4:
+            case LINKTYPE_IPV6:
+            case LINKTYPE_LINUX_SLL2:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /*
+     * buf holds the captured bytes of one frame in [offset, offset + length), they are
+     * read with absolute gets only.
+     */
+    public BasicPacketInfo decode(ByteBuffer buf, int offset, int length, int linkType, long timestampMicros,
+            long packetId) {
+        return decode(buf, offset, length, linkType, timestampMicros, packetId, null);
+    }
+
+    /*
+     * As above, but fills into instead of a new BasicPacketInfo when into is not null. The
+     * result is into or null, and into is only good until the next call.
+     */
+    public BasicPacketInfo decode(ByteBuffer buf, int offset, int length, int linkType, long timestampMicros,
+            long packetId, BasicPacketInfo into) {
+        int end = offset + length;
+        int ip;
+        switch (linkType) {
+            case LINKTYPE_ETHERNET: {
+                int typeAt = offset + 12;
+                if (typeAt + 2 > end) {
+                    return null;
+                }
+                int etherType = u16(buf, typeAt);
+                while (etherType == ETHERTYPE_VLAN || etherType == ETHERTYPE_QINQ
+                        || etherType == ETHERTYPE_QINQ_OLD) {
+                    typeAt += 4;
+                    if (typeAt + 2 > end) {
+                        return null;
+                    }
+                    etherType = u16(buf, typeAt);
+                }
+                if (!isIpEtherType(etherType)) {
+                    return null;
+                }
+                ip = typeAt + 2;
+                break;
+            }
+            case LINKTYPE_LINUX_SLL:
+                if (offset + 16 > end || !isIpEtherType(u16(buf, offset + 14))) {
+                    return null;
+                }
+                ip = offset + 16;
+                break;
+            case LINKTYPE_LINUX_SLL2:
+                if (offset + 20 > end || !isIpEtherType(u16(buf, offset))) {
+                    return null;
+                }
+                ip = offset + 20;
+                break;
+            case LINKTYPE_NULL:
+            case LINKTYPE_LOOP:
+                ip = offset + 4;
+                break;
+            case LINKTYPE_RAW:
+            case DLT_RAW_BSD:
+            case DLT_RAW_OPENBSD:
+            case LINKTYPE_IPV4:
+            case LINKTYPE_IPV6:
+                ip = offset;
+                break;
+            default:
+                return null;
+        }
+        if (ip >= end) {
+            return null;
+        }
+
+        int version = (buf.get(ip) & 0xFF) >>> 4;
+        if (version == 4 && readIP4) {
+            return decodeIpv4(buf, ip, end, timestampMicros, packetId, into);
+        } else if (version == 6 && readIP6) {
+            return decodeIpv6(buf, ip, end, timestampMicros, packetId, into);
+        }
+        return null;
+    }
+
+    private BasicPacketInfo decodeIpv4(ByteBuffer buf, int ip, int end, long timestampMicros, long packetId,
+            BasicPacketInfo into) {
+        if (ip + 20 > end) {
+            return null;
+        }
+        int headerLength = (buf.get(ip) & 0x0F) * 4;
+        if (headerLength < 20 || ip + headerLength > end) {
+            return null;
+        }
+        int totalLength = u16(buf, ip + 2);
+        int ipEnd = totalLength >= headerLength ? Math.min(ip + totalLength, end) : end;
+
+        BasicPacketInfo packetInfo = newPacketInfo(packetId, into);
+        packetInfo.setSrcIPv4(u32(buf, ip + 12));
+        packetInfo.setDstIPv4(u32(buf, ip + 16));
+        packetInfo.setTimeStamp(timestampMicros);
+
+        // only the first fragment carries the transport header
+        if ((u16(buf, ip + 6) & 0x1FFF) != 0) {
+            return packetInfo;
+        }
+        decodeTransport(packetInfo, buf, buf.get(ip + 9) & 0xFF, ip + headerLength, ipEnd, true);
+        return packetInfo;
+    }
+
+    private BasicPacketInfo decodeIpv6(ByteBuffer buf, int ip, int end, long timestampMicros, long packetId,
+            BasicPacketInfo into) {
+        if (ip + 40 > end) {
+            return null;
+        }
+        int payloadLength = u16(buf, ip + 4);
+        int ipEnd = payloadLength > 0 ? Math.min(ip + 40 + payloadLength, end) : end;
+
+        BasicPacketInfo packetInfo = newPacketInfo(packetId, into);
+        packetInfo.setSrcIPv6(u64(buf, ip + 8), u64(buf, ip + 16));
+        packetInfo.setDstIPv6(u64(buf, ip + 24), u64(buf, ip + 32));
+        packetInfo.setTimeStamp(timestampMicros / 1000L);
+
+        int next = buf.get(ip + 6) & 0xFF;
+        int at = ip + 40;
+        while (true) {
+            if (next == 0 || next == 43 || next == 60) {
+                // hop-by-hop, routing, destination options
+                if (at + 2 > ipEnd) {
+                    return packetInfo;
+                }
+                int extLength = ((buf.get(at + 1) & 0xFF) + 1) * 8;
+                next = buf.get(at) & 0xFF;
+                at += extLength;
+            } else if (next == 44) {
+                // fragment
+                if (at + 8 > ipEnd || (u16(buf, at + 2) & 0xFFF8) != 0) {
+                    return packetInfo;
+                }
+                next = buf.get(at) & 0xFF;
+                at += 8;
+            } else if (next == 51) {
+                // authentication header
+                if (at + 2 > ipEnd) {
+                    return packetInfo;
+                }
+                int extLength = ((buf.get(at + 1) & 0xFF) + 2) * 4;
+                next = buf.get(at) & 0xFF;
+                at += extLength;
+            } else {
+                break;
+            }
+        }
+        decodeTransport(packetInfo, buf, next, at, ipEnd, false);
+        return packetInfo;
+    }
+
+    private BasicPacketInfo newPacketInfo(long packetId, BasicPacketInfo into) {
+        if (into == null) {
+            return new BasicPacketInfo(generator, packetId);
+        }
+        into.reset(packetId);
+        return into;
+    }
+
+    private static void decodeTransport(BasicPacketInfo packetInfo, ByteBuffer buf, int protocol, int l4, int ipEnd,
+            boolean tcpDetails) {
+        if (protocol == PROTO_TCP) {
+            if (l4 + 20 > ipEnd) {
+                return;
+            }
+            int headerLength = ((buf.get(l4 + 12) & 0xFF) >>> 4) * 4;
+            if (headerLength < 20 || l4 + headerLength > ipEnd) {
+                return;
+            }
+            packetInfo.setSrcPort(u16(buf, l4));
+            packetInfo.setDstPort(u16(buf, l4 + 2));
+            packetInfo.setProtocol(PROTO_TCP);
+            packetInfo.setPayloadBytes(ipEnd - l4 - headerLength);
+            packetInfo.setHeaderBytes(headerLength);
+            if (tcpDetails) {
+                // PacketReader only reads flags and window of IPv4 segments
+                packetInfo.setTCPWindow(u16(buf, l4 + 14));
+                packetInfo.setFlags(buf.get(l4 + 13) & 0xFF);
+            }
+        } else if (protocol == PROTO_UDP) {
+            if (l4 + 8 > ipEnd) {
+                return;
+            }
+            packetInfo.setSrcPort(u16(buf, l4));
+            packetInfo.setDstPort(u16(buf, l4 + 2));
+            packetInfo.setPayloadBytes(ipEnd - l4 - 8);
+            packetInfo.setHeaderBytes(8);
+            packetInfo.setProtocol(PROTO_UDP);
+        }
+    }
+
+    private static boolean isIpEtherType(int etherType) {
+        return etherType == ETHERTYPE_IPV4 || etherType == ETHERTYPE_IPV6;
+    }
+
+    private static int u16(ByteBuffer buf, int at) {
+        return ((buf.get(at) & 0xFF) << 8) | (buf.get(at + 1) & 0xFF);
+    }
+
+    /* network order whatever the order of buf */
+    private static int u32(ByteBuffer buf, int at) {
+        return (u16(buf, at) << 16) | u16(buf, at + 2);
+    }
+
+    private static long u64(ByteBuffer buf, int at) {
+        return ((long) u32(buf, at) << 32) | (u32(buf, at + 4) & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,102 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/*
+ * The packet serial numbers of a flow, in the order they were added, without boxing.
+ *
+ * The numbers of a flow mostly grow by small steps, so each one is kept as the zigzag
+ * varint of its difference to the one before: one or two bytes a packet instead of a
+ * Long and its reference in an ArrayList. Read them with iterator().nextLong().
+ */
+public class PacketIdList implements Iterable<Long> {
+
+    private byte[] data = new byte[8];
+    private int length;
+    private int size;
+    private long last;
+
+    public PacketIdList() {
+        super();
+    }
+
+    public void add(long id) {
+        if (length + 10 > data.length) {
+            byte[] grown = new byte[data.length + (data.length >> 1) + 10];
+            System.arraycopy(data, 0, grown, 0, length);
+            data = grown;
+        }
+        long delta = id - last;
+        long v = (delta << 1) ^ (delta >> 63);
+        while ((v & ~0x7FL) != 0) {
+            data[length++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        data[length++] = (byte) v;
+        last = id;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long[] toArray() {
+        long[] ids = new long[size];
+        PrimitiveIterator.OfLong it = iterator();
+        for (int i = 0; i < size; i++) {
+            ids[i] = it.nextLong();
+        }
+        return ids;
+    }
+
+    /* sees the numbers added before it was made */
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private final int end = length;
+            private int position = 0;
+            private long id = 0;
+
+            @Override
+            public boolean hasNext() {
+                return position < end;
+            }
+
+            @Override
+            public long nextLong() {
+                if (position >= end) {
+                    throw new NoSuchElementException();
+                }
+                long v = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    v |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                id += (v >>> 1) ^ -(v & 1);
+                return id;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("[");
+        PrimitiveIterator.OfLong it = iterator();
+        while (it.hasNext()) {
+            if (text.length() > 1) {
+                text.append(", ");
+            }
+            text.append(it.nextLong());
+        }
+        return text.append("]").toString();
+    }
+}
@@ -0,0 +1,109 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Append-only file of the packets of every flow of a capture, written with packet
+ * tracking (--savepacketinfo) instead of one json file per flow id.
+ *
+ * Record n holds the packets of the n-th flow written to the flow csv of the capture,
+ * so it belongs to data row n of that file. After a HEADER_SIZE byte header the records
+ * follow each other; all numbers are unsigned LEB128 varints:
+ *
+ *   length                     bytes of the rest of the record
+ *   flow id length, flow id    UTF-8
+ *   range count
+ *   per range: gap, count - 1  gap is the first packet minus the end of the previous
+ *                              range (0 before the first), zigzag encoded
+ *
+ * A range is a run of consecutive packet serial numbers. A record cut short by a crash
+ * is left out by the reader, everything before it is read.
+ *
+ * exportJson() writes the <flow id>.json files packet tracking used to write.
+ */
+public final class PacketIndex {
+    public static final Logger logger = LoggerFactory.getLogger(PacketIndex.class);
+
+    public static final String SUFFIX = ".pktidx";
+
+    static final long MAGIC = 0x31304B5049504D43L; // "CMPIPK01" read as little endian
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16; // magic, version, reserved
+
+    private PacketIndex() {
+    }
+
+    /* the index of a capture, next to its flow csv */
+    public static File indexFile(String outPath, String fileName) {
+        return new File(outPath, fileName + SUFFIX);
+    }
+
+    /*
+     * Writes <flow id>.json into outPath for every flow id in the index, or for those in
+     * flowIds when it is not null. Returns the number of files written.
+     */
+    public static int exportJson(File index, String outPath, Set<String> flowIds) throws IOException {
+        // the flows of an id in record order, as "1", "2", ... in its json file
+        Map<String, List<long[]>> flows = new LinkedHashMap<>();
+        try (PacketIndexReader reader = new PacketIndexReader(index)) {
+            while (reader.next()) {
+                String flowId = reader.getFlowId();
+                if (reader.getPacketCount() == 0 || (flowIds != null && !flowIds.contains(flowId))) {
+                    continue;
+                }
+                flows.computeIfAbsent(flowId, k -> new ArrayList<>()).add(reader.getPacketIds());
+            }
+        }
+
+        File directory = new File(outPath);
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        int files = 0;
+        for (Map.Entry<String, List<long[]>> entry : flows.entrySet()) {
+            try (FileWriter file = new FileWriter(new File(directory, entry.getKey() + ".json"))) {
+                file.write(toJson(entry.getValue()));
+            }
+            files++;
+        }
+        return files;
+    }
+
+    static String toJson(List<long[]> flows) {
+        StringBuilder json = new StringBuilder("{\n");
+        for (int n = 0; n < flows.size(); n++) {
+            if (n > 0) {
+                json.append(",\n");
+            }
+            json.append("    \"").append(n + 1).append("\": [");
+            long[] ids = flows.get(n);
+            for (int i = 0; i < ids.length; i++) {
+                if (i > 0) {
+                    json.append(", ");
+                }
+                json.append(ids[i]);
+            }
+            json.append("]");
+        }
+        json.append("\n}");
+        return json.toString();
+    }
+
+    static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
@@ -0,0 +1,181 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import static cic.cs.unb.ca.jnetpcap.PacketIndex.*;
+
+/*
+ * Reads a PacketIndex file record by record:
+ *
+ *   while (reader.next()) {
+ *       reader.getRecordNumber(), reader.getFlowId(), reader.getPacketIds()
+ *   }
+ *
+ * The record number counts from 1, like the data rows of the flow csv.
+ */
+public class PacketIndexReader implements Closeable {
+    public static final Logger logger = LoggerFactory.getLogger(PacketIndexReader.class);
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final File file;
+    private DataInputStream input;
+    private byte[] body = new byte[256];
+    private int position;
+    private int length;
+    private boolean atEnd; // the last record ended where the file does
+
+    private long recordNumber;
+    private String flowId;
+    private long[] firsts = new long[16];
+    private int[] counts = new int[16];
+    private int ranges;
+    private long packetCount;
+
+    public PacketIndexReader(File file) {
+        super();
+        this.file = file;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+            byte[] header = new byte[HEADER_SIZE];
+            input.readFully(header);
+            ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getLong(0) != MAGIC) {
+                throw new IOException("not a packet index");
+            }
+            if (buffer.getInt(8) != VERSION) {
+                throw new IOException("packet index version " + buffer.getInt(8));
+            }
+        } catch (IOException e) {
+            close();
+            String ex = String.format("Can not read packet index %s: %s", file.getPath(), e.getMessage());
+            throw new IllegalArgumentException(ex, e);
+        }
+    }
+
+    /* false at the end of the index, or at a record cut short */
+    public boolean next() throws IOException {
+        if (input == null) {
+            return false;
+        }
+        try {
+            int size = (int) readVarint(input);
+            if (size > body.length) {
+                body = new byte[Math.max(size, body.length * 2)];
+            }
+            input.readFully(body, 0, size);
+            length = size;
+        } catch (EOFException e) {
+            if (!atEnd) {
+                logger.debug("{} ends in a partial record after record {}", file.getPath(), recordNumber);
+            }
+            close();
+            return false;
+        }
+
+        position = 0;
+        int idLength = (int) varint();
+        flowId = new String(body, position, idLength, StandardCharsets.UTF_8);
+        position += idLength;
+
+        ranges = (int) varint();
+        if (ranges > firsts.length) {
+            firsts = new long[Math.max(ranges, firsts.length * 2)];
+            counts = new int[firsts.length];
+        }
+        packetCount = 0;
+        long end = 0;
+        for (int r = 0; r < ranges; r++) {
+            firsts[r] = end + unzigzag(varint());
+            counts[r] = (int) varint() + 1;
+            end = firsts[r] + counts[r];
+            packetCount += counts[r];
+        }
+        if (position != length) {
+            throw new IOException(String.format("bad record %d in %s", recordNumber + 1, file.getPath()));
+        }
+        recordNumber++;
+        return true;
+    }
+
+    public long getRecordNumber() {
+        return recordNumber;
+    }
+
+    public String getFlowId() {
+        return flowId;
+    }
+
+    public long getPacketCount() {
+        return packetCount;
+    }
+
+    /* the packet serial numbers of the record, in the order of the flow */
+    public long[] getPacketIds() {
+        long[] ids = new long[(int) packetCount];
+        int n = 0;
+        for (int r = 0; r < ranges; r++) {
+            for (int c = 0; c < counts[r]; c++) {
+                ids[n++] = firsts[r] + c;
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (input != null) {
+                input.close();
+            }
+        } catch (IOException e) {
+            logger.debug(e.getMessage());
+        }
+        input = null;
+    }
+
+    // EOFException before the first byte of a record is the end of the index
+    private long readVarint(InputStream in) throws IOException {
+        long v = 0;
+        int shift = 0;
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                atEnd = shift == 0;
+                throw new EOFException();
+            }
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+            shift += 7;
+        }
+    }
+
+    private long varint() throws IOException {
+        long v = 0;
+        int shift = 0;
+        while (position < length) {
+            int b = body[position++];
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+            shift += 7;
+        }
+        throw new IOException(String.format("bad record %d in %s", recordNumber + 1, file.getPath()));
+    }
+}
@@ -0,0 +1,152 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.PrimitiveIterator;
+
+import static cic.cs.unb.ca.jnetpcap.PacketIndex.*;
+
+/*
+ * Appends the packets of finished flows to a PacketIndex file, one record per flow in the
+ * order the flows are written to the csv. A record is encoded in a buffer of the writer
+ * and goes to the file whole; append() may be called from several threads.
+ */
+public class PacketIndexWriter implements Closeable {
+    public static final Logger logger = LoggerFactory.getLogger(PacketIndexWriter.class);
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final File file;
+    private OutputStream output;
+    private byte[] body = new byte[256];
+    private int length;
+    private final byte[] prefix = new byte[10];
+    private long records;
+
+    public PacketIndexWriter(File file) {
+        super();
+        this.file = file;
+        try {
+            output = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(0, MAGIC);
+            header.putInt(8, VERSION);
+            output.write(header.array());
+        } catch (IOException e) {
+            close();
+            String ex = String.format("Can not write packet index %s: %s", file.getPath(), e.getMessage());
+            throw new IllegalArgumentException(ex, e);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized long getRecordCount() {
+        return records;
+    }
+
+    /* the flow gets its record even without packets, so the records stay in step with the csv rows */
+    public synchronized void append(String flowId, PacketIdList packetIds) {
+        if (output == null) {
+            return;
+        }
+        length = 0;
+        byte[] name = (flowId == null ? "" : flowId).getBytes(StandardCharsets.UTF_8);
+        putVarint(name.length);
+        ensure(name.length);
+        System.arraycopy(name, 0, body, length, name.length);
+        length += name.length;
+
+        int ranges = 0;
+        long end = 0; // one past the previous range
+        if (packetIds != null) {
+            PrimitiveIterator.OfLong it = packetIds.iterator();
+            while (it.hasNext()) {
+                long id = it.nextLong();
+                if (ranges == 0 || id != end) {
+                    ranges++;
+                }
+                end = id + 1;
+            }
+        }
+        putVarint(ranges);
+        if (ranges > 0) {
+            PrimitiveIterator.OfLong it = packetIds.iterator();
+            long first = it.nextLong();
+            long count = 1;
+            end = 0;
+            while (true) {
+                boolean more = it.hasNext();
+                long id = more ? it.nextLong() : 0;
+                if (more && id == first + count) {
+                    count++;
+                    continue;
+                }
+                putVarint(zigzag(first - end));
+                putVarint(count - 1);
+                end = first + count;
+                if (!more) {
+                    break;
+                }
+                first = id;
+                count = 1;
+            }
+        }
+
+        try {
+            int p = varint(prefix, 0, length);
+            output.write(prefix, 0, p);
+            output.write(body, 0, length);
+            records++;
+        } catch (IOException e) {
+            logger.error("Can not write packet index {}: {}", file.getPath(), e.getMessage());
+            close();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (output != null) {
+                output.close();
+            }
+        } catch (IOException e) {
+            logger.error("Can not close packet index {}: {}", file.getPath(), e.getMessage());
+        }
+        output = null;
+    }
+
+    private void putVarint(long v) {
+        ensure(10);
+        length = varint(body, length, v);
+    }
+
+    private void ensure(int more) {
+        if (length + more > body.length) {
+            byte[] grown = new byte[Math.max(body.length * 2, length + more)];
+            System.arraycopy(body, 0, grown, 0, length);
+            body = grown;
+        }
+    }
+
+    private static int varint(byte[] to, int at, long v) {
+        while ((v & ~0x7FL) != 0) {
+            to[at++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        to[at++] = (byte) v;
+        return at;
+    }
+}
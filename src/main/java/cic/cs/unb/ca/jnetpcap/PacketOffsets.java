@@ -0,0 +1,175 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/*
+ * Where the packets of a classic pcap file are: the file position of packet 1, 1 +
+ * interval, 1 + 2 * interval, ..., recorded by MappedPcapReader the first time the
+ * capture is read. Each of these checkpoints also keeps the latest timestamp of the
+ * packets before it, so a reader can go straight to a packet number (PcapExtractor) or
+ * to a point in time (--from) instead of reading the capture from the start.
+ *
+ * Saved next to the flow csv as <file>.pktoff, little endian: the HEADER_SIZE byte
+ * header names the source capture by length and modification time like a PacketCache
+ * and tells whether the checkpoints reach the end of it, the checkpoints follow as
+ * position and timestamp, 8 bytes each.
+ */
+public class PacketOffsets {
+    public static final Logger logger = LoggerFactory.getLogger(PacketOffsets.class);
+
+    public static final String SUFFIX = ".pktoff";
+    public static final int DEFAULT_INTERVAL = 4096;
+
+    static final long MAGIC = 0x31304B4F50504D43L; // "CMPPOK01" read as little endian
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 48; // magic, version, interval, source length, source modified, count, complete
+
+    private final int interval;
+    private long[] offsets = new long[64];
+    private long[] latest = new long[64]; // micros, of the packets before the checkpoint
+    private int count;
+    private boolean complete;
+
+    public PacketOffsets() {
+        this(DEFAULT_INTERVAL);
+    }
+
+    public PacketOffsets(int interval) {
+        super();
+        if (interval < 1) {
+            throw new IllegalArgumentException("interval=" + interval);
+        }
+        this.interval = interval;
+    }
+
+    /* the offsets of a capture, next to its flow csv */
+    public static File offsetsFile(String outPath, String fileName) {
+        return new File(outPath, fileName + SUFFIX);
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /* true when the capture was read to its end while recording */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public void setComplete(boolean complete) {
+        this.complete = complete;
+    }
+
+    /*
+     * The position of packet 1 + size() * interval, and the latest timestamp of the packets
+     * before it (Long.MIN_VALUE for the first).
+     */
+    public void add(long offset, long latestMicros) {
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+            latest = Arrays.copyOf(latest, count * 2);
+        }
+        offsets[count] = offset;
+        latest[count] = latestMicros;
+        count++;
+    }
+
+    /* the last recorded packet at or before packetId, 0 when there is none */
+    public long checkpointId(long packetId) {
+        if (packetId < 1 || count == 0) {
+            return 0L;
+        }
+        long n = Math.min((packetId - 1) / interval, count - 1);
+        return n * interval + 1;
+    }
+
+    /* file position of checkpointId(packetId) */
+    public long checkpointOffset(long packetId) {
+        return offsets[(int) ((checkpointId(packetId) - 1) / interval)];
+    }
+
+    /*
+     * The last recorded packet with no packet at or after micros before it, 0 when there
+     * is none: reading from there misses no packet of time micros or later, even when the
+     * capture is not quite in time order.
+     */
+    public long timeCheckpointId(long micros) {
+        int low = 0;
+        int high = count - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (latest[mid] < micros) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found < 0 ? 0L : (long) found * interval + 1;
+    }
+
+    public void write(File file, File source) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(MAGIC).putInt(VERSION).putInt(interval).putLong(source.length()).putLong(source.lastModified())
+                .putLong(count).put((byte) (complete ? 1 : 0));
+        ByteBuffer values = ByteBuffer.allocate(16 * count).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < count; i++) {
+            values.putLong(offsets[i]).putLong(latest[i]);
+        }
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file))) {
+            output.write(header.array());
+            output.write(values.array());
+        }
+    }
+
+    /* the offsets in file, null when it is missing or was not written for source as it is now */
+    public static PacketOffsets read(File file, File source) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] bytes = new byte[HEADER_SIZE];
+            input.readFully(bytes);
+            ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getLong(0) != MAGIC || header.getInt(8) != VERSION) {
+                logger.info("{} is not a packet offsets file of this version", file.getPath());
+                return null;
+            }
+            if (header.getLong(16) != source.length() || header.getLong(24) != source.lastModified()) {
+                logger.info("{} was written for another version of {}", file.getPath(), source.getPath());
+                return null;
+            }
+            PacketOffsets offsets = new PacketOffsets(header.getInt(12));
+            long count = header.getLong(32);
+            offsets.setComplete(header.get(40) == 1);
+            byte[] value = new byte[16];
+            ByteBuffer checkpoint = ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN);
+            for (long i = 0; i < count; i++) {
+                input.readFully(value);
+                offsets.add(checkpoint.getLong(0), checkpoint.getLong(8));
+            }
+            return offsets;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.info("Can not read packet offsets {}: {}", file.getPath(), e.getMessage());
+            return null;
+        }
+    }
+}
@@ -17,7 +17,7 @@ import org.jnetpcap.protocol.vpn.L2TP;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class PacketReader {
+public class PacketReader implements PacketSource {
 
     private static final Logger logger = LoggerFactory.getLogger(PacketReader.class);
     private IdGenerator generator = new IdGenerator();
@@ -38,6 +38,13 @@ public class PacketReader {
     private boolean readIP4;
     private String file;
 
+    // time window of nextPacket(), micros
+    private long fromMicros = Long.MIN_VALUE;
+    private long toMicros = Long.MAX_VALUE;
+    private boolean windowEnded;
+    private FlowSampler sampler; // packet sampling, null for all
+    private long sampleCount; // packets sampler decided for
+
     public PacketReader(String filename) {
         super();
         this.readIP4 = true;
@@ -74,11 +81,42 @@ public class PacketReader {
         }
     }
 
+    /*
+     * nextPacket() gives the packets with a timestamp in [fromMicros, toMicros] only, and
+     * ends at the first packet after toMicros. libpcap can not seek, the packets before
+     * the window are still read but not decoded.
+     */
+    public void setTimeWindow(long fromMicros, long toMicros) {
+        if (fromMicros > toMicros) {
+            String ex = String.format("from=%d,to=%d", fromMicros, toMicros);
+            throw new IllegalArgumentException(ex);
+        }
+        this.fromMicros = fromMicros;
+        this.toMicros = toMicros;
+    }
+
+    /* nextPacket() only decodes the packets sampler takes, the others still take a packet id */
+    public void setSampler(FlowSampler sampler) {
+        this.sampler = sampler;
+    }
+
+    @Override
     public BasicPacketInfo nextPacket() {
         PcapPacket packet;
         BasicPacketInfo packetInfo = null;
         try {
-            if (pcapReader.nextEx(hdr, buf) == Pcap.NEXT_EX_OK) {
+            int ret = windowEnded ? Pcap.NEXT_EX_EOF : pcapReader.nextEx(hdr, buf);
+            while (ret == Pcap.NEXT_EX_OK && (hdr.timestampInMicros() < fromMicros
+                    || (hdr.timestampInMicros() <= toMicros && sampler != null && !sampler.samplePacket(sampleCount++)))) {
+                generator.nextId();
+                ret = pcapReader.nextEx(hdr, buf);
+            }
+            if (ret == Pcap.NEXT_EX_OK && hdr.timestampInMicros() > toMicros) {
+                generator.nextId();
+                windowEnded = true;
+                ret = Pcap.NEXT_EX_EOF;
+            }
+            if (ret == Pcap.NEXT_EX_OK) {
                 // Increment ID for every packet read, even if it will be discarded
                 long currentPacketId = generator.nextId();
 
@@ -119,8 +157,8 @@ public class PacketReader {
 
             if (packet.hasHeader(ipv4)) {
                 packetInfo = new BasicPacketInfo(this.generator, packetId);
-                packetInfo.setSrc(this.ipv4.source());
-                packetInfo.setDst(this.ipv4.destination());
+                packetInfo.setSrcIPv4(this.ipv4.sourceToInt());
+                packetInfo.setDstIPv4(this.ipv4.destinationToInt());
                 // packetInfo.setTimeStamp(packet.getCaptureHeader().timestampInMillis());
                 packetInfo.setTimeStamp(packet.getCaptureHeader().timestampInMicros());
 
@@ -133,14 +171,8 @@ public class PacketReader {
                     packetInfo.setSrcPort(tcp.source());
                     packetInfo.setDstPort(tcp.destination());
                     packetInfo.setProtocol(6);
-                    packetInfo.setFlagFIN(tcp.flags_FIN());
-                    packetInfo.setFlagPSH(tcp.flags_PSH());
-                    packetInfo.setFlagURG(tcp.flags_URG());
-                    packetInfo.setFlagSYN(tcp.flags_SYN());
-                    packetInfo.setFlagACK(tcp.flags_ACK());
-                    packetInfo.setFlagECE(tcp.flags_ECE());
-                    packetInfo.setFlagCWR(tcp.flags_CWR());
-                    packetInfo.setFlagRST(tcp.flags_RST());
+                    // the flags byte of the header has the bits of BasicPacketInfo.FLAG_*
+                    packetInfo.setFlags(tcp.flags());
                     packetInfo.setPayloadBytes(tcp.getPayloadLength());
                     packetInfo.setHeaderBytes(tcp.getHeaderLength());
                 } else if (packet.hasHeader(this.udp)) {
@@ -270,6 +302,14 @@ public class PacketReader {
         return packetInfo;
     }
 
+    @Override
+    public void close() {
+        if (pcapReader != null) {
+            pcapReader.close();
+            pcapReader = null;
+        }
+    }
+
     public long getFirstPacket() {
         return firstPacket;
     }
@@ -293,10 +333,13 @@ public class PacketReader {
      */
     private static IdGenerator idGen = new IdGenerator();
 
+    // the jnetpcap headers are only peered while a packet is read, a set per thread is enough
+    private static final ThreadLocal<Protocol> protocols = ThreadLocal.withInitial(Protocol::new);
+
     public static BasicPacketInfo getBasicPacketInfo(PcapPacket packet, boolean readIP4, boolean readIP6) {
         BasicPacketInfo packetInfo = null;
 
-        Protocol protocol = new Protocol();
+        Protocol protocol = protocols.get();
 
         // Increment ID for every packet processed, regardless of whether it will be
         // valid
@@ -421,8 +464,8 @@ public class PacketReader {
 
             if (packet.hasHeader(protocol.getIpv4())) {
                 packetInfo = new BasicPacketInfo(idGen, packetId);
-                packetInfo.setSrc(protocol.getIpv4().source());
-                packetInfo.setDst(protocol.getIpv4().destination());
+                packetInfo.setSrcIPv4(protocol.getIpv4().sourceToInt());
+                packetInfo.setDstIPv4(protocol.getIpv4().destinationToInt());
                 // packetInfo.setTimeStamp(packet.getCaptureHeader().timestampInMillis());
                 packetInfo.setTimeStamp(packet.getCaptureHeader().timestampInMicros());
 
@@ -437,14 +480,7 @@ public class PacketReader {
                     packetInfo.setSrcPort(protocol.getTcp().source());
                     packetInfo.setDstPort(protocol.getTcp().destination());
                     packetInfo.setProtocol(6);
-                    packetInfo.setFlagFIN(protocol.getTcp().flags_FIN());
-                    packetInfo.setFlagPSH(protocol.getTcp().flags_PSH());
-                    packetInfo.setFlagURG(protocol.getTcp().flags_URG());
-                    packetInfo.setFlagSYN(protocol.getTcp().flags_SYN());
-                    packetInfo.setFlagACK(protocol.getTcp().flags_ACK());
-                    packetInfo.setFlagECE(protocol.getTcp().flags_ECE());
-                    packetInfo.setFlagCWR(protocol.getTcp().flags_CWR());
-                    packetInfo.setFlagRST(protocol.getTcp().flags_RST());
+                    packetInfo.setFlags(protocol.getTcp().flags());
                     packetInfo.setPayloadBytes(protocol.getTcp().getPayloadLength());
                     packetInfo.setHeaderBytes(protocol.getTcp().getHeaderLength());
                 } else if (packet.hasHeader(protocol.getUdp())) {
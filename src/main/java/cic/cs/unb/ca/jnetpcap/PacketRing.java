@@ -0,0 +1,167 @@
+package cic.cs.unb.ca.jnetpcap;
+
+/*
+ * Bounded ring of packet metadata between one capture thread and one processing thread,
+ * without locks.
+ *
+ * The slots are preallocated columns of the BasicPacketInfo fields the flow generator
+ * reads. offer() copies a packet into the next free slot and never waits: when the ring
+ * is full the packet is dropped and counted. poll() builds a new BasicPacketInfo from the
+ * oldest slot on the processing thread, so the capture thread does not allocate.
+ *
+ * The indexes work as in SpscQueue: each is written by one side only and published with
+ * lazySet after the slot it covers is written (or read).
+ */
+public class PacketRing {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final int mask;
+    private final IdGenerator generator = new IdGenerator();
+
+    private final long[] id;
+    private final long[] timeStamp;
+    private final long[] srcHi;
+    private final long[] srcLo;
+    private final long[] dstHi;
+    private final long[] dstLo;
+    private final long[] payloadBytes;
+    private final int[] headerBytes;
+    private final int[] srcPort;
+    private final int[] dstPort;
+    private final int[] window;
+    private final byte[] protocol;
+    private final byte[] flags;
+    private final byte[] addressLength;
+
+    private final SpscQueue.PaddedIndex head = new SpscQueue.PaddedIndex(); // next slot to poll
+    private final SpscQueue.PaddedIndex tail = new SpscQueue.PaddedIndex(); // next slot to offer
+    private long headCache; // producer side
+    private long tailCache; // consumer side
+
+    // written by the capture thread only
+    private volatile long offeredCount = 0L;
+    private volatile long droppedCount = 0L;
+    private volatile int highWaterMark = 0;
+
+    public PacketRing() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /* capacity is rounded up to a power of two */
+    public PacketRing(int capacity) {
+        super();
+        if (capacity < 2 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity=" + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        mask = size - 1;
+        id = new long[size];
+        timeStamp = new long[size];
+        srcHi = new long[size];
+        srcLo = new long[size];
+        dstHi = new long[size];
+        dstLo = new long[size];
+        payloadBytes = new long[size];
+        headerBytes = new int[size];
+        srcPort = new int[size];
+        dstPort = new int[size];
+        window = new int[size];
+        protocol = new byte[size];
+        flags = new byte[size];
+        addressLength = new byte[size];
+    }
+
+    /* capture thread only; false when the ring is full and the packet was dropped */
+    public boolean offer(BasicPacketInfo packet) {
+        long t = tail.get();
+        if (t - headCache > mask) {
+            headCache = head.get();
+            if (t - headCache > mask) {
+                droppedCount++;
+                return false;
+            }
+        }
+
+        int i = (int) t & mask;
+        id[i] = packet.getId();
+        timeStamp[i] = packet.getTimeStamp();
+        srcHi[i] = packet.getSrcHi();
+        srcLo[i] = packet.getSrcLo();
+        dstHi[i] = packet.getDstHi();
+        dstLo[i] = packet.getDstLo();
+        payloadBytes[i] = packet.getPayloadBytes();
+        headerBytes[i] = (int) packet.getHeaderBytes();
+        srcPort[i] = packet.getSrcPort();
+        dstPort[i] = packet.getDstPort();
+        window[i] = packet.getTCPWindow();
+        protocol[i] = (byte) packet.getProtocol();
+        flags[i] = (byte) packet.getFlags();
+        addressLength[i] = (byte) packet.getAddressLength();
+        tail.lazySet(t + 1);
+
+        offeredCount++;
+        if (t + 1 - headCache > highWaterMark) {
+            headCache = head.get();
+            int used = (int) (t + 1 - headCache);
+            if (used > highWaterMark) {
+                highWaterMark = used;
+            }
+        }
+        return true;
+    }
+
+    /* processing thread only; null when the ring is empty */
+    public BasicPacketInfo poll() {
+        long h = head.get();
+        if (h >= tailCache) {
+            tailCache = tail.get();
+            if (h >= tailCache) {
+                return null;
+            }
+        }
+
+        int i = (int) h & mask;
+        BasicPacketInfo packet = new BasicPacketInfo(generator, id[i]);
+        if (addressLength[i] == 16) {
+            packet.setSrcIPv6(srcHi[i], srcLo[i]);
+            packet.setDstIPv6(dstHi[i], dstLo[i]);
+        } else if (addressLength[i] == 4) {
+            packet.setSrcIPv4((int) srcLo[i]);
+            packet.setDstIPv4((int) dstLo[i]);
+        }
+        packet.setTimeStamp(timeStamp[i]);
+        packet.setPayloadBytes(payloadBytes[i]);
+        packet.setHeaderBytes(headerBytes[i]);
+        packet.setSrcPort(srcPort[i]);
+        packet.setDstPort(dstPort[i]);
+        packet.setTCPWindow(window[i]);
+        packet.setProtocol(protocol[i] & 0xFF);
+        packet.setFlags(flags[i] & 0xFF);
+        head.lazySet(h + 1);
+        return packet;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /* packets waiting for the processing thread */
+    public int size() {
+        long h = head.get();
+        return (int) Math.max(0L, tail.get() - h);
+    }
+
+    public long getOfferedCount() {
+        return offeredCount;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /* most packets the ring held at once, as seen by the capture thread */
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+}
@@ -0,0 +1,15 @@
+package cic.cs.unb.ca.jnetpcap;
+
+/*
+ * Offline source of decoded packets.
+ *
+ * nextPacket() returns null for a packet that was read but not decoded (not IP, or an
+ * IP version that is not enabled) and throws org.jnetpcap.PcapClosedException once the
+ * capture is exhausted.
+ */
+public interface PacketSource {
+
+    BasicPacketInfo nextPacket();
+
+    void close();
+}
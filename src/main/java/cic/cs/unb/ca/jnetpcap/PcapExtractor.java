@@ -0,0 +1,140 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Set;
+
+/*
+ * Copies the packets of chosen flows out of the capture they were read from, using the
+ * PacketIndex written with packet tracking.
+ *
+ * The packets are first collected in a PacketBitmap, then the capture is read once from
+ * the first of them to the last in file order, memory mapped, without decoding. With the
+ * PacketOffsets of the capture a classic pcap file is not read record by record from the
+ * start: the reader seeks to the kept position before each wanted packet that lies ahead.
+ */
+public final class PcapExtractor {
+    public static final Logger logger = LoggerFactory.getLogger(PcapExtractor.class);
+
+    private PcapExtractor() {
+    }
+
+    /* adds the packets of every record of index whose flow id is in flowIds, returns the records */
+    public static long selectFlows(File index, Set<String> flowIds, PacketBitmap packets) throws IOException {
+        long matched = 0L;
+        try (PacketIndexReader reader = new PacketIndexReader(index)) {
+            while (reader.next()) {
+                if (flowIds.contains(reader.getFlowId())) {
+                    add(packets, reader);
+                    matched++;
+                }
+            }
+        }
+        return matched;
+    }
+
+    /*
+     * Adds the packets of the records whose row in flowCsv, the flow csv written along
+     * with index, is one of rows. Returns the rows found.
+     */
+    public static long selectRows(File index, File flowCsv, Set<String> rows, PacketBitmap packets)
+            throws IOException {
+        long matched = 0L;
+        try (PacketIndexReader reader = new PacketIndexReader(index);
+                BufferedReader csv = new BufferedReader(new FileReader(flowCsv))) {
+            String line = csv.readLine(); // header
+            while (reader.next()) {
+                line = csv.readLine();
+                if (line == null) {
+                    logger.info("{} has fewer rows than {} has records", flowCsv.getPath(), index.getPath());
+                    break;
+                }
+                if (rows.contains(line)) {
+                    add(packets, reader);
+                    matched++;
+                }
+            }
+        }
+        return matched;
+    }
+
+    private static void add(PacketBitmap packets, PacketIndexReader reader) {
+        for (long id : reader.getPacketIds()) {
+            packets.set(id);
+        }
+    }
+
+    /*
+     * Writes the packets of capture in packets to a new pcap file output, in capture order.
+     * offsets may be null. Returns the number of packets written.
+     */
+    public static long extract(String capture, PacketBitmap packets, PacketOffsets offsets, String output)
+            throws IOException {
+        MappedPcapReader reader = new MappedPcapReader(capture);
+        PcapWriter writer = null;
+        long written = 0L;
+        long seeks = 0L;
+        long otherLinkType = 0L;
+        try {
+            long wanted = packets.nextSetBit(1);
+            long next = 1; // the packet nextFrame() reads
+            while (wanted > 0) {
+                if (offsets != null && reader.canSeek()) {
+                    long checkpoint = offsets.checkpointId(wanted);
+                    if (checkpoint > next) {
+                        reader.seek(offsets.checkpointOffset(wanted), checkpoint);
+                        next = checkpoint;
+                        seeks++;
+                    }
+                }
+                long id = reader.nextFrame();
+                if (id < 0) {
+                    break;
+                }
+                next = id + 1;
+                if (id < wanted) {
+                    continue;
+                }
+                if (id == wanted) {
+                    if (writer == null) {
+                        writer = new PcapWriter(output, reader.getFrameLinkType(), snapLength(reader));
+                    }
+                    if (reader.getFrameLinkType() == writer.getLinkType()) {
+                        reader.writeFrame(writer);
+                        written++;
+                    } else {
+                        // a pcapng file with interfaces of several link types
+                        otherLinkType++;
+                    }
+                }
+                wanted = packets.nextSetBit(id + 1);
+            }
+            if (wanted > 0) {
+                logger.info("{} ends before packet {}", capture, wanted);
+            }
+            if (otherLinkType > 0) {
+                logger.info("{} packets of another link type than the first are left out", otherLinkType);
+            }
+            logger.debug("{}: {} packets written, {} seeks", capture, written, seeks);
+            if (writer == null) {
+                writer = new PcapWriter(output, PacketDecoder.LINKTYPE_ETHERNET, snapLength(reader));
+            }
+        } finally {
+            reader.close();
+            if (writer != null) {
+                writer.close();
+            }
+        }
+        return written;
+    }
+
+    // some writers leave the snap length of the file header 0
+    private static int snapLength(MappedPcapReader reader) {
+        return Math.max(reader.getSnapLength(), 65535);
+    }
+}
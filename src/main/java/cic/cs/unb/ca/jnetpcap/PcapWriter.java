@@ -0,0 +1,135 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/*
+ * Writes a classic little endian pcap file with microsecond timestamps.
+ *
+ * Frames are either copied as they are, or built from a BasicPacketInfo as an
+ * Ethernet/IPv4/TCP|UDP frame with a zero filled payload, which MappedPcapReader and
+ * PacketReader read back to the same fields.
+ */
+public class PcapWriter implements Closeable {
+
+    private static final int MAGIC_MICROS = 0xA1B2C3D4;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int MAX_SYNTHETIC_PAYLOAD = 65535 - 20 - 20;
+
+    private final OutputStream output;
+    private final int snapLength;
+    private final int linkType;
+    private final ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer frame = ByteBuffer.allocate(14 + 20 + 20 + 1500);
+    private byte[] copy = new byte[2048];
+    private long packetCount;
+
+    public PcapWriter(String file) throws IOException {
+        this(file, PacketDecoder.LINKTYPE_ETHERNET, 65535);
+    }
+
+    public PcapWriter(String file, int linkType, int snapLength) throws IOException {
+        super();
+        if (snapLength < 1) {
+            throw new IllegalArgumentException("snapLength=" + snapLength);
+        }
+        this.snapLength = snapLength;
+        this.linkType = linkType;
+        this.output = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+
+        ByteBuffer fileHeader = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+        fileHeader.putInt(MAGIC_MICROS).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0)
+                .putInt(snapLength).putInt(linkType);
+        output.write(fileHeader.array());
+    }
+
+    public int getLinkType() {
+        return linkType;
+    }
+
+    public long getPacketCount() {
+        return packetCount;
+    }
+
+    /* frame bytes [offset, offset + length), originalLength as seen on the wire */
+    public void write(long timestampMicros, byte[] data, int offset, int length, int originalLength)
+            throws IOException {
+        int captured = Math.min(length, snapLength);
+        writeHeader(timestampMicros, captured, Math.max(originalLength, captured));
+        output.write(data, offset, captured);
+        packetCount++;
+    }
+
+    /* same with the frame in buf [offset, offset + length), buf is not modified */
+    public void write(long timestampMicros, ByteBuffer buf, int offset, int length, int originalLength)
+            throws IOException {
+        if (buf.hasArray()) {
+            write(timestampMicros, buf.array(), buf.arrayOffset() + offset, length, originalLength);
+            return;
+        }
+        int captured = Math.min(length, snapLength);
+        if (copy.length < captured) {
+            copy = new byte[Math.max(captured, copy.length * 2)];
+        }
+        ByteBuffer view = buf.duplicate();
+        view.position(offset);
+        view.get(copy, 0, captured);
+        write(timestampMicros, copy, 0, captured, originalLength);
+    }
+
+    /* an Ethernet frame carrying the IPv4 packet described by packet, timestamp in micros */
+    public void write(BasicPacketInfo packet) throws IOException {
+        if (packet.getAddressLength() != 4) {
+            throw new IllegalArgumentException("only IPv4 packets can be written");
+        }
+        boolean tcp = packet.getProtocol() == 6;
+        boolean udp = packet.getProtocol() == 17;
+        int l4Length = tcp ? 20 : udp ? 8 : 0;
+        int payload = (int) Math.min(Math.max(packet.getPayloadBytes(), 0), MAX_SYNTHETIC_PAYLOAD);
+        int ipLength = 20 + l4Length + payload;
+        int frameLength = 14 + ipLength;
+
+        if (frame.capacity() < frameLength) {
+            frame = ByteBuffer.allocate(frameLength);
+        }
+        byte[] b = frame.array();
+        Arrays.fill(b, 0, frameLength, (byte) 0);
+        frame.clear();
+        frame.position(12);
+        frame.putShort((short) 0x0800);
+        frame.put((byte) 0x45).put((byte) 0).putShort((short) ipLength).putInt(0).put((byte) 64)
+                .put((byte) (tcp || udp ? packet.getProtocol() : 0)).putShort((short) 0);
+        frame.putInt((int) packet.getSrcLo()).putInt((int) packet.getDstLo());
+        if (tcp) {
+            int flags = packet.getFlags();
+            frame.putShort((short) packet.getSrcPort()).putShort((short) packet.getDstPort()).putInt(0).putInt(0)
+                    .put((byte) 0x50).put((byte) flags).putShort((short) packet.getTCPWindow());
+        } else if (udp) {
+            frame.putShort((short) packet.getSrcPort()).putShort((short) packet.getDstPort())
+                    .putShort((short) (8 + payload));
+        }
+        write(packet.getTimeStamp(), b, 0, frameLength, frameLength);
+    }
+
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+
+    private void writeHeader(long timestampMicros, int captured, int originalLength) throws IOException {
+        header.clear();
+        header.putInt((int) (timestampMicros / 1000000L)).putInt((int) (timestampMicros % 1000000L))
+                .putInt(captured).putInt(originalLength);
+        output.write(header.array());
+    }
+}
@@ -0,0 +1,436 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import cic.cs.unb.ca.jnetpcap.worker.FlowGenListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * FlowGenerator spread over several threads.
+ *
+ * Packets are routed by the FlowKey hash, which does not depend on the direction, so
+ * every packet of a flow lands on the same shard. Each shard is a private FlowGenerator
+ * fed through a bounded SPSC queue and driven by its own thread; addPacket() and
+ * advanceTime() must therefore be called from a single thread. Finished flows of all the
+ * shards are handed to one listener, one at a time.
+ *
+ * dumpLabeledCurrentFlow() (or close()) drains the queues and stops the threads, the
+ * generator can not be fed afterwards.
+ */
+public class ShardedFlowGenerator extends FlowGenerator {
+    public static final Logger logger = LoggerFactory.getLogger(ShardedFlowGenerator.class);
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 8192;
+    // with timer expiry on, idle shards are told the time every CLOCK_INTERVAL packets
+    private static final int CLOCK_INTERVAL = 4096;
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 200;
+    private static final long PARK_NANOS = 50000L;
+
+    private final Shard[] shards;
+    private boolean started = false;
+    private boolean timerExpiry = false;
+    private volatile boolean closed = false;
+    private volatile Throwable failure;
+
+    private long lastTimestamp = Long.MIN_VALUE;
+    private int sinceClock;
+
+    public ShardedFlowGenerator(int shardCount, boolean bidirectional, long flowTimeout, long activityTimeout) {
+        this(shardCount, bidirectional, flowTimeout, activityTimeout, false, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public ShardedFlowGenerator(int shardCount, boolean bidirectional, long flowTimeout, long activityTimeout,
+            boolean savePacketInfo) {
+        this(shardCount, bidirectional, flowTimeout, activityTimeout, savePacketInfo, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public ShardedFlowGenerator(int shardCount, boolean bidirectional, long flowTimeout, long activityTimeout,
+            boolean savePacketInfo, int queueCapacity) {
+        super(bidirectional, flowTimeout, activityTimeout, savePacketInfo);
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount=" + shardCount);
+        }
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            FlowGenerator flowGen = new FlowGenerator(bidirectional, flowTimeout, activityTimeout, savePacketInfo);
+            shards[i] = new Shard(i, flowGen, new SpscQueue<>(queueCapacity));
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    @Override
+    public void addFlowListener(FlowGenListener listener) {
+        checkNotStarted();
+        FlowGenListener merged = listener == null ? null : new MergedListener(listener);
+        for (Shard shard : shards) {
+            shard.flowGen.addFlowListener(merged);
+        }
+    }
+
+    @Override
+    public void enableTimerExpiry() {
+        checkNotStarted();
+        timerExpiry = true;
+        for (Shard shard : shards) {
+            shard.flowGen.enableTimerExpiry();
+        }
+    }
+
+    /* the limit is split evenly over the shards */
+    @Override
+    public void setMaxFlows(int maxFlows, EvictionPolicy policy) {
+        checkNotStarted();
+        super.setMaxFlows(maxFlows, policy);
+        int perShard = (maxFlows + shards.length - 1) / shards.length;
+        for (Shard shard : shards) {
+            // every shard needs its own policy, they are not thread safe
+            shard.flowGen.setMaxFlows(perShard, maxFlows == 0 ? null : policy.copy());
+        }
+    }
+
+    /* read them after close() */
+    @Override
+    public long getEvictedFlowCount() {
+        long total = 0;
+        for (Shard shard : shards) {
+            total += shard.flowGen.getEvictedFlowCount();
+        }
+        return total;
+    }
+
+    @Override
+    public long getRejectedFlowCount() {
+        long total = 0;
+        for (Shard shard : shards) {
+            total += shard.flowGen.getRejectedFlowCount();
+        }
+        return total;
+    }
+
+    @Override
+    public void advanceTime(long currentTimestamp) {
+        if (closed) {
+            return;
+        }
+        checkFailure();
+        start();
+        if (currentTimestamp > lastTimestamp) {
+            lastTimestamp = currentTimestamp;
+        }
+        publishClock();
+    }
+
+    @Override
+    public void addPacket(BasicPacketInfo packet) {
+        if (packet == null) {
+            return;
+        }
+        if (closed) {
+            throw new IllegalStateException("ShardedFlowGenerator is closed");
+        }
+        // a dead shard drops its packets, the others would go on with part of the flows
+        checkFailure();
+        start();
+
+        Shard shard = shardFor(packet.flowHash());
+        int idle = 0;
+        while (!shard.queue.offer(packet)) {
+            checkFailure();
+            idle = backoff(idle);
+        }
+
+        if (packet.getTimeStamp() > lastTimestamp) {
+            lastTimestamp = packet.getTimeStamp();
+        }
+        if (timerExpiry && ++sinceClock >= CLOCK_INTERVAL) {
+            sinceClock = 0;
+            publishClock();
+        }
+    }
+
+    @Override
+    public void setPacketIndex(PacketIndexWriter packetIndex) {
+        super.setPacketIndex(packetIndex);
+        for (Shard shard : shards) {
+            shard.flowGen.setPacketIndex(packetIndex);
+        }
+    }
+
+    @Override
+    public void setRetainPackets(boolean retainPackets) {
+        checkNotStarted();
+        super.setRetainPackets(retainPackets);
+        for (Shard shard : shards) {
+            shard.flowGen.setRetainPackets(retainPackets);
+        }
+    }
+
+    @Override
+    public void setSampler(FlowSampler sampler) {
+        super.setSampler(sampler);
+        for (Shard shard : shards) {
+            shard.flowGen.setSampler(sampler);
+        }
+    }
+
+    @Override
+    public long getUnsampledPacketCount() {
+        long total = 0;
+        for (Shard shard : shards) {
+            total += shard.flowGen.getUnsampledPacketCount();
+        }
+        return total;
+    }
+
+    /* before the first packet, each shard gets the keys of its own flows */
+    @Override
+    public void setOpenFlows(Map<FlowKey, Long> flows) {
+        List<Map<FlowKey, Long>> perShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            perShard.add(new HashMap<>());
+        }
+        for (Map.Entry<FlowKey, Long> flow : flows.entrySet()) {
+            perShard.get(shardFor(flow.getKey()).index).put(flow.getKey(), flow.getValue());
+        }
+        for (Shard shard : shards) {
+            shard.flowGen.setOpenFlows(perShard.get(shard.index));
+        }
+    }
+
+    /* read it after close() */
+    @Override
+    public Map<FlowKey, Long> getOpenFlows() {
+        Map<FlowKey, Long> open = new HashMap<>();
+        for (Shard shard : shards) {
+            open.putAll(shard.flowGen.getOpenFlows());
+        }
+        return open;
+    }
+
+    @Override
+    public long getPartialFlowCount() {
+        long total = 0;
+        for (Shard shard : shards) {
+            total += shard.flowGen.getPartialFlowCount();
+        }
+        return total;
+    }
+
+    /* packets of a flow always went to the shard of the flow, so does its packet info */
+    @Override
+    public void saveFlowPacketsToJson(BasicFlow flow, String outputPath) {
+        FlowKey key = flow.getFlowKey();
+        if (key == null) {
+            // not made by a FlowGenerator
+            key = new FlowKey(flow.getSrc(), flow.getDst(), flow.getSrcPort(), flow.getDstPort(), flow.getProtocol());
+        }
+        shardFor(key).flowGen.saveFlowPacketsToJson(flow, outputPath);
+    }
+
+    /*
+     * Without a listener the shards keep their finished flows: they are written to one
+     * file, laid out as by a single FlowGenerator, the finished flows of every shard first.
+     */
+    @Override
+    public int dumpLabeledFlowBasedFeatures(String path, String filename, String header) {
+        close();
+        int total = 0;
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(new File(path + filename)),
+                OUTPUT_BUFFER)) {
+            FlowRecordWriter record = new FlowRecordWriter();
+            output.write((header + "\n").getBytes());
+            for (Shard shard : shards) {
+                total += shard.flowGen.writeFinishedFlows(output, record);
+            }
+            output.write((header + "\n").getBytes());
+            for (Shard shard : shards) {
+                total += shard.flowGen.writeCurrentFlows(output, record);
+            }
+        } catch (IOException e) {
+            logger.debug(e.getMessage());
+        }
+        return total;
+    }
+
+    /* the shards append to the same file one after the other */
+    @Override
+    public long dumpLabeledCurrentFlow(String fileFullPath, String header) {
+        close();
+        long total = 0;
+        for (Shard shard : shards) {
+            total += shard.flowGen.dumpLabeledCurrentFlow(fileFullPath, header);
+        }
+        return total;
+    }
+
+    /*
+     * Waits until every queued packet is processed and stops the shard threads. Flows
+     * still in progress stay in the shards for dumpLabeledCurrentFlow().
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        // the shards only advance their own clock with their own packets
+        publishClock();
+        closed = true;
+        for (Shard shard : shards) {
+            if (shard.thread == null) {
+                continue;
+            }
+            try {
+                shard.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.debug("interrupted while waiting for shard {}", shard.index);
+                break;
+            }
+        }
+        checkFailure();
+    }
+
+    private Shard shardFor(FlowKey key) {
+        return shardFor(key.hashCode());
+    }
+
+    private Shard shardFor(int hash) {
+        // the flow table of a shard indexes with the low bits of the same hash,
+        // pick the shard from the high bits of a remix so the shards do not share them
+        long h = (hash * 0x9E3779B9) & 0xFFFFFFFFL;
+        return shards[(int) ((h * shards.length) >>> 32)];
+    }
+
+    private void publishClock() {
+        if (lastTimestamp == Long.MIN_VALUE) {
+            return;
+        }
+        for (Shard shard : shards) {
+            shard.clock = lastTimestamp;
+        }
+    }
+
+    private void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        for (Shard shard : shards) {
+            Thread thread = new Thread(shard, "FlowShard-" + shard.index);
+            thread.setDaemon(true);
+            shard.thread = thread;
+            thread.start();
+        }
+    }
+
+    private void checkNotStarted() {
+        if (started) {
+            throw new IllegalStateException("ShardedFlowGenerator is already running");
+        }
+    }
+
+    private void checkFailure() {
+        Throwable t = failure;
+        if (t != null) {
+            throw new IllegalStateException("flow shard failed", t);
+        }
+    }
+
+    private static int backoff(int idle) {
+        if (idle < SPIN_TRIES) {
+            // busy spin
+        } else if (idle < YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return idle + 1;
+    }
+
+    private final class Shard implements Runnable {
+        private final int index;
+        private final FlowGenerator flowGen;
+        private final SpscQueue<BasicPacketInfo> queue;
+        private volatile long clock = Long.MIN_VALUE;
+        private Thread thread;
+
+        Shard(int index, FlowGenerator flowGen, SpscQueue<BasicPacketInfo> queue) {
+            this.index = index;
+            this.flowGen = flowGen;
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            long applied = Long.MIN_VALUE;
+            int idle = 0;
+            try {
+                while (true) {
+                    BasicPacketInfo packet = queue.poll();
+                    if (packet != null) {
+                        flowGen.addPacket(packet);
+                        idle = 0;
+                        continue;
+                    }
+
+                    long now = clock;
+                    // the producer offers a packet before it publishes a clock at or past
+                    // it: a packet queued meanwhile goes first, or it could miss its flow
+                    if (now > applied && queue.isEmpty()) {
+                        flowGen.advanceTime(now);
+                        applied = now;
+                        continue;
+                    }
+
+                    if (closed) {
+                        if (!queue.isEmpty()) {
+                            continue;
+                        }
+                        now = clock;
+                        if (now > applied) {
+                            flowGen.advanceTime(now);
+                        }
+                        break;
+                    }
+                    idle = backoff(idle);
+                }
+            } catch (Throwable t) {
+                logger.error("flow shard {} failed: {}", index, t.toString());
+                failure = t;
+            }
+        }
+    }
+
+    private static final class MergedListener implements FlowGenListener {
+        private final FlowGenListener listener;
+
+        MergedListener(FlowGenListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public synchronized void onFlowGenerated(BasicFlow flow) {
+            listener.onFlowGenerated(flow);
+        }
+
+        @Override
+        public synchronized void onFlowEvicted(BasicFlow flow) {
+            listener.onFlowEvicted(flow);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Bounded single producer / single consumer ring buffer.
+ *
+ * Exactly one thread may call offer() and exactly one thread may call poll(). Each side
+ * keeps a private copy of the other side's index and only reads the shared one when the
+ * copy says the ring is full (producer) or empty (consumer).
+ */
+public class SpscQueue<E> {
+
+    private final Object[] buffer;
+    private final int mask;
+
+    private final PaddedIndex head = new PaddedIndex(); // next slot to poll
+    private final PaddedIndex tail = new PaddedIndex(); // next slot to offer
+
+    private long headCache; // producer side
+    private long tailCache; // consumer side
+
+    public SpscQueue(int capacity) {
+        super();
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity=" + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        buffer = new Object[size];
+        mask = size - 1;
+    }
+
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long t = tail.get();
+        if (t - headCache >= buffer.length) {
+            headCache = head.get();
+            if (t - headCache >= buffer.length) {
+                return false;
+            }
+        }
+        buffer[(int) t & mask] = e;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long h = head.get();
+        if (h >= tailCache) {
+            tailCache = tail.get();
+            if (h >= tailCache) {
+                return null;
+            }
+        }
+        int i = (int) h & mask;
+        E e = (E) buffer[i];
+        buffer[i] = null;
+        head.lazySet(h + 1);
+        return e;
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    // keeps the producer and consumer indexes off the same cache line
+    @SuppressWarnings("unused")
+    static final class PaddedIndex extends AtomicLong {
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
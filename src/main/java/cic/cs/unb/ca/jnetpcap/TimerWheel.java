@@ -0,0 +1,168 @@
+package cic.cs.unb.ca.jnetpcap;
+
+/*
+ * Hierarchical timing wheel used to expire live flows.
+ *
+ * Four levels of 256 slots, a slot of level n spans 256^n ticks. Timers only move down
+ * a level when the level below wraps around, so scheduling and firing are O(1).
+ * Timers are never cancelled: the handler checks the flow again when its timer fires
+ * and either expires it or schedules it again at its current deadline.
+ */
+public class TimerWheel {
+
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 8;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+    private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    public interface Handler {
+        void onTimer(Timer timer, long now);
+    }
+
+    public static final class Timer {
+        private final FlowKey key;
+        private final BasicFlow flow;
+        private long tick;
+        private Timer next;
+
+        private Timer(FlowKey key, BasicFlow flow) {
+            this.key = key;
+            this.flow = flow;
+        }
+
+        public FlowKey getKey() {
+            return key;
+        }
+
+        public BasicFlow getFlow() {
+            return flow;
+        }
+    }
+
+    private final long tickLength;
+    private final Timer[][] slots = new Timer[LEVELS][SLOT_MASK + 1];
+    private long currentTick = Long.MIN_VALUE;
+    private int size;
+
+    public TimerWheel(long tickLength) {
+        super();
+        this.tickLength = tickLength;
+    }
+
+    /* the timer fires on the first advance() whose time is at or after deadline */
+    public void schedule(FlowKey key, BasicFlow flow, long deadline) {
+        reschedule(new Timer(key, flow), deadline);
+    }
+
+    public void reschedule(Timer timer, long deadline) {
+        timer.tick = (deadline + tickLength - 1) / tickLength;
+        add(timer, currentTick + 1);
+        size++;
+    }
+
+    /*
+     * earliest is the first tick still to be fired: the next one, or the current one for
+     * a timer cascading down ahead of its level 0 slot
+     */
+    private void add(Timer timer, long earliest) {
+        if (currentTick == Long.MIN_VALUE) {
+            currentTick = timer.tick - 1;
+            earliest = timer.tick;
+        }
+        long delta = timer.tick - currentTick;
+        long placeAt = timer.tick;
+        if (placeAt < earliest) {
+            delta = earliest - currentTick;
+            placeAt = earliest;
+        } else if (delta > MAX_DELTA) {
+            // parked in the top level, placed again every time that slot cascades
+            delta = MAX_DELTA;
+            placeAt = currentTick + MAX_DELTA;
+        }
+
+        int level = 0;
+        while (level < LEVELS - 1 && delta > SLOT_MASK) {
+            delta >>>= SLOT_BITS;
+            level++;
+        }
+
+        int index = (int) ((placeAt >>> (SLOT_BITS * level)) & SLOT_MASK);
+        timer.next = slots[level][index];
+        slots[level][index] = timer;
+    }
+
+    public void advance(long now, Handler handler) {
+        long target = now / tickLength;
+        if (currentTick == Long.MIN_VALUE || size == 0) {
+            if (target > currentTick) {
+                currentTick = target;
+            }
+            return;
+        }
+
+        while (currentTick < target && size > 0) {
+            currentTick = nextTick(target);
+
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(level);
+                }
+            }
+
+            int index = (int) (currentTick & SLOT_MASK);
+            Timer timer = slots[0][index];
+            slots[0][index] = null;
+            while (timer != null) {
+                Timer next = timer.next;
+                timer.next = null;
+                size--;
+                handler.onTimer(timer, now);
+                timer = next;
+            }
+        }
+
+        if (currentTick < target) {
+            currentTick = target;
+        }
+    }
+
+    /*
+     * The next tick something happens at, or target when nothing does before it: the
+     * first level 0 slot holding timers, or the first cascade of a slot holding timers.
+     * The ticks in between are skipped. Looking at 256 cascades of a level is enough, by
+     * then every one of its slots has come up.
+     */
+    private long nextTick(long target) {
+        long next = target;
+        for (long tick = currentTick + 1; tick < next && tick <= currentTick + SLOT_MASK; tick++) {
+            if (slots[0][(int) (tick & SLOT_MASK)] != null) {
+                next = tick;
+            }
+        }
+        for (int level = 1; level < LEVELS; level++) {
+            int shift = SLOT_BITS * level;
+            long tick = ((currentTick >> shift) + 1) << shift;
+            for (int n = 0; n <= SLOT_MASK && tick < next; n++, tick += 1L << shift) {
+                if (slots[level][(int) ((tick >>> shift) & SLOT_MASK)] != null) {
+                    next = tick;
+                }
+            }
+        }
+        return next;
+    }
+
+    private void cascade(int level) {
+        int index = (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        Timer timer = slots[level][index];
+        slots[level][index] = null;
+        while (timer != null) {
+            Timer next = timer.next;
+            add(timer, currentTick);
+            timer = next;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,137 @@
+package cic.cs.unb.ca.jnetpcap.synthetic;
+
+import java.util.SplittableRandom;
+
+/*
+ * Non negative integer distribution of a traffic profile, written as
+ *
+ *   const:v            always v
+ *   uniform:lo:hi      lo..hi, both included
+ *   exp:mean           exponential
+ *   pareto:alpha:min   heavy tailed, min and above
+ *   lognormal:mu:sigma e^N(mu, sigma)
+ *
+ * Samples are rounded down and capped at max.
+ */
+public final class Distribution {
+
+    private enum Kind {
+        CONST, UNIFORM, EXP, PARETO, LOGNORMAL
+    }
+
+    private final String spec;
+    private final Kind kind;
+    private final double a;
+    private final double b;
+    private final long max;
+
+    private Distribution(String spec, Kind kind, double a, double b, long max) {
+        this.spec = spec;
+        this.kind = kind;
+        this.a = a;
+        this.b = b;
+        this.max = max;
+    }
+
+    public static Distribution constant(long value) {
+        return new Distribution("const:" + value, Kind.CONST, value, 0, Long.MAX_VALUE);
+    }
+
+    public static Distribution parse(String spec) {
+        if (spec == null) {
+            throw new IllegalArgumentException("distribution=null");
+        }
+        String[] parts = spec.trim().split(":");
+        try {
+            switch (parts[0].toLowerCase()) {
+                case "const":
+                    checkArgs(spec, parts, 1);
+                    return new Distribution(spec, Kind.CONST, nonNegative(spec, parts[1]), 0, Long.MAX_VALUE);
+                case "uniform": {
+                    checkArgs(spec, parts, 2);
+                    double lo = nonNegative(spec, parts[1]);
+                    double hi = nonNegative(spec, parts[2]);
+                    if (hi < lo) {
+                        throw new IllegalArgumentException("distribution=" + spec);
+                    }
+                    return new Distribution(spec, Kind.UNIFORM, lo, hi, Long.MAX_VALUE);
+                }
+                case "exp":
+                    checkArgs(spec, parts, 1);
+                    return new Distribution(spec, Kind.EXP, nonNegative(spec, parts[1]), 0, Long.MAX_VALUE);
+                case "pareto": {
+                    checkArgs(spec, parts, 2);
+                    double alpha = Double.parseDouble(parts[1]);
+                    if (!(alpha > 0)) {
+                        throw new IllegalArgumentException("distribution=" + spec);
+                    }
+                    return new Distribution(spec, Kind.PARETO, alpha, nonNegative(spec, parts[2]), Long.MAX_VALUE);
+                }
+                case "lognormal":
+                    checkArgs(spec, parts, 2);
+                    return new Distribution(spec, Kind.LOGNORMAL, Double.parseDouble(parts[1]),
+                            nonNegative(spec, parts[2]), Long.MAX_VALUE);
+                default:
+                    throw new IllegalArgumentException("distribution=" + spec);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("distribution=" + spec, e);
+        }
+    }
+
+    /* the same distribution, samples capped at max */
+    public Distribution capped(long max) {
+        return new Distribution(spec, kind, a, b, max);
+    }
+
+    public long sample(SplittableRandom rnd) {
+        double v;
+        switch (kind) {
+            case CONST:
+                v = a;
+                break;
+            case UNIFORM:
+                v = a + Math.floor(rnd.nextDouble() * (b - a + 1));
+                break;
+            case EXP:
+                v = -a * Math.log(1.0 - rnd.nextDouble());
+                break;
+            case PARETO:
+                v = b / Math.pow(1.0 - rnd.nextDouble(), 1.0 / a);
+                break;
+            default:
+                v = Math.exp(a + b * gaussian(rnd));
+                break;
+        }
+        if (!(v < max)) {
+            return max;
+        }
+        return (long) v;
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+
+    private static double gaussian(SplittableRandom rnd) {
+        // Box-Muller, one value per call keeps the stream simple to reproduce
+        double u1 = 1.0 - rnd.nextDouble();
+        double u2 = rnd.nextDouble();
+        return Math.sqrt(-2.0 * Math.log(u1)) * Math.cos(2.0 * Math.PI * u2);
+    }
+
+    private static void checkArgs(String spec, String[] parts, int count) {
+        if (parts.length != count + 1) {
+            throw new IllegalArgumentException("distribution=" + spec);
+        }
+    }
+
+    private static double nonNegative(String spec, String value) {
+        double v = Double.parseDouble(value);
+        if (!(v >= 0)) {
+            throw new IllegalArgumentException("distribution=" + spec);
+        }
+        return v;
+    }
+}
@@ -0,0 +1,381 @@
+package cic.cs.unb.ca.jnetpcap.synthetic;
+
+import cic.cs.unb.ca.jnetpcap.BasicPacketInfo;
+import cic.cs.unb.ca.jnetpcap.IdGenerator;
+import cic.cs.unb.ca.jnetpcap.PacketSource;
+import org.jnetpcap.PcapClosedException;
+
+import java.util.SplittableRandom;
+
+/*
+ * Packet source playing a TrafficProfile: the same profile always gives the same
+ * packets, in timestamp order.
+ *
+ * Every one of the flows.concurrent slots runs one flow at a time and starts the next
+ * after flow.gap; the slots are ordered by the time of their next packet in a binary
+ * heap. A slot is a handful of primitives and addresses are derived from the flow
+ * number, so 10M concurrent flows take a few hundred MB and a single flow can be of any
+ * length. Clients are 10.0.0.0/8, servers 172.16.0.0/12 and scanners 198.18.0.0/15.
+ */
+public class TrafficGenerator implements PacketSource {
+
+    private static final int PROTO_TCP = 6;
+    private static final int PROTO_UDP = 17;
+
+    private static final byte KIND_TCP = 0;
+    private static final byte KIND_UDP = 1;
+    private static final byte KIND_SCAN = 2;
+    private static final byte KIND_ELEPHANT = 3;
+
+    private static final byte PHASE_SYN = 0;
+    private static final byte PHASE_SYN_ACK = 1;
+    private static final byte PHASE_ACK = 2;
+    private static final byte PHASE_DATA = 3;
+    private static final byte PHASE_FIN = 4;
+    private static final byte PHASE_FIN_ACK = 5;
+    private static final byte PHASE_LAST_ACK = 6;
+    private static final byte PHASE_RST = 7;
+    private static final byte PHASE_SCAN_RESPONSE = 8;
+    private static final byte PHASE_DONE = 9;
+
+    private static final byte CLOSE_NONE = 0;
+    private static final byte CLOSE_FIN = 1;
+    private static final byte CLOSE_RST = 2;
+
+    // source ports of a client address before the next address is used
+    private static final int CLIENT_PORTS = 50000;
+
+    private final TrafficProfile profile;
+    private final SplittableRandom rnd;
+    private final IdGenerator generator = new IdGenerator();
+
+    // per slot
+    private final long[] flowNo;
+    private final int[] left;
+    private final byte[] kind;
+    private final byte[] phase;
+    private final byte[] closing;
+
+    // slots by time of their next packet
+    private final long[] heapTime;
+    private final int[] heapSlot;
+    private int heapSize;
+
+    private long nextFlowNo;
+    private long nextProbe;
+    private long flowsStarted;
+    private long packetCount;
+
+    public TrafficGenerator(TrafficProfile profile) {
+        super();
+        profile.validate();
+        this.profile = profile;
+        this.rnd = new SplittableRandom(profile.getSeed());
+
+        int slots = profile.getConcurrentFlows() + (profile.getElephantPackets() > 0 ? 1 : 0);
+        flowNo = new long[slots];
+        left = new int[slots];
+        kind = new byte[slots];
+        phase = new byte[slots];
+        closing = new byte[slots];
+        heapTime = new long[slots];
+        heapSlot = new int[slots];
+
+        long start = profile.getStartTime();
+        if (profile.getElephantPackets() > 0) {
+            int slot = slots - 1;
+            startElephant(slot);
+            push(start, slot);
+        }
+        for (int slot = 0; slot < profile.getConcurrentFlows(); slot++) {
+            if (!startFlow(slot)) {
+                break;
+            }
+            push(start + profile.getFlowGap().sample(rnd), slot);
+        }
+    }
+
+    public TrafficProfile getProfile() {
+        return profile;
+    }
+
+    /* packets returned so far */
+    public long getPacketCount() {
+        return packetCount;
+    }
+
+    public long getFlowsStarted() {
+        return flowsStarted;
+    }
+
+    @Override
+    public BasicPacketInfo nextPacket() {
+        long totalPackets = profile.getTotalPackets();
+        if (heapSize == 0 || (totalPackets > 0 && packetCount >= totalPackets)) {
+            throw new PcapClosedException();
+        }
+
+        int slot = heapSlot[0];
+        long now = heapTime[0];
+        BasicPacketInfo packet = emit(slot, now);
+        packetCount++;
+
+        if (phase[slot] != PHASE_DONE) {
+            Distribution iat = kind[slot] == KIND_ELEPHANT ? profile.getElephantInterArrival()
+                    : profile.getInterArrival();
+            replaceTop(now + 1 + iat.sample(rnd));
+        } else if (kind[slot] != KIND_ELEPHANT && startFlow(slot)) {
+            replaceTop(now + 1 + profile.getFlowGap().sample(rnd));
+        } else {
+            pop();
+        }
+        return packet;
+    }
+
+    @Override
+    public void close() {
+        heapSize = 0;
+    }
+
+    private boolean startFlow(int slot) {
+        long totalFlows = profile.getTotalFlows();
+        if (totalFlows > 0 && flowsStarted >= totalFlows) {
+            return false;
+        }
+        flowsStarted++;
+
+        if (rnd.nextDouble() < profile.getScanShare()) {
+            kind[slot] = KIND_SCAN;
+            flowNo[slot] = nextProbe++;
+            phase[slot] = PHASE_SYN;
+            return true;
+        }
+
+        flowNo[slot] = nextFlowNo++;
+        left[slot] = (int) Math.max(1, profile.getFlowPackets().sample(rnd));
+        if (rnd.nextDouble() < profile.getUdpShare()) {
+            kind[slot] = KIND_UDP;
+            phase[slot] = PHASE_DATA;
+            return true;
+        }
+
+        kind[slot] = KIND_TCP;
+        phase[slot] = rnd.nextDouble() < profile.getHandshakeShare() ? PHASE_SYN : PHASE_DATA;
+        double close = rnd.nextDouble();
+        if (close < profile.getFinShare()) {
+            closing[slot] = CLOSE_FIN;
+        } else if (close < profile.getFinShare() + profile.getRstShare()) {
+            closing[slot] = CLOSE_RST;
+        } else {
+            closing[slot] = CLOSE_NONE;
+        }
+        return true;
+    }
+
+    private void startElephant(int slot) {
+        flowsStarted++;
+        kind[slot] = KIND_ELEPHANT;
+        flowNo[slot] = nextFlowNo++;
+        left[slot] = (int) profile.getElephantPackets();
+        phase[slot] = PHASE_SYN;
+        closing[slot] = CLOSE_FIN;
+    }
+
+    /* the packet of slot at its current phase, moves the slot to the next phase */
+    private BasicPacketInfo emit(int slot, long now) {
+        BasicPacketInfo packet = new BasicPacketInfo(generator, packetCount + 1);
+        packet.setTimeStamp(now);
+        if (kind[slot] == KIND_SCAN) {
+            emitProbe(packet, slot);
+            return packet;
+        }
+
+        long n = flowNo[slot];
+        long mix = mix(n);
+        int client = client(n);
+        int server = server((int) Long.remainderUnsigned(mix, profile.getServers()));
+        int clientPort = 10000 + (int) (n % CLIENT_PORTS);
+        int serverPort;
+
+        if (kind[slot] == KIND_UDP) {
+            serverPort = (mix >>> 32 & 1) == 0 ? 53 : 123;
+            boolean forward = rnd.nextDouble() < profile.getForwardShare();
+            address(packet, forward, client, server, clientPort, serverPort, PROTO_UDP);
+            packet.setHeaderBytes(8);
+            packet.setPayloadBytes(profile.getPayload().sample(rnd));
+            if (--left[slot] == 0) {
+                phase[slot] = PHASE_DONE;
+            }
+            return packet;
+        }
+
+        serverPort = (mix >>> 32 & 1) == 0 ? 443 : 80;
+        packet.setHeaderBytes(20);
+        packet.setTCPWindow(8192 + (int) (mix >>> 40 & 0x7FFF));
+        boolean forward = true;
+        switch (phase[slot]) {
+            case PHASE_SYN:
+                packet.setFlagSYN(true);
+                packet.setTCPWindow(64240);
+                phase[slot] = PHASE_SYN_ACK;
+                break;
+            case PHASE_SYN_ACK:
+                forward = false;
+                packet.setFlagSYN(true);
+                packet.setFlagACK(true);
+                packet.setTCPWindow(65160);
+                phase[slot] = PHASE_ACK;
+                break;
+            case PHASE_ACK:
+                packet.setFlagACK(true);
+                phase[slot] = PHASE_DATA;
+                break;
+            case PHASE_DATA: {
+                forward = rnd.nextDouble() < profile.getForwardShare();
+                long payload = profile.getPayload().sample(rnd);
+                packet.setPayloadBytes(payload);
+                packet.setFlagACK(true);
+                packet.setFlagPSH(payload > 0);
+                if (--left[slot] == 0) {
+                    phase[slot] = closing[slot] == CLOSE_FIN ? PHASE_FIN
+                            : closing[slot] == CLOSE_RST ? PHASE_RST : PHASE_DONE;
+                }
+                break;
+            }
+            case PHASE_FIN:
+                packet.setFlagFIN(true);
+                packet.setFlagACK(true);
+                phase[slot] = PHASE_FIN_ACK;
+                break;
+            case PHASE_FIN_ACK:
+                forward = false;
+                packet.setFlagFIN(true);
+                packet.setFlagACK(true);
+                phase[slot] = PHASE_LAST_ACK;
+                break;
+            case PHASE_LAST_ACK:
+                packet.setFlagACK(true);
+                phase[slot] = PHASE_DONE;
+                break;
+            default:
+                // PHASE_RST, from either side
+                forward = rnd.nextDouble() < 0.5;
+                packet.setFlagRST(true);
+                phase[slot] = PHASE_DONE;
+                break;
+        }
+        address(packet, forward, client, server, clientPort, serverPort, PROTO_TCP);
+        return packet;
+    }
+
+    /* scanners walk through the servers, then through the ports */
+    private void emitProbe(BasicPacketInfo packet, int slot) {
+        long probe = flowNo[slot];
+        long scanner = probe / profile.getScanFanout();
+        int servers = profile.getServers();
+        int source = scanner(scanner);
+        int target = server((int) (probe % servers));
+        int sourcePort = 40000 + (int) (scanner % 20000);
+        int targetPort = 1 + (int) ((probe / servers) % 1024);
+
+        packet.setHeaderBytes(20);
+        if (phase[slot] == PHASE_SYN) {
+            address(packet, true, source, target, sourcePort, targetPort, PROTO_TCP);
+            packet.setFlagSYN(true);
+            packet.setTCPWindow(1024);
+            phase[slot] = rnd.nextDouble() < profile.getScanResponseShare() ? PHASE_SCAN_RESPONSE : PHASE_DONE;
+        } else {
+            address(packet, false, source, target, sourcePort, targetPort, PROTO_TCP);
+            packet.setFlagRST(true);
+            packet.setFlagACK(true);
+            phase[slot] = PHASE_DONE;
+        }
+    }
+
+    private static void address(BasicPacketInfo packet, boolean forward, int client, int server,
+            int clientPort, int serverPort, int protocol) {
+        if (forward) {
+            packet.setSrcIPv4(client);
+            packet.setDstIPv4(server);
+            packet.setSrcPort(clientPort);
+            packet.setDstPort(serverPort);
+        } else {
+            packet.setSrcIPv4(server);
+            packet.setDstIPv4(client);
+            packet.setSrcPort(serverPort);
+            packet.setDstPort(clientPort);
+        }
+        packet.setProtocol(protocol);
+    }
+
+    private static int client(long n) {
+        int host = (int) ((n / CLIENT_PORTS) & 0xFFFFFF);
+        return (10 << 24) | host;
+    }
+
+    private static int server(int index) {
+        return (172 << 24) | ((16 + (index >>> 16 & 0xF)) << 16) | (index & 0xFFFF);
+    }
+
+    private static int scanner(long index) {
+        return (198 << 24) | ((18 + (int) (index >>> 16 & 1)) << 16) | (int) (index & 0xFFFF);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    private void push(long time, int slot) {
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heapTime[parent] <= time) {
+                break;
+            }
+            heapTime[i] = heapTime[parent];
+            heapSlot[i] = heapSlot[parent];
+            i = parent;
+        }
+        heapTime[i] = time;
+        heapSlot[i] = slot;
+    }
+
+    private void pop() {
+        heapSize--;
+        if (heapSize > 0) {
+            int slot = heapSlot[heapSize];
+            long time = heapTime[heapSize];
+            heapSlot[0] = slot;
+            heapTime[0] = time;
+            siftDown(time, slot);
+        }
+    }
+
+    private void replaceTop(long time) {
+        int slot = heapSlot[0];
+        heapTime[0] = time;
+        siftDown(time, slot);
+    }
+
+    private void siftDown(long time, int slot) {
+        int i = 0;
+        int half = heapSize >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < heapSize && heapTime[right] < heapTime[child]) {
+                child = right;
+            }
+            if (time <= heapTime[child]) {
+                break;
+            }
+            heapTime[i] = heapTime[child];
+            heapSlot[i] = heapSlot[child];
+            i = child;
+        }
+        heapTime[i] = time;
+        heapSlot[i] = slot;
+    }
+}
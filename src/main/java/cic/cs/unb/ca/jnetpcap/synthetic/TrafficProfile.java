@@ -0,0 +1,383 @@
+package cic.cs.unb.ca.jnetpcap.synthetic;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/*
+ * What a TrafficGenerator produces. A profile is read from a properties file (keys
+ * below, all optional) or taken from one of the presets:
+ *
+ *   seed=1                      same seed, same packets
+ *   flows.concurrent=1000       flows open at any time
+ *   flows.total=0               stop once that many flows are done, 0: no limit
+ *   packets.total=1000000       stop after that many packets, 0: no limit
+ *   start=1500000000000000      time of the first packet, microseconds
+ *   flow.packets=pareto:1.2:4   data packets per flow
+ *   flow.interarrival=exp:20000 microseconds between the packets of a flow
+ *   flow.gap=exp:100000         microseconds before a finished flow is replaced
+ *   payload=uniform:0:1460      payload bytes of a data packet
+ *   udp.share=0.2               share of the flows that are UDP
+ *   tcp.handshake.share=0.9     TCP flows that start with SYN, SYN-ACK, ACK
+ *   tcp.fin.share=0.7           TCP flows closed with FIN
+ *   tcp.rst.share=0.1           TCP flows closed with RST, the others just stop
+ *   forward.share=0.6           data packets from the client
+ *   scan.share=0                share of the new flows that are SYN probes of a scanner
+ *   scan.fanout=1000            probes sent by a scanner before the next one starts
+ *   scan.response.share=0.5     probes answered with RST
+ *   servers=1000                server addresses, up to 1048576
+ *   elephant.packets=0          data packets of one extra long TCP flow
+ *   elephant.interarrival=const:10
+ *
+ * Distributions are written as described in Distribution.
+ */
+public class TrafficProfile {
+
+    public static final String[] PRESETS = { "default", "scan", "elephant", "10m-flows" };
+
+    private static final int MAX_SERVERS = 1 << 20;
+    private static final long MAX_PAYLOAD = 1460;
+
+    private long seed = 1L;
+    private int concurrentFlows = 1000;
+    private long totalFlows = 0L;
+    private long totalPackets = 1000000L;
+    private long startTime = 1500000000000000L;
+    private Distribution flowPackets = Distribution.parse("pareto:1.2:4");
+    private Distribution interArrival = Distribution.parse("exp:20000");
+    private Distribution flowGap = Distribution.parse("exp:100000");
+    private Distribution payload = Distribution.parse("uniform:0:1460");
+    private double udpShare = 0.2;
+    private double handshakeShare = 0.9;
+    private double finShare = 0.7;
+    private double rstShare = 0.1;
+    private double forwardShare = 0.6;
+    private double scanShare = 0.0;
+    private int scanFanout = 1000;
+    private double scanResponseShare = 0.5;
+    private int servers = 1000;
+    private long elephantPackets = 0L;
+    private Distribution elephantInterArrival = Distribution.constant(10);
+
+    public TrafficProfile() {
+        super();
+    }
+
+    public static TrafficProfile preset(String name) {
+        TrafficProfile profile = new TrafficProfile();
+        switch (name) {
+            case "default":
+                break;
+            case "scan":
+                // half of the flows are probes of horizontal/vertical scans
+                profile.setScanShare(0.5);
+                profile.setScanFanout(5000);
+                break;
+            case "elephant":
+                // one TCP flow of 50M data packets and nothing else
+                profile.setConcurrentFlows(0);
+                profile.setElephantPackets(50000000L);
+                profile.setTotalFlows(1);
+                profile.setTotalPackets(0);
+                break;
+            case "10m-flows":
+                // 10M flows open at the same time, long lived and sparse
+                profile.setConcurrentFlows(10000000);
+                profile.setTotalPackets(100000000L);
+                profile.setFlowPackets(Distribution.parse("uniform:5:20"));
+                profile.setInterArrival(Distribution.parse("exp:60000000"));
+                profile.setServers(MAX_SERVERS);
+                break;
+            default:
+                throw new IllegalArgumentException("preset=" + name);
+        }
+        return profile;
+    }
+
+    public static TrafficProfile load(File file) throws IOException {
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            props.load(in);
+        }
+        return load(props);
+    }
+
+    public static TrafficProfile load(Properties props) {
+        TrafficProfile profile = new TrafficProfile();
+        for (String key : props.stringPropertyNames()) {
+            String value = props.getProperty(key).trim();
+            try {
+                profile.set(key, value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(key + "=" + value, e);
+            }
+        }
+        return profile;
+    }
+
+    private void set(String key, String value) {
+        switch (key) {
+            case "seed":
+                setSeed(Long.parseLong(value));
+                break;
+            case "flows.concurrent":
+                setConcurrentFlows(Integer.parseInt(value));
+                break;
+            case "flows.total":
+                setTotalFlows(Long.parseLong(value));
+                break;
+            case "packets.total":
+                setTotalPackets(Long.parseLong(value));
+                break;
+            case "start":
+                setStartTime(Long.parseLong(value));
+                break;
+            case "flow.packets":
+                setFlowPackets(Distribution.parse(value));
+                break;
+            case "flow.interarrival":
+                setInterArrival(Distribution.parse(value));
+                break;
+            case "flow.gap":
+                setFlowGap(Distribution.parse(value));
+                break;
+            case "payload":
+                setPayload(Distribution.parse(value));
+                break;
+            case "udp.share":
+                setUdpShare(Double.parseDouble(value));
+                break;
+            case "tcp.handshake.share":
+                setHandshakeShare(Double.parseDouble(value));
+                break;
+            case "tcp.fin.share":
+                setFinShare(Double.parseDouble(value));
+                break;
+            case "tcp.rst.share":
+                setRstShare(Double.parseDouble(value));
+                break;
+            case "forward.share":
+                setForwardShare(Double.parseDouble(value));
+                break;
+            case "scan.share":
+                setScanShare(Double.parseDouble(value));
+                break;
+            case "scan.fanout":
+                setScanFanout(Integer.parseInt(value));
+                break;
+            case "scan.response.share":
+                setScanResponseShare(Double.parseDouble(value));
+                break;
+            case "servers":
+                setServers(Integer.parseInt(value));
+                break;
+            case "elephant.packets":
+                setElephantPackets(Long.parseLong(value));
+                break;
+            case "elephant.interarrival":
+                setElephantInterArrival(Distribution.parse(value));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown key " + key);
+        }
+    }
+
+    /* checks the combination of the values, the setters only check each value */
+    public void validate() {
+        if (totalPackets == 0 && totalFlows == 0) {
+            throw new IllegalArgumentException("packets.total or flows.total must be set");
+        }
+        if (concurrentFlows == 0 && elephantPackets == 0) {
+            throw new IllegalArgumentException("no flows: flows.concurrent=0 and elephant.packets=0");
+        }
+        if (finShare + rstShare > 1.0) {
+            String ex = String.format("tcp.fin.share=%s,tcp.rst.share=%s", finShare, rstShare);
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    private static double share(String key, double value) {
+        if (!(value >= 0.0 && value <= 1.0)) {
+            throw new IllegalArgumentException(key + "=" + value);
+        }
+        return value;
+    }
+
+    private static long notNegative(String key, long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException(key + "=" + value);
+        }
+        return value;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getConcurrentFlows() {
+        return concurrentFlows;
+    }
+
+    public void setConcurrentFlows(int concurrentFlows) {
+        this.concurrentFlows = (int) notNegative("flows.concurrent", concurrentFlows);
+    }
+
+    public long getTotalFlows() {
+        return totalFlows;
+    }
+
+    public void setTotalFlows(long totalFlows) {
+        this.totalFlows = notNegative("flows.total", totalFlows);
+    }
+
+    public long getTotalPackets() {
+        return totalPackets;
+    }
+
+    public void setTotalPackets(long totalPackets) {
+        this.totalPackets = notNegative("packets.total", totalPackets);
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = notNegative("start", startTime);
+    }
+
+    public Distribution getFlowPackets() {
+        return flowPackets;
+    }
+
+    public void setFlowPackets(Distribution flowPackets) {
+        this.flowPackets = flowPackets.capped(Integer.MAX_VALUE);
+    }
+
+    public Distribution getInterArrival() {
+        return interArrival;
+    }
+
+    public void setInterArrival(Distribution interArrival) {
+        this.interArrival = interArrival;
+    }
+
+    public Distribution getFlowGap() {
+        return flowGap;
+    }
+
+    public void setFlowGap(Distribution flowGap) {
+        this.flowGap = flowGap;
+    }
+
+    public Distribution getPayload() {
+        return payload;
+    }
+
+    public void setPayload(Distribution payload) {
+        this.payload = payload.capped(MAX_PAYLOAD);
+    }
+
+    public double getUdpShare() {
+        return udpShare;
+    }
+
+    public void setUdpShare(double udpShare) {
+        this.udpShare = share("udp.share", udpShare);
+    }
+
+    public double getHandshakeShare() {
+        return handshakeShare;
+    }
+
+    public void setHandshakeShare(double handshakeShare) {
+        this.handshakeShare = share("tcp.handshake.share", handshakeShare);
+    }
+
+    public double getFinShare() {
+        return finShare;
+    }
+
+    public void setFinShare(double finShare) {
+        this.finShare = share("tcp.fin.share", finShare);
+    }
+
+    public double getRstShare() {
+        return rstShare;
+    }
+
+    public void setRstShare(double rstShare) {
+        this.rstShare = share("tcp.rst.share", rstShare);
+    }
+
+    public double getForwardShare() {
+        return forwardShare;
+    }
+
+    public void setForwardShare(double forwardShare) {
+        this.forwardShare = share("forward.share", forwardShare);
+    }
+
+    public double getScanShare() {
+        return scanShare;
+    }
+
+    public void setScanShare(double scanShare) {
+        this.scanShare = share("scan.share", scanShare);
+    }
+
+    public int getScanFanout() {
+        return scanFanout;
+    }
+
+    public void setScanFanout(int scanFanout) {
+        if (scanFanout < 1) {
+            throw new IllegalArgumentException("scan.fanout=" + scanFanout);
+        }
+        this.scanFanout = scanFanout;
+    }
+
+    public double getScanResponseShare() {
+        return scanResponseShare;
+    }
+
+    public void setScanResponseShare(double scanResponseShare) {
+        this.scanResponseShare = share("scan.response.share", scanResponseShare);
+    }
+
+    public int getServers() {
+        return servers;
+    }
+
+    public void setServers(int servers) {
+        if (servers < 1 || servers > MAX_SERVERS) {
+            throw new IllegalArgumentException("servers=" + servers);
+        }
+        this.servers = servers;
+    }
+
+    public long getElephantPackets() {
+        return elephantPackets;
+    }
+
+    public void setElephantPackets(long elephantPackets) {
+        if (elephantPackets < 0 || elephantPackets > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("elephant.packets=" + elephantPackets);
+        }
+        this.elephantPackets = elephantPackets;
+    }
+
+    public Distribution getElephantInterArrival() {
+        return elephantInterArrival;
+    }
+
+    public void setElephantInterArrival(Distribution elephantInterArrival) {
+        this.elephantInterArrival = elephantInterArrival;
+    }
+}
@@ -0,0 +1,161 @@
+package cic.cs.unb.ca.jnetpcap.worker;
+
+import cic.cs.unb.ca.jnetpcap.BasicFlow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * FlowGenListener that hands finished flows to other threads.
+ *
+ * The packet thread only puts the flow into a bounded queue; writer threads take it from
+ * there and call the wrapped listener, which does the formatting and the file output.
+ * With one writer the listener sees the flows in the order they finished, with more it
+ * must be safe to call from several threads at once.
+ *
+ * When the queue is full the packet thread waits for the writers (BLOCK), or the flow is
+ * dropped and counted (DROP). close() waits until every queued flow is written.
+ */
+public class AsyncFlowEmitter implements FlowGenListener {
+    public static final Logger logger = LoggerFactory.getLogger(AsyncFlowEmitter.class);
+
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    public enum Backpressure {
+        BLOCK, DROP
+    }
+
+    // tells a writer to stop, one per writer behind the last flow
+    private static final Object END = new Object();
+
+    private final FlowGenListener listener;
+    private final Backpressure backpressure;
+    private final BlockingQueue<Object> queue;
+    private final Thread[] writers;
+    private final AtomicLong droppedFlowCount = new AtomicLong();
+    private volatile boolean closed = false;
+
+    public AsyncFlowEmitter(FlowGenListener listener) {
+        this(listener, 1, DEFAULT_CAPACITY, Backpressure.BLOCK);
+    }
+
+    public AsyncFlowEmitter(FlowGenListener listener, int writerCount, int capacity, Backpressure backpressure) {
+        super();
+        if (listener == null || backpressure == null) {
+            String ex = String.format("listener=%s,backpressure=%s", listener, backpressure);
+            throw new IllegalArgumentException(ex);
+        }
+        if (writerCount < 1) {
+            throw new IllegalArgumentException("writerCount=" + writerCount);
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity=" + capacity);
+        }
+        this.listener = listener;
+        this.backpressure = backpressure;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+
+        writers = new Thread[writerCount];
+        for (int i = 0; i < writerCount; i++) {
+            Thread thread = new Thread(this::drain, "FlowEmitter-" + (i + 1));
+            thread.setDaemon(true);
+            writers[i] = thread;
+            thread.start();
+        }
+    }
+
+    @Override
+    public void onFlowGenerated(BasicFlow flow) {
+        enqueue(flow);
+    }
+
+    @Override
+    public void onFlowEvicted(BasicFlow flow) {
+        enqueue(new Evicted(flow));
+    }
+
+    /* flows that did not fit into the queue with Backpressure.DROP */
+    public long getDroppedFlowCount() {
+        return droppedFlowCount.get();
+    }
+
+    /* flows waiting for a writer */
+    public int getPending() {
+        return queue.size();
+    }
+
+    /*
+     * Writes the flows still queued and stops the writer threads. Call it once the flow
+     * generator is closed, no flow may be added afterwards.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            for (int i = 0; i < writers.length; i++) {
+                queue.put(END);
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.debug("interrupted while waiting for {} queued flows", queue.size());
+        }
+    }
+
+    private void enqueue(Object item) {
+        if (closed) {
+            throw new IllegalStateException("AsyncFlowEmitter is closed");
+        }
+        if (backpressure == Backpressure.DROP) {
+            if (!queue.offer(item)) {
+                droppedFlowCount.incrementAndGet();
+            }
+            return;
+        }
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            droppedFlowCount.incrementAndGet();
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Object item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                logger.debug("{} interrupted, {} flows left", Thread.currentThread().getName(), queue.size());
+                return;
+            }
+            if (item == END) {
+                return;
+            }
+            try {
+                if (item instanceof Evicted) {
+                    listener.onFlowEvicted(((Evicted) item).flow);
+                } else {
+                    listener.onFlowGenerated((BasicFlow) item);
+                }
+            } catch (RuntimeException e) {
+                logger.error("{} failed: {}", Thread.currentThread().getName(), e.toString());
+            }
+        }
+    }
+
+    private static final class Evicted {
+        private final BasicFlow flow;
+
+        Evicted(BasicFlow flow) {
+            this.flow = flow;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package cic.cs.unb.ca.jnetpcap.worker;
+
+import cic.cs.unb.ca.jnetpcap.BasicFlow;
+import cic.cs.unb.ca.jnetpcap.FlowRecordWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static cic.cs.unb.ca.jnetpcap.Utils.FILE_SEP;
+import static cic.cs.unb.ca.jnetpcap.Utils.LINE_SEP;
+
+/*
+ * Appends flow records to a csv file that stays open until close().
+ *
+ * Records are batched in memory and written once bufferSize bytes are pending, or at the
+ * latest flushInterval milliseconds after they were added. The header is written right
+ * away when the sink creates the file, so other writers appending to the same file
+ * never end up in front of it. Sinks still open when the JVM shuts down (end of main,
+ * SIGINT, SIGTERM) are closed by a shutdown hook.
+ */
+public class CsvFlowSink implements FlowSink {
+    public static final Logger logger = LoggerFactory.getLogger(CsvFlowSink.class);
+
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    public static final long DEFAULT_FLUSH_INTERVAL = 1000L;
+
+    private static final Set<CsvFlowSink> openSinks = ConcurrentHashMap.newKeySet();
+    private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "CsvFlowSink-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (CsvFlowSink sink : openSinks) {
+                sink.close();
+            }
+        }, "CsvFlowSink-shutdown"));
+    }
+
+    private final File file;
+    private final int bufferSize;
+    private final FlowRecordWriter record = new FlowRecordWriter();
+    private FileOutputStream output;
+    private ScheduledFuture<?> flushTask;
+    private long count;
+    private long size; // bytes in the file, pending records not included
+
+    public CsvFlowSink(String savePath, String fileName, String header) {
+        this(savePath, fileName, header, DEFAULT_BUFFER_SIZE, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    public CsvFlowSink(String savePath, String fileName, String header, int bufferSize, long flushInterval) {
+        super();
+        if (savePath == null || fileName == null) {
+            String ex = String.format("savepath=%s,filename=%s", savePath, fileName);
+            throw new IllegalArgumentException(ex);
+        }
+
+        File saveDir = new File(savePath);
+        if (!saveDir.exists()) {
+            saveDir.mkdirs();
+        }
+        if (!savePath.endsWith(FILE_SEP)) {
+            savePath += FILE_SEP;
+        }
+        this.file = new File(savePath + fileName);
+        this.bufferSize = bufferSize;
+
+        try {
+            boolean created = !file.exists();
+            output = new FileOutputStream(file, true);
+            size = file.length();
+            if (created && header != null) {
+                byte[] line = (header + LINE_SEP).getBytes();
+                output.write(line);
+                size += line.length;
+            }
+        } catch (IOException e) {
+            logger.error("Can not open {}: {}", file.getPath(), e.getMessage());
+            output = null;
+            return;
+        }
+
+        openSinks.add(this);
+        if (flushInterval > 0) {
+            flushTask = flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /*
+     * false leaves this sink open when the JVM shuts down, for an owner whose own
+     * shutdown hook still writes the last flows and closes it afterwards.
+     */
+    public synchronized void setCloseOnShutdown(boolean closeOnShutdown) {
+        if (output == null) {
+            return;
+        }
+        if (closeOnShutdown) {
+            openSinks.add(this);
+        } else {
+            openSinks.remove(this);
+        }
+    }
+
+    /* number of records written so far */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /* bytes of the file once the pending records are written */
+    public synchronized long getSize() {
+        return size + record.length();
+    }
+
+    @Override
+    public synchronized void write(BasicFlow flow) {
+        if (output == null) {
+            return;
+        }
+        flow.writeFlowBasedFeaturesEx(record);
+        record.newLine();
+        count++;
+        if (record.length() >= bufferSize) {
+            writePending();
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (output != null && record.length() > 0) {
+            writePending();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (output == null) {
+            return;
+        }
+        if (flushTask != null) {
+            flushTask.cancel(false);
+        }
+        flush();
+        try {
+            output.close();
+        } catch (IOException e) {
+            logger.error("Can not close {}: {}", file.getPath(), e.getMessage());
+        }
+        output = null;
+        openSinks.remove(this);
+    }
+
+    private void writePending() {
+        size += record.length();
+        try {
+            record.writeTo(output);
+        } catch (IOException e) {
+            logger.error("Can not write {}: {}", file.getPath(), e.getMessage());
+        }
+        record.reset();
+    }
+}
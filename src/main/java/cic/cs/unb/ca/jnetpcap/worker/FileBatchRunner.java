@@ -0,0 +1,69 @@
+package cic.cs.unb.ca.jnetpcap.worker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/*
+ * Runs a task on every file of a batch with a fixed number of threads.
+ *
+ * The largest files are started first, so a big file picked up last does not keep one
+ * thread busy long after the others are done. A task that fails is logged and the other
+ * files go on; run() returns once every file is done.
+ */
+public class FileBatchRunner {
+    public static final Logger logger = LoggerFactory.getLogger(FileBatchRunner.class);
+
+    private FileBatchRunner() {
+    }
+
+    /* largest first, files of the same size by name */
+    public static File[] largestFirst(File[] files) {
+        File[] sorted = files.clone();
+        Arrays.sort(sorted, (a, b) -> {
+            int c = Long.compare(b.length(), a.length());
+            return c != 0 ? c : a.getName().compareTo(b.getName());
+        });
+        return sorted;
+    }
+
+    public static void run(File[] files, int jobs, String threadName, Consumer<File> task) {
+        if (jobs < 1) {
+            throw new IllegalArgumentException("jobs=" + jobs);
+        }
+
+        AtomicInteger threadCnt = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(jobs, Math.max(files.length, 1)), r -> {
+            Thread thread = new Thread(r, threadName + "-" + threadCnt.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for (File file : largestFirst(files)) {
+            executor.execute(() -> {
+                try {
+                    task.accept(file);
+                } catch (RuntimeException e) {
+                    logger.error("{} failed: {}", file.getName(), e.toString());
+                }
+            });
+        }
+        executor.shutdown();
+
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // wait for the last files
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -4,4 +4,9 @@ import cic.cs.unb.ca.jnetpcap.BasicFlow;
 
 public interface FlowGenListener {
     void onFlowGenerated(BasicFlow flow);
+
+    /* a flow ended early to make room in a full flow table, see FlowGenerator.setMaxFlows() */
+    default void onFlowEvicted(BasicFlow flow) {
+        onFlowGenerated(flow);
+    }
 }
@@ -0,0 +1,16 @@
+package cic.cs.unb.ca.jnetpcap.worker;
+
+import cic.cs.unb.ca.jnetpcap.BasicFlow;
+
+/*
+ * Long lived destination of flow records. Implementations keep their output open between
+ * records and are safe to use from several threads.
+ */
+public interface FlowSink {
+
+    void write(BasicFlow flow);
+
+    void flush();
+
+    void close();
+}
@@ -0,0 +1,202 @@
+package cic.cs.unb.ca.jnetpcap.worker;
+
+import cic.cs.unb.ca.jnetpcap.BasicPacketInfo;
+import cic.cs.unb.ca.jnetpcap.FlowGenerator;
+import cic.cs.unb.ca.jnetpcap.FlowSampler;
+import cic.cs.unb.ca.jnetpcap.IdGenerator;
+import cic.cs.unb.ca.jnetpcap.LivePacketDecoder;
+import cic.cs.unb.ca.jnetpcap.PacketRing;
+import org.jnetpcap.JBufferHandler;
+import org.jnetpcap.Pcap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/*
+ * Reads an open live Pcap on two threads.
+ *
+ * The capture thread, the one calling run(), only decodes each packet into a PacketRing
+ * and goes back to libpcap. A processing thread takes the packets from the ring and feeds
+ * the flow generator, so a slow listener fills the ring instead of the kernel buffer.
+ * With a ShardedFlowGenerator the processing thread spreads the packets over its shards.
+ * When the ring is full packets are dropped and counted by the ring.
+ *
+ * The processing thread also moves the flow generator's clock while no packets come, as
+ * the capture loop did after every dispatch before.
+ *
+ * A flow generator that fails (e.g. a dead shard of a ShardedFlowGenerator) can not make
+ * flows anymore: the processing thread stops, and so does the capture, run() throws.
+ */
+public class LiveCapture {
+    public static final Logger logger = LoggerFactory.getLogger(LiveCapture.class);
+
+    private static final long ADVANCE_INTERVAL = 1000L; // ms, the read timeout of the live Pcap
+    private static final long REPORT_INTERVAL = 1000L; // ms
+    private static final long IDLE_PARK = 100000L; // ns
+
+    private final Source source;
+    private final FlowGenerator flowGen;
+    private final PacketRing ring;
+    private volatile boolean capturing = false;
+    private volatile RuntimeException failure; // of the flow generator, ends the capture
+    private FlowSampler sampler; // packet sampling, null for all
+    private long sampleCount; // packets sampler decided for
+
+    public LiveCapture(Pcap pcap, FlowGenerator flowGen, int snaplen, boolean readIP4, boolean readIP6) {
+        this(pcap, flowGen, snaplen, PacketRing.DEFAULT_CAPACITY, readIP4, readIP6);
+    }
+
+    public LiveCapture(Pcap pcap, FlowGenerator flowGen, int snaplen, int ringCapacity, boolean readIP4,
+            boolean readIP6) {
+        super();
+        if (pcap == null || flowGen == null) {
+            String ex = String.format("pcap=%s,flowGen=%s", pcap, flowGen);
+            throw new IllegalArgumentException(ex);
+        }
+        this.flowGen = flowGen;
+        this.ring = new PacketRing(ringCapacity);
+        this.source = new PcapSource(pcap,
+                new LivePacketDecoder(new IdGenerator(), pcap.datalink(), snaplen, readIP4, readIP6));
+    }
+
+    /* packets from source instead of libpcap, for tests */
+    LiveCapture(Source source, FlowGenerator flowGen, int ringCapacity) {
+        super();
+        this.source = source;
+        this.flowGen = flowGen;
+        this.ring = new PacketRing(ringCapacity);
+    }
+
+    /* only the packets sampler takes are decoded, set it before run() */
+    public void setSampler(FlowSampler sampler) {
+        this.sampler = sampler;
+    }
+
+    public PacketRing getRing() {
+        return ring;
+    }
+
+    public String getRingStatus() {
+        return String.format("ring %d/%d, high %d, dropped %d", ring.size(), ring.capacity(),
+                ring.getHighWaterMark(), ring.getDroppedCount());
+    }
+
+    /*
+     * Captures on the calling thread until stop returns true or libpcap fails, and gives
+     * the last result of Pcap.dispatch(). report, when not null, is called on the capture
+     * thread about once a second. The packets in the ring are processed before run()
+     * returns; the flow generator is left open.
+     *
+     * When the flow generator fails the capture stops too and run() throws an
+     * IllegalStateException with the failure as its cause.
+     */
+    public int run(BooleanSupplier stop, Runnable report) {
+        capturing = true;
+        Thread processor = new Thread(this::process, "LiveCapture-process");
+        processor.setDaemon(true);
+        processor.start();
+
+        BooleanSupplier done = () -> failure != null || stop.getAsBoolean();
+        int ret;
+        long lastReport = System.currentTimeMillis();
+        try {
+            do {
+                ret = source.dispatch(ring, done);
+                long now = System.currentTimeMillis();
+                if (report != null && now - lastReport >= REPORT_INTERVAL) {
+                    report.run();
+                    lastReport = now;
+                }
+            } while (ret >= 0 && !done.getAsBoolean());
+        } finally {
+            capturing = false;
+            LockSupport.unpark(processor);
+            // SwingWorker.cancel(true) interrupts us, the flow generator must not be closed
+            // while the processing thread still uses it
+            boolean interrupted = false;
+            while (processor.isAlive()) {
+                try {
+                    processor.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        logger.info("{} packets through the ring, {}", ring.getOfferedCount(), getRingStatus());
+        if (failure != null) {
+            throw new IllegalStateException("flow generator failed, capture stopped", failure);
+        }
+        return ret;
+    }
+
+    private void process() {
+        long lastAdvance = System.currentTimeMillis();
+        while (true) {
+            // read before polling: once capture stopped an empty ring stays empty
+            boolean last = !capturing;
+            BasicPacketInfo packet = ring.poll();
+            try {
+                if (packet != null) {
+                    flowGen.addPacket(packet);
+                    continue;
+                }
+                if (last) {
+                    return;
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastAdvance >= ADVANCE_INTERVAL) {
+                    flowGen.advanceTime(now * 1000L);
+                    lastAdvance = now;
+                }
+            } catch (RuntimeException e) {
+                // the packets after it would fail the same way, one error line each
+                logger.error("{} failed, stopping the capture: {}", Thread.currentThread().getName(), e.toString());
+                failure = e;
+                return;
+            }
+            LockSupport.parkNanos(IDLE_PARK);
+        }
+    }
+
+    /* where run() gets its packets from */
+    interface Source {
+        /*
+         * puts the packets at hand into ring and gives what Pcap.dispatch() gives, a
+         * negative result ends the capture; done says when to return early
+         */
+        int dispatch(PacketRing ring, BooleanSupplier done);
+    }
+
+    private final class PcapSource implements Source {
+        private final Pcap pcap;
+        private final LivePacketDecoder decoder;
+        private BooleanSupplier done;
+        private final JBufferHandler<LiveCapture> handler;
+
+        PcapSource(Pcap pcap, LivePacketDecoder decoder) {
+            this.pcap = pcap;
+            this.decoder = decoder;
+            this.handler = (header, buffer, capture) -> {
+                if (sampler == null || sampler.samplePacket(sampleCount++)) {
+                    this.decoder.decodeTo(header, buffer, ring);
+                }
+                if (done.getAsBoolean()) {
+                    this.pcap.breakloop();
+                }
+            };
+        }
+
+        @Override
+        public int dispatch(PacketRing ring, BooleanSupplier done) {
+            this.done = done;
+            return pcap.dispatch(Pcap.DISPATCH_BUFFER_FULL, handler, LiveCapture.this);
+        }
+    }
+}
@@ -6,8 +6,6 @@ import org.jnetpcap.PcapClosedException;
 import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
 
 import static cic.cs.unb.ca.jnetpcap.Utils.FILE_SEP;
 import static cic.cs.unb.ca.jnetpcap.Utils.FLOW_SUFFIX;
@@ -16,6 +14,11 @@ import static cic.cs.unb.ca.jnetpcap.Utils.countLines;
 public class PcapReader {
 
     public static void readFile(String inputFile, String outPath, long flowTimeout, long activityTimeout) {
+        readFile(inputFile, outPath, flowTimeout, activityTimeout, 1);
+    }
+
+    public static void readFile(String inputFile, String outPath, long flowTimeout, long activityTimeout,
+            int threads) {
         if (inputFile == null || outPath == null) {
             return;
         }
@@ -36,8 +39,14 @@ public class PcapReader {
             }
         }
 
-        FlowGenerator flowGen = new FlowGenerator(true, flowTimeout, activityTimeout);
-        flowGen.addFlowListener(new FlowListener(fileName, outPath));
+        FlowGenerator flowGen;
+        if (threads > 1) {
+            flowGen = new ShardedFlowGenerator(threads, true, flowTimeout, activityTimeout);
+        } else {
+            flowGen = new FlowGenerator(true, flowTimeout, activityTimeout);
+        }
+        CsvFlowSink sink = new CsvFlowSink(outPath, fileName + FLOW_SUFFIX, FlowFeature.getHeader());
+        flowGen.addFlowListener(new FlowListener(fileName, sink));
         boolean readIP6 = false;
         boolean readIP4 = true;
         PacketReader packetReader = new PacketReader(inputFile, readIP4, readIP6);
@@ -63,6 +72,8 @@ public class PcapReader {
             }
         }
 
+        flowGen.close();
+        sink.close();
         flowGen.dumpLabeledCurrentFlow(saveFileFullPath.getPath(), FlowFeature.getHeader());
 
         long lines = countLines(saveFileFullPath.getPath());
@@ -77,22 +88,19 @@ public class PcapReader {
 
         private String fileName;
 
-        private String outPath;
+        private FlowSink sink;
 
         private long cnt;
 
-        public FlowListener(String fileName, String outPath) {
+        public FlowListener(String fileName, FlowSink sink) {
             this.fileName = fileName;
-            this.outPath = outPath;
+            this.sink = sink;
         }
 
         @Override
         public void onFlowGenerated(BasicFlow flow) {
 
-            String flowDump = flow.dumpFlowBasedFeaturesEx();
-            List<String> flowStringList = new ArrayList<>();
-            flowStringList.add(flowDump);
-            InsertCsvRow.insert(FlowFeature.getHeader(), flowStringList, outPath, fileName + FLOW_SUFFIX);
+            sink.write(flow);
 
             cnt++;
 
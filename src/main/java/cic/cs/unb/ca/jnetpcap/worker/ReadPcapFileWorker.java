@@ -10,7 +10,9 @@ import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static cic.cs.unb.ca.jnetpcap.Utils.*;
 
@@ -24,6 +26,8 @@ public class ReadPcapFileWorker extends SwingWorker<List<String>, String> {
 
     private long flowTimeout;
     private long activityTimeout;
+    private boolean mappedReader = false;
+    private int jobs = 1;
     private int totalFlows = 0;
 
     private File pcapPath;
@@ -56,6 +60,22 @@ public class ReadPcapFileWorker extends SwingWorker<List<String>, String> {
         activityTimeout = param2;
     }
 
+    /* mappedReader: read with MappedPcapReader, which also takes pcapng files */
+    public ReadPcapFileWorker(File inputFile, String outPutDir, long param1, long param2, boolean mappedReader) {
+        this(inputFile, outPutDir, param1, param2);
+        this.mappedReader = mappedReader;
+    }
+
+    /* jobs: number of files of a folder read at the same time */
+    public ReadPcapFileWorker(File inputFile, String outPutDir, long param1, long param2, boolean mappedReader,
+            int jobs) {
+        this(inputFile, outPutDir, param1, param2, mappedReader);
+        if (jobs < 1) {
+            throw new IllegalArgumentException("jobs=" + jobs);
+        }
+        this.jobs = jobs;
+    }
+
     @Override
     protected List<String> doInBackground() {
 
@@ -63,7 +83,7 @@ public class ReadPcapFileWorker extends SwingWorker<List<String>, String> {
             readPcapDir(pcapPath, outPutDirectory);
         } else {
 
-            if (!isPcapFile(pcapPath)) {
+            if (!isCaptureFile(pcapPath)) {
                 publish("Please select pcap file!");
                 publish("");
             } else {
@@ -106,7 +126,7 @@ public class ReadPcapFileWorker extends SwingWorker<List<String>, String> {
 
         // File[] pcapFiles = inputPath.listFiles(file ->
         // file.getName().toLowerCase().endsWith("pcap"));
-        File[] pcapFiles = inputPath.listFiles(file -> isPcapFile(file));
+        File[] pcapFiles = inputPath.listFiles(file -> isCaptureFile(file));
 
         int file_cnt = pcapFiles.length;
         logger.debug("CICFlowMeter found :{} pcap files", file_cnt);
@@ -114,6 +134,17 @@ public class ReadPcapFileWorker extends SwingWorker<List<String>, String> {
         publish("");
         publish("");
 
+        if (jobs > 1) {
+            AtomicInteger done = new AtomicInteger();
+            File[] files = Arrays.stream(pcapFiles).filter(file -> !file.isDirectory()).toArray(File[]::new);
+            FileBatchRunner.run(files, jobs, "ReadPcapFile", file -> {
+                firePropertyChange(PROPERTY_CUR_FILE, "", file.getName());
+                readPcapFile(file.getPath(), outPath);
+                firePropertyChange(PROPERTY_FILE_CNT, file_cnt, done.incrementAndGet());
+            });
+            return;
+        }
+
         for (int i = 0; i < file_cnt; i++) {
             File file = pcapFiles[i];
             if (file.isDirectory()) {
@@ -126,6 +157,10 @@ public class ReadPcapFileWorker extends SwingWorker<List<String>, String> {
 
     }
 
+    private boolean isCaptureFile(File file) {
+        return isPcapFile(file) || (mappedReader && MappedPcapReader.isCaptureFile(file));
+    }
+
     private void readPcapFile(String inputFile, String outPath) {
 
         if (inputFile == null || outPath == null) {
@@ -148,10 +183,16 @@ public class ReadPcapFileWorker extends SwingWorker<List<String>, String> {
         }
 
         FlowGenerator flowGen = new FlowGenerator(true, flowTimeout, activityTimeout);
-        flowGen.addFlowListener(new FlowListener(fileName));
+        CsvFlowSink sink = new CsvFlowSink(outPath, fileName + Utils.FLOW_SUFFIX, FlowFeature.getHeader());
+        flowGen.addFlowListener(new FlowListener(fileName, sink));
         boolean readIP6 = false;
         boolean readIP4 = true;
-        PacketReader packetReader = new PacketReader(inputFile, readIP4, readIP6);
+        PacketSource packetReader;
+        if (mappedReader) {
+            packetReader = new MappedPcapReader(inputFile, readIP4, readIP6);
+        } else {
+            packetReader = new PacketReader(inputFile, readIP4, readIP6);
+        }
         publish(String.format("Working on... %s", inputFile));
         logger.debug("Working on... {}", inputFile);
 
@@ -173,17 +214,21 @@ public class ReadPcapFileWorker extends SwingWorker<List<String>, String> {
                 break;
             }
         }
+        packetReader.close();
+        flowGen.close();
+        sink.close();
         flowGen.dumpLabeledCurrentFlow(saveFileFullPath.getPath(), FlowFeature.getHeader());
 
         long lines = countLines(saveFileFullPath.getPath());
 
         long end = System.currentTimeMillis();
 
-        chunks.clear();
-        chunks.add(String.format("Done! Total %d flows", lines));
-        chunks.add(String.format("Packets stats: Total=%d,Valid=%d,Discarded=%d", nTotal, nValid, nDiscarded));
-        chunks.add(DividingLine);
-        publish(chunks.toArray(new String[chunks.size()]));
+        // files of a folder may be read at the same time, the summary goes out in one piece
+        List<String> summary = new ArrayList<>();
+        summary.add(String.format("%s done! Total %d flows", fileName, lines));
+        summary.add(String.format("Packets stats: Total=%d,Valid=%d,Discarded=%d", nTotal, nValid, nDiscarded));
+        summary.add(DividingLine);
+        publish(summary.toArray(new String[summary.size()]));
 
         /*
          * chunks.add(String.format("\t Total packets: %d",nTotal));
@@ -207,13 +252,16 @@ public class ReadPcapFileWorker extends SwingWorker<List<String>, String> {
     class FlowListener implements FlowGenListener {
 
         private String fileName;
+        private FlowSink sink;
 
-        FlowListener(String fileName) {
+        FlowListener(String fileName, FlowSink sink) {
             this.fileName = fileName;
+            this.sink = sink;
         }
 
         @Override
         public void onFlowGenerated(BasicFlow flow) {
+            sink.write(flow);
             firePropertyChange(PROPERTY_FLOW, fileName, flow);
         }
     }
@@ -0,0 +1,306 @@
+package cic.cs.unb.ca.jnetpcap.worker;
+
+import cic.cs.unb.ca.jnetpcap.BasicFlow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/*
+ * FlowSink for captures that do not end.
+ *
+ * Without a Rotation it writes one csv file per day, <prefix><date><suffix>, the way the
+ * live capture of the GUI saves its flows, and appends to the file of the day if there is
+ * one already.
+ *
+ * With a Rotation the flows go to segments that are rolled over by size, by record count
+ * and at the end of each time window (and of each day):
+ *
+ *   <prefix><yyyy-MM-dd>_<seq><suffix>           size or record limit only
+ *   <prefix><yyyy-MM-dd_HHmmss>_<seq><suffix>    with a window, stamped with its start
+ *
+ * seq counts the segments of a stamp from 0000, after those already on disk. A segment
+ * is written as <name>.part and renamed to <name> in one step when it is complete, so
+ * whatever carries the final name is complete. Windows are aligned to local midnight and
+ * are rolled over on time even while no flow comes.
+ */
+public class RotatingCsvFlowSink implements FlowSink {
+    public static final Logger logger = LoggerFactory.getLogger(RotatingCsvFlowSink.class);
+
+    public static final String PART_SUFFIX = ".part";
+
+    private static final DateTimeFormatter WINDOW_STAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd_HHmmss");
+    private static final long CHECK_INTERVAL = 1000L; // ms, time windows are rolled over this late at most
+
+    private static final Set<RotatingCsvFlowSink> openSinks = ConcurrentHashMap.newKeySet();
+    private static final Set<RotatingCsvFlowSink> windowSinks = ConcurrentHashMap.newKeySet();
+    private static final ScheduledExecutorService roller = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "RotatingCsvFlowSink-roller");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        roller.scheduleWithFixedDelay(() -> {
+            for (RotatingCsvFlowSink sink : windowSinks) {
+                sink.rollIfDue();
+            }
+        }, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        // the segment open at shutdown is completed, not left as .part
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (RotatingCsvFlowSink sink : openSinks) {
+                sink.close();
+            }
+        }, "RotatingCsvFlowSink-shutdown"));
+    }
+
+    /* when a segment is complete; 0 for no limit */
+    public static class Rotation {
+        private final long maxBytes;
+        private final long maxRecords;
+        private final long window; // ms
+
+        public Rotation(long maxBytes, long maxRecords, long window) {
+            if (maxBytes < 0 || maxRecords < 0 || window < 0) {
+                String ex = String.format("maxBytes=%d,maxRecords=%d,window=%d", maxBytes, maxRecords, window);
+                throw new IllegalArgumentException(ex);
+            }
+            this.maxBytes = maxBytes;
+            this.maxRecords = maxRecords;
+            this.window = window;
+        }
+
+        public boolean isSegmented() {
+            return maxBytes > 0 || maxRecords > 0 || window > 0;
+        }
+    }
+
+    private final String savePath;
+    private final String prefix;
+    private final String suffix;
+    private final String header;
+    private final Rotation rotation;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final LongSupplier clock; // epoch ms
+    private boolean closeOnShutdown = true;
+
+    private CsvFlowSink current;
+    private String stamp; // of the current or last segment
+    private int seq;
+    private long windowEnd; // epoch ms, end of the current segment's window
+    private long segments; // completed
+
+    public RotatingCsvFlowSink(String savePath, String suffix, String header) {
+        this(savePath, "", suffix, header, null);
+    }
+
+    public RotatingCsvFlowSink(String savePath, String prefix, String suffix, String header, Rotation rotation) {
+        this(savePath, prefix, suffix, header, rotation, System::currentTimeMillis);
+    }
+
+    RotatingCsvFlowSink(String savePath, String prefix, String suffix, String header, Rotation rotation,
+            LongSupplier clock) {
+        super();
+        if (savePath == null || prefix == null || suffix == null) {
+            String ex = String.format("savepath=%s,prefix=%s,suffix=%s", savePath, prefix, suffix);
+            throw new IllegalArgumentException(ex);
+        }
+        this.savePath = savePath;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.header = header;
+        this.rotation = rotation != null && rotation.isSegmented() ? rotation : null;
+        this.clock = clock;
+        File saveDir = new File(savePath);
+        if (!saveDir.exists()) {
+            saveDir.mkdirs();
+        }
+    }
+
+    /*
+     * Closes the sink like close(), but first hands the file written now (opened if no flow
+     * came yet) to lastWrites, which may append flows to it, e.g. the flows in progress
+     * with FlowGenerator.dumpLabeledCurrentFlow().
+     */
+    public synchronized void close(Consumer<File> lastWrites) {
+        if (current == null) {
+            open(clock.getAsLong());
+        }
+        current.flush();
+        lastWrites.accept(current.getFile());
+        complete();
+    }
+
+    /* segments completed so far */
+    public synchronized long getSegmentCount() {
+        return segments;
+    }
+
+    /*
+     * false leaves this sink open when the JVM shuts down, for an owner whose own
+     * shutdown hook still writes the last flows and closes it afterwards.
+     */
+    public synchronized void setCloseOnShutdown(boolean closeOnShutdown) {
+        this.closeOnShutdown = closeOnShutdown;
+        if (current != null) {
+            register();
+        }
+    }
+
+    @Override
+    public synchronized void write(BasicFlow flow) {
+        long now = clock.getAsLong();
+        if (current != null && isDue(now)) {
+            complete();
+        }
+        if (current == null) {
+            open(now);
+        }
+        current.write(flow);
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (current != null) {
+            current.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        complete();
+    }
+
+    private synchronized void rollIfDue() {
+        if (current != null && rotation != null && rotation.window > 0
+                && clock.getAsLong() >= windowEnd) {
+            complete();
+        }
+    }
+
+    private boolean isDue(long now) {
+        if (now >= windowEnd) {
+            return true;
+        }
+        if (rotation == null) {
+            return false;
+        }
+        return (rotation.maxRecords > 0 && current.getCount() >= rotation.maxRecords)
+                || (rotation.maxBytes > 0 && current.getSize() >= rotation.maxBytes);
+    }
+
+    private void open(long now) {
+        ZonedDateTime time = ZonedDateTime.ofInstant(Instant.ofEpochMilli(now), zone);
+        ZonedDateTime midnight = time.toLocalDate().atStartOfDay(zone);
+        long nextMidnight = time.toLocalDate().plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+
+        if (rotation == null) {
+            windowEnd = nextMidnight;
+            current = new CsvFlowSink(savePath, prefix + time.toLocalDate().toString() + suffix, header);
+            register();
+            return;
+        }
+
+        String segmentStamp;
+        if (rotation.window > 0) {
+            long start = midnight.toInstant().toEpochMilli();
+            start += (now - start) / rotation.window * rotation.window;
+            windowEnd = Math.min(start + rotation.window, nextMidnight);
+            segmentStamp = WINDOW_STAMP.format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(start), zone));
+        } else {
+            windowEnd = nextMidnight;
+            segmentStamp = time.toLocalDate().toString();
+        }
+        if (!segmentStamp.equals(stamp)) {
+            stamp = segmentStamp;
+            seq = nextFreeSeq(stamp);
+        }
+        String name = String.format("%s%s_%04d%s", prefix, stamp, seq++, suffix);
+        current = new CsvFlowSink(savePath, name + PART_SUFFIX, header);
+        register();
+    }
+
+    /* closes the current segment and gives it its final name */
+    private void complete() {
+        if (current == null) {
+            return;
+        }
+        current.close();
+        File part = current.getFile();
+        current = null;
+        openSinks.remove(this);
+        windowSinks.remove(this);
+        if (rotation == null) {
+            return;
+        }
+
+        String name = part.getName();
+        File done = new File(part.getParentFile(), name.substring(0, name.length() - PART_SUFFIX.length()));
+        try {
+            try {
+                Files.move(part.toPath(), done.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(part.toPath(), done.toPath());
+            }
+            segments++;
+        } catch (IOException e) {
+            logger.error("Can not rename {}: {}", part.getPath(), e.getMessage());
+        }
+    }
+
+    private void register() {
+        // a segment is completed by this sink, CsvFlowSink would leave it as .part
+        current.setCloseOnShutdown(rotation == null && closeOnShutdown);
+        if (rotation != null && closeOnShutdown) {
+            openSinks.add(this);
+        } else {
+            openSinks.remove(this);
+        }
+        if (rotation != null && rotation.window > 0) {
+            windowSinks.add(this);
+        }
+    }
+
+    /* the first seq of stamp not taken by a segment on disk, complete or not */
+    private int nextFreeSeq(String stamp) {
+        String start = prefix + stamp + "_";
+        String[] names = new File(savePath).list();
+        int next = 0;
+        if (names == null) {
+            return next;
+        }
+        for (String name : names) {
+            if (!name.startsWith(start)) {
+                continue;
+            }
+            String rest = name.substring(start.length());
+            if (rest.endsWith(PART_SUFFIX)) {
+                rest = rest.substring(0, rest.length() - PART_SUFFIX.length());
+            }
+            if (!rest.endsWith(suffix)) {
+                continue;
+            }
+            try {
+                next = Math.max(next, Integer.parseInt(rest.substring(0, rest.length() - suffix.length())) + 1);
+            } catch (NumberFormatException e) {
+                // not a segment of this sink
+            }
+        }
+        return next;
+    }
+}
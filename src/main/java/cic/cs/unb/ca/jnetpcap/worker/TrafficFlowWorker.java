@@ -2,11 +2,8 @@ package cic.cs.unb.ca.jnetpcap.worker;
 
 import cic.cs.unb.ca.jnetpcap.BasicFlow;
 import cic.cs.unb.ca.jnetpcap.FlowGenerator;
-import cic.cs.unb.ca.jnetpcap.PacketReader;
+import cic.cs.unb.ca.jnetpcap.ShardedFlowGenerator;
 import org.jnetpcap.Pcap;
-import org.jnetpcap.nio.JMemory.Type;
-import org.jnetpcap.packet.PcapPacket;
-import org.jnetpcap.packet.PcapPacketHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,20 +15,32 @@ public class TrafficFlowWorker extends SwingWorker<String, String> implements Fl
     public static final Logger logger = LoggerFactory.getLogger(TrafficFlowWorker.class);
     public static final String PROPERTY_FLOW = "flow";
     private String device;
+    private int threads;
 
     public TrafficFlowWorker(String device) {
+        this(device, 1);
+    }
+
+    public TrafficFlowWorker(String device, int threads) {
         super();
         this.device = device;
+        this.threads = threads;
     }
 
     @Override
     protected String doInBackground() {
 
-        FlowGenerator flowGen = new FlowGenerator(true, 120000000L, 5000000L);
+        FlowGenerator flowGen;
+        if (threads > 1) {
+            flowGen = new ShardedFlowGenerator(threads, true, 120000000L, 5000000L);
+        } else {
+            flowGen = new FlowGenerator(true, 120000000L, 5000000L);
+        }
         flowGen.addFlowListener(this);
+        flowGen.enableTimerExpiry();
         int snaplen = 64 * 1024;// 2048; // Truncate packet at this size
         int promiscous = Pcap.MODE_PROMISCUOUS;
-        int timeout = 60 * 1000; // In milliseconds
+        int timeout = 1000; // In milliseconds, also how often idle flows are expired
         StringBuilder errbuf = new StringBuilder();
         Pcap pcap = Pcap.openLive(device, snaplen, promiscous, timeout, errbuf);
         if (pcap == null) {
@@ -39,37 +48,22 @@ public class TrafficFlowWorker extends SwingWorker<String, String> implements Fl
             return String.format("open %s fail ->", device) + errbuf.toString();
         }
 
-        PcapPacketHandler<String> jpacketHandler = (packet, user) -> {
-
-            /*
-             * BufferUnderflowException while decoding header
-             * that is because:
-             * 1.PCAP library is not multi-threaded
-             * 2.jNetPcap library is not multi-threaded
-             * 3.Care must be taken how packets or the data they referenced is used in
-             * multi-threaded environment
-             *
-             * typical rule:
-             * make new packet objects and perform deep copies of the data in PCAP buffers
-             * they point to
-             *
-             * but it seems not work
-             */
-
-            PcapPacket permanent = new PcapPacket(Type.POINTER);
-            packet.transferStateAndDataTo(permanent);
-
-            flowGen.addPacket(PacketReader.getBasicPacketInfo(permanent, true, false));
-            if (isCancelled()) {
-                pcap.breakloop();
-                logger.debug("break Packet loop");
-            }
-        };
-
         // FlowMgr.getInstance().setListenFlag(true);
         logger.info("Pcap is listening...");
         firePropertyChange("progress", "open successfully", "listening: " + device);
-        int ret = pcap.loop(Pcap.DISPATCH_BUFFER_FULL, jpacketHandler, device);
+        // the callback only fills the ring, flows are made and fired on its processing thread
+        LiveCapture capture = new LiveCapture(pcap, flowGen, snaplen, true, false);
+        int ret;
+        try {
+            ret = capture.run(this::isCancelled,
+                    () -> firePropertyChange("progress", null,
+                            String.format("listening: %s (%s)", device, capture.getRingStatus())));
+        } catch (IllegalStateException e) {
+            pcap.close();
+            logger.error("listening: {} stopped -> {}", device, e.getCause().toString());
+            return "listening: " + device + " error -> " + e.getCause().getMessage();
+        }
+        flowGen.close();
 
         String str;
         switch (ret) {
@@ -0,0 +1,221 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import org.jnetpcap.packet.format.FormatUtils;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/* FlowRecordWriter has to give the same characters as the StringBuilder rows it replaced */
+public class FlowRecordWriterTest {
+
+    /* the row as dumpFlowBasedFeaturesEx() built it before, one StringBuilder.append() per call */
+    private static class StringRow extends FlowRecordWriter {
+        private final StringBuilder dump = new StringBuilder();
+
+        @Override
+        public FlowRecordWriter separator() {
+            dump.append(",");
+            return this;
+        }
+
+        @Override
+        public FlowRecordWriter append(String s) {
+            dump.append(s);
+            return this;
+        }
+
+        @Override
+        public FlowRecordWriter append(int v) {
+            dump.append(v);
+            return this;
+        }
+
+        @Override
+        public FlowRecordWriter append(long v) {
+            dump.append(v);
+            return this;
+        }
+
+        @Override
+        public FlowRecordWriter append(double v) {
+            dump.append(v);
+            return this;
+        }
+
+        @Override
+        public FlowRecordWriter appendIp(byte[] address) {
+            dump.append(FormatUtils.ip(address));
+            return this;
+        }
+
+        @Override
+        public FlowRecordWriter appendTimestamp(long millis) {
+            dump.append(DateFormatter.convertMilliseconds2String(millis, TIMESTAMP_PATTERN));
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return dump.toString();
+        }
+    }
+
+    private static void assertSameDouble(FlowRecordWriter writer, double v) {
+        writer.reset();
+        assertEquals(Double.toString(v), writer.append(v).toString());
+    }
+
+    private static void assertSameLong(FlowRecordWriter writer, long v) {
+        writer.reset();
+        assertEquals(Long.toString(v), writer.append(v).toString());
+    }
+
+    @Test
+    public void integralDoublesAtTheBoundaries() {
+        FlowRecordWriter writer = new FlowRecordWriter();
+        double[] values = {0.0, -0.0, 1.0, -1.0, Math.nextDown(1.0), Math.nextUp(1.0), 0.5, 0.001, 0.00099,
+                2.0, 1460.0, 9999999.0, -9999999.0, Math.nextDown(1.0E7), 1.0E7, -1.0E7, Math.nextUp(1.0E7),
+                1.0E7 + 1, 123456789.0, 1.0E15, 9.007199254740993E15, 1.0E300, Double.MAX_VALUE,
+                Double.MIN_VALUE, -Double.MIN_VALUE, Long.MAX_VALUE, (double) Long.MIN_VALUE};
+        for (double v : values) {
+            assertSameDouble(writer, v);
+            assertSameDouble(writer, -v);
+        }
+    }
+
+    @Test
+    public void specialDoubles() {
+        FlowRecordWriter writer = new FlowRecordWriter();
+        assertSameDouble(writer, Double.NaN);
+        assertSameDouble(writer, 0.0 / 0.0);
+        assertSameDouble(writer, Double.longBitsToDouble(0x7ff8000000000001L)); // another NaN
+        assertSameDouble(writer, Double.POSITIVE_INFINITY);
+        assertSameDouble(writer, Double.NEGATIVE_INFINITY);
+        assertSameDouble(writer, 1460.0 / 0.0);
+    }
+
+    /* the values flows give: byte counts, micro seconds, means and rates of both signs */
+    @Test
+    public void randomDoubles() {
+        Random random = new Random(3);
+        FlowRecordWriter writer = new FlowRecordWriter(16);
+        for (int i = 0; i < 200000; i++) {
+            double v;
+            switch (i % 4) {
+            case 0:
+                v = random.nextInt(20000000) - 10000000;
+                break;
+            case 1:
+                v = (double) random.nextInt(1461) / (random.nextInt(100) + 1);
+                break;
+            case 2:
+                v = Double.longBitsToDouble(random.nextLong());
+                break;
+            default:
+                v = random.nextGaussian() * Math.pow(10, random.nextInt(20) - 5);
+                break;
+            }
+            assertSameDouble(writer, v);
+        }
+    }
+
+    @Test
+    public void longs() {
+        Random random = new Random(4);
+        FlowRecordWriter writer = new FlowRecordWriter();
+        long[] values = {0L, 1L, -1L, 9L, 10L, -10L, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE,
+                Long.MIN_VALUE, Long.MIN_VALUE + 1};
+        for (long v : values) {
+            assertSameLong(writer, v);
+        }
+        for (int i = 0; i < 100000; i++) {
+            assertSameLong(writer, random.nextLong() >> random.nextInt(64));
+        }
+    }
+
+    @Test
+    public void strings() {
+        FlowRecordWriter writer = new FlowRecordWriter(64);
+        assertEquals("null", writer.append((String) null).toString());
+        writer.reset();
+        assertEquals("BENIGN,No Label", writer.append("BENIGN").separator().append("No Label").toString());
+        writer.reset();
+        String label = "DoS Hulk \u00e9\u4e2d";
+        assertEquals(new String(label.getBytes()), writer.append(label).toString());
+    }
+
+    /* the cached second is reused within the second only, forwards and backwards in time */
+    @Test
+    public void timestampAcrossSeconds() {
+        ZoneId zone = ZoneId.systemDefault();
+        long noon = LocalDateTime.of(2017, 7, 7, 11, 59, 59, 999000000).atZone(zone).toInstant().toEpochMilli();
+        long[] millis = {noon - 999, noon, noon + 1, noon + 2, noon + 1000, noon + 1001, noon,
+                1499438400000L, 1499438400999L, 1499438401000L, 1499438400999L,
+                999L, 1000L, 0L, -1L, -999L, -1000L, -1001L};
+        FlowRecordWriter writer = new FlowRecordWriter();
+        for (long m : millis) {
+            writer.reset();
+            assertEquals(DateFormatter.convertMilliseconds2String(m, FlowRecordWriter.TIMESTAMP_PATTERN),
+                    writer.appendTimestamp(m).toString());
+        }
+    }
+
+    @Test
+    public void ipAddresses() {
+        FlowRecordWriter writer = new FlowRecordWriter();
+        byte[][] addresses = {{0, 0, 0, 0}, {10, 0, 0, 1}, {(byte) 192, (byte) 168, 1, (byte) 255},
+                {(byte) 255, (byte) 255, (byte) 255, (byte) 255},
+                {0x20, 0x01, 0x0d, (byte) 0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1}};
+        for (byte[] address : addresses) {
+            writer.reset();
+            assertEquals(FormatUtils.ip(address), writer.appendIp(address).toString());
+        }
+    }
+
+    /* whole rows of flows, with start times running over many seconds through one writer */
+    @Test
+    public void flowRows() {
+        Random random = new Random(6);
+        IdGenerator generator = new IdGenerator();
+        FlowGenerator flowGen = new FlowGenerator(true, 120000000L, 5000000L);
+        int[] rows = new int[1];
+        flowGen.addFlowListener(flow -> {
+            StringRow expected = new StringRow();
+            flow.writeFlowBasedFeaturesEx(expected);
+            assertEquals(expected.toString(), flow.dumpFlowBasedFeaturesEx());
+            rows[0]++;
+        });
+
+        long time = 1499438399000000L;
+        for (int i = 0; i < 50000; i++) {
+            time += random.nextInt(20000);
+            byte[] src;
+            byte[] dst;
+            if (random.nextInt(10) == 0) {
+                src = new byte[] {0x20, 0x01, 0x0d, (byte) 0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1};
+                dst = new byte[] {0x20, 0x01, 0x0d, (byte) 0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+                        (byte) random.nextInt(4)};
+            } else {
+                src = new byte[] {10, 0, 0, (byte) random.nextInt(8)};
+                dst = new byte[] {(byte) 192, (byte) 168, 0, (byte) random.nextInt(8)};
+            }
+            BasicPacketInfo packet = random.nextBoolean()
+                    ? new BasicPacketInfo(src, dst, 1024 + random.nextInt(4), 443, 6, time, generator)
+                    : new BasicPacketInfo(dst, src, 443, 1024 + random.nextInt(4), 6, time, generator);
+            packet.setTCPWindow(random.nextInt(65536));
+            packet.setFlagFIN(random.nextInt(40) == 0);
+            packet.setFlagSYN(random.nextInt(20) == 0);
+            packet.setFlagPSH(random.nextBoolean());
+            packet.setFlagACK(true);
+            packet.setHeaderBytes(20);
+            packet.setPayloadBytes(random.nextInt(4) == 0 ? 0 : random.nextInt(1461));
+            flowGen.addPacket(packet);
+        }
+        assertTrue(rows[0] > 1000);
+    }
+}
@@ -0,0 +1,76 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/* FlowStatistics has to give the same bits as the SummaryStatistics it replaced */
+public class FlowStatisticsTest {
+
+    private static void assertSame(SummaryStatistics expected, FlowStatistics actual) {
+        assertEquals(expected.getN(), actual.getN());
+        assertEquals(expected.getSum(), actual.getSum(), 0.0);
+        assertEquals(expected.getMin(), actual.getMin(), 0.0);
+        assertEquals(expected.getMax(), actual.getMax(), 0.0);
+        assertEquals(expected.getMean(), actual.getMean(), 0.0);
+        assertEquals(expected.getVariance(), actual.getVariance(), 0.0);
+        assertEquals(expected.getStandardDeviation(), actual.getStandardDeviation(), 0.0);
+    }
+
+    @Test
+    public void emptyAndOneValue() {
+        SummaryStatistics expected = new SummaryStatistics();
+        FlowStatistics actual = new FlowStatistics();
+        assertSame(expected, actual);
+
+        expected.addValue(1500.0);
+        actual.addValue(1500.0);
+        assertSame(expected, actual);
+    }
+
+    @Test
+    public void packetSizesAndTimes() {
+        Random random = new Random(1);
+        SummaryStatistics expected = new SummaryStatistics();
+        FlowStatistics actual = new FlowStatistics();
+        for (int i = 0; i < 100000; i++) {
+            double value;
+            switch (i % 3) {
+            case 0:
+                value = random.nextInt(1461); // payload bytes
+                break;
+            case 1:
+                value = (double) (long) (random.nextDouble() * 120000000L); // inter arrival micros
+                break;
+            default:
+                value = random.nextGaussian() * 1e6;
+                break;
+            }
+            expected.addValue(value);
+            actual.addValue(value);
+            if (i % 997 == 0) {
+                assertSame(expected, actual);
+            }
+        }
+        assertSame(expected, actual);
+    }
+
+    @Test
+    public void clearStartsOver() {
+        SummaryStatistics expected = new SummaryStatistics();
+        FlowStatistics actual = new FlowStatistics();
+        actual.addValue(3.0);
+        actual.addValue(-7.5);
+        actual.clear();
+        assertSame(expected, actual);
+
+        for (double value : new double[] {0.0, 0.0, 40.0, 1e-9, 1e12}) {
+            expected.addValue(value);
+            actual.addValue(value);
+        }
+        assertSame(expected, actual);
+    }
+}
@@ -0,0 +1,158 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FlowTableTest {
+
+    private static final byte[] CLIENT = {10, 0, 0, 1};
+    private static final byte[] SERVER = {10, 0, 0, 2};
+
+    private final IdGenerator generator = new IdGenerator();
+
+    private FlowKey key(int clientPort) {
+        return new FlowKey(CLIENT, SERVER, clientPort, 80, 6);
+    }
+
+    private BasicFlow flow(int clientPort) {
+        BasicPacketInfo packet = new BasicPacketInfo(CLIENT, SERVER, clientPort, 80, 6, 1000L, generator);
+        return new BasicFlow(packet, 5000000L);
+    }
+
+    @Test
+    public void insertAndGet() {
+        FlowTable table = new FlowTable(8);
+        BasicFlow flow = flow(1024);
+        int slot = table.probe(key(1024));
+        assertTrue(slot < 0);
+        table.insert(slot, key(1024), flow);
+
+        assertEquals(1, table.size());
+        assertSame(flow, table.get(key(1024)));
+        assertNull(table.get(key(1025)));
+        slot = table.probe(key(1024));
+        assertTrue(slot >= 0);
+        assertSame(flow, table.flowAt(slot));
+    }
+
+    @Test
+    public void bothDirectionsFindTheFlow() {
+        FlowTable table = new FlowTable();
+        BasicFlow flow = flow(1024);
+        table.put(key(1024), flow);
+
+        FlowKey reply = new FlowKey(SERVER, CLIENT, 80, 1024, 6);
+        int slot = table.probe(reply);
+        assertSame(flow, table.flowAt(slot));
+        assertTrue(table.isForward(slot, key(1024)));
+        assertFalse(table.isForward(slot, reply));
+    }
+
+    @Test
+    public void probeByPacket() {
+        FlowTable table = new FlowTable(8);
+        for (int port = 1000; port < 1100; port++) {
+            table.put(key(port), flow(port));
+        }
+        BasicPacketInfo request = new BasicPacketInfo(CLIENT, SERVER, 1042, 80, 6, 2000L, generator);
+        BasicPacketInfo reply = new BasicPacketInfo(SERVER, CLIENT, 80, 1042, 6, 3000L, generator);
+        int slot = table.probe(key(1042));
+        assertEquals(slot, table.probe(request));
+        assertEquals(slot, table.probe(reply));
+        assertEquals(key(1042), table.keyAt(slot));
+        assertEquals(request.flowKey().hashCode(), reply.flowHash());
+
+        BasicPacketInfo udp = new BasicPacketInfo(CLIENT, SERVER, 1042, 80, 17, 4000L, generator);
+        assertEquals(table.probe(udp.flowKey()), table.probe(udp));
+        assertTrue(table.probe(udp) < 0);
+    }
+
+    @Test
+    public void removeKeepsTheOthers() {
+        FlowTable table = new FlowTable(8);
+        Map<Integer, BasicFlow> flows = new HashMap<>();
+        for (int port = 1000; port < 1100; port++) {
+            flows.put(port, flow(port));
+            table.put(key(port), flows.get(port));
+        }
+        assertEquals(100, table.size());
+
+        for (int port = 1000; port < 1100; port += 3) {
+            assertSame(flows.remove(port), table.remove(key(port)));
+            assertNull(table.remove(key(port)));
+        }
+        assertEquals(flows.size(), table.size());
+        for (int port = 1000; port < 1100; port++) {
+            assertSame(flows.get(port), table.get(key(port)));
+        }
+        assertEquals(flows.size(), table.values().size());
+        assertEquals(flows.size(), table.keys().size());
+
+        table.clear();
+        assertTrue(table.isEmpty());
+        assertNull(table.get(key(1001)));
+    }
+
+    /* a probe sequence running off the end of the table goes on at slot 0 */
+    @Test
+    public void wrapAround() {
+        FlowTable table = new FlowTable(8); // 16 slots, grows after 8 flows
+        List<Integer> ports = new ArrayList<>();
+        for (int port = 1; ports.size() < 4; port++) {
+            if ((key(port).hashCode() & 15) == 15) {
+                ports.add(port);
+            }
+        }
+        for (int port : ports) {
+            table.put(key(port), flow(port));
+        }
+        assertEquals(15, table.probe(key(ports.get(0))));
+        assertEquals(0, table.probe(key(ports.get(1))));
+        assertEquals(1, table.probe(key(ports.get(2))));
+        assertEquals(2, table.probe(key(ports.get(3))));
+
+        // the flows after the hole shift back across the end of the table
+        table.remove(key(ports.get(0)));
+        assertEquals(15, table.probe(key(ports.get(1))));
+        assertEquals(0, table.probe(key(ports.get(2))));
+        assertEquals(1, table.probe(key(ports.get(3))));
+        assertEquals(~2, table.probe(key(ports.get(0))));
+
+        table.remove(key(ports.get(2)));
+        assertEquals(15, table.probe(key(ports.get(1))));
+        assertEquals(0, table.probe(key(ports.get(3))));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    public void randomOperationsMatchAHashMap() {
+        Random random = new Random(42);
+        FlowTable table = new FlowTable(8);
+        Map<Integer, BasicFlow> expected = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            int port = random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                assertSame(expected.remove(port), table.remove(key(port)));
+            } else {
+                BasicFlow flow = flow(port);
+                expected.put(port, flow);
+                table.put(key(port), flow);
+            }
+            assertEquals(expected.size(), table.size());
+        }
+        for (int port = 0; port < 2000; port++) {
+            assertSame(expected.get(port), table.get(key(port)));
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import org.jnetpcap.PcapClosedException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static cic.cs.unb.ca.jnetpcap.PacketDecoderTest.ethernet;
+import static cic.cs.unb.ca.jnetpcap.PacketDecoderTest.ipv4;
+import static cic.cs.unb.ca.jnetpcap.PacketDecoderTest.ipv6;
+import static cic.cs.unb.ca.jnetpcap.PacketDecoderTest.sll;
+import static cic.cs.unb.ca.jnetpcap.PacketDecoderTest.tcp;
+import static cic.cs.unb.ca.jnetpcap.PacketDecoderTest.udp;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MappedPcapReaderTest {
+
+    private static final int PCAP_MAGIC_MICROS = 0xA1B2C3D4;
+    private static final int PCAP_MAGIC_NANOS = 0xA1B23C4D;
+
+    private static final long SECOND = 1499438400L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /* a TCP SYN, an ARP request and a UDP datagram over IPv6 */
+    private static List<byte[]> frames() {
+        List<byte[]> frames = new ArrayList<>();
+        frames.add(ethernet(ipv4(6, 0x4000, tcp(51000, 443, 0x02, 64240, 12, 0)), 0x0800));
+        frames.add(ethernet(new byte[28], 0x0806));
+        frames.add(ethernet(ipv6(17, udp(53, 5353, 100)), 0x86DD));
+        return frames;
+    }
+
+    private File write(ByteBuffer b) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), Arrays.copyOf(b.array(), b.position()));
+        return file;
+    }
+
+    /* record i is taken at SECOND + i and fraction */
+    private File pcap(ByteOrder order, int magic, long fraction) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(4096).order(order);
+        b.putInt(magic).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0).putInt(65535).putInt(1);
+        List<byte[]> frames = frames();
+        for (int i = 0; i < frames.size(); i++) {
+            byte[] frame = frames.get(i);
+            b.putInt((int) (SECOND + i)).putInt((int) fraction).putInt(frame.length).putInt(frame.length).put(frame);
+        }
+        return write(b);
+    }
+
+    private static void pad(ByteBuffer b) {
+        while ((b.position() & 3) != 0) {
+            b.put((byte) 0);
+        }
+    }
+
+    private static void interfaceBlock(ByteBuffer b, int linkType, int resolution) {
+        int start = b.position();
+        b.putInt(1).putInt(0).putShort((short) linkType).putShort((short) 0).putInt(65535);
+        if (resolution >= 0) {
+            b.putShort((short) 9).putShort((short) 1).put((byte) resolution);
+            pad(b);
+        }
+        b.putInt(0); // end of options
+        b.putInt(b.position() - start + 4);
+        b.putInt(start + 4, b.position() - start);
+    }
+
+    private static void enhancedPacket(ByteBuffer b, int nic, long ts, byte[] frame) {
+        int start = b.position();
+        b.putInt(6).putInt(0).putInt(nic).putInt((int) (ts >>> 32)).putInt((int) ts);
+        b.putInt(frame.length).putInt(frame.length).put(frame);
+        pad(b);
+        b.putInt(b.position() - start + 4);
+        b.putInt(start + 4, b.position() - start);
+    }
+
+    private File pcapng(ByteOrder order) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(4096).order(order);
+        // section header
+        b.putInt(0x0A0D0D0A).putInt(28).putInt(0x1A2B3C4D).putShort((short) 1).putShort((short) 0).putLong(-1L);
+        b.putInt(28);
+        interfaceBlock(b, PacketDecoder.LINKTYPE_ETHERNET, 9); // nanoseconds
+        interfaceBlock(b, PacketDecoder.LINKTYPE_LINUX_SLL, -1); // microseconds by default
+        List<byte[]> frames = frames();
+        enhancedPacket(b, 0, SECOND * 1000000000L + 123456789L, frames.get(0));
+        // interface statistics, skipped
+        b.putInt(5).putInt(12).putInt(12);
+        enhancedPacket(b, 0, (SECOND + 1) * 1000000000L, frames.get(1));
+        enhancedPacket(b, 0, (SECOND + 2) * 1000000000L + 123456789L, frames.get(2));
+        enhancedPacket(b, 1, (SECOND + 3) * 1000000L + 7L, sll(0x0800, ipv4(17, 0, udp(123, 123, 48))));
+        // simple packet, of the first interface and without a timestamp
+        byte[] simple = frames.get(0);
+        b.putInt(3).putInt(16 + ((simple.length + 3) & ~3)).putInt(simple.length).put(simple);
+        pad(b);
+        b.putInt(16 + ((simple.length + 3) & ~3));
+        return write(b);
+    }
+
+    private static BasicPacketInfo next(MappedPcapReader reader) {
+        try {
+            return reader.nextPacket();
+        } catch (PcapClosedException e) {
+            fail("the capture ended early");
+            return null;
+        }
+    }
+
+    private static void assertEnd(MappedPcapReader reader) {
+        try {
+            reader.nextPacket();
+            fail("a packet after the last record");
+        } catch (PcapClosedException e) {
+            // expected
+        }
+    }
+
+    /* every record takes a packet id, the ARP one too; IPv6 timestamps in milliseconds as PacketReader */
+    private static void assertFrames(MappedPcapReader reader, long fractionMicros) {
+        BasicPacketInfo syn = next(reader);
+        assertEquals(1L, syn.getId());
+        assertEquals(SECOND * 1000000L + fractionMicros, syn.getTimeStamp());
+        assertArrayEquals(PacketDecoderTest.CLIENT, syn.getSrc());
+        assertEquals(51000, syn.getSrcPort());
+        assertEquals(443, syn.getDstPort());
+        assertEquals(6, syn.getProtocol());
+        assertEquals(32L, syn.getHeaderBytes());
+        assertEquals(64240, syn.getTCPWindow());
+        assertTrue(syn.hasFlagSYN());
+
+        assertNull(next(reader));
+
+        BasicPacketInfo udp = next(reader);
+        assertEquals(3L, udp.getId());
+        assertEquals(((SECOND + 2) * 1000000L + fractionMicros) / 1000L, udp.getTimeStamp());
+        assertArrayEquals(PacketDecoderTest.SERVER6, udp.getDst());
+        assertEquals(17, udp.getProtocol());
+        assertEquals(5353, udp.getDstPort());
+        assertEquals(100L, udp.getPayloadBytes());
+    }
+
+    @Test
+    public void bothByteOrders() throws IOException {
+        for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            File file = pcap(order, PCAP_MAGIC_MICROS, 654321L);
+            assertTrue(MappedPcapReader.isCaptureFile(file));
+            MappedPcapReader reader = new MappedPcapReader(file.getPath(), true, true);
+            assertEquals(65535, reader.getSnapLength());
+            assertFrames(reader, 654321L);
+            assertEnd(reader);
+            reader.close();
+        }
+    }
+
+    @Test
+    public void nanosecondTimestamps() throws IOException {
+        for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            MappedPcapReader reader = new MappedPcapReader(pcap(order, PCAP_MAGIC_NANOS, 987654321L).getPath(),
+                    true, true);
+            assertFrames(reader, 987654L);
+            assertEnd(reader);
+            reader.close();
+        }
+    }
+
+    @Test
+    public void pcapng() throws IOException {
+        for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            File file = pcapng(order);
+            assertTrue(MappedPcapReader.isCaptureFile(file));
+            MappedPcapReader reader = new MappedPcapReader(file.getPath(), true, true);
+            assertFalse(reader.canSeek());
+            assertFrames(reader, 123456L);
+
+            BasicPacketInfo sll = next(reader);
+            assertEquals(4L, sll.getId());
+            assertEquals((SECOND + 3) * 1000000L + 7L, sll.getTimeStamp());
+            assertEquals(17, sll.getProtocol());
+            assertEquals(48L, sll.getPayloadBytes());
+
+            BasicPacketInfo simple = next(reader);
+            assertEquals(5L, simple.getId());
+            assertEquals(0L, simple.getTimeStamp());
+            assertEquals(51000, simple.getSrcPort());
+            assertEnd(reader);
+            reader.close();
+        }
+    }
+
+    /* a record cut short, as in a capture still being written, ends the file */
+    @Test
+    public void truncatedRecord() throws IOException {
+        File file = pcap(ByteOrder.LITTLE_ENDIAN, PCAP_MAGIC_MICROS, 0L);
+        try (RandomAccessFile cut = new RandomAccessFile(file, "rw")) {
+            cut.setLength(cut.length() - 5);
+        }
+        MappedPcapReader reader = new MappedPcapReader(file.getPath(), true, true);
+        assertEquals(1L, next(reader).getId());
+        assertNull(next(reader));
+        assertEnd(reader);
+        reader.close();
+    }
+
+    @Test
+    public void notACapture() throws IOException {
+        File file = folder.newFile("flows.csv");
+        Files.write(file.toPath(), "Flow ID,Src IP,Src Port\n".getBytes(StandardCharsets.UTF_8));
+        assertFalse(MappedPcapReader.isCaptureFile(file));
+        try {
+            new MappedPcapReader(file.getPath());
+            fail("read a text file as a capture");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains(file.getPath()));
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PacketDecoderTest {
+
+    static final byte[] CLIENT = {10, 0, 0, 1};
+    static final byte[] SERVER = {(byte) 192, (byte) 168, 1, (byte) 200};
+    static final byte[] CLIENT6 = {0x20, 0x01, 0x0d, (byte) 0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1};
+    static final byte[] SERVER6 = {(byte) 0xfe, (byte) 0x80, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte) 0xab, (byte) 0xcd,
+            (byte) 0xef, (byte) 0xff};
+
+    static final int SYN_ACK = 0x12;
+    static final long TIME = 1499438400123456L;
+
+    /* frames are built the way they go on the wire, network order */
+
+    static byte[] tcp(int srcPort, int dstPort, int flags, int window, int optionBytes, int payload) {
+        int headerLength = 20 + optionBytes;
+        ByteBuffer b = ByteBuffer.allocate(headerLength + payload);
+        b.putShort((short) srcPort).putShort((short) dstPort).putInt(1).putInt(0);
+        b.put((byte) ((headerLength / 4) << 4)).put((byte) flags).putShort((short) window);
+        return b.array();
+    }
+
+    static byte[] udp(int srcPort, int dstPort, int payload) {
+        ByteBuffer b = ByteBuffer.allocate(8 + payload);
+        b.putShort((short) srcPort).putShort((short) dstPort).putShort((short) (8 + payload));
+        return b.array();
+    }
+
+    /* fragment holds the flags and the fragment offset */
+    static byte[] ipv4(int protocol, int fragment, byte[] l4) {
+        ByteBuffer b = ByteBuffer.allocate(20 + l4.length);
+        b.put((byte) 0x45).put((byte) 0).putShort((short) (20 + l4.length)).putShort((short) 1);
+        b.putShort((short) fragment).put((byte) 64).put((byte) protocol).putShort((short) 0);
+        b.put(CLIENT).put(SERVER).put(l4);
+        return b.array();
+    }
+
+    static byte[] ipv6(int next, byte[] rest) {
+        ByteBuffer b = ByteBuffer.allocate(40 + rest.length);
+        b.putInt(0x60000000).putShort((short) rest.length).put((byte) next).put((byte) 64);
+        b.put(CLIENT6).put(SERVER6).put(rest);
+        return b.array();
+    }
+
+    /* hop-by-hop, routing or destination options of (length8 + 1) * 8 bytes */
+    static byte[] options6(int next, int length8) {
+        byte[] header = new byte[(length8 + 1) * 8];
+        header[0] = (byte) next;
+        header[1] = (byte) length8;
+        return header;
+    }
+
+    static byte[] fragment6(int next, int offset, boolean more) {
+        ByteBuffer b = ByteBuffer.allocate(8);
+        b.put((byte) next).put((byte) 0).putShort((short) (offset << 3 | (more ? 1 : 0))).putInt(7);
+        return b.array();
+    }
+
+    static byte[] ethernet(byte[] payload, int... etherTypes) {
+        ByteBuffer b = ByteBuffer.allocate(12 + etherTypes.length * 4 - 2 + payload.length);
+        b.put(new byte[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11});
+        for (int i = 0; i < etherTypes.length; i++) {
+            b.putShort((short) etherTypes[i]);
+            if (i < etherTypes.length - 1) {
+                b.putShort((short) (100 + i)); // VLAN id
+            }
+        }
+        return b.put(payload).array();
+    }
+
+    static byte[] sll(int etherType, byte[] payload) {
+        ByteBuffer b = ByteBuffer.allocate(16 + payload.length);
+        b.putShort((short) 0).putShort((short) 1).putShort((short) 6).putLong(0x0001020304050000L);
+        return b.putShort((short) etherType).put(payload).array();
+    }
+
+    static byte[] sll2(int etherType, byte[] payload) {
+        ByteBuffer b = ByteBuffer.allocate(20 + payload.length);
+        b.putShort((short) etherType).putShort((short) 0).putInt(2).putShort((short) 1);
+        b.put((byte) 0).put((byte) 6).putLong(0x0001020304050000L);
+        return b.put(payload).array();
+    }
+
+    static byte[] concat(byte[]... parts) {
+        ByteBuffer b = ByteBuffer.allocate(Arrays.stream(parts).mapToInt(p -> p.length).sum());
+        for (byte[] part : parts) {
+            b.put(part);
+        }
+        return b.array();
+    }
+
+    private final PacketDecoder decoder = new PacketDecoder(new IdGenerator(), true, true);
+
+    /* the frame sits between other bytes, the decoder must stay within it */
+    private BasicPacketInfo decode(byte[] frame, int linkType) {
+        byte[] buf = new byte[frame.length + 16];
+        Arrays.fill(buf, (byte) 0x5A);
+        System.arraycopy(frame, 0, buf, 7, frame.length);
+        return decoder.decode(ByteBuffer.wrap(buf), 7, frame.length, linkType, TIME, 42L);
+    }
+
+    private static void assertTcp4(BasicPacketInfo packet) {
+        assertNotNull(packet);
+        assertEquals(42L, packet.getId());
+        assertEquals(TIME, packet.getTimeStamp());
+        assertArrayEquals(CLIENT, packet.getSrc());
+        assertArrayEquals(SERVER, packet.getDst());
+        assertEquals(51000, packet.getSrcPort());
+        assertEquals(443, packet.getDstPort());
+        assertEquals(6, packet.getProtocol());
+        assertEquals(32L, packet.getHeaderBytes());
+        assertEquals(100L, packet.getPayloadBytes());
+        assertEquals(65000, packet.getTCPWindow());
+        assertTrue(packet.hasFlagSYN());
+        assertTrue(packet.hasFlagACK());
+        assertFalse(packet.hasFlagFIN());
+    }
+
+    private static byte[] tcp4() {
+        return ipv4(6, 0x4000, tcp(51000, 443, SYN_ACK, 65000, 12, 100));
+    }
+
+    @Test
+    public void ethernetTcp() {
+        assertTcp4(decode(ethernet(tcp4(), 0x0800), PacketDecoder.LINKTYPE_ETHERNET));
+    }
+
+    @Test
+    public void vlanAndQinQ() {
+        assertTcp4(decode(ethernet(tcp4(), 0x8100, 0x0800), PacketDecoder.LINKTYPE_ETHERNET));
+        assertTcp4(decode(ethernet(tcp4(), 0x88A8, 0x8100, 0x0800), PacketDecoder.LINKTYPE_ETHERNET));
+        assertTcp4(decode(ethernet(tcp4(), 0x9100, 0x8100, 0x0800), PacketDecoder.LINKTYPE_ETHERNET));
+        // tag without the frame behind it
+        assertNull(decode(Arrays.copyOf(ethernet(tcp4(), 0x8100, 0x0800), 16), PacketDecoder.LINKTYPE_ETHERNET));
+    }
+
+    @Test
+    public void otherLinkTypes() {
+        assertTcp4(decode(sll(0x0800, tcp4()), PacketDecoder.LINKTYPE_LINUX_SLL));
+        assertTcp4(decode(sll2(0x0800, tcp4()), PacketDecoder.LINKTYPE_LINUX_SLL2));
+        assertTcp4(decode(tcp4(), PacketDecoder.LINKTYPE_RAW));
+        assertTcp4(decode(tcp4(), PacketDecoder.LINKTYPE_IPV4));
+        assertTcp4(decode(concat(new byte[] {2, 0, 0, 0}, tcp4()), PacketDecoder.LINKTYPE_NULL));
+        assertTcp4(decode(concat(new byte[] {0, 0, 0, 2}, tcp4()), PacketDecoder.LINKTYPE_LOOP));
+
+        assertNull(decode(sll(0x0806, tcp4()), PacketDecoder.LINKTYPE_LINUX_SLL));
+        assertNull(decode(sll2(0x0806, tcp4()), PacketDecoder.LINKTYPE_LINUX_SLL2));
+        assertNull(decode(tcp4(), 147)); // a user link type
+        assertFalse(PacketDecoder.isSupportedLinkType(147));
+    }
+
+    @Test
+    public void notIp() {
+        assertNull(decode(ethernet(new byte[28], 0x0806), PacketDecoder.LINKTYPE_ETHERNET)); // ARP
+        assertNull(decode(ethernet(tcp4(), 0x88CC), PacketDecoder.LINKTYPE_ETHERNET));
+        // the version of the header decides, not the ether type
+        byte[] frame = ethernet(tcp4(), 0x0800);
+        frame[14] = 0x55;
+        assertNull(decode(frame, PacketDecoder.LINKTYPE_ETHERNET));
+    }
+
+    @Test
+    public void disabledVersions() {
+        PacketDecoder ip4Only = new PacketDecoder(new IdGenerator(), true, false);
+        PacketDecoder ip6Only = new PacketDecoder(new IdGenerator(), false, true);
+        ByteBuffer frame4 = ByteBuffer.wrap(tcp4());
+        ByteBuffer frame6 = ByteBuffer.wrap(ipv6(17, udp(53, 5353, 10)));
+        assertNotNull(ip4Only.decode(frame4, 0, frame4.capacity(), PacketDecoder.LINKTYPE_RAW, TIME, 1L));
+        assertNull(ip4Only.decode(frame6, 0, frame6.capacity(), PacketDecoder.LINKTYPE_RAW, TIME, 1L));
+        assertNull(ip6Only.decode(frame4, 0, frame4.capacity(), PacketDecoder.LINKTYPE_RAW, TIME, 1L));
+        assertNotNull(ip6Only.decode(frame6, 0, frame6.capacity(), PacketDecoder.LINKTYPE_RAW, TIME, 1L));
+    }
+
+    /* Ethernet pads frames to 60 bytes, the padding is not payload */
+    @Test
+    public void paddingExcluded() {
+        byte[] frame = ethernet(ipv4(17, 0, udp(5353, 53, 2)), 0x0800);
+        assertEquals(44, frame.length);
+        BasicPacketInfo packet = decode(Arrays.copyOf(frame, 60), PacketDecoder.LINKTYPE_ETHERNET);
+        assertEquals(17, packet.getProtocol());
+        assertEquals(5353, packet.getSrcPort());
+        assertEquals(53, packet.getDstPort());
+        assertEquals(8L, packet.getHeaderBytes());
+        assertEquals(2L, packet.getPayloadBytes());
+
+        frame = ethernet(ipv4(6, 0, tcp(1, 2, 0x10, 9, 0, 0)), 0x0800);
+        packet = decode(Arrays.copyOf(frame, 60), PacketDecoder.LINKTYPE_ETHERNET);
+        assertEquals(0L, packet.getPayloadBytes());
+    }
+
+    /* only the first fragment has ports, the others keep protocol 0 */
+    @Test
+    public void ipv4Fragments() {
+        BasicPacketInfo first = decode(ipv4(17, 0x2000, udp(4000, 4001, 1472)), PacketDecoder.LINKTYPE_RAW);
+        assertEquals(17, first.getProtocol());
+        assertEquals(4000, first.getSrcPort());
+        assertEquals(1472L, first.getPayloadBytes());
+
+        BasicPacketInfo later = decode(ipv4(17, 185, new byte[600]), PacketDecoder.LINKTYPE_RAW);
+        assertNotNull(later);
+        assertArrayEquals(CLIENT, later.getSrc());
+        assertArrayEquals(SERVER, later.getDst());
+        assertEquals(0, later.getProtocol());
+        assertEquals(0, later.getSrcPort());
+        assertEquals(0, later.getDstPort());
+        assertEquals(0L, later.getPayloadBytes());
+    }
+
+    /* PacketReader keeps IPv6 timestamps in milliseconds and reads no TCP flags or window of them */
+    @Test
+    public void ipv6Tcp() {
+        BasicPacketInfo packet = decode(ethernet(ipv6(6, tcp(51000, 443, SYN_ACK, 65000, 0, 30)), 0x86DD),
+                PacketDecoder.LINKTYPE_ETHERNET);
+        assertEquals(TIME / 1000L, packet.getTimeStamp());
+        assertEquals(16, packet.getAddressLength());
+        assertArrayEquals(CLIENT6, packet.getSrc());
+        assertArrayEquals(SERVER6, packet.getDst());
+        assertEquals(6, packet.getProtocol());
+        assertEquals(51000, packet.getSrcPort());
+        assertEquals(443, packet.getDstPort());
+        assertEquals(20L, packet.getHeaderBytes());
+        assertEquals(30L, packet.getPayloadBytes());
+        assertEquals(0, packet.getFlags());
+        assertEquals(0, packet.getTCPWindow());
+
+        packet = decode(ipv6(6, tcp(1, 2, SYN_ACK, 3, 0, 0)), PacketDecoder.LINKTYPE_IPV6);
+        assertEquals(TIME / 1000L, packet.getTimeStamp());
+        assertEquals(0L, packet.getPayloadBytes());
+    }
+
+    @Test
+    public void ipv6ExtensionHeaders() {
+        byte[] ah = new byte[12];
+        ah[0] = 17;
+        ah[1] = 1; // (1 + 2) * 4 bytes
+        byte[] rest = concat(options6(43, 0), options6(44, 1), fragment6(60, 0, true), options6(51, 0), ah,
+                udp(547, 546, 77));
+        BasicPacketInfo packet = decode(ipv6(0, rest), PacketDecoder.LINKTYPE_RAW);
+        assertEquals(17, packet.getProtocol());
+        assertEquals(547, packet.getSrcPort());
+        assertEquals(546, packet.getDstPort());
+        assertEquals(8L, packet.getHeaderBytes());
+        assertEquals(77L, packet.getPayloadBytes());
+
+        // a later fragment has no transport header
+        packet = decode(ipv6(44, concat(fragment6(17, 1000, false), new byte[200])), PacketDecoder.LINKTYPE_RAW);
+        assertEquals(0, packet.getProtocol());
+        assertEquals(0, packet.getSrcPort());
+        assertArrayEquals(SERVER6, packet.getDst());
+
+        // no next header
+        packet = decode(ipv6(59, new byte[0]), PacketDecoder.LINKTYPE_RAW);
+        assertEquals(0, packet.getProtocol());
+    }
+
+    @Test
+    public void truncatedFrames() {
+        byte[] frame = ethernet(tcp4(), 0x0800);
+        assertNull(decode(Arrays.copyOf(frame, 13), PacketDecoder.LINKTYPE_ETHERNET));
+        assertNull(decode(Arrays.copyOf(frame, 14), PacketDecoder.LINKTYPE_ETHERNET));
+        assertNull(decode(Arrays.copyOf(frame, 14 + 19), PacketDecoder.LINKTYPE_ETHERNET));
+
+        // IP header only: the addresses without ports
+        BasicPacketInfo packet = decode(Arrays.copyOf(frame, 14 + 20 + 19), PacketDecoder.LINKTYPE_ETHERNET);
+        assertArrayEquals(CLIENT, packet.getSrc());
+        assertEquals(0, packet.getProtocol());
+        assertEquals(0, packet.getSrcPort());
+        // TCP options cut
+        packet = decode(Arrays.copyOf(frame, 14 + 20 + 31), PacketDecoder.LINKTYPE_ETHERNET);
+        assertEquals(0, packet.getProtocol());
+        // the payload is what was captured of it
+        packet = decode(Arrays.copyOf(frame, 14 + 20 + 32 + 10), PacketDecoder.LINKTYPE_ETHERNET);
+        assertEquals(6, packet.getProtocol());
+        assertEquals(443, packet.getDstPort());
+        assertEquals(10L, packet.getPayloadBytes());
+
+        byte[] frame6 = ipv6(17, udp(53, 53, 10));
+        assertNull(decode(Arrays.copyOf(frame6, 39), PacketDecoder.LINKTYPE_RAW));
+        assertEquals(0, decode(Arrays.copyOf(frame6, 47), PacketDecoder.LINKTYPE_RAW).getProtocol());
+        assertNull(decode(new byte[0], PacketDecoder.LINKTYPE_RAW));
+    }
+
+    @Test
+    public void decodeInto() {
+        BasicPacketInfo into = new BasicPacketInfo(new IdGenerator());
+        ByteBuffer udp = ByteBuffer.wrap(ipv4(17, 0, udp(53, 1053, 40)));
+        ByteBuffer fragment = ByteBuffer.wrap(ipv4(6, 100, new byte[40]));
+
+        assertSame(into, decoder.decode(udp, 0, udp.capacity(), PacketDecoder.LINKTYPE_RAW, TIME, 5L, into));
+        assertEquals(5L, into.getId());
+        assertEquals(53, into.getSrcPort());
+        assertSame(into, decoder.decode(fragment, 0, fragment.capacity(), PacketDecoder.LINKTYPE_RAW, TIME + 1, 6L,
+                into));
+        assertEquals(6L, into.getId());
+        assertEquals(TIME + 1, into.getTimeStamp());
+        assertEquals(0, into.getProtocol());
+        assertEquals(0, into.getSrcPort());
+        assertEquals(0L, into.getPayloadBytes());
+    }
+}
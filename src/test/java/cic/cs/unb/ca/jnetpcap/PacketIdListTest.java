@@ -0,0 +1,72 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import org.junit.Test;
+
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PacketIdListTest {
+
+    private static PacketIdList list(long... ids) {
+        PacketIdList list = new PacketIdList();
+        for (long id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    /* runs of consecutive packets, jumps both ways, and numbers far apart */
+    private static long[] randomIds(Random random, int count) {
+        long[] ids = new long[count];
+        long id = random.nextInt(1000) + 1;
+        for (int i = 0; i < count; i++) {
+            int kind = random.nextInt(10);
+            if (kind < 6) {
+                id += 1;
+            } else if (kind < 8) {
+                id += random.nextInt(300);
+            } else if (kind < 9) {
+                id -= random.nextInt((int) Math.min(id, 300));
+            } else {
+                id += random.nextInt(Integer.MAX_VALUE) * 1000L;
+            }
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    @Test
+    public void inOrder() {
+        long[] ids = {1L, 2L, 3L, 200L, 150L, 151L, 1L << 40, 7L};
+        PacketIdList list = list(ids);
+        assertEquals(ids.length, list.size());
+        assertArrayEquals(ids, list.toArray());
+        assertEquals("[1, 2, 3, 200, 150, 151, 1099511627776, 7]", list.toString());
+
+        PrimitiveIterator.OfLong it = list.iterator();
+        list.add(8L);
+        for (long id : ids) {
+            assertTrue(it.hasNext());
+            assertEquals(id, it.nextLong());
+        }
+        assertFalse(it.hasNext()); // made before 8 was added
+        assertEquals(ids.length + 1, list.toArray().length);
+
+        assertTrue(new PacketIdList().isEmpty());
+        assertEquals(0, new PacketIdList().toArray().length);
+    }
+
+    @Test
+    public void random() {
+        Random random = new Random(3);
+        for (int n = 0; n < 200; n++) {
+            long[] ids = randomIds(random, random.nextInt(5000));
+            assertArrayEquals(ids, list(ids).toArray());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PacketIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static PacketIdList list(long... ids) {
+        PacketIdList list = new PacketIdList();
+        for (long id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    /* runs of consecutive packets broken by gaps either way */
+    private static long[] randomIds(Random random, int count) {
+        long[] ids = new long[count];
+        long id = random.nextInt(1000) + 1;
+        for (int i = 0; i < count; i++) {
+            id += random.nextInt(4) == 0 ? random.nextInt(600) - 200 : 1;
+            id = Math.max(id, 1L);
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        Random random = new Random(5);
+        List<String> flowIds = new ArrayList<>();
+        List<long[]> packets = new ArrayList<>();
+        flowIds.add("10.0.0.1-10.0.0.2-1024-80-6");
+        packets.add(new long[] {1L, 2L, 3L, 4L, 10L, 9L, 11L});
+        flowIds.add("no packets");
+        packets.add(new long[0]);
+        flowIds.add("");
+        packets.add(new long[] {42L});
+        for (int n = 0; n < 500; n++) {
+            flowIds.add("flow-" + n);
+            packets.add(randomIds(random, random.nextInt(2000)));
+        }
+
+        File file = PacketIndex.indexFile(folder.getRoot().getPath(), "capture.pcap");
+        try (PacketIndexWriter writer = new PacketIndexWriter(file)) {
+            for (int i = 0; i < flowIds.size(); i++) {
+                writer.append(flowIds.get(i), list(packets.get(i)));
+            }
+            writer.append(null, null); // a flow without packet tracking keeps its row
+            assertEquals(flowIds.size() + 1, writer.getRecordCount());
+        }
+
+        try (PacketIndexReader reader = new PacketIndexReader(file)) {
+            for (int i = 0; i < flowIds.size(); i++) {
+                assertTrue(reader.next());
+                assertEquals(i + 1, reader.getRecordNumber());
+                assertEquals(flowIds.get(i), reader.getFlowId());
+                assertEquals(packets.get(i).length, reader.getPacketCount());
+                assertArrayEquals(packets.get(i), reader.getPacketIds());
+            }
+            assertTrue(reader.next());
+            assertEquals("", reader.getFlowId());
+            assertEquals(0, reader.getPacketCount());
+            assertFalse(reader.next());
+        }
+    }
+
+    /* a record cut short, as after a crash, is left out; the ones before it are read */
+    @Test
+    public void partialRecord() throws IOException {
+        File file = folder.newFile("partial.pktidx");
+        try (PacketIndexWriter writer = new PacketIndexWriter(file)) {
+            writer.append("a", list(1L, 2L));
+            writer.append("b", list(3L, 4L, 100L));
+        }
+        try (RandomAccessFile cut = new RandomAccessFile(file, "rw")) {
+            cut.setLength(cut.length() - 2);
+        }
+
+        try (PacketIndexReader reader = new PacketIndexReader(file)) {
+            assertTrue(reader.next());
+            assertEquals("a", reader.getFlowId());
+            assertArrayEquals(new long[] {1L, 2L}, reader.getPacketIds());
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notAnIndex() throws IOException {
+        File file = folder.newFile("flows.csv");
+        Files.write(file.toPath(), "Flow ID,Src IP,Src Port,Dst IP\n".getBytes(StandardCharsets.UTF_8));
+        new PacketIndexReader(file).close();
+    }
+
+    @Test
+    public void exportJson() throws IOException {
+        File file = folder.newFile("export.pktidx");
+        try (PacketIndexWriter writer = new PacketIndexWriter(file)) {
+            writer.append("x", list(1L, 2L));
+            writer.append("y", list(3L));
+            writer.append("x", list(5L, 4L));
+            writer.append("z", new PacketIdList());
+        }
+        File out = folder.newFolder("json");
+
+        assertEquals(1, PacketIndex.exportJson(file, out.getPath(), Collections.singleton("x")));
+        String json = new String(Files.readAllBytes(new File(out, "x.json").toPath()), StandardCharsets.UTF_8);
+        assertEquals("{\n    \"1\": [1, 2],\n    \"2\": [5, 4]\n}", json);
+        assertFalse(new File(out, "y.json").exists());
+
+        // flows without packets get no file
+        assertEquals(2, PacketIndex.exportJson(file, out.getPath(), null));
+        assertFalse(new File(out, "z.json").exists());
+    }
+}
@@ -0,0 +1,148 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * A ShardedFlowGenerator has to make the same flows as one FlowGenerator fed the same
+ * packets; only the order the shards hand them over in differs, so rows are compared sorted.
+ */
+public class ShardedFlowGeneratorTest {
+
+    private static final long FLOW_TIMEOUT = 120000000L;
+    private static final long ACTIVITY_TIMEOUT = 5000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /* a few hosts talking over few ports, TCP flags at random, now and then a gap past the flow timeout */
+    private static List<BasicPacketInfo> packets(long seed, int count, int hosts) {
+        Random random = new Random(seed);
+        IdGenerator generator = new IdGenerator();
+        List<BasicPacketInfo> packets = new ArrayList<>(count);
+        long time = 1500000000000000L;
+        for (int i = 0; i < count; i++) {
+            time += (long) (random.nextDouble() * random.nextDouble() * 40000);
+            if (random.nextInt(5000) == 0) {
+                time += 200000000L;
+            }
+            byte[] src = {10, 0, 0, (byte) random.nextInt(hosts)};
+            byte[] dst = {10, 0, 1, (byte) random.nextInt(hosts)};
+            int srcPort = 1000 + random.nextInt(8);
+            int dstPort = random.nextBoolean() ? 80 : 53;
+            int protocol = random.nextInt(10) < 8 ? 6 : 17;
+            BasicPacketInfo packet = random.nextBoolean()
+                    ? new BasicPacketInfo(src, dst, srcPort, dstPort, protocol, time, generator)
+                    : new BasicPacketInfo(dst, src, dstPort, srcPort, protocol, time, generator);
+            if (protocol == 6) {
+                packet.setTCPWindow(random.nextInt(65536));
+                packet.setFlagFIN(random.nextInt(30) == 0);
+                packet.setFlagSYN(random.nextInt(10) == 0);
+                packet.setFlagPSH(random.nextInt(3) == 0);
+                packet.setFlagACK(random.nextInt(4) != 0);
+                packet.setHeaderBytes(20 + 4 * random.nextInt(4));
+            } else {
+                packet.setHeaderBytes(8);
+            }
+            packet.setPayloadBytes(random.nextInt(3) == 0 ? 0 : random.nextInt(1460));
+            packets.add(packet);
+        }
+        return packets;
+    }
+
+    /* the flows handed to the listener, then the flows still in progress, each sorted */
+    private List<List<String>> run(FlowGenerator flowGen, List<BasicPacketInfo> packets, boolean timerExpiry)
+            throws IOException {
+        List<String> emitted = Collections.synchronizedList(new ArrayList<>());
+        flowGen.addFlowListener(flow -> emitted.add(flow.dumpFlowBasedFeaturesEx()));
+        if (timerExpiry) {
+            flowGen.enableTimerExpiry();
+        }
+        for (BasicPacketInfo packet : packets) {
+            flowGen.addPacket(packet);
+        }
+        flowGen.close();
+
+        File current = folder.newFile();
+        assertTrue(current.delete());
+        flowGen.dumpLabeledCurrentFlow(current.getPath(), FlowFeature.getHeader());
+
+        List<List<String>> rows = new ArrayList<>();
+        rows.add(sorted(emitted));
+        rows.add(sorted(rows(current)));
+        return rows;
+    }
+
+    private static List<String> rows(File file) throws IOException {
+        List<String> rows = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            if (!line.equals(FlowFeature.getHeader())) {
+                rows.add(line);
+            }
+        }
+        return rows;
+    }
+
+    private static List<String> sorted(List<String> rows) {
+        List<String> copy = new ArrayList<>(rows);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    private void assertSameFlows(long seed, int hosts, int shards, boolean timerExpiry) throws IOException {
+        List<BasicPacketInfo> packets = packets(seed, 100000, hosts);
+        List<List<String>> expected = run(new FlowGenerator(true, FLOW_TIMEOUT, ACTIVITY_TIMEOUT), packets,
+                timerExpiry);
+        // a short queue makes the producer wait for the shards now and then
+        List<List<String>> actual = run(new ShardedFlowGenerator(shards, true, FLOW_TIMEOUT, ACTIVITY_TIMEOUT,
+                false, 64), packets, timerExpiry);
+        assertTrue(expected.get(0).size() > 1000);
+        assertTrue(expected.get(1).size() > 100);
+        assertEquals(expected.get(0), actual.get(0));
+        assertEquals(expected.get(1), actual.get(1));
+    }
+
+    @Test
+    public void sameFlowsAsOneGenerator() throws IOException {
+        assertSameFlows(1, 40, 4, false);
+        assertSameFlows(2, 40, 3, false);
+    }
+
+    @Test
+    public void sameFlowsWithTimerExpiry() throws IOException {
+        assertSameFlows(3, 6, 4, true);
+        assertSameFlows(4, 6, 2, true);
+    }
+
+    /* without a listener the finished flows of every shard are dumped with the ones in progress */
+    @Test
+    public void sameDumpWithoutListener() throws IOException {
+        List<BasicPacketInfo> packets = packets(5, 50000, 30);
+        FlowGenerator single = new FlowGenerator(true, FLOW_TIMEOUT, ACTIVITY_TIMEOUT);
+        FlowGenerator sharded = new ShardedFlowGenerator(4, true, FLOW_TIMEOUT, ACTIVITY_TIMEOUT, false, 64);
+        for (BasicPacketInfo packet : packets) {
+            single.addPacket(packet);
+            sharded.addPacket(packet);
+        }
+        String path = folder.getRoot().getPath() + File.separator;
+        int expected = single.dumpLabeledFlowBasedFeatures(path, "single.csv", FlowFeature.getHeader());
+        int actual = sharded.dumpLabeledFlowBasedFeatures(path, "sharded.csv", FlowFeature.getHeader());
+
+        assertTrue(expected > 1000);
+        assertEquals(expected, actual);
+        assertEquals(sorted(rows(new File(path, "single.csv"))), sorted(rows(new File(path, "sharded.csv"))));
+    }
+}
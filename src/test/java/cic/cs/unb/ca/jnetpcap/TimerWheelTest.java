@@ -0,0 +1,147 @@
+package cic.cs.unb.ca.jnetpcap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimerWheelTest {
+
+    private static final long TICK = 1000L; // 1 ms in micros, as FlowGenerator uses it
+
+    private static final byte[] CLIENT = {10, 0, 0, 1};
+    private static final byte[] SERVER = {10, 0, 0, 2};
+
+    /*
+     * Handles the timers the way FlowGenerator does: a timer that fires before its
+     * deadline (parked in the top level) is scheduled again at the deadline.
+     */
+    private static class Recorder implements TimerWheel.Handler {
+        private final TimerWheel wheel;
+        private final Map<FlowKey, Long> deadlines = new HashMap<>();
+        private final Map<FlowKey, Long> fired = new HashMap<>();
+
+        Recorder(TimerWheel wheel) {
+            this.wheel = wheel;
+        }
+
+        void schedule(int port, long deadline) {
+            FlowKey key = new FlowKey(CLIENT, SERVER, port, 80, 6);
+            deadlines.put(key, deadline);
+            wheel.schedule(key, null, deadline);
+        }
+
+        @Override
+        public void onTimer(TimerWheel.Timer timer, long now) {
+            long deadline = deadlines.get(timer.getKey());
+            if (now < deadline) {
+                wheel.reschedule(timer, deadline);
+            } else {
+                fired.put(timer.getKey(), now);
+            }
+        }
+    }
+
+    @Test
+    public void firesAtItsDeadline() {
+        TimerWheel wheel = new TimerWheel(TICK);
+        Recorder recorder = new Recorder(wheel);
+        wheel.advance(0L, recorder);
+        recorder.schedule(1, 5 * TICK);
+
+        wheel.advance(4 * TICK + 999, recorder);
+        assertTrue(recorder.fired.isEmpty());
+        assertEquals(1, wheel.size());
+        wheel.advance(5 * TICK, recorder);
+        assertEquals(1, recorder.fired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    /* one timer in each level, and one beyond them all, fired by a single advance each */
+    @Test
+    public void cascadesThroughEveryLevel() {
+        TimerWheel wheel = new TimerWheel(TICK);
+        Recorder recorder = new Recorder(wheel);
+        wheel.advance(0L, recorder);
+        long[] deadlines = {200L, 300L, 70000L, 20000000L, 5000000000L, 20000000000L};
+        for (int i = 0; i < deadlines.length; i++) {
+            recorder.schedule(i + 1, deadlines[i] * TICK);
+        }
+        for (int i = 0; i < deadlines.length; i++) {
+            wheel.advance(deadlines[i] * TICK - 1, recorder);
+            assertEquals(i, recorder.fired.size());
+            wheel.advance(deadlines[i] * TICK, recorder);
+            assertEquals(i + 1, recorder.fired.size());
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    /* a gap much longer than the wheel fires everything due in it at once */
+    @Test
+    public void largeGap() {
+        TimerWheel wheel = new TimerWheel(TICK);
+        Recorder recorder = new Recorder(wheel);
+        wheel.advance(0L, recorder);
+        for (int i = 0; i < 1000; i++) {
+            recorder.schedule(i, (1L + i * 7919L) * TICK);
+        }
+        long now = 1L << 40;
+        wheel.advance(now * TICK, recorder);
+        assertEquals(1000, recorder.fired.size());
+        for (long at : recorder.fired.values()) {
+            assertEquals(now * TICK, at);
+        }
+
+        // and it goes on from there
+        recorder.schedule(5000, (now + 3) * TICK);
+        wheel.advance((now + 2) * TICK, recorder);
+        assertEquals(1000, recorder.fired.size());
+        wheel.advance((now + 3) * TICK, recorder);
+        assertEquals(1001, recorder.fired.size());
+    }
+
+    /* random deadlines and steps: every timer fires on the first advance at or after its deadline */
+    @Test
+    public void randomDeadlines() {
+        Random random = new Random(7);
+        TimerWheel wheel = new TimerWheel(TICK);
+        Recorder recorder = new Recorder(wheel);
+        long now = 1234567L * TICK;
+        wheel.advance(now, recorder);
+
+        List<Long> advances = new ArrayList<>();
+        int port = 0;
+        for (int round = 0; round < 2000; round++) {
+            for (int i = random.nextInt(4); i > 0; i--) {
+                long delay = (long) Math.pow(2, random.nextDouble() * 36);
+                recorder.schedule(port++, (now / TICK + delay) * TICK);
+            }
+            now += (long) Math.pow(2, random.nextDouble() * (round % 100 == 0 ? 44 : 24));
+            wheel.advance(now, recorder);
+            advances.add(now);
+        }
+        now = Long.MAX_VALUE / 2;
+        wheel.advance(now, recorder);
+        advances.add(now);
+
+        assertEquals(0, wheel.size());
+        assertEquals(port, recorder.fired.size());
+        for (Map.Entry<FlowKey, Long> fired : recorder.fired.entrySet()) {
+            long deadline = recorder.deadlines.get(fired.getKey());
+            long expected = 0L;
+            for (long at : advances) {
+                if (at >= deadline) {
+                    expected = at;
+                    break;
+                }
+            }
+            assertEquals(expected, (long) fired.getValue());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package cic.cs.unb.ca.jnetpcap.worker;
+
+import cic.cs.unb.ca.jnetpcap.BasicPacketInfo;
+import cic.cs.unb.ca.jnetpcap.FlowGenerator;
+import cic.cs.unb.ca.jnetpcap.IdGenerator;
+import cic.cs.unb.ca.jnetpcap.PacketRing;
+import cic.cs.unb.ca.jnetpcap.ShardedFlowGenerator;
+import org.jnetpcap.Pcap;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class LiveCaptureTest {
+
+    private static final byte[] CLIENT = {10, 0, 0, 1};
+    private static final byte[] SERVER = {10, 0, 0, 2};
+
+    /* stands in for libpcap: every dispatch brings a SYN and a FIN of the next connection */
+    private static class Connections implements LiveCapture.Source {
+        private final IdGenerator generator = new IdGenerator();
+        private final int limit;
+        private int count;
+
+        Connections(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public int dispatch(PacketRing ring, BooleanSupplier done) {
+            if (count == limit) {
+                return Pcap.ERROR_BREAK;
+            }
+            int port = 1024 + count % 60000;
+            long time = 1000000L + count * 1000L;
+            BasicPacketInfo syn = new BasicPacketInfo(CLIENT, SERVER, port, 80, 6, time, generator);
+            syn.setFlagSYN(true);
+            BasicPacketInfo fin = new BasicPacketInfo(CLIENT, SERVER, port, 80, 6, time + 10, generator);
+            fin.setFlagFIN(true);
+            offer(ring, syn);
+            offer(ring, fin);
+            count++;
+            return 2;
+        }
+
+        /* a full ring drops packets, libpcap would too; here they wait */
+        private static void offer(PacketRing ring, BasicPacketInfo packet) {
+            while (!ring.offer(packet)) {
+                Thread.yield();
+            }
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void capturesUntilTheSourceEnds() {
+        FlowGenerator flowGen = new ShardedFlowGenerator(2, true, 120000000L, 5000000L);
+        AtomicInteger flows = new AtomicInteger();
+        flowGen.addFlowListener(flow -> flows.incrementAndGet());
+        LiveCapture capture = new LiveCapture(new Connections(5000), flowGen, 1024);
+
+        assertEquals(Pcap.ERROR_BREAK, capture.run(() -> false, null));
+        flowGen.close();
+        assertEquals(5000, flows.get());
+    }
+
+    /* a dead shard can not make flows anymore, the capture has to stop instead of going on (or time out) */
+    @Test(timeout = 30000)
+    public void deadShardStopsTheCapture() {
+        FlowGenerator flowGen = new ShardedFlowGenerator(2, true, 120000000L, 5000000L);
+        flowGen.addFlowListener(flow -> {
+            throw new IllegalArgumentException("listener failed");
+        });
+        Connections source = new Connections(Integer.MAX_VALUE);
+        LiveCapture capture = new LiveCapture(source, flowGen, 1024);
+
+        try {
+            capture.run(() -> false, null);
+            fail("the capture went on after its flow generator failed");
+        } catch (IllegalStateException e) {
+            Throwable cause = e.getCause();
+            while (cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            assertEquals("listener failed", cause.getMessage());
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package cic.cs.unb.ca.jnetpcap.worker;
+
+import cic.cs.unb.ca.jnetpcap.BasicFlow;
+import cic.cs.unb.ca.jnetpcap.BasicPacketInfo;
+import cic.cs.unb.ca.jnetpcap.IdGenerator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static cic.cs.unb.ca.jnetpcap.Utils.LINE_SEP;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RotatingCsvFlowSinkTest {
+
+    private static final String HEADER = "Flow ID,Src IP,Label";
+    private static final String PREFIX = "capture-";
+    private static final String SUFFIX = "_Flow.csv";
+    private static final long MINUTE = 60000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final IdGenerator generator = new IdGenerator();
+    // the sink's clock, set by the tests
+    private final AtomicLong now = new AtomicLong(at(2017, 7, 7, 10, 7, 0));
+
+    private static long at(int year, int month, int day, int hour, int minute, int second) {
+        return LocalDateTime.of(year, month, day, hour, minute, second).atZone(ZoneId.systemDefault()).toInstant()
+                .toEpochMilli();
+    }
+
+    private BasicFlow flow() {
+        BasicPacketInfo packet = new BasicPacketInfo(new byte[] {10, 0, 0, 1}, new byte[] {10, 0, 0, 2}, 1024, 80,
+                6, 1499422020000000L, generator);
+        return new BasicFlow(true, packet, 5000000L);
+    }
+
+    private long rowLength() {
+        return (flow().dumpFlowBasedFeaturesEx() + LINE_SEP).getBytes().length;
+    }
+
+    private RotatingCsvFlowSink sink(RotatingCsvFlowSink.Rotation rotation) {
+        return new RotatingCsvFlowSink(folder.getRoot().getPath(), PREFIX, SUFFIX, HEADER, rotation, now::get);
+    }
+
+    private void write(RotatingCsvFlowSink sink, int flows) {
+        for (int i = 0; i < flows; i++) {
+            sink.write(flow());
+        }
+    }
+
+    private String[] files() {
+        String[] names = folder.getRoot().list();
+        Arrays.sort(names);
+        return names;
+    }
+
+    /* rows of a file, the header first */
+    private List<String> lines(String name) throws IOException {
+        return Files.readAllLines(new File(folder.getRoot(), name).toPath(), StandardCharsets.UTF_8);
+    }
+
+    private void assertRows(String name, int rows) throws IOException {
+        List<String> lines = lines(name);
+        assertEquals(HEADER, lines.get(0));
+        assertEquals(rows, lines.size() - 1);
+    }
+
+    @Test
+    public void rotatesBySize() throws IOException {
+        long maxBytes = (HEADER + LINE_SEP).getBytes().length + 2 * rowLength();
+        RotatingCsvFlowSink sink = sink(new RotatingCsvFlowSink.Rotation(maxBytes, 0, 0));
+        write(sink, 5);
+        sink.close();
+
+        assertArrayEquals(new String[] {"capture-2017-07-07_0000_Flow.csv", "capture-2017-07-07_0001_Flow.csv",
+                "capture-2017-07-07_0002_Flow.csv"}, files());
+        assertRows("capture-2017-07-07_0000_Flow.csv", 2);
+        assertRows("capture-2017-07-07_0001_Flow.csv", 2);
+        assertRows("capture-2017-07-07_0002_Flow.csv", 1);
+        assertEquals(3, sink.getSegmentCount());
+    }
+
+    @Test
+    public void rotatesByCount() throws IOException {
+        RotatingCsvFlowSink sink = sink(new RotatingCsvFlowSink.Rotation(0, 3, 0));
+        write(sink, 7);
+        // a new day starts over at 0000
+        now.set(at(2017, 7, 8, 0, 0, 1));
+        write(sink, 1);
+        sink.close();
+
+        assertArrayEquals(new String[] {"capture-2017-07-07_0000_Flow.csv", "capture-2017-07-07_0001_Flow.csv",
+                "capture-2017-07-07_0002_Flow.csv", "capture-2017-07-08_0000_Flow.csv"}, files());
+        assertRows("capture-2017-07-07_0001_Flow.csv", 3);
+        assertRows("capture-2017-07-07_0002_Flow.csv", 1);
+        assertRows("capture-2017-07-08_0000_Flow.csv", 1);
+        assertEquals(4, sink.getSegmentCount());
+    }
+
+    /* windows are aligned to midnight and a segment is named after the start of its window */
+    @Test
+    public void rotatesByWindow() throws IOException {
+        RotatingCsvFlowSink sink = sink(new RotatingCsvFlowSink.Rotation(0, 2, 15 * MINUTE));
+        write(sink, 3);
+        now.addAndGet(9 * MINUTE); // 10:16
+        write(sink, 1);
+        now.set(at(2017, 7, 7, 10, 59, 59));
+        write(sink, 1);
+        sink.close();
+
+        assertArrayEquals(new String[] {"capture-2017-07-07_100000_0000_Flow.csv",
+                "capture-2017-07-07_100000_0001_Flow.csv", "capture-2017-07-07_101500_0000_Flow.csv",
+                "capture-2017-07-07_104500_0000_Flow.csv"}, files());
+        assertRows("capture-2017-07-07_100000_0000_Flow.csv", 2);
+        assertRows("capture-2017-07-07_100000_0001_Flow.csv", 1);
+        assertRows("capture-2017-07-07_101500_0000_Flow.csv", 1);
+        assertRows("capture-2017-07-07_104500_0000_Flow.csv", 1);
+    }
+
+    /* the segment of a window that ended is completed while no flow comes */
+    @Test(timeout = 30000)
+    public void windowEndsWithoutFlows() throws InterruptedException {
+        RotatingCsvFlowSink sink = sink(new RotatingCsvFlowSink.Rotation(0, 0, 15 * MINUTE));
+        write(sink, 1);
+        File part = new File(folder.getRoot(), "capture-2017-07-07_100000_0000_Flow.csv.part");
+        assertTrue(part.exists());
+
+        now.set(at(2017, 7, 7, 10, 15, 0));
+        while (sink.getSegmentCount() == 0) {
+            Thread.sleep(50L);
+        }
+        assertFalse(part.exists());
+        assertTrue(new File(folder.getRoot(), "capture-2017-07-07_100000_0000_Flow.csv").exists());
+        sink.close();
+    }
+
+    /* a restarted capture goes on after the segments of the same stamp on disk, complete or not */
+    @Test
+    public void resumesAfterExistingSegments() throws IOException {
+        for (String name : new String[] {"capture-2017-07-07_0000_Flow.csv", "capture-2017-07-07_0001_Flow.csv",
+                "capture-2017-07-07_0003_Flow.csv.part", "capture-2017-07-07_abcd_Flow.csv",
+                "capture-2017-07-07_0009.txt", "other-2017-07-07_0007_Flow.csv", "capture-2017-07-06_0005_Flow.csv"}) {
+            assertTrue(new File(folder.getRoot(), name).createNewFile());
+        }
+        RotatingCsvFlowSink sink = sink(new RotatingCsvFlowSink.Rotation(0, 1, 0));
+        write(sink, 2);
+        sink.close();
+
+        assertRows("capture-2017-07-07_0004_Flow.csv", 1);
+        assertRows("capture-2017-07-07_0005_Flow.csv", 1);
+        // the ones there are left alone
+        assertTrue(new File(folder.getRoot(), "capture-2017-07-07_0003_Flow.csv.part").exists());
+        assertEquals(0L, new File(folder.getRoot(), "capture-2017-07-07_0001_Flow.csv").length());
+    }
+
+    /* a segment carries its final name only once it is complete */
+    @Test
+    public void partRenamedOnClose() throws IOException {
+        RotatingCsvFlowSink sink = sink(new RotatingCsvFlowSink.Rotation(0, 100, 0));
+        write(sink, 2);
+        sink.flush();
+        assertArrayEquals(new String[] {"capture-2017-07-07_0000_Flow.csv.part"}, files());
+        assertRows("capture-2017-07-07_0000_Flow.csv.part", 2);
+        assertEquals(0, sink.getSegmentCount());
+
+        sink.close();
+        assertArrayEquals(new String[] {"capture-2017-07-07_0000_Flow.csv"}, files());
+        assertRows("capture-2017-07-07_0000_Flow.csv", 2);
+        assertEquals(1, sink.getSegmentCount());
+        sink.close();
+        assertEquals(1, sink.getSegmentCount());
+    }
+
+    /* the last writes go to the open segment, one is opened for them if no flow came */
+    @Test
+    public void lastWritesBeforeClose() throws IOException {
+        RotatingCsvFlowSink sink = sink(new RotatingCsvFlowSink.Rotation(0, 100, 0));
+        sink.close(file -> {
+            assertTrue(file.getName().endsWith(RotatingCsvFlowSink.PART_SUFFIX));
+            try {
+                Files.write(file.toPath(), Collections.singletonList("in progress"), StandardCharsets.UTF_8,
+                        StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertArrayEquals(new String[] {"capture-2017-07-07_0000_Flow.csv"}, files());
+        assertEquals(Arrays.asList(HEADER, "in progress"), lines("capture-2017-07-07_0000_Flow.csv"));
+    }
+
+    /* without a rotation: one file a day, appended to */
+    @Test
+    public void oneFileADay() throws IOException {
+        RotatingCsvFlowSink sink = sink(null);
+        write(sink, 2);
+        sink.close();
+        sink = sink(new RotatingCsvFlowSink.Rotation(0, 0, 0));
+        write(sink, 1);
+        now.set(at(2017, 7, 8, 9, 0, 0));
+        write(sink, 1);
+        sink.close();
+
+        assertArrayEquals(new String[] {"capture-2017-07-07_Flow.csv", "capture-2017-07-08_Flow.csv"}, files());
+        assertRows("capture-2017-07-07_Flow.csv", 3);
+        assertRows("capture-2017-07-08_Flow.csv", 1);
+    }
+}